@@ -1,38 +1,57 @@
 package common.logger;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
-import org.w3c.dom.*;
+import javax.xml.stream.*;
 import common.report.*;
 
 /**
  * A logger used for producing XML/XSL logs of program's internals at different
  * stages of a computation.
- * 
+ *
+ * The log is streamed out to the XML file as it is being produced, so the
+ * memory used does not depend on the size of the log. As attributes of an XML
+ * element can only be written out together with its start tag, the start tag
+ * of the active XML element is written out once its first child element is
+ * started or once the element is ended.
+ *
  * @author sliva
  *
  */
 public class Logger implements AutoCloseable {
 
+	/** The size of the output buffer. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
 	/** The name of the XML file to be produced. */
 	private final String xmlFileName;
 
 	/** The name of the relating XSL file (to be included in the XML header). */
 	private final String xslFileName;
 
-	/** The entire XML document being constructed. */
-	private final Document doc;
+	/** The output the XML file is written to (or {@code null} on error). */
+	private OutputStream out;
+
+	/** The writer of the XML document (or {@code null} on error). */
+	private XMLStreamWriter writer;
+
+	/** The tag name of the active XML element whose start tag has not been written out yet. */
+	private String pendingTagName = null;
+
+	/** The attributes of the active XML element whose start tag has not been written out yet. */
+	private final LinkedHashMap<String, String> pendingAttrs = new LinkedHashMap<String, String>();
+
+	/** The number of XML elements started but not ended yet. */
+	private int depth = 0;
 
-	/** The stack of the XML documents (used during construction). */
-	private final Stack<Element> elements = new Stack<Element>();
+	/** Whether producing the log has been given up. */
+	private boolean failed = false;
 
 	/**
 	 * Constructs a new logger.
-	 * 
+	 *
 	 * @param phaseName
 	 *            The name of the phase being logged.
 	 * @param xmlFileName
@@ -46,59 +65,52 @@ public class Logger implements AutoCloseable {
 
 		// Prepare a new log document.
 		try {
-			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-		} catch (ParserConfigurationException ex) {
-			throw new Report.InternalError();
+			FileChannel channel = FileChannel.open(Paths.get(xmlFileName), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+
+			// Add XSL declaration.
+			writer.writeProcessingInstruction("xml-stylesheet",
+					"type=\"text/xsl\" href=\"" + this.xslFileName + "\"");
+		} catch (IOException | XMLStreamException | InvalidPathException ex) {
+			fail();
 		}
 
 		// Create the root element representing the entire phase.
-		Element phase = doc.createElement(phaseName);
-		doc.appendChild(phase);
-		elements.push(phase);
-
-		// Add XSL declaration.
-		ProcessingInstruction xsl = doc.createProcessingInstruction("xml-stylesheet",
-				"type=\"text/xsl\" href=\"" + this.xslFileName + "\"");
-		doc.insertBefore(xsl, phase);
+		begElement(phaseName);
 	}
 
 	@Override
 	public void close() {
-		try {
-			elements.pop();
-		} catch (EmptyStackException ex) {
-			throw new InternalError();
-		}
-		if (!elements.empty())
+		endElement();
+		if (depth != 0)
 			throw new InternalError();
 
-		// Dump the log document out.
+		// Dump the rest of the log document out.
+		if (writer == null)
+			return;
 		try {
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(xmlFileName));
-			transformer.transform(source, result);
-		} catch (TransformerException ex) {
-			Report.warning("Cannot open log file '" + xmlFileName + "'.");
+			writer.writeEndDocument();
+			writer.close();
+			out.close();
+		} catch (IOException | XMLStreamException ex) {
+			fail();
 		}
 	}
 
 	/**
 	 * Starts a new XML element (within the active XML element) and makes it
 	 * active. Only one XML element can be active at each moment.
-	 * 
+	 *
 	 * @param tagName
 	 *            The tag name of a new XML element.
 	 */
 	public void begElement(String tagName) {
-		try {
-			Element element = doc.createElement(tagName);
-			elements.peek().appendChild(element);
-			elements.push(element);
-		} catch (EmptyStackException ex) {
-			throw new InternalError();
-		}
+		writePending(false);
+		pendingTagName = tagName;
+		depth++;
 	}
 
 	/**
@@ -106,26 +118,80 @@ public class Logger implements AutoCloseable {
 	 * one XML element can be active at each moment.
 	 */
 	public void endElement() {
-		try {
-			elements.pop();
-		} catch (EmptyStackException ex) {
+		if (depth == 0)
 			throw new InternalError();
+		depth--;
+		if (pendingTagName != null) {
+			writePending(true);
+			return;
+		}
+		if (writer == null)
+			return;
+		try {
+			writer.writeEndElement();
+		} catch (XMLStreamException ex) {
+			fail();
 		}
 	}
 
 	/**
 	 * Adds an attribute to the active XML element.
-	 * 
+	 *
 	 * @param attrName
 	 *            The name of an attribute.
 	 * @param attrValue
 	 *            The value of an attribute.
 	 */
 	public void addAttribute(String attrName, String attrValue) {
-		try {
-			elements.peek().setAttribute(attrName, attrValue);
-		} catch (EmptyStackException ex) {
+		if (depth == 0)
+			throw new InternalError();
+		if (pendingTagName == null)
 			throw new InternalError();
+		pendingAttrs.put(attrName, attrValue);
+	}
+
+	/**
+	 * Writes out the start tag of the active XML element if it has not been
+	 * written out yet.
+	 *
+	 * @param empty
+	 *            Whether the element has no children.
+	 */
+	private void writePending(boolean empty) {
+		if (pendingTagName == null)
+			return;
+		try {
+			if (writer != null) {
+				if (empty)
+					writer.writeEmptyElement(pendingTagName);
+				else
+					writer.writeStartElement(pendingTagName);
+				for (Map.Entry<String, String> attr : pendingAttrs.entrySet())
+					writer.writeAttribute(attr.getKey(), attr.getValue());
+			}
+		} catch (XMLStreamException ex) {
+			fail();
+		} finally {
+			pendingTagName = null;
+			pendingAttrs.clear();
+		}
+	}
+
+	/**
+	 * Gives up producing the log.
+	 */
+	private void fail() {
+		if (failed)
+			return;
+		failed = true;
+		Report.warning("Cannot open log file '" + xmlFileName + "'.");
+		writer = null;
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException ex) {
+			}
+			out = null;
 		}
 	}
 
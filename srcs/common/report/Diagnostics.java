@@ -0,0 +1,130 @@
+package common.report;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * A collector of errors that do not stop the compilation immediately.
+ *
+ * Errors are accumulated until {@link #flush()} is called, typically at the end
+ * of a phase, so that one compilation reports as many errors as possible. They
+ * are printed out sorted by their locations. Once the number of errors exceeds
+ * the limit set by {@code --max-errors}, the compilation is stopped.
+ *
+ * @author haytham
+ *
+ */
+public class Diagnostics {
+
+	/** The default limit on the number of errors reported. */
+	public static final int DEFAULT_MAX_ERRORS = 50;
+
+	/** Errors collected but not yet printed out. */
+	private static final Vector<Report.Error> errors = new Vector<Report.Error>();
+
+	/** Counter of errors collected since the beginning of the compilation. */
+	private static int numOfErrors = 0;
+
+	/** Orders errors by their locations (errors without location first). */
+	private static final Comparator<Report.Error> byLocation = new Comparator<Report.Error>() {
+		@Override
+		public int compare(Report.Error err1, Report.Error err2) {
+			if (err1.location == null || err2.location == null)
+				return (err1.location == null ? 0 : 1) - (err2.location == null ? 0 : 1);
+			return err1.location.compareTo(err2.location);
+		}
+	};
+
+	/**
+	 * Returns the number of errors collected so far.
+	 *
+	 * @return The number of errors collected so far.
+	 */
+	public static synchronized int numOfErrors() {
+		return numOfErrors;
+	}
+
+	/**
+	 * Returns the limit on the number of errors reported.
+	 *
+	 * @return The limit on the number of errors reported.
+	 */
+	public static int maxErrors() {
+		String maxErrors = compiler.Main.cmdLineArgValue("--max-errors");
+		return maxErrors == null ? DEFAULT_MAX_ERRORS : Math.max(1, Integer.parseInt(maxErrors));
+	}
+
+	/**
+	 * Returns a comparator that orders errors by their locations.
+	 *
+	 * @return A comparator that orders errors by their locations.
+	 */
+	public static Comparator<Report.Error> byLocation() {
+		return byLocation;
+	}
+
+	/**
+	 * Collects an error relating to the specified part of the source file. An
+	 * error already collected at the same location with the same message is
+	 * ignored, as some phrases are checked more than once. If the limit on the
+	 * number of errors is exceeded, all collected errors are printed out and
+	 * the compilation is stopped.
+	 *
+	 * @param location
+	 *            Location the error message is related to.
+	 * @param message
+	 *            The error message.
+	 */
+	public static void error(Locatable location, String message) {
+		boolean defer = Report.deferErrors(true);
+		Report.Error error;
+		try {
+			error = new Report.Error(location, message);
+		} finally {
+			Report.deferErrors(defer);
+		}
+		synchronized (Diagnostics.class) {
+			for (Report.Error collected : errors)
+				if (byLocation.compare(collected, error) == 0 && collected.message.equals(error.message))
+					return;
+			numOfErrors++;
+			errors.add(error);
+			if (numOfErrors <= maxErrors())
+				return;
+			errors.remove(error);
+		}
+		print();
+		throw new Report.Error("Too many errors, compilation stopped.");
+	}
+
+	/**
+	 * Prints out all collected errors sorted by their locations.
+	 */
+	public static void print() {
+		Vector<Report.Error> errors;
+		synchronized (Diagnostics.class) {
+			errors = new Vector<Report.Error>(Diagnostics.errors);
+			Diagnostics.errors.clear();
+		}
+		Collections.sort(errors, byLocation);
+		for (Report.Error error : errors)
+			error.report();
+	}
+
+	/**
+	 * Prints out all collected errors and stops the compilation if there were
+	 * any errors.
+	 */
+	public static void flush() {
+		int numOfErrors;
+		synchronized (Diagnostics.class) {
+			numOfErrors = errors.size();
+		}
+		if (numOfErrors == 0)
+			return;
+		print();
+		throw new Report.Error(numOfErrors + (numOfErrors == 1 ? " error" : " errors") + " found, compilation stopped.");
+	}
+
+}
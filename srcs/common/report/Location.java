@@ -8,7 +8,7 @@ import common.logger.*;
  * @author sliva
  *
  */
-public class Location implements Locatable, Loggable {
+public class Location implements Locatable, Loggable, Comparable<Location> {
 
 	/**
 	 * The line number of the first character of the specified part of the
@@ -126,6 +126,17 @@ public class Location implements Locatable, Loggable {
 		logger.endElement();
 	}
 
+	@Override
+	public int compareTo(Location that) {
+		if (begLine != that.begLine)
+			return Integer.compare(begLine, that.begLine);
+		if (begColumn != that.begColumn)
+			return Integer.compare(begColumn, that.begColumn);
+		if (endLine != that.endLine)
+			return Integer.compare(endLine, that.endLine);
+		return Integer.compare(endColumn, that.endColumn);
+	}
+
 	@Override
 	public String toString() {
 		return begLine + "." + begColumn + "--" + endLine + "." + endColumn;
@@ -87,6 +87,41 @@ public class Report {
 		System.err.println(message);
 	}
 
+	/**
+	 * Whether errors constructed by the current thread are printed out
+	 * immediately or only once {@link Error#report()} is called.
+	 */
+	private static final ThreadLocal<Boolean> deferErrors = new ThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return false;
+		}
+	};
+
+	/**
+	 * Specifies whether errors constructed by the current thread should be
+	 * printed out immediately or deferred until they are reported explicitly.
+	 *
+	 * @param defer
+	 *            {@code true} if errors should be deferred, {@code false}
+	 *            otherwise.
+	 * @return The previous setting for the current thread.
+	 */
+	public static boolean deferErrors(boolean defer) {
+		boolean prevDefer = deferErrors.get();
+		deferErrors.set(defer);
+		return prevDefer;
+	}
+
+	/**
+	 * Tells whether errors constructed by the current thread are deferred.
+	 *
+	 * @return {@code true} if errors are deferred, {@code false} otherwise.
+	 */
+	public static boolean errorsDeferred() {
+		return deferErrors.get();
+	}
+
 	/**
 	 * An error.
 	 *
@@ -99,6 +134,12 @@ public class Report {
 	@SuppressWarnings("serial")
 	public static class Error extends java.lang.Error {
 
+		/** The location the error message is related to (or {@code null}). */
+		public final Location location;
+
+		/** The error message. */
+		public final String message;
+
 		/**
 		 * Constructs a new error.
 		 *
@@ -106,8 +147,12 @@ public class Report {
 		 *            The error message.
 		 */
 		public Error(String message) {
-			System.err.print("OUCHH!!! ");
-			System.err.println(message);
+			this.location = null;
+			this.message = message;
+			if (!errorsDeferred()) {
+				Diagnostics.print();
+				report();
+			}
 		}
 
 		/**
@@ -120,8 +165,21 @@ public class Report {
 		 *            The error message.
 		 */
 		public Error(Locatable location, String message) {
+			this.location = location.location();
+			this.message = message;
+			if (!errorsDeferred()) {
+				Diagnostics.print();
+				report();
+			}
+		}
+
+		/**
+		 * Prints out the error message.
+		 */
+		public void report() {
 			System.err.print("OUCHH!!! ");
-			System.err.print("[" + location.location() + "] ");
+			if (location != null)
+				System.err.print("[" + location + "] ");
 			System.err.println(message);
 		}
 
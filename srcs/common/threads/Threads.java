@@ -0,0 +1,40 @@
+package common.threads;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The threads the compiler runs on.
+ *
+ * The number of threads is requested by {@code --threads}. All phases that
+ * work in parallel share a single fork-join pool of that many threads.
+ *
+ * @author haytham
+ *
+ */
+public class Threads {
+
+	/** The pool shared by all phases (created on first use). */
+	private static ForkJoinPool pool = null;
+
+	/**
+	 * Returns the number of threads requested on the command line.
+	 *
+	 * @return The number of threads requested on the command line.
+	 */
+	public static int threads() {
+		String threads = compiler.Main.cmdLineArgValue("--threads");
+		return threads == null ? 1 : Math.max(1, Integer.parseInt(threads));
+	}
+
+	/**
+	 * Returns the pool shared by all phases.
+	 *
+	 * @return The pool shared by all phases.
+	 */
+	public static synchronized ForkJoinPool pool() {
+		if (pool == null)
+			pool = new ForkJoinPool(threads());
+		return pool;
+	}
+
+}
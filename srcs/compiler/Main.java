@@ -1,5 +1,7 @@
 package compiler;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import common.report.*;
 import compiler.phases.lexan.*;
@@ -9,8 +11,12 @@ import compiler.phases.seman.*;
 import compiler.phases.frames.*;
 import compiler.phases.imcgen.*;
 import compiler.phases.lincode.*;
+import compiler.phases.imcopt.*;
 import compiler.phases.asmgen.*;
+import compiler.phases.peephole.*;
 import compiler.phases.liveness.*;
+import compiler.phases.regalloc.*;
+import compiler.phases.emit.*;
 import java.util.HashMap;
 import java.util.Stack;
 /**
@@ -22,7 +28,7 @@ import java.util.Stack;
 public class Main {
 
 	/** All valid phases of the compiler. */
-	private static final String phases = "lexan|synan|abstr|seman|frames|imcgen|lincode|asmgen";
+	private static final String phases = "lexan|synan|abstr|seman|frames|imcgen|lincode|imcopt|asmgen|peephole|liveness|regalloc|emit";
 
 	/** Values of command line arguments. */
 	private static HashMap<String, String> cmdLine = new HashMap<String, String>();
@@ -65,6 +71,12 @@ public class Main {
 							continue;
 						}
 					}
+					if (argv[argc].matches("--dst-file-name=.+")) {
+						if (cmdLine.get("--dst-file-name") == null) {
+							cmdLine.put("--dst-file-name", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
 					if (argv[argc].matches("--xml=.*")) {
 						if (cmdLine.get("--xml") == null) {
 							cmdLine.put("--xml", argv[argc].replaceFirst("^[^=]*=", ""));
@@ -77,6 +89,72 @@ public class Main {
 							continue;
 						}
 					}
+					if (argv[argc].matches("--threads=[0-9]+")) {
+						if (cmdLine.get("--threads") == null) {
+							cmdLine.put("--threads", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--cache-dir=.+")) {
+						if (cmdLine.get("--cache-dir") == null) {
+							cmdLine.put("--cache-dir", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--cache-size=[0-9]+")) {
+						if (cmdLine.get("--cache-size") == null) {
+							cmdLine.put("--cache-size", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--lin-file=.+")) {
+						if (cmdLine.get("--lin-file") == null) {
+							cmdLine.put("--lin-file", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--opt-stats=(on|off)")) {
+						if (cmdLine.get("--opt-stats") == null) {
+							cmdLine.put("--opt-stats", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--opt-level=[0-2]")) {
+						if (cmdLine.get("--opt-level") == null) {
+							cmdLine.put("--opt-level", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--inline-size=[0-9]+")) {
+						if (cmdLine.get("--inline-size") == null) {
+							cmdLine.put("--inline-size", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--peephole-verify=(on|off)")) {
+						if (cmdLine.get("--peephole-verify") == null) {
+							cmdLine.put("--peephole-verify", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--num-regs=[0-9]+")) {
+						if (cmdLine.get("--num-regs") == null) {
+							cmdLine.put("--num-regs", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--regalloc=(color|linear)")) {
+						if (cmdLine.get("--regalloc") == null) {
+							cmdLine.put("--regalloc", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
+					if (argv[argc].matches("--max-errors=[0-9]+")) {
+						if (cmdLine.get("--max-errors") == null) {
+							cmdLine.put("--max-errors", argv[argc].replaceFirst("^[^=]*=", ""));
+							continue;
+						}
+					}
 					Report.warning("Command line argument '" + argv[argc] + "' ignored.");
 				} else {
 					// Source file name.
@@ -102,60 +180,95 @@ public class Main {
 
 				int begWarnings = Report.numOfWarnings();
 
-				// Lexical analysis.
-				if (cmdLine.get("--target-phase").equals("lexan")) {
-					try (LexAn lexan = new LexAn()) {
-						while (lexan.lexer().token != Term.EOF) {
+				// Linear intermediate code from a binary file or from the cache (if any).
+				LinkedList<Fragment> cachedFragments;
+				if (cmdLine.get("--src-file-name").endsWith(".lin")) {
+					if (cmdLine.get("--target-phase").matches("lexan|synan|abstr|seman|frames|imcgen"))
+						throw new Report.Error("Linear code cannot be compiled up to phase " + cmdLine.get("--target-phase") + ".");
+					try {
+						cachedFragments = new LinCodeReader().read(new File(cmdLine.get("--src-file-name")));
+					} catch (IOException e) {
+						throw new Report.Error("Cannot read linear code from '" + cmdLine.get("--src-file-name") + "': " + e.getMessage());
+					}
+				} else
+					cachedFragments = LinCodeCache.lookup();
+				if (cachedFragments != null) {
+					try (LinCode linCode = new LinCode()) {
+						for (Fragment fragment : cachedFragments)
+							LinCode.add(fragment);
+					}
+					writeLinCode();
+					if (cmdLine.get("--target-phase").equals("lincode"))
+						break;
+				} else {
+					// Lexical analysis.
+					if (cmdLine.get("--target-phase").equals("lexan")) {
+						try (LexAn lexan = new LexAn()) {
+							while (lexan.lexer().token != Term.EOF) {
+							}
 						}
+						Diagnostics.flush();
+						break;
 					}
-					break;
-				}
 
-				// Syntax analysis.
-				try (SynAn synAn = new SynAn()) {
-					synAn.parser();
-				}
-				if (cmdLine.get("--target-phase").equals("synan"))
-					break;
+					// Syntax analysis.
+					try (SynAn synAn = new SynAn()) {
+						synAn.parser();
+					}
+					Diagnostics.flush();
+					if (cmdLine.get("--target-phase").equals("synan"))
+						break;
 
-				// Abstract syntax.
-				try (Abstr abstr = new Abstr()) {
-					abstr.fromDerTree(SynAn.derTree());
-				}
-				if (cmdLine.get("--target-phase").equals("abstr"))
-					break;
+					// Abstract syntax.
+					try (Abstr abstr = new Abstr()) {
+						abstr.fromDerTree(SynAn.derTree());
+					}
+					if (cmdLine.get("--target-phase").equals("abstr"))
+						break;
 
-				// Semantic analysis.
-				try (SemAn semAn = new SemAn()) {
-					Abstr.absTree().accept(new NameChecker(new SymbTable()), null);
-					Abstr.absTree().accept(new AddrChecker(), null);
-					Abstr.absTree().accept(new TypeChecker(), null);
-				}
-				if (cmdLine.get("--target-phase").equals("seman"))
-					break;
+					// Semantic analysis.
+					try (SemAn semAn = new SemAn()) {
+						Abstr.absTree().accept(new NameChecker(new SymbTable()), null);
+						Abstr.absTree().accept(new AddrChecker(), null);
+						Abstr.absTree().accept(new TypeChecker(), null);
+					}
+					Diagnostics.flush();
+					if (cmdLine.get("--target-phase").equals("seman"))
+						break;
 
-				// Frames.
-				try (Frames frames = new Frames()) {
-					Abstr.absTree().accept(new FrameEvaluator(), null);
-				}
-				if (cmdLine.get("--target-phase").equals("frames"))
-					break;
+					// Frames.
+					try (Frames frames = new Frames()) {
+						Abstr.absTree().accept(new FrameEvaluator(), null);
+					}
+					if (cmdLine.get("--target-phase").equals("frames"))
+						break;
 
-				// Intermediate code generation.
-				try (ImcGen imCode = new ImcGen()) {
-					Abstr.absTree().accept(new ImcExprGenerator(), new Stack<Frame>());
-				}
-				if (cmdLine.get("--target-phase").equals("imcgen"))
-					break;
+					// Intermediate code generation.
+					try (ImcGen imCode = new ImcGen()) {
+						Abstr.absTree().accept(new ImcExprGenerator(), new Stack<Frame>());
+					}
+					if (cmdLine.get("--target-phase").equals("imcgen"))
+						break;
 				
-				// Linear intermediate code.
-				try (LinCode linCode = new LinCode()) {
-					Abstr.absTree().accept(new Fragmenter(), null);
+					// Linear intermediate code.
+					try (LinCode linCode = new LinCode()) {
+						Abstr.absTree().accept(new Fragmenter(), null);
+						linCode.schedule();
+					}
+					LinCodeCache.store(LinCode.fragments());
+					writeLinCode();
+					//new Interpreter().execute();
+					if (cmdLine.get("--target-phase").equals("lincode"))
+						break;
 				}
-				//new Interpreter().execute();
-				if (cmdLine.get("--target-phase").equals("lincode"))
+
+				// Intermediate code optimization.
+				try (ImcOpt imcOpt = new ImcOpt()) {
+					imcOpt.optimize();
+				}
+				if (cmdLine.get("--target-phase").equals("imcopt"))
 					break;
-				
+
 				// Assembly code-gen.
 				try (AsmGen asmGen = new AsmGen()) {
                     asmGen.generate();
@@ -163,6 +276,13 @@ public class Main {
 				if (cmdLine.get("--target-phase").equals("asmgen"))
 					break;
 
+				// Peephole optimization.
+				try (Peephole peephole = new Peephole()) {
+					peephole.optimize();
+				}
+				if (cmdLine.get("--target-phase").equals("peephole"))
+					break;
+
 				int endWarnings = Report.numOfWarnings();
 				if (begWarnings != endWarnings)
 					throw new Report.Error("Compilation stopped.");
@@ -176,6 +296,21 @@ public class Main {
 
 					break;
 
+				// Register allocation.
+				try (RegAlloc regAlloc = new RegAlloc()) {
+					RegAlloc.reset();
+					regAlloc.allocate();
+				}
+				if (cmdLine.get("--target-phase").equals("regalloc"))
+					break;
+
+				// Assembly code emission.
+				try (Emit emit = new Emit()) {
+					emit.emit();
+				}
+				if (cmdLine.get("--target-phase").equals("emit"))
+					break;
+
 			} while (false);
 
 			Report.info("Done.");
@@ -183,4 +318,18 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Writes the linear intermediate code to the file given by
+	 * {@code --lin-file} (if any).
+	 */
+	private static void writeLinCode() {
+		if (cmdLine.get("--lin-file") == null)
+			return;
+		try {
+			new LinCodeWriter().write(LinCode.fragments(), new File(cmdLine.get("--lin-file")));
+		} catch (IOException e) {
+			throw new Report.Error("Cannot write linear code to '" + cmdLine.get("--lin-file") + "'.");
+		}
+	}
+
 }
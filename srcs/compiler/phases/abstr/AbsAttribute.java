@@ -2,10 +2,13 @@ package compiler.phases.abstr;
 
 import common.report.Report;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An attribute of the abstract syntax tree node.
+ * <p>
+ * Attribute values can be stored and retrieved by several threads at once (see
+ * {@link compiler.phases.seman.FunDefChecker}).
  *
  * @param <Node>  A node the attribute is associated with.
  * @param <Value> The value of the attribute.
@@ -16,18 +19,18 @@ public class AbsAttribute<Node, Value> {
     /**
      * Mapping of nodes to attribute values.
      */
-    private HashMap<Node, Value> mapping;
+    private final ConcurrentHashMap<Node, Value> mapping;
 
     /**
      * Whether this attribute's values can no longer be modified or not.
      */
-    private boolean lock;
+    private volatile boolean lock;
 
     /**
      * Constructs a new attribute.
      */
     public AbsAttribute() {
-        mapping = new HashMap<Node, Value>();
+        mapping = new ConcurrentHashMap<Node, Value>();
         lock = false;
     }
 
@@ -42,7 +45,10 @@ public class AbsAttribute<Node, Value> {
     public Value put(Node node, Value value) {
         if (lock)
             throw new Report.InternalError();
-        mapping.put(node, value);
+        if (value == null)
+            mapping.remove(node);
+        else
+            mapping.put(node, value);
         return value;
     }
 
@@ -54,6 +60,8 @@ public class AbsAttribute<Node, Value> {
      * @return The attribute value.
      */
     public Value get(Node node) {
+        if (node == null)
+            return null;
         return mapping.get(node);
     }
 
@@ -1,12 +1,9 @@
 package compiler.phases.asmgen;
 
 import compiler.phases.Phase;
-import compiler.phases.imcgen.code.ImcStmt;
 import compiler.phases.lincode.CodeFragment;
-import compiler.phases.lincode.Fragment;
-import compiler.phases.lincode.LinCode;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 
 /**
@@ -15,50 +12,25 @@ import java.util.LinkedList;
 public class AsmGen extends Phase {
 
     /**
-     * The hashmap of instruction lists (divided by fragments).
+     * The hashmap of instruction lists (divided by fragments, in the order of
+     * fragments).
      */
-    public static final HashMap<CodeFragment, LinkedList<AsmInstr>> instrs = new HashMap<>();
-
-    /**
-     * The variable that indicates which fragment is currently being processed.
-     */
-    private static CodeFragment curFrag;
+    public static final LinkedHashMap<CodeFragment, LinkedList<AsmInstr>> instrs = new LinkedHashMap<>();
 
     public AsmGen() {
         super("asmgen");
     }
 
-    /**
-     * Adds a new instruction to the list of instructions.
-     *
-     * @param instr The new instruction.
-     */
-    public static void add(AsmInstr instr) {
-        instrs.get(curFrag).add(instr);
-    }
-
-
     /**
      * Generate the assembly instructions.
      */
     public void generate() {
-
-        for (Fragment fragment : LinCode.fragments()) {
-            if (fragment instanceof CodeFragment) {
-                CodeFragment codeFragment = (CodeFragment) fragment;
-                AsmInstrGenerator asmInstrGenerator = new AsmInstrGenerator();
-                AsmGen.curFrag = codeFragment;
-                instrs.put(codeFragment, new LinkedList<>());
-
-                for (ImcStmt stmt : codeFragment.stmts()) {
-                    stmt.accept(asmInstrGenerator, null);
-                }
-                // Print generated machine instructions for each fragment.
-                //System.out.println(instrs);
-            }
-
-        }
-
+        instrs.clear();
+        instrs.putAll(BackEnd.map(fragment -> true, fragment -> {
+            LinkedList<AsmInstr> instrList = new LinkedList<>();
+            new AsmInstrGenerator(instrList).generate(fragment);
+            return instrList;
+        }));
     }
 
     /**
@@ -4,7 +4,6 @@ import compiler.phases.frames.Label;
 import compiler.phases.frames.Temp;
 
 import java.util.HashMap;
-import java.util.Vector;
 
 /**
  * An assembly instruction (operation or label).
@@ -14,32 +13,49 @@ import java.util.Vector;
 public abstract class AsmInstr {
 
     /**
-     * list of temporaries used by this instruction.
+     * Returns the number of temporaries used by this instruction.
      *
-     * @return The list of temporaries used by this instruction.
+     * @return The number of temporaries used by this instruction.
      */
-    public abstract Vector<Temp> uses();
+    public abstract int numUses();
 
     /**
-     * Returns the list of temporaries defined by this instruction.
+     * Returns a temporary used by this instruction.
      *
-     * @return The list of temporaries defined by this instruction.
+     * @param index The position of the temporary.
+     * @return The temporary.
      */
-    public abstract Vector<Temp> defs();
+    public abstract Temp use(int index);
 
     /**
-     * Returns the list of labels this instruction can jump to.
+     * Returns the number of temporaries defined by this instruction.
      *
-     * @return The list of labels this instruction can jump to.
+     * @return The number of temporaries defined by this instruction.
      */
-    public abstract Vector<Label> jumps();
+    public abstract int numDefs();
 
     /**
-     * Returns the string representation of this instruction.
+     * Returns a temporary defined by this instruction.
      *
-     * @return the string representation of this instruction.
+     * @param index The position of the temporary.
+     * @return The temporary.
      */
-    public abstract String instr();
+    public abstract Temp def(int index);
+
+    /**
+     * Returns the number of labels this instruction can jump to.
+     *
+     * @return The number of labels this instruction can jump to.
+     */
+    public abstract int numJumps();
+
+    /**
+     * Returns a label this instruction can jump to.
+     *
+     * @param index The position of the label.
+     * @return The label.
+     */
+    public abstract Label jump(int index);
 
     /**
      * Returns a string representing this instruction with temporaries.
@@ -1,480 +1,440 @@
 package compiler.phases.asmgen;
 
+import common.report.Report;
+import compiler.phases.asmgen.AsmTile.Addr;
+import compiler.phases.asmgen.AsmTile.Nonterm;
 import compiler.phases.frames.Label;
 import compiler.phases.frames.Temp;
 import compiler.phases.imcgen.ImcGen;
-import compiler.phases.imcgen.ImcVisitor;
 import compiler.phases.imcgen.code.*;
-//import compiler.phases.regalloc.RegAlloc;
-
+import compiler.phases.imcopt.ImcRewriter;
+import compiler.phases.imcopt.TempSubstitution;
+import compiler.phases.lincode.CodeFragment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.Vector;
 
 /**
+ * Instruction selection by tiling intermediate code trees with the tiles of
+ * {@link AsmTiles}.
+ * <p>
+ * Each tree is first labeled bottom-up: for every node and every nonterminal
+ * the cheapest tile deriving the nonterminal at the node is recorded together
+ * with the cost of covering the subtree with it (chain rules included); only
+ * the tiles whose patterns have the same root as the node are tried and chain
+ * rules are applied through their precomputed closure. The tree is then
+ * reduced top-down from the statement nonterminal, each tile emitting its
+ * instructions once its nonterminal leaves have been reduced.
+ * <p>
+ * As linearized code computes every subexpression into a temporary variable
+ * of its own, a temporary variable used only once, right by the next
+ * statement, is forwarded into that statement first, so that tiles covering
+ * more than a single node, e.g., a comparison and a branch, get a chance to
+ * match.
+ * <p>
+ * Constants and addresses of labels loaded into temporary variables are
+ * reused until the end of the basic block, i.e., until the next label: the
+ * temporary variables are never redefined and every path reaching a use
+ * within the block passes their definitions.
+ *
  * @author haytham
  */
+public class AsmInstrGenerator {
 
-public class AsmInstrGenerator implements ImcVisitor<Object, Object> {
-
-
-
-    // BNZ
-    public Object visit(ImcCJUMP node, Object visArg) {
-        Vector<Temp> uses = new Vector<>();
-        Vector<Label> jumps = new Vector<>();
-
-        uses.add(((ImcTEMP) node.cond).temp);
-        jumps.add(node.posLabel);
-        jumps.add(node.negLabel);
+    private static final int INFINITY = Integer.MAX_VALUE;
 
-        AsmOPER cjump = new AsmOPER("BNZ `s0," + node.posLabel.name, uses, null, jumps);
-        AsmGen.add(cjump);
-        return cjump;
-    }
+    private static final Nonterm[] NONTERMS = Nonterm.values();
 
-    public Object visit(ImcESTMT node, Object visArg) {
-        return node.expr.accept(this, visArg);
-    }
+    /**
+     * The instructions generated so far.
+     */
+    private final LinkedList<AsmInstr> instrs;
 
-    // JMP
-    public Object visit(ImcJUMP node, Object visArg) {
-        Vector<Label> jumps = new Vector<>();
+    /**
+     * The labels of the nodes: the cost and the tile for each nonterminal.
+     */
+    private final IdentityHashMap<ImcInstr, State> states = new IdentityHashMap<ImcInstr, State>();
 
-        jumps.add(node.label);
+    /**
+     * The temporary variables holding constants and addresses of labels
+     * loaded so far within the current basic block.
+     */
+    private final HashMap<Long, Temp> constants = new HashMap<Long, Temp>();
+    private final HashMap<Label, Temp> addresses = new HashMap<Label, Temp>();
 
-        AsmOPER jump = new AsmOPER("JMP " + node.label.name, null, null, jumps);
-        AsmGen.add(jump);
-        return jump;
+    public AsmInstrGenerator(LinkedList<AsmInstr> instrs) {
+        this.instrs = instrs;
     }
 
-    // LBL
-    public Object visit(ImcLABEL node, Object visArg) {
-        AsmLABEL label = new AsmLABEL(node.label);
-        AsmGen.add(label);
-        return label;
-    }
-
-    // Can-tree
-    public Object visit(ImcMOVE node, Object visArg) {
-        Vector<Temp> uses = new Vector<>();
-        Vector<Temp> defs = new Vector<>();
-
-        ImcMEM mem;
-        ImcBINOP binop;
-        ImcCONST constant;
-        Temp temp, srcReg, dstReg;
-        AsmOPER store, load;
-        AsmMOVE move;
-
-        MoveMatch match = matchMove(node);
-        switch (match) {
-            case MemLeft:
-                mem = (ImcMEM) node.dst;
-                dstReg = (Temp) mem.addr.accept(this, visArg);
-                srcReg = (Temp) node.src.accept(this, visArg);
-                uses.add(srcReg);
-                uses.add(dstReg);
-                store = new AsmOPER("STO `s0,`s1,0", uses, null, null);
-                AsmGen.add(store);
-                return store;
-
-            case MemRight:
-                mem = (ImcMEM) node.src;
-                srcReg = (Temp) mem.addr.accept(this, visArg);
-                dstReg = (Temp) node.dst.accept(this, visArg);
-                uses.add(srcReg);
-                defs.add(dstReg);
-                load = new AsmOPER("LDO `d0,`s0,0", uses, defs, null);
-                AsmGen.add(load);
-                return load;
-
-            // STO-offset
-            case MemLeftBinopTempConst:
-                srcReg = (Temp) node.src.accept(this, visArg);
-                mem = (ImcMEM) node.dst;
-                binop = (ImcBINOP) mem.addr;
-                constant = (ImcCONST) binop.sndExpr;
-                temp = ((ImcTEMP) binop.fstExpr).temp;
-                uses.add(srcReg);
-                uses.add(temp);
-                store = new AsmOPER("STO `s0,`s1," + constant.value, uses, null, null);
-                AsmGen.add(store);
-                return store;
-
-            // LDO-offset
-            case MemRightBinopTempConst:
-                dstReg = (Temp) node.dst.accept(this, visArg);
-                mem = (ImcMEM) node.src;
-                binop = (ImcBINOP) mem.addr;
-                constant = (ImcCONST) binop.sndExpr;
-                temp = ((ImcTEMP) binop.fstExpr).temp;
-                uses.add(temp);
-                defs.add(dstReg);
-                load = new AsmOPER("LDO `d0,`s0," + constant.value, uses, defs, null);
-                AsmGen.add(load);
-                return load;
-
-            // reg-SET
-            case TempTemp:
-            case Call:
-            case Other:
-                uses.add((Temp) node.src.accept(this, visArg));
-                defs.add((Temp) node.dst.accept(this, visArg));
-                move = new AsmMOVE("SET `d0,`s0", uses, defs, null);
-                AsmGen.add(move);
-                return move;
+    /**
+     * Generates instructions of a code fragment.
+     *
+     * @param fragment The code fragment.
+     */
+    public void generate(CodeFragment fragment) {
+        for (ImcStmt stmt : forward(fragment)) {
+            label(stmt);
+            if (state(stmt).cost[Nonterm.STMT.ordinal()] == INFINITY)
+                throw new Report.InternalError();
+            reduce(stmt, Nonterm.STMT);
+            states.clear();
         }
-        return null;
-
     }
 
+    /**
+     * Adds a new instruction to the list of instructions.
+     *
+     * @param instr The new instruction.
+     */
+    private void add(AsmInstr instr) {
+        instrs.add(instr);
+    }
 
-    public Object visit(ImcBINOP node, Object visArg) {
-        Vector<Temp> uses = new Vector<>();
-        Vector<Temp> defs = new Vector<>();
-
-        Temp s1 = (Temp) node.fstExpr.accept(this, visArg);
-        Temp d = new Temp();
-        uses.add(s1);
-        defs.add(d);
-
-        String instrFormat = " `d0,`s0,`s1";
-        BinopMatch match = matchBinop(node);
-        switch (match) {
-
-            case TempConst:
-            case ConstConst:
-                ImcCONST constant = (ImcCONST) node.sndExpr;
-                instrFormat = " `d0,`s0," + constant.value;
-                break;
-            case ConstTemp:
-            case TempTemp:
-            case Other:
-                Temp s2 = (Temp) node.sndExpr.accept(this, visArg);
-                uses.add(s2);
-                break;
+    // FORWARDING
+
+    /**
+     * Forwards temporary variables defined by a move and used only once, by
+     * the next statement, into that statement.
+     */
+    private static Vector<ImcStmt> forward(CodeFragment fragment) {
+        HashMap<Temp, Integer> uses = new HashMap<Temp, Integer>();
+        ImcRewriter counter = new ImcRewriter() {
+            @Override
+            public ImcInstr visit(ImcTEMP temp, Object visArg) {
+                uses.merge(temp.temp, 1, Integer::sum);
+                return temp;
+            }
+        };
+        for (ImcStmt stmt : fragment.stmts()) {
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+                counter.rewrite(((ImcMOVE) stmt).src);
+            else
+                counter.rewrite(stmt);
         }
 
-        String instr = "";
-        switch (node.oper) {
-            case IOR:
-                instr = "OR";
-                break;
-            case XOR:
-                instr = "XOR";
-                break;
-            case AND:
-                instr = "AND";
-                break;
-            case EQU:
-            case NEQ:
-            case LTH:
-            case GTH:
-            case LEQ:
-            case GEQ:
-                AsmGen.add(new AsmOPER("CMP" + instrFormat, uses, defs, null));
-                switch (node.oper) {
-                    case EQU:
-                        instr = "ZSZ";
-                        break;
-                    case NEQ:
-                        instr = "ZSNZ";
-                        break;
-                    case LTH:
-                        instr = "ZSN";
-                        break;
-                    case GTH:
-                        instr = "ZSP";
-                        break;
-                    case LEQ:
-                        instr = "ZSNP";
-                        break;
-                    case GEQ:
-                        instr = "ZSNN";
-                        break;
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        ImcStmt pending = null;
+        for (ImcStmt stmt : fragment.stmts()) {
+            if (pending != null) {
+                ImcMOVE move = (ImcMOVE) pending;
+                Temp temp = ((ImcTEMP) move.dst).temp;
+                HashMap<Temp, ImcExpr> substitutes = new HashMap<Temp, ImcExpr>();
+                substitutes.put(temp, move.src);
+                TempSubstitution substitution = new TempSubstitution(substitutes);
+                ImcStmt newStmt = stmt instanceof ImcLABEL ? stmt : substitution.substitute(stmt);
+                if (substitution.numOfRewrites() == 1 && (!contains(stmt, true) || !contains(move.src, false))) {
+                    stmt = newStmt;
+                } else {
+                    stmts.add(pending);
+                }
+                pending = null;
+            }
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP) {
+                Temp temp = ((ImcTEMP) ((ImcMOVE) stmt).dst).temp;
+                if (uses.getOrDefault(temp, 0) == 1 && temp != fragment.RV && temp != ImcGen.FP
+                        && temp != ImcGen.SP && !contains(((ImcMOVE) stmt).src, true)) {
+                    pending = stmt;
+                    continue;
                 }
-                uses = new Vector<>();
-                uses.add(d);
-                AsmGen.add(new AsmOPER(instr + " `d0,`s0,1", uses, defs, null));
-                return d;
-            case ADD:
-                instr = "ADD";
-                break;
-            case SUB:
-                instr = "SUB";
-                break;
-            case MUL:
-                instr = "MUL";
-                break;
-            case DIV:
-                instr = "DIV";
-                defs.add(new Temp());
-                break;
-            case MOD:
-                // NOT USING THE FIRST REG
-                Temp d2 = new Temp();
-                defs.add(d2);
-                AsmGen.add(new AsmOPER("DIV" + instrFormat, uses, defs, null));
-
-                Vector<Temp> uses2 = new Vector<>();
-                Vector<Temp> defs2 = new Vector<>();
-                uses2.add(d2);
-                defs2.add(d);
-                AsmGen.add(new AsmOPER("GET `d0,rR", uses2, defs2, null));
-                return d;
+            }
+            stmts.add(stmt);
         }
-
-        AsmGen.add(new AsmOPER(instr + instrFormat, uses, defs, null));
-
-        return d;
+        if (pending != null)
+            stmts.add(pending);
+        return stmts;
     }
 
-    public Object visit(ImcCALL node, Object visArg) {
-        Vector<Temp> defs = new Vector<>();
-        Vector<Label> jumps = new Vector<>();
-
-        int offset = 0;
-        for (ImcExpr expr : node.args()) {
-            Object arg = expr.accept(this, visArg);
-            if (arg instanceof Temp) {
-                Temp regArg = (Temp) arg;
-                Vector<Temp> storeUses = new Vector<>();
-                storeUses.add(regArg);
-                storeUses.add(ImcGen.SP);
-                AsmGen.add(new AsmOPER("STO `s0,`s1," + offset, storeUses, null, null));
-                offset += 8;
+    /**
+     * Checks whether a tree contains a call (or a statement expression) or,
+     * if calls are not of interest, a memory access.
+     */
+    private static boolean contains(ImcInstr instr, boolean calls) {
+        boolean[] found = {false};
+        ImcRewriter finder = new ImcRewriter() {
+            @Override
+            public ImcInstr visit(ImcCALL call, Object visArg) {
+                found[0] |= calls;
+                return super.visit(call, visArg);
             }
 
-        }
+            @Override
+            public ImcInstr visit(ImcSEXPR sExpr, Object visArg) {
+                found[0] |= calls;
+                return super.visit(sExpr, visArg);
+            }
 
-        defs.add(new Temp());
-        jumps.add(node.label);
-        AsmGen.add(new AsmOPER("PUSHJ $200," + node.label.name, null, defs, jumps));
-        Temp rv = new Temp();
-        Vector<Temp> uses2 = new Vector<>();
-        Vector<Temp> defs2 = new Vector<>();
-        uses2.add(ImcGen.SP);
-        defs2.add(rv);
-        AsmGen.add(new AsmOPER("LDO `d0,`s0,0", uses2, defs2, null));
-
-        return rv;
+            @Override
+            public ImcInstr visit(ImcMEM mem, Object visArg) {
+                found[0] |= !calls;
+                return super.visit(mem, visArg);
+            }
+        };
+        instr.accept(finder, null);
+        return found[0];
     }
 
+    // LABELING
 
-    public Object visit(ImcCONST node, Object visArg) {
-        long value = node.value;
-        Vector<Temp> defs = new Vector<>();
-        Temp t = new Temp();
-        defs.add(t);
+    /**
+     * The label of a node.
+     */
+    private static class State {
 
-        long val1 = value & 0x0000000000000FFFF;
-        long val2 = (value >> 16) & 0x0000000000000FFFF;
-        long val3 = (value >> 32) & 0x0000000000000FFFF;
-        long val4 = (value >> 48) & 0x0000000000000FFFF;
+        final int[] cost = new int[Nonterm.values().length];
 
-        AsmGen.add(new AsmOPER("SETL `d0," + Long.toString(val1), null, defs, null));
+        final AsmTile[] tile = new AsmTile[Nonterm.values().length];
 
-        if (value > 32767 || value < 0) {
-            Vector<Temp> uses = new Vector<>();
-            uses.add(t);
-            AsmGen.add(new AsmOPER("INCML `d0," + Long.toString(val2), uses, defs, null));
-            AsmGen.add(new AsmOPER("INCMH `d0," + Long.toString(val3), uses, defs, null));
-            AsmGen.add(new AsmOPER("INCH `d0," + Long.toString(val4), uses, defs, null));
+        State() {
+            Arrays.fill(cost, INFINITY);
         }
 
-        return t;
     }
 
-    // Returns LDO-reg
-    public Object visit(ImcMEM node, Object visArg) {
-        Vector<Temp> uses = new Vector<>();
-        Vector<Temp> defs = new Vector<>();
-
-        Temp dstReg = new Temp();
-        Temp srcReg;
-        defs.add(dstReg);
-
-        MemMatch match = matchMem(node);
-        switch (match) {
-            case AddTempConst:
-                ImcBINOP binop = (ImcBINOP) node.addr;
-                srcReg = ((ImcTEMP) binop.fstExpr).temp;
-                ImcCONST constant = ((ImcCONST) binop.sndExpr);
-                uses.add(srcReg);
-                AsmGen.add(new AsmOPER("LDO `d0,`s0," + constant.value, uses, defs, null));
-                break;
-
-            case AddConstTemp:
-            case AddTempTemp:
-            case AddConstConst:
-            case Other:
-                srcReg = (Temp) node.addr.accept(this, visArg);
-                uses.add(srcReg);
-                AsmGen.add(new AsmOPER("LDO `d0,`s0,0", uses, defs, null));
-                break;
-        }
-
-        return dstReg;
+    private State state(ImcInstr node) {
+        return states.get(node);
     }
 
-    // Returns LDA-reg lable
-    public Object visit(ImcNAME node, Object visArg) {
-        Vector<Temp> defs = new Vector<>();
-
-        Temp t = new Temp();
-        defs.add(t);
-
-        AsmOPER lda = new AsmOPER("LDA `d0," + node.label.name, null, defs, null);
-        AsmGen.add(lda);
-        return t;
-    }
+    private final AsmTile.Leaves leaves = new AsmTile.Leaves();
+
+    /**
+     * Labels a tree bottom-up.
+     */
+    private void label(ImcInstr node) {
+        if (states.containsKey(node))
+            return;
+        if (node instanceof ImcBINOP) {
+            label(((ImcBINOP) node).fstExpr);
+            label(((ImcBINOP) node).sndExpr);
+        } else if (node instanceof ImcUNOP) {
+            label(((ImcUNOP) node).subExpr);
+        } else if (node instanceof ImcMEM) {
+            label(((ImcMEM) node).addr);
+        } else if (node instanceof ImcCALL) {
+            for (ImcExpr arg : ((ImcCALL) node).args())
+                label(arg);
+        } else if (node instanceof ImcMOVE) {
+            label(((ImcMOVE) node).dst);
+            label(((ImcMOVE) node).src);
+        } else if (node instanceof ImcCJUMP) {
+            label(((ImcCJUMP) node).cond);
+        } else if (node instanceof ImcESTMT) {
+            label(((ImcESTMT) node).expr);
+        }
 
-    public Object visit(ImcTEMP node, Object visArg) {
-        return node.temp;
+        State state = new State();
+        states.put(node, state);
+        for (AsmTile tile : AsmTiles.tiles(node)) {
+            int cost = cost(tile, node);
+            if (cost < state.cost[tile.lhs.ordinal()]) {
+                state.cost[tile.lhs.ordinal()] = cost;
+                state.tile[tile.lhs.ordinal()] = tile;
+            }
+        }
+        int[] costs = state.cost.clone();
+        for (Nonterm rhs : NONTERMS) {
+            if (costs[rhs.ordinal()] == INFINITY)
+                continue;
+            for (AsmTiles.Chain chain : AsmTiles.chains(rhs)) {
+                int cost = (int) Math.min((long) costs[rhs.ordinal()] + chain.cost, INFINITY);
+                if (cost < state.cost[chain.lhs.ordinal()]) {
+                    state.cost[chain.lhs.ordinal()] = cost;
+                    state.tile[chain.lhs.ordinal()] = chain.tile;
+                }
+            }
+        }
     }
 
-    public Object visit(ImcUNOP node, Object visArg) {
-        Vector<Temp> uses = new Vector<>();
-        Vector<Temp> defs = new Vector<>();
-
-        Temp s = (Temp) node.subExpr.accept(this, visArg);
-        Temp d = new Temp();
-
-        uses.add(s);
-        defs.add(d);
-
-        switch (node.oper) {
-            case NOT:
-                AsmGen.add(new AsmOPER("NEG `d0,1,`s0", uses, defs, null));
-                break;
-            case NEG:
-                AsmGen.add(new AsmOPER("NEG `d0,`s0", uses, defs, null));
-                break;
+    /**
+     * Computes the cost of covering a tree with a tile at its root.
+     */
+    private int cost(AsmTile tile, ImcInstr node) {
+        leaves.clear();
+        if (!tile.pattern.match(node, leaves))
+            return INFINITY;
+        long cost = tile.cost;
+        for (int i = 0; i < leaves.size; i++) {
+            if (leaves.nonterms[i] != null)
+                cost += state(leaves.nodes[i]).cost[leaves.nonterms[i].ordinal()];
         }
-
-        return d;
+        return (int) Math.min(cost, INFINITY);
     }
 
-
-    private enum MoveMatch {
-        TempTemp,
-        MemLeft,
-        MemRight,
-        MemLeftBinopTempConst,
-        MemRightBinopTempConst,
-        Call,
-        Other
+    // REDUCTION
+
+    /**
+     * Reduces a labeled tree to a nonterminal and emits its instructions.
+     */
+    private Object reduce(ImcInstr node, Nonterm nonterm) {
+        AsmTile tile = state(node).tile[nonterm.ordinal()];
+        AsmTile.Leaves leaves = new AsmTile.Leaves();
+        tile.pattern.match(node, leaves);
+        Object[] ops = new Object[leaves.size];
+        for (int i = 0; i < ops.length; i++)
+            ops[i] = leaves.nonterms[i] == null ? leaves.nodes[i] : reduce(leaves.nodes[i], leaves.nonterms[i]);
+        return tile.emitter.emit(this, node, ops);
     }
 
+    // EMITTING
+
+    /**
+     * Emits an instruction defining a new temporary variable.
+     *
+     * @param oper     The opcode.
+     * @param operands The operands following the temporary variable defined:
+     *                 temporary variables, immediate values or labels.
+     * @return The temporary variable defined.
+     */
+    Temp op(AsmOPER.Oper oper, Object... operands) {
+        Temp def = new Temp();
+        add(AsmOPER.build(oper, def, null, operands));
+        return def;
+    }
 
-    private MoveMatch matchMove(ImcMOVE node) {
-
+    /**
+     * Returns the operands of an instruction accessing memory at an address.
+     */
+    Object[] addr(Addr addr) {
+        return new Object[]{addr.base, addr.index != null ? addr.index : (Object) addr.offset};
+    }
 
-        if (node.dst instanceof ImcTEMP && node.src instanceof ImcTEMP) {
-            return MoveMatch.TempTemp;
+    /**
+     * Loads a constant into a temporary variable unless it has already been
+     * loaded within the current basic block.
+     */
+    Temp constant(long value) {
+        Temp temp = constants.get(value);
+        if (temp == null) {
+            temp = loadConstant(value);
+            constants.put(value, temp);
         }
+        return temp;
+    }
 
+    private Temp loadConstant(long value) {
+        if (value >= 0 && value <= 0xFFFF)
+            return op(AsmOPER.Oper.SETL, value);
+        if (value < 0 && value >= -255)
+            return op(AsmOPER.Oper.NEG, 0L, -value);
+        if (value < 0 && value >= -0xFFFF)
+            return op(AsmOPER.Oper.NEG, 0L, constant(-value));
+        Temp def = op(AsmOPER.Oper.SETL, value & 0xFFFF);
+        AsmOPER.Oper[] incs = {AsmOPER.Oper.INCML, AsmOPER.Oper.INCMH, AsmOPER.Oper.INCH};
+        for (int i = 0; i < incs.length; i++) {
+            long chunk = (value >> (16 * (i + 1))) & 0xFFFF;
+            if (chunk != 0)
+                add(new AsmOPER(incs[i], new AsmOperand[]{AsmOperand.def(0), AsmOperand.imm(chunk)},
+                        new Temp[]{def}, new Temp[]{def}, null));
+        }
+        return def;
+    }
 
-        if (node.dst instanceof ImcMEM) {
-            ImcMEM dst = (ImcMEM) node.dst;
+    /**
+     * Loads the address of a label into a temporary variable unless it has
+     * already been loaded within the current basic block.
+     */
+    Temp lda(Label label) {
+        return addresses.computeIfAbsent(label, l -> op(AsmOPER.Oper.LDA, l));
+    }
 
-            switch (matchMem(dst)) {
-                case AddTempConst:
-                    return MoveMatch.MemLeftBinopTempConst;
-            }
+    /**
+     * Computes the remainder of a division.
+     */
+    Temp mod(Object fst, Object snd) {
+        Temp quot = op(AsmOPER.Oper.DIV, fst, snd);
+        Temp def = new Temp();
+        add(new AsmOPER(AsmOPER.Oper.GET, new AsmOperand[]{AsmOperand.def(0), AsmOperand.special("rR")},
+                new Temp[]{quot}, new Temp[]{def}, null));
+        return def;
+    }
 
-            return MoveMatch.MemLeft;
+    /**
+     * Calls a function: stores the arguments, jumps and, if needed, loads the
+     * result.
+     *
+     * @return The temporary variable holding the result or {@code null}.
+     */
+    Temp call(ImcCALL call, boolean result) {
+        if (call.tail)
+            return tailCall(call, result);
+        long offset = 0;
+        for (ImcExpr arg : call.args()) {
+            label(arg);
+            boolean imm = state(arg).cost[Nonterm.IMM.ordinal()] == 0;
+            Object value = reduce(arg, imm ? Nonterm.IMM : Nonterm.REG);
+            Addr addr = new Addr(ImcGen.SP, offset > 255 ? constant(offset) : null, offset);
+            store(imm ? AsmOPER.Oper.STCO : AsmOPER.Oper.STO, value, addr);
+            offset += 8;
         }
 
+        add(new AsmOPER(AsmOPER.Oper.PUSHJ, new AsmOperand[]{AsmOperand.reg(200), AsmOperand.label(call.label)},
+                null, new Temp[]{new Temp()}, new Label[]{call.label}));
+        return result ? op(AsmOPER.Oper.LDO, ImcGen.SP, 0L) : null;
+    }
 
-        if (node.src instanceof ImcMEM) {
-            ImcMEM src = (ImcMEM) node.src;
-
-            switch (matchMem(src)) {
-                case AddTempConst:
-                    return MoveMatch.MemRightBinopTempConst;
-            }
-
-            return MoveMatch.MemRight;
+    /**
+     * Makes a tail call: the arguments are stored over those of the caller,
+     * all of them evaluated first as they may depend on the latter, while the
+     * static link is the caller's own and stays in place.
+     */
+    private Temp tailCall(ImcCALL call, boolean result) {
+        Vector<ImcExpr> args = call.args();
+        Object[] values = new Object[args.size()];
+        boolean[] imms = new boolean[args.size()];
+        for (int arg = 1; arg < args.size(); arg++) {
+            label(args.get(arg));
+            imms[arg] = state(args.get(arg)).cost[Nonterm.IMM.ordinal()] == 0;
+            values[arg] = reduce(args.get(arg), imms[arg] ? Nonterm.IMM : Nonterm.REG);
         }
-
-        // move call -> temp
-        if (node.src instanceof ImcCALL && node.dst instanceof ImcTEMP) {
-            return MoveMatch.Call;
+        for (int arg = 1; arg < args.size(); arg++) {
+            long offset = 8L * arg;
+            Addr addr = new Addr(ImcGen.FP, offset > 255 ? constant(offset) : null, offset);
+            store(imms[arg] ? AsmOPER.Oper.STCO : AsmOPER.Oper.STO, values[arg], addr);
         }
 
-        return MoveMatch.Other;
+        add(new AsmOPER(AsmOPER.Oper.TAILJ, new AsmOperand[]{AsmOperand.label(call.label)}, null, null,
+                new Label[]{call.label}));
+        // Never reached, but the result must be defined.
+        return result ? op(AsmOPER.Oper.LDO, ImcGen.SP, 0L) : null;
     }
 
-    private enum MemMatch {
-        AddTempConst,
-        AddConstTemp,
-        AddTempTemp,
-        AddConstConst,
-        Other
+    /**
+     * Stores a register or an immediate value to memory.
+     */
+    Object store(AsmOPER.Oper oper, Object value, Addr addr) {
+        Object[] operands = addr(addr);
+        add(AsmOPER.build(oper, null, null, value, operands[0], operands[1]));
+        return null;
     }
 
-    private MemMatch matchMem(ImcMEM node) {
-        if (node.addr instanceof ImcBINOP) {
-            ImcBINOP binop = (ImcBINOP) node.addr;
-
-            if (binop.oper == ImcBINOP.Oper.ADD) {
-                switch (matchBinop(binop)) {
-                    case ConstTemp:
-                        return MemMatch.AddConstTemp;
-                    case TempConst:
-                        return MemMatch.AddTempConst;
-                    case TempTemp:
-                        return MemMatch.AddTempTemp;
-                    case ConstConst:
-                        return MemMatch.AddConstConst;
-                }
-            }
-        }
-
-        return MemMatch.Other;
+    /**
+     * Moves a register into another one.
+     */
+    Object move(Temp dst, Temp src) {
+        add(new AsmMOVE(dst, src));
+        return null;
     }
 
-    private enum BinopMatch {
-        ConstTemp,
-        TempConst,
-        TempTemp,
-        ConstConst,
-        Other
+    /**
+     * Branches on a register, falling through to the negative label.
+     */
+    Object branch(AsmOPER.Oper oper, ImcCJUMP cjump, Temp cond) {
+        add(AsmOPER.build(oper, null, new Label[]{cjump.posLabel, cjump.negLabel}, cond, cjump.posLabel));
+        return null;
     }
 
-    private BinopMatch matchBinop(ImcBINOP binop) {
-        if (binop.fstExpr instanceof ImcCONST) {
-            ImcCONST constant = (ImcCONST) binop.fstExpr;
-            if (constant.value > 255 || constant.value < 0) {
-                return BinopMatch.Other;
-            }
-
-            if (binop.sndExpr instanceof ImcTEMP) {
-                return BinopMatch.ConstTemp;
-            } else if (binop.sndExpr instanceof ImcCONST) {
-                return BinopMatch.ConstConst;
-            }
-        }
-
-        if (binop.sndExpr instanceof ImcCONST) {
-            ImcCONST constant = (ImcCONST) binop.sndExpr;
-            if (constant.value > 255 || constant.value < 0) {
-                return BinopMatch.Other;
-            }
-
-            if (binop.fstExpr instanceof ImcTEMP) {
-                return BinopMatch.TempConst;
-            }
-        }
-
-        if (binop.fstExpr instanceof ImcTEMP) {
-            if (binop.sndExpr instanceof ImcTEMP) {
-                return BinopMatch.TempTemp;
-            }
-        }
-
-        return BinopMatch.Other;
+    Object jump(Label label) {
+        add(AsmOPER.build(AsmOPER.Oper.JMP, null, new Label[]{label}, label));
+        return null;
+    }
 
+    Object label(Label label) {
+        add(new AsmLABEL(label));
+        constants.clear();
+        addresses.clear();
+        return null;
     }
 
 }
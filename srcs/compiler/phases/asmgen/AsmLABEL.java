@@ -16,7 +16,7 @@ public class AsmLABEL extends AsmOPER {
     private final Label label;
 
     public AsmLABEL(Label label) {
-        super("", null, null, null);
+        super(Oper.LABEL, null, null, null, null);
         this.label = label;
     }
 
@@ -1,11 +1,8 @@
 package compiler.phases.asmgen;
 
 import common.report.Report;
-import compiler.phases.frames.Label;
 import compiler.phases.frames.Temp;
 
-import java.util.Vector;
-
 /**
  * An assembly move.
  *
@@ -13,10 +10,21 @@ import java.util.Vector;
  */
 public class AsmMOVE extends AsmOPER {
 
-    public AsmMOVE(String instr, Vector<Temp> uses, Vector<Temp> defs, Vector<Label> jumps) {
-        super(instr, uses, defs, jumps);
-        if (uses.size() != 1 || defs.size() != 1 || jumps != null)
+    private static final AsmOperand[] OPERANDS = {AsmOperand.def(0), AsmOperand.use(0)};
+
+    public AsmMOVE(Temp dst, Temp src) {
+        this(new Temp[]{src}, new Temp[]{dst});
+    }
+
+    private AsmMOVE(Temp[] uses, Temp[] defs) {
+        super(Oper.SET, OPERANDS, uses, defs, null);
+        if (uses.length != 1 || defs.length != 1)
             throw new Report.InternalError();
     }
 
+    @Override
+    public AsmMOVE rename(Temp[] uses, Temp[] defs) {
+        return new AsmMOVE(uses, defs);
+    }
+
 }
@@ -4,89 +4,220 @@ import compiler.phases.frames.Label;
 import compiler.phases.frames.Temp;
 
 import java.util.HashMap;
-import java.util.Vector;
 
 /**
  * A general assembly operation.
+ * <p>
+ * An operation consists of an opcode and a sequence of operands. The
+ * temporaries used and defined by an operation are kept apart from its
+ * operands, as an operation may use or define temporaries that do not appear
+ * among its operands; operands refer to temporaries by their positions.
+ * The text of an operation is produced only when it is printed.
  *
  * @author sliva
  */
 public class AsmOPER extends AsmInstr {
 
+    public enum Oper {
+        SET, SETL, INCML, INCMH, INCH, LDA, LDO, STO, STCO,
+        ADD, SUB, MUL, DIV, NEG, AND, OR, XOR, SL, SR, SRU, GET,
+        CMP, ZSZ, ZSNZ, ZSN, ZSP, ZSNP, ZSNN,
+        JMP, BZ, BNZ, BN, BP, BNP, BNN, PUSHJ,
+        /**
+         * Not an operation but a tail call: the frame is popped and the
+         * callee is jumped to (expanded once the frame is laid out).
+         */
+        TAILJ,
+        /**
+         * Not an operation but a label.
+         */
+        LABEL,
+    }
+
+    private static final AsmOperand[] NO_OPERANDS = new AsmOperand[0];
+
+    private static final Temp[] NO_TEMPS = new Temp[0];
+
+    private static final Label[] NO_LABELS = new Label[0];
+
     /**
-     * The string representation of the instruction.
+     * The opcode.
      */
-    private final String instr;
+    private final Oper oper;
+
+    /**
+     * The operands.
+     */
+    private final AsmOperand[] operands;
 
     /**
      * The list of temporaries used by this instruction.
      */
-    private final Vector<Temp> uses;
+    private final Temp[] uses;
 
     /**
      * The list of temporaries defined by this instruction.
      */
-    private final Vector<Temp> defs;
+    private final Temp[] defs;
 
     /**
      * The list of labels this instruction can jump to.
      */
-    private final Vector<Label> jumps;
-
+    private final Label[] jumps;
 
     /**
      * Constructs a new assembly instruction.
      *
-     * @param instr The string representation of the instruction.
-     * @param uses  The list of temporaries used by this instruction.
-     * @param defs  The list of temporaries defined by this instruction.
-     * @param jumps The list of labels this instruction can jump to.
+     * @param oper     The opcode.
+     * @param operands The operands.
+     * @param uses     The list of temporaries used by this instruction.
+     * @param defs     The list of temporaries defined by this instruction.
+     * @param jumps    The list of labels this instruction can jump to.
+     */
+    public AsmOPER(Oper oper, AsmOperand[] operands, Temp[] uses, Temp[] defs, Label[] jumps) {
+        this.oper = oper;
+        this.operands = operands == null ? NO_OPERANDS : operands;
+        this.uses = uses == null ? NO_TEMPS : uses;
+        this.defs = defs == null ? NO_TEMPS : defs;
+        this.jumps = jumps == null ? NO_LABELS : jumps;
+    }
+
+    /**
+     * Constructs a new assembly instruction defining at most one temporary,
+     * the first operand, and using only the temporaries among its operands.
+     *
+     * @param oper     The opcode.
+     * @param def      The temporary defined or {@code null}.
+     * @param jumps    The list of labels this instruction can jump to.
+     * @param operands The remaining operands: temporaries used, immediate
+     *                 values ({@code Long}) and labels.
+     * @return The new instruction.
+     */
+    public static AsmOPER build(Oper oper, Temp def, Label[] jumps, Object... operands) {
+        int numOfUses = 0;
+        for (Object operand : operands)
+            if (operand instanceof Temp)
+                numOfUses++;
+        AsmOperand[] ops = new AsmOperand[operands.length + (def == null ? 0 : 1)];
+        Temp[] uses = new Temp[numOfUses];
+        int o = 0;
+        if (def != null)
+            ops[o++] = AsmOperand.def(0);
+        numOfUses = 0;
+        for (Object operand : operands) {
+            if (operand instanceof Temp) {
+                ops[o++] = AsmOperand.use(numOfUses);
+                uses[numOfUses++] = (Temp) operand;
+            } else if (operand instanceof Label)
+                ops[o++] = AsmOperand.label((Label) operand);
+            else
+                ops[o++] = AsmOperand.imm((Long) operand);
+        }
+        return new AsmOPER(oper, ops, uses, def == null ? null : new Temp[]{def}, jumps);
+    }
+
+    /**
+     * Returns a copy of this instruction using and defining other
+     * temporaries.
+     *
+     * @param uses The list of temporaries used by the copy.
+     * @param defs The list of temporaries defined by the copy.
+     * @return The copy.
      */
-    public AsmOPER(String instr, Vector<Temp> uses, Vector<Temp> defs, Vector<Label> jumps) {
-        this.instr = instr;
-        this.uses = uses == null ? new Vector<Temp>() : uses;
-        this.defs = defs == null ? new Vector<Temp>() : defs;
-        this.jumps = jumps == null ? new Vector<Label>() : jumps;
+    public AsmOPER rename(Temp[] uses, Temp[] defs) {
+        return new AsmOPER(oper, operands, uses, defs, jumps);
+    }
+
+    public Oper oper() {
+        return oper;
+    }
+
+    public int numOperands() {
+        return operands.length;
+    }
+
+    public AsmOperand operand(int index) {
+        return operands[index];
+    }
+
+    @Override
+    public int numUses() {
+        return uses.length;
     }
 
     @Override
-    public Vector<Temp> uses() {
-        return new Vector<Temp>(uses);
+    public Temp use(int index) {
+        return uses[index];
     }
 
     @Override
-    public Vector<Temp> defs() {
-        return new Vector<Temp>(defs);
+    public int numDefs() {
+        return defs.length;
     }
 
     @Override
-    public Vector<Label> jumps() {
-        return new Vector<Label>(jumps);
+    public Temp def(int index) {
+        return defs[index];
     }
 
     @Override
-    public String instr() {
-        return instr;
+    public int numJumps() {
+        return jumps.length;
+    }
+
+    @Override
+    public Label jump(int index) {
+        return jumps[index];
     }
 
     @Override
     public String toString() {
-        String instruction = this.instr;
-        for (int i = 0; i < uses.size(); i++)
-            instruction = instruction.replace("`s" + i, "T" + uses.get(i).temp);
-        for (int i = 0; i < defs.size(); i++)
-            instruction = instruction.replace("`d" + i, "T" + defs.get(i).temp);
-        return instruction;
+        return format(null);
     }
 
     @Override
     public String toString(HashMap<Temp, Integer> regs) {
-        String instruction = this.instr;
-        for (int i = 0; i < uses.size(); i++)
-            instruction = instruction.replace("`s" + i, "$" + regs.get(uses.get(i)));
-        for (int i = 0; i < defs.size(); i++)
-            instruction = instruction.replace("`d" + i, "$" + regs.get(defs.get(i)));
-        return instruction;
+        return format(regs);
+    }
+
+    /**
+     * Prints temporaries as registers if a mapping is given or as
+     * temporaries otherwise.
+     */
+    private String format(HashMap<Temp, Integer> regs) {
+        StringBuilder instr = new StringBuilder(oper.name());
+        for (int i = 0; i < operands.length; i++) {
+            instr.append(i == 0 ? ' ' : ',');
+            AsmOperand operand = operands[i];
+            switch (operand.kind) {
+                case USE:
+                    format(instr, uses[(int) operand.value], regs);
+                    break;
+                case DEF:
+                    format(instr, defs[(int) operand.value], regs);
+                    break;
+                case REG:
+                    instr.append('$').append(operand.value);
+                    break;
+                case SPECIAL:
+                    instr.append(operand.special());
+                    break;
+                case IMM:
+                    instr.append(operand.value);
+                    break;
+                case LABEL:
+                    instr.append(operand.label().name);
+                    break;
+            }
+        }
+        return instr.toString();
+    }
+
+    private static void format(StringBuilder instr, Temp temp, HashMap<Temp, Integer> regs) {
+        if (regs == null)
+            instr.append('T').append(temp.temp);
+        else
+            instr.append('$').append(regs.get(temp));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package compiler.phases.asmgen;
+
+import compiler.phases.frames.Label;
+
+/**
+ * An operand of an assembly operation.
+ * <p>
+ * Temporary variables are not stored in operands but referred to by their
+ * positions in the lists of temporaries used or defined by the operation, so
+ * that an operation can be renamed without touching its operands.
+ *
+ * @author haytham
+ */
+public class AsmOperand {
+
+    public enum Kind {
+        /**
+         * A temporary variable used.
+         */
+        USE,
+        /**
+         * A temporary variable defined.
+         */
+        DEF,
+        /**
+         * A general-purpose register.
+         */
+        REG,
+        /**
+         * A special register.
+         */
+        SPECIAL,
+        /**
+         * An immediate value.
+         */
+        IMM,
+        /**
+         * A label.
+         */
+        LABEL,
+    }
+
+    public final Kind kind;
+
+    /**
+     * The position of a temporary variable, the number of a register or an
+     * immediate value.
+     */
+    public final long value;
+
+    /**
+     * The label or the name of a special register ({@code null} otherwise).
+     */
+    private final Object name;
+
+    private AsmOperand(Kind kind, long value, Object name) {
+        this.kind = kind;
+        this.value = value;
+        this.name = name;
+    }
+
+    private static final AsmOperand[] USES = {new AsmOperand(Kind.USE, 0, null),
+            new AsmOperand(Kind.USE, 1, null), new AsmOperand(Kind.USE, 2, null)};
+
+    private static final AsmOperand[] DEFS = {new AsmOperand(Kind.DEF, 0, null)};
+
+    public static AsmOperand use(int index) {
+        return index < USES.length ? USES[index] : new AsmOperand(Kind.USE, index, null);
+    }
+
+    public static AsmOperand def(int index) {
+        return index < DEFS.length ? DEFS[index] : new AsmOperand(Kind.DEF, index, null);
+    }
+
+    public static AsmOperand reg(int reg) {
+        return new AsmOperand(Kind.REG, reg, null);
+    }
+
+    public static AsmOperand special(String name) {
+        return new AsmOperand(Kind.SPECIAL, 0, name);
+    }
+
+    public static AsmOperand imm(long value) {
+        return new AsmOperand(Kind.IMM, value, null);
+    }
+
+    public static AsmOperand label(Label label) {
+        return new AsmOperand(Kind.LABEL, 0, label);
+    }
+
+    /**
+     * Returns the label of a label operand.
+     */
+    public Label label() {
+        return (Label) name;
+    }
+
+    /**
+     * Returns the name of a special register.
+     */
+    public String special() {
+        return (String) name;
+    }
+
+}
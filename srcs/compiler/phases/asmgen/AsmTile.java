@@ -0,0 +1,348 @@
+package compiler.phases.asmgen;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+
+import java.util.Arrays;
+
+/**
+ * A tile, i.e., a rule of the bottom-up rewrite system used for instruction
+ * selection.
+ * <p>
+ * A tile covers the part of an intermediate code tree matched by its pattern
+ * and derives a nonterminal at the root of that part: a statement, a value in
+ * a register, an immediate operand or an address. The leaves of the pattern
+ * are either terminals, i.e., temporary variables, constants, names and
+ * calls, which are passed to the tile as they are, or nonterminals, whose
+ * subtrees are covered by other tiles first. The cost of a tile is the number
+ * of instructions it emits.
+ *
+ * @author haytham
+ */
+class AsmTile {
+
+    /**
+     * Nonterminals.
+     */
+    enum Nonterm {
+        STMT, REG, IMM, ADDR
+    }
+
+    /**
+     * Emits the instructions of a tile.
+     */
+    interface Emitter {
+
+        /**
+         * @param gen  The instruction generator.
+         * @param root The root of the subtree covered.
+         * @param ops  The operands: for each nonterminal leaf the result of
+         *             covering its subtree, for each terminal leaf the leaf.
+         * @return The result: a temporary variable for {@code REG}, a
+         * {@code Long} for {@code IMM}, an {@link Addr} for {@code ADDR} and
+         * {@code null} for {@code STMT}.
+         */
+        Object emit(AsmInstrGenerator gen, ImcInstr root, Object[] ops);
+
+    }
+
+    /**
+     * An address: a base register plus either an immediate offset (0 to 255)
+     * or an index register.
+     */
+    static class Addr {
+
+        final Temp base;
+
+        final Temp index;
+
+        final long offset;
+
+        Addr(Temp base, Temp index, long offset) {
+            this.base = base;
+            this.index = index;
+            this.offset = offset;
+        }
+
+    }
+
+    final Nonterm lhs;
+
+    final Pattern pattern;
+
+    final int cost;
+
+    final Emitter emitter;
+
+    AsmTile(Nonterm lhs, Pattern pattern, int cost, Emitter emitter) {
+        this.lhs = lhs;
+        this.pattern = pattern;
+        this.cost = cost;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Checks whether this is a chain rule, i.e., derives a nonterminal from
+     * another one at the same node.
+     */
+    boolean chain() {
+        return pattern instanceof NontermLeaf;
+    }
+
+    /**
+     * Returns the nonterminal a chain rule derives its nonterminal from.
+     */
+    Nonterm chainFrom() {
+        return ((NontermLeaf) pattern).nonterm;
+    }
+
+    /**
+     * Returns the key of a node that the root of a pattern must have to match
+     * it: the operator of a binary or unary operation or the class of any
+     * other node.
+     */
+    static Object root(ImcInstr node) {
+        if (node instanceof ImcBINOP)
+            return ((ImcBINOP) node).oper;
+        if (node instanceof ImcUNOP)
+            return ((ImcUNOP) node).oper;
+        return node.getClass();
+    }
+
+    /**
+     * A pattern.
+     */
+    static abstract class Pattern {
+
+        /**
+         * Matches the pattern against a tree and collects its leaves.
+         *
+         * @param node   The root of the tree.
+         * @param leaves The leaves matched so far.
+         * @return {@code true} if the pattern matches, {@code false} otherwise.
+         */
+        abstract boolean match(ImcInstr node, Leaves leaves);
+
+        /**
+         * Returns the key of the nodes the pattern can match, see
+         * {@link AsmTile#root(ImcInstr)}, or {@code null} if it can match any
+         * expression.
+         */
+        abstract Object root();
+
+    }
+
+    /**
+     * The leaves of a pattern matched so far, each with its nonterminal or
+     * {@code null} for terminals.
+     */
+    static class Leaves {
+
+        ImcInstr[] nodes = new ImcInstr[4];
+
+        Nonterm[] nonterms = new Nonterm[4];
+
+        int size = 0;
+
+        void add(ImcInstr node, Nonterm nonterm) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                nonterms = Arrays.copyOf(nonterms, 2 * size);
+            }
+            nodes[size] = node;
+            nonterms[size] = nonterm;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+    }
+
+    static Pattern nt(Nonterm nonterm) {
+        return new NontermLeaf(nonterm);
+    }
+
+    static Pattern cnst(long min, long max) {
+        return new Leaf(ImcCONST.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcCONST && ((ImcCONST) node).value >= min && ((ImcCONST) node).value <= max;
+            }
+        };
+    }
+
+    static Pattern cnst() {
+        return cnst(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    static Pattern temp() {
+        return new Leaf(ImcTEMP.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcTEMP;
+            }
+        };
+    }
+
+    static Pattern name() {
+        return new Leaf(ImcNAME.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcNAME;
+            }
+        };
+    }
+
+    static Pattern call() {
+        return new Leaf(ImcCALL.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcCALL;
+            }
+        };
+    }
+
+    static Pattern jump() {
+        return new Leaf(ImcJUMP.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcJUMP;
+            }
+        };
+    }
+
+    static Pattern label() {
+        return new Leaf(ImcLABEL.class) {
+            boolean matches(ImcInstr node) {
+                return node instanceof ImcLABEL;
+            }
+        };
+    }
+
+    static Pattern binop(ImcBINOP.Oper oper, Pattern fst, Pattern snd) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcBINOP && ((ImcBINOP) node).oper == oper
+                        && fst.match(((ImcBINOP) node).fstExpr, leaves)
+                        && snd.match(((ImcBINOP) node).sndExpr, leaves);
+            }
+
+            Object root() {
+                return oper;
+            }
+        };
+    }
+
+    static Pattern unop(ImcUNOP.Oper oper, Pattern sub) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcUNOP && ((ImcUNOP) node).oper == oper
+                        && sub.match(((ImcUNOP) node).subExpr, leaves);
+            }
+
+            Object root() {
+                return oper;
+            }
+        };
+    }
+
+    static Pattern mem(Pattern addr) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcMEM && addr.match(((ImcMEM) node).addr, leaves);
+            }
+
+            Object root() {
+                return ImcMEM.class;
+            }
+        };
+    }
+
+    static Pattern move(Pattern dst, Pattern src) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcMOVE && dst.match(((ImcMOVE) node).dst, leaves)
+                        && src.match(((ImcMOVE) node).src, leaves);
+            }
+
+            Object root() {
+                return ImcMOVE.class;
+            }
+        };
+    }
+
+    static Pattern cjump(Pattern cond) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcCJUMP && cond.match(((ImcCJUMP) node).cond, leaves);
+            }
+
+            Object root() {
+                return ImcCJUMP.class;
+            }
+        };
+    }
+
+    static Pattern estmt(Pattern expr) {
+        return new Pattern() {
+            boolean match(ImcInstr node, Leaves leaves) {
+                return node instanceof ImcESTMT && expr.match(((ImcESTMT) node).expr, leaves);
+            }
+
+            Object root() {
+                return ImcESTMT.class;
+            }
+        };
+    }
+
+    /**
+     * A leaf standing for a nonterminal.
+     */
+    private static class NontermLeaf extends Pattern {
+
+        private final Nonterm nonterm;
+
+        NontermLeaf(Nonterm nonterm) {
+            this.nonterm = nonterm;
+        }
+
+        boolean match(ImcInstr node, Leaves leaves) {
+            if (!(node instanceof ImcExpr))
+                return false;
+            leaves.add(node, nonterm);
+            return true;
+        }
+
+        Object root() {
+            return null;
+        }
+
+    }
+
+    /**
+     * A terminal leaf.
+     */
+    private static abstract class Leaf extends Pattern {
+
+        /**
+         * The class of the nodes the leaf can match.
+         */
+        private final Class<? extends ImcInstr> root;
+
+        Leaf(Class<? extends ImcInstr> root) {
+            this.root = root;
+        }
+
+        abstract boolean matches(ImcInstr node);
+
+        Object root() {
+            return root;
+        }
+
+        boolean match(ImcInstr node, Leaves leaves) {
+            if (!matches(node))
+                return false;
+            leaves.add(node, null);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+package compiler.phases.asmgen;
+
+import compiler.phases.asmgen.AsmTile.Addr;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+import static compiler.phases.asmgen.AsmTile.*;
+import static compiler.phases.asmgen.AsmTile.Nonterm.*;
+import static compiler.phases.imcgen.code.ImcBINOP.Oper.*;
+
+/**
+ * The tiles of MMIX instructions.
+ * <p>
+ * So that labeling a node only tries the tiles that can match it, tiles other
+ * than chain rules are grouped by the roots of their patterns, and the chain
+ * rules are closed once for all: for each nonterminal, the cheapest
+ * derivation of every other nonterminal from it is precomputed.
+ *
+ * @author haytham
+ */
+class AsmTiles {
+
+    /**
+     * All tiles.
+     */
+    static final Vector<AsmTile> tiles = new Vector<AsmTile>();
+
+    /**
+     * The tiles other than chain rules by the roots of their patterns, see
+     * {@link AsmTile#root(ImcInstr)}.
+     */
+    private static final HashMap<Object, AsmTile[]> rootTiles = new HashMap<Object, AsmTile[]>();
+
+    /**
+     * No tiles.
+     */
+    private static final AsmTile[] NONE = new AsmTile[0];
+
+    /**
+     * A derivation of a nonterminal from another one at the same node by
+     * chain rules.
+     */
+    static class Chain {
+
+        /** The nonterminal derived. */
+        final Nonterm lhs;
+
+        /** The cost of the derivation. */
+        final int cost;
+
+        /** The last chain rule of the derivation, the one deriving {@code lhs}. */
+        final AsmTile tile;
+
+        Chain(Nonterm lhs, int cost, AsmTile tile) {
+            this.lhs = lhs;
+            this.cost = cost;
+            this.tile = tile;
+        }
+
+    }
+
+    /**
+     * The cheapest derivations by chain rules from each nonterminal.
+     */
+    private static final Chain[][] chains = new Chain[Nonterm.values().length][];
+
+    /**
+     * Returns the tiles other than chain rules that can match a node.
+     *
+     * @param node The node.
+     * @return The tiles.
+     */
+    static AsmTile[] tiles(ImcInstr node) {
+        AsmTile[] tiles = rootTiles.get(AsmTile.root(node));
+        return tiles == null ? NONE : tiles;
+    }
+
+    /**
+     * Returns the cheapest derivations by chain rules from a nonterminal.
+     *
+     * @param rhs The nonterminal derived from.
+     * @return The derivations.
+     */
+    static Chain[] chains(Nonterm rhs) {
+        return chains[rhs.ordinal()];
+    }
+
+    /**
+     * Arithmetic and logical operators and their instructions.
+     */
+    private static final ImcBINOP.Oper[] ARITH = {ADD, SUB, MUL, DIV, AND, IOR, XOR, SHL, SHR, SHRU};
+    private static final AsmOPER.Oper[] ARITH_INSTRS = {AsmOPER.Oper.ADD, AsmOPER.Oper.SUB, AsmOPER.Oper.MUL,
+            AsmOPER.Oper.DIV, AsmOPER.Oper.AND, AsmOPER.Oper.OR, AsmOPER.Oper.XOR, AsmOPER.Oper.SL, AsmOPER.Oper.SR,
+            AsmOPER.Oper.SRU};
+
+    /**
+     * Commutative operators.
+     */
+    private static final ImcBINOP.Oper[] COMMUTATIVE = {ADD, MUL, AND, IOR, XOR};
+
+    /**
+     * Relational operators, their instructions setting a register to 1 and
+     * branching if the comparison of the operands with zero holds, and the
+     * operators with their operands swapped.
+     */
+    private static final ImcBINOP.Oper[] RELATIONAL = {EQU, NEQ, LTH, GTH, LEQ, GEQ};
+    private static final AsmOPER.Oper[] ZS_INSTRS = {AsmOPER.Oper.ZSZ, AsmOPER.Oper.ZSNZ, AsmOPER.Oper.ZSN,
+            AsmOPER.Oper.ZSP, AsmOPER.Oper.ZSNP, AsmOPER.Oper.ZSNN};
+    private static final AsmOPER.Oper[] BRANCH_INSTRS = {AsmOPER.Oper.BZ, AsmOPER.Oper.BNZ, AsmOPER.Oper.BN,
+            AsmOPER.Oper.BP, AsmOPER.Oper.BNP, AsmOPER.Oper.BNN};
+    private static final ImcBINOP.Oper[] SWAPPED = {EQU, NEQ, GTH, LTH, GEQ, LEQ};
+
+    private static void tile(Nonterm lhs, Pattern pattern, int cost, Emitter emitter) {
+        AsmTile tile = new AsmTile(lhs, pattern, cost, emitter);
+        tiles.add(tile);
+        if (!tile.chain()) {
+            AsmTile[] same = rootTiles.getOrDefault(pattern.root(), NONE);
+            same = Arrays.copyOf(same, same.length + 1);
+            same[same.length - 1] = tile;
+            rootTiles.put(pattern.root(), same);
+        }
+    }
+
+    /**
+     * Closes the chain rules: relaxes the costs of derivations until no
+     * derivation gets cheaper, which takes fewer rounds than there are
+     * nonterminals as the costs are nonnegative.
+     */
+    private static void closeChains() {
+        int numOfNonterms = Nonterm.values().length;
+        long[][] costs = new long[numOfNonterms][numOfNonterms];
+        AsmTile[][] lasts = new AsmTile[numOfNonterms][numOfNonterms];
+        for (int rhs = 0; rhs < numOfNonterms; rhs++) {
+            Arrays.fill(costs[rhs], Long.MAX_VALUE);
+            costs[rhs][rhs] = 0;
+        }
+        for (int round = 1; round < numOfNonterms; round++) {
+            for (AsmTile tile : tiles) {
+                if (!tile.chain())
+                    continue;
+                int from = tile.chainFrom().ordinal();
+                int to = tile.lhs.ordinal();
+                for (int rhs = 0; rhs < numOfNonterms; rhs++) {
+                    if (costs[rhs][from] == Long.MAX_VALUE || costs[rhs][from] + tile.cost >= costs[rhs][to])
+                        continue;
+                    costs[rhs][to] = costs[rhs][from] + tile.cost;
+                    lasts[rhs][to] = tile;
+                }
+            }
+        }
+        for (Nonterm rhs : Nonterm.values()) {
+            Vector<Chain> derivations = new Vector<Chain>();
+            for (Nonterm lhs : Nonterm.values()) {
+                if (lasts[rhs.ordinal()][lhs.ordinal()] != null)
+                    derivations.add(new Chain(lhs, (int) costs[rhs.ordinal()][lhs.ordinal()],
+                            lasts[rhs.ordinal()][lhs.ordinal()]));
+            }
+            chains[rhs.ordinal()] = derivations.toArray(new Chain[0]);
+        }
+    }
+
+    private static int index(ImcBINOP.Oper[] opers, ImcBINOP.Oper oper) {
+        for (int i = 0; i < opers.length; i++)
+            if (opers[i] == oper)
+                return i;
+        return -1;
+    }
+
+    static {
+        // Leaves.
+        tile(REG, temp(), 0, (gen, root, ops) -> ((ImcTEMP) ops[0]).temp);
+        tile(IMM, cnst(0, 255), 0, (gen, root, ops) -> ((ImcCONST) ops[0]).value);
+        tile(REG, cnst(0, 0xFFFF), 1, (gen, root, ops) -> gen.constant(((ImcCONST) ops[0]).value));
+        tile(REG, cnst(-255, -1), 1, (gen, root, ops) -> gen.constant(((ImcCONST) ops[0]).value));
+        tile(REG, cnst(-0xFFFF, -256), 2, (gen, root, ops) -> gen.constant(((ImcCONST) ops[0]).value));
+        tile(REG, cnst(), 4, (gen, root, ops) -> gen.constant(((ImcCONST) ops[0]).value));
+        tile(REG, name(), 1, (gen, root, ops) -> gen.lda(((ImcNAME) ops[0]).label));
+        tile(REG, call(), 3, (gen, root, ops) -> gen.call((ImcCALL) ops[0], true));
+
+        // Addresses and loads.
+        tile(ADDR, nt(REG), 0, (gen, root, ops) -> new Addr((Temp) ops[0], null, 0));
+        tile(ADDR, binop(ADD, nt(REG), nt(IMM)), 0, (gen, root, ops) -> new Addr((Temp) ops[0], null, (Long) ops[1]));
+        tile(ADDR, binop(ADD, nt(IMM), nt(REG)), 0, (gen, root, ops) -> new Addr((Temp) ops[1], null, (Long) ops[0]));
+        tile(ADDR, binop(ADD, nt(REG), nt(REG)), 0, (gen, root, ops) -> new Addr((Temp) ops[0], (Temp) ops[1], 0));
+        tile(ADDR, binop(ADD, nt(REG), cnst(-255, -1)), 1,
+                (gen, root, ops) -> new Addr((Temp) ops[0], gen.constant(((ImcCONST) ops[1]).value), 0));
+        tile(ADDR, binop(SUB, nt(REG), cnst(1, 255)), 1,
+                (gen, root, ops) -> new Addr((Temp) ops[0], gen.constant(-((ImcCONST) ops[1]).value), 0));
+        tile(REG, mem(nt(ADDR)), 1, (gen, root, ops) -> gen.op(AsmOPER.Oper.LDO, gen.addr((Addr) ops[0])));
+
+        // Arithmetic and logical operators.
+        for (int i = 0; i < ARITH.length; i++) {
+            AsmOPER.Oper instr = ARITH_INSTRS[i];
+            tile(REG, binop(ARITH[i], nt(REG), nt(REG)), 1, (gen, root, ops) -> gen.op(instr, ops[0], ops[1]));
+            tile(REG, binop(ARITH[i], nt(REG), nt(IMM)), 1, (gen, root, ops) -> gen.op(instr, ops[0], ops[1]));
+        }
+        for (ImcBINOP.Oper oper : COMMUTATIVE) {
+            AsmOPER.Oper instr = ARITH_INSTRS[index(ARITH, oper)];
+            tile(REG, binop(oper, nt(IMM), nt(REG)), 1, (gen, root, ops) -> gen.op(instr, ops[1], ops[0]));
+        }
+        tile(REG, binop(SUB, nt(IMM), nt(REG)), 1, (gen, root, ops) -> gen.op(AsmOPER.Oper.NEG, ops[0], ops[1]));
+        tile(REG, binop(ADD, nt(REG), cnst(-255, -1)), 1,
+                (gen, root, ops) -> gen.op(AsmOPER.Oper.SUB, ops[0], -((ImcCONST) ops[1]).value));
+        tile(REG, binop(SUB, nt(REG), cnst(-255, -1)), 1,
+                (gen, root, ops) -> gen.op(AsmOPER.Oper.ADD, ops[0], -((ImcCONST) ops[1]).value));
+        tile(REG, binop(MOD, nt(REG), nt(REG)), 2, (gen, root, ops) -> gen.mod(ops[0], ops[1]));
+        tile(REG, binop(MOD, nt(REG), nt(IMM)), 2, (gen, root, ops) -> gen.mod(ops[0], ops[1]));
+        tile(REG, unop(ImcUNOP.Oper.NEG, nt(REG)), 1, (gen, root, ops) -> gen.op(AsmOPER.Oper.NEG, 0L, ops[0]));
+        tile(REG, unop(ImcUNOP.Oper.NOT, nt(REG)), 1, (gen, root, ops) -> gen.op(AsmOPER.Oper.NEG, 1L, ops[0]));
+
+        // Relational operators.
+        for (int i = 0; i < RELATIONAL.length; i++) {
+            AsmOPER.Oper zs = ZS_INSTRS[i];
+            AsmOPER.Oper swappedZs = ZS_INSTRS[index(RELATIONAL, SWAPPED[i])];
+            tile(REG, binop(RELATIONAL[i], nt(REG), cnst(0, 0)), 1, (gen, root, ops) -> gen.op(zs, ops[0], 1L));
+            tile(REG, binop(RELATIONAL[i], cnst(0, 0), nt(REG)), 1, (gen, root, ops) -> gen.op(swappedZs, ops[1], 1L));
+            tile(REG, binop(RELATIONAL[i], nt(REG), nt(REG)), 2,
+                    (gen, root, ops) -> gen.op(zs, gen.op(AsmOPER.Oper.CMP, ops[0], ops[1]), 1L));
+            tile(REG, binop(RELATIONAL[i], nt(REG), nt(IMM)), 2,
+                    (gen, root, ops) -> gen.op(zs, gen.op(AsmOPER.Oper.CMP, ops[0], ops[1]), 1L));
+            tile(REG, binop(RELATIONAL[i], nt(IMM), nt(REG)), 2,
+                    (gen, root, ops) -> gen.op(swappedZs, gen.op(AsmOPER.Oper.CMP, ops[1], ops[0]), 1L));
+        }
+
+        // Statements.
+        tile(STMT, label(), 0, (gen, root, ops) -> gen.label(((ImcLABEL) ops[0]).label));
+        tile(STMT, jump(), 1, (gen, root, ops) -> gen.jump(((ImcJUMP) ops[0]).label));
+        tile(STMT, move(temp(), nt(REG)), 1, (gen, root, ops) -> gen.move(((ImcTEMP) ops[0]).temp, (Temp) ops[1]));
+        tile(STMT, move(mem(nt(ADDR)), nt(REG)), 1, (gen, root, ops) -> gen.store(AsmOPER.Oper.STO, ops[1], (Addr) ops[0]));
+        tile(STMT, move(mem(nt(ADDR)), nt(IMM)), 1, (gen, root, ops) -> gen.store(AsmOPER.Oper.STCO, ops[1], (Addr) ops[0]));
+        tile(STMT, estmt(call()), 2, (gen, root, ops) -> gen.call((ImcCALL) ops[0], false));
+        tile(STMT, estmt(nt(REG)), 0, (gen, root, ops) -> null);
+        tile(STMT, cjump(nt(REG)), 1, (gen, root, ops) -> gen.branch(AsmOPER.Oper.BNZ, (ImcCJUMP) root, (Temp) ops[0]));
+        for (int i = 0; i < RELATIONAL.length; i++) {
+            AsmOPER.Oper branch = BRANCH_INSTRS[i];
+            AsmOPER.Oper swappedBranch = BRANCH_INSTRS[index(RELATIONAL, SWAPPED[i])];
+            tile(STMT, cjump(binop(RELATIONAL[i], nt(REG), cnst(0, 0))), 1,
+                    (gen, root, ops) -> gen.branch(branch, (ImcCJUMP) root, (Temp) ops[0]));
+            tile(STMT, cjump(binop(RELATIONAL[i], cnst(0, 0), nt(REG))), 1,
+                    (gen, root, ops) -> gen.branch(swappedBranch, (ImcCJUMP) root, (Temp) ops[1]));
+            tile(STMT, cjump(binop(RELATIONAL[i], nt(REG), nt(REG))), 2,
+                    (gen, root, ops) -> gen.branch(branch, (ImcCJUMP) root, gen.op(AsmOPER.Oper.CMP, ops[0], ops[1])));
+            tile(STMT, cjump(binop(RELATIONAL[i], nt(REG), nt(IMM))), 2,
+                    (gen, root, ops) -> gen.branch(branch, (ImcCJUMP) root, gen.op(AsmOPER.Oper.CMP, ops[0], ops[1])));
+            tile(STMT, cjump(binop(RELATIONAL[i], nt(IMM), nt(REG))), 2,
+                    (gen, root, ops) -> gen.branch(swappedBranch, (ImcCJUMP) root, gen.op(AsmOPER.Oper.CMP, ops[1], ops[0])));
+        }
+
+        closeChains();
+    }
+
+}
@@ -0,0 +1,98 @@
+package compiler.phases.asmgen;
+
+import common.threads.Threads;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.Fragment;
+import compiler.phases.lincode.LinCode;
+
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Runs a phase of the back end on each code fragment.
+ * <p>
+ * Once linear code is optimized, code fragments are translated independently
+ * of each other. If more than one thread has been requested by
+ * {@code --threads}, fragments are processed concurrently on the
+ * work-stealing fork-join pool shared with semantic analysis; otherwise they
+ * are processed one after another. Either way, the results are collected in
+ * the order of fragments, so the output does not depend on scheduling.
+ * <p>
+ * Each phase of the back end (instruction selection, peephole optimization,
+ * liveness analysis and register allocation) is a separate call of
+ * {@link #map}, which returns only once all fragments are done, so there is a
+ * barrier between any two phases: a phase may rely on the results of the
+ * previous one for all fragments, e.g., the total statistics, and logs are
+ * written in the order of fragments. The assembly code is emitted afterwards,
+ * sequentially, as the program is written to a single file.
+ *
+ * @author haytham
+ */
+public class BackEnd {
+
+    /**
+     * Processes all code fragments accepted by a filter.
+     *
+     * @param filter The filter selecting code fragments.
+     * @param task   The processing of a single code fragment.
+     * @param <R>    The type of the result of a single code fragment.
+     * @return The results by code fragments, in the order of fragments.
+     */
+    public static <R> LinkedHashMap<CodeFragment, R> map(Predicate<CodeFragment> filter,
+                                                         Function<CodeFragment, R> task) {
+        Vector<CodeFragment> fragments = new Vector<CodeFragment>();
+        for (Fragment fragment : LinCode.fragments()) {
+            if (fragment instanceof CodeFragment && filter.test((CodeFragment) fragment))
+                fragments.add((CodeFragment) fragment);
+        }
+
+        LinkedHashMap<CodeFragment, R> results = new LinkedHashMap<CodeFragment, R>();
+        if (fragments.size() < 2 || Threads.threads() < 2) {
+            for (CodeFragment fragment : fragments)
+                results.put(fragment, task.apply(fragment));
+            return results;
+        }
+
+        Vector<Task<R>> tasks = new Vector<Task<R>>(fragments.size());
+        for (CodeFragment fragment : fragments)
+            tasks.add(new Task<R>(fragment, task));
+        Threads.pool().invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                ForkJoinTask.invokeAll(tasks);
+                return null;
+            }
+        });
+        // All fragments are done here, which is the barrier after the phase.
+        for (Task<R> t : tasks)
+            results.put(t.fragment, t.join());
+        return results;
+    }
+
+    /**
+     * The processing of a single code fragment.
+     */
+    @SuppressWarnings("serial")
+    private static class Task<R> extends RecursiveTask<R> {
+
+        private final CodeFragment fragment;
+
+        private final Function<CodeFragment, R> task;
+
+        private Task(CodeFragment fragment, Function<CodeFragment, R> task) {
+            this.fragment = fragment;
+            this.task = task;
+        }
+
+        @Override
+        protected R compute() {
+            return task.apply(fragment);
+        }
+
+    }
+
+}
@@ -0,0 +1,346 @@
+package compiler.phases.emit;
+
+import common.report.Report;
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.asmgen.AsmOPER;
+import compiler.phases.frames.Frame;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.DataFragment;
+import compiler.phases.lincode.Fragment;
+import compiler.phases.regalloc.RegAlloc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+
+/**
+ * Writes MMIX assembly code of a program.
+ * <p>
+ * The program consists of the data segment, holding a buffer and the heap
+ * pointer of the runtime system and all data fragments at addresses fixed
+ * here, followed by the heap, of the code of
+ * {@code Main}, which sets up the stack pointer and calls the main function,
+ * of all code fragments, each wrapped in a prologue and an epilogue, and of
+ * the runtime functions the program calls but does not define. The stack
+ * pointer is kept in {@code $254} and the frame pointer in {@code $253}.
+ * <p>
+ * A frame of a function is laid out as follows, from the frame pointer
+ * downwards: local variables, the old frame pointer, the return address,
+ * temporaries and, at the stack pointer, outgoing arguments. The prologue
+ * saves the frame pointer and the return address, sets the frame pointer to
+ * the stack pointer and moves the stack pointer down by the size of the
+ * frame; the epilogue stores the return value at the frame pointer and undoes
+ * the prologue. A tail call undoes the prologue as well, leaving the return
+ * value to the callee, and jumps to the callee, which thus reuses the frame.
+ *
+ * @author haytham
+ */
+public class AsmEmitter {
+
+    /**
+     * The address of the data segment.
+     */
+    private static final long DATA_SEGMENT = 0x2000000000000000L;
+
+    /**
+     * The size of the buffer of the runtime system.
+     */
+    private static final long BUFFER_SIZE = 24;
+
+    /**
+     * The offset of the first data fragment within the data segment, i.e.,
+     * the size of the buffer and the heap pointer of the runtime system.
+     */
+    private static final long DATA_OFFSET = BUFFER_SIZE + 8;
+
+    /**
+     * The functions of the runtime system, each given by lines of its code,
+     * i.e., by labels, operations and operands. Characters and numbers are
+     * written to the standard output through the buffer. Memory is allocated
+     * by bumping the heap pointer, in octabytes, and never released.
+     */
+    private static final LinkedHashMap<String, String[][]> RUNTIME = new LinkedHashMap<String, String[][]>();
+
+    static {
+        // printchar(c:char):void
+        RUNTIME.put("_printchar", new String[][]{
+                {"", "LDO", "$0,$254,8"},
+                {"", "SLU", "$0,$0,56"},
+                {"", "LDA", "$255,RtBuf"},
+                {"", "STOU", "$0,$255,0"},
+                {"", "TRAP", "0,Fputs,StdOut"},
+                {"", "STCO", "0,$254,0"},
+                {"", "POP", "0,0"}});
+        // printint(i:int):void, digits are written backwards from the end of the buffer
+        RUNTIME.put("_printint", new String[][]{
+                {"", "LDO", "$0,$254,8"},
+                {"", "LDA", "$1,RtBuf+23"},
+                {"", "STCO", "0,$1,0"},
+                {"", "PUT", "rD,0"},
+                {"", "NEGU", "$2,0,$0"},
+                {"", "CSNN", "$2,$0,$0"},
+                {"1H", "DIVU", "$2,$2,10"},
+                {"", "GET", "$3,rR"},
+                {"", "ADDU", "$3,$3,'0'"},
+                {"", "SUBU", "$1,$1,1"},
+                {"", "STBU", "$3,$1,0"},
+                {"", "PBNZ", "$2,1B"},
+                {"", "BNN", "$0,2F"},
+                {"", "SETL", "$3,'-'"},
+                {"", "SUBU", "$1,$1,1"},
+                {"", "STBU", "$3,$1,0"},
+                {"2H", "SET", "$255,$1"},
+                {"", "TRAP", "0,Fputs,StdOut"},
+                {"", "STCO", "0,$254,0"},
+                {"", "POP", "0,0"}});
+        // println():void
+        RUNTIME.put("_println", new String[][]{
+                {"", "SETL", "$0,10"},
+                {"", "SLU", "$0,$0,56"},
+                {"", "LDA", "$255,RtBuf"},
+                {"", "STOU", "$0,$255,0"},
+                {"", "TRAP", "0,Fputs,StdOut"},
+                {"", "STCO", "0,$254,0"},
+                {"", "POP", "0,0"}});
+        // new: malloc(size:int):ptr void
+        RUNTIME.put("malloc", new String[][]{
+                {"", "LDO", "$0,$254,8"},
+                {"", "ADDU", "$0,$0,7"},
+                {"", "ANDN", "$0,$0,7"},
+                {"", "LDA", "$1,RtHeap"},
+                {"", "LDO", "$2,$1,0"},
+                {"", "ADDU", "$3,$2,$0"},
+                {"", "STOU", "$3,$1,0"},
+                {"", "STO", "$2,$254,0"},
+                {"", "POP", "0,0"}});
+        // del: free(addr:ptr void):void
+        RUNTIME.put("free", new String[][]{
+                {"", "STCO", "0,$254,0"},
+                {"", "POP", "0,0"}});
+    }
+
+    /**
+     * The writer the assembly code is written to.
+     */
+    private final Writer writer;
+
+    /**
+     * The line being written.
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * The addresses of data fragments.
+     */
+    private final HashMap<Label, Long> addresses = new HashMap<Label, Long>();
+
+    /**
+     * @param writer The writer the assembly code is written to; it should be
+     *               buffered as it is written to line by line.
+     */
+    public AsmEmitter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes a program.
+     *
+     * @param fragments The fragments, in the order they are written in.
+     * @param instrs    The register-allocated instructions of code fragments.
+     */
+    public void emit(LinkedList<Fragment> fragments, LinkedHashMap<CodeFragment, LinkedList<AsmInstr>> instrs)
+            throws IOException {
+        line("", "GREG", "0");
+        line("", "GREG", "0");
+        emitData(fragments);
+
+        line("", "LOC", "#100");
+        line("Main", "SETH", "$254,#4000");
+        line("", "SET", "$253,$254");
+        line("", "PUSHJ", "$200,_");
+        line("", "TRAP", "0,Halt,0");
+
+        HashSet<String> defined = new HashSet<String>();
+        LinkedHashSet<String> called = new LinkedHashSet<String>();
+        for (CodeFragment fragment : instrs.keySet()) {
+            defined.add(fragment.frame.label.name);
+            HashMap<Temp, Integer> regs = RegAlloc.tempToReg.get(fragment);
+            if (regs == null)
+                throw new Report.InternalError();
+            emitCode(fragment, instrs.get(fragment), regs, called);
+        }
+
+        for (String name : called) {
+            if (defined.contains(name))
+                continue;
+            String[][] code = RUNTIME.get(name);
+            if (code == null)
+                throw new Report.Error("Function '" + (name.startsWith("_") ? name.substring(1) : name)
+                        + "' is neither defined nor provided by the runtime system.");
+            writer.write('\n');
+            line(name, "IS", "@");
+            for (String[] instr : code)
+                line(instr[0], instr[1], instr[2]);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the data segment.
+     */
+    private void emitData(LinkedList<Fragment> fragments) throws IOException {
+        long offset = DATA_OFFSET;
+        for (Fragment fragment : fragments) {
+            if (!(fragment instanceof DataFragment))
+                continue;
+            DataFragment data = (DataFragment) fragment;
+            addresses.put(data.label, DATA_SEGMENT + offset);
+            offset += (Math.max(data.size, 1) + 7) / 8 * 8;
+        }
+
+        line("", "LOC", "Data_Segment");
+        line("", "GREG", "@");
+        line("RtBuf", "OCTA", "0,0,0");
+        line("RtHeap", "OCTA", "Data_Segment+" + offset);
+        for (Fragment fragment : fragments) {
+            if (!(fragment instanceof DataFragment))
+                continue;
+            DataFragment data = (DataFragment) fragment;
+            line("", "LOC", "Data_Segment+" + (addresses.get(data.label) - DATA_SEGMENT));
+            line(data.label.name, "OCTA", "0");
+        }
+    }
+
+    /**
+     * Writes a code fragment together with its prologue and epilogue.
+     */
+    private void emitCode(CodeFragment fragment, LinkedList<AsmInstr> instrs, HashMap<Temp, Integer> regs,
+                          LinkedHashSet<String> called) throws IOException {
+        Frame frame = fragment.frame;
+        writer.write('\n');
+
+        // Prologue.
+        line(frame.label.name, "IS", "@");
+        line("", "SUB", "$0,$254," + operand(0, frame.locsSize + 16));
+        line("", "STO", "$253,$0,8");
+        line("", "GET", "$1,rJ");
+        line("", "STO", "$1,$0,0");
+        line("", "SET", "$253,$254");
+        line("", "SUB", "$254,$254," + operand(0, frame.size));
+
+        boolean endLabel = false;
+        for (AsmInstr instr : instrs) {
+            if (instr instanceof AsmLABEL) {
+                Label label = ((AsmLABEL) instr).label();
+                endLabel = endLabel || label == fragment.endLabel;
+                line(label.name, "IS", "@");
+                continue;
+            }
+            AsmOPER oper = (AsmOPER) instr;
+            switch (oper.oper()) {
+                case LDA: {
+                    Long address = addresses.get(oper.operand(1).label());
+                    if (address == null)
+                        line("", "GETA", "$" + regs.get(oper.def(0)) + "," + oper.operand(1).label().name);
+                    else
+                        constant(regs.get(oper.def(0)), address);
+                    break;
+                }
+                case PUSHJ:
+                    called.add(oper.operand(1).label().name);
+                    line(oper, regs);
+                    break;
+                case TAILJ:
+                    // The epilogue without the return value, which the callee
+                    // stores in the same place.
+                    called.add(oper.operand(0).label().name);
+                    line("", "SET", "$254,$253");
+                    restore(frame);
+                    line("", "JMP", oper.operand(0).label().name);
+                    break;
+                default:
+                    line(oper, regs);
+                    break;
+            }
+        }
+        if (!endLabel)
+            line(fragment.endLabel.name, "IS", "@");
+
+        // Epilogue.
+        Integer rv = regs.get(fragment.RV);
+        if (rv == null)
+            line("", "STCO", "0,$253,0");
+        else
+            line("", "STO", "$" + rv + ",$253,0");
+        line("", "SET", "$254,$253");
+        restore(frame);
+        line("", "POP", "0,0");
+    }
+
+    /**
+     * Restores the return address and the frame pointer saved by the
+     * prologue.
+     */
+    private void restore(Frame frame) throws IOException {
+        line("", "SUB", "$0,$253," + operand(0, frame.locsSize + 16));
+        line("", "LDO", "$1,$0,0");
+        line("", "PUT", "rJ,$1");
+        line("", "LDO", "$253,$0,8");
+    }
+
+    /**
+     * Returns an operand holding a value: the value itself if it fits into
+     * an immediate operand or a register it is loaded into otherwise.
+     */
+    private String operand(int reg, long value) throws IOException {
+        if (value >= 0 && value <= 255)
+            return Long.toString(value);
+        constant(reg, value);
+        return "$" + reg;
+    }
+
+    /**
+     * Loads a value into a register, 16 bits at a time.
+     */
+    private void constant(int reg, long value) throws IOException {
+        final String[] sets = {"SETL", "SETML", "SETMH", "SETH"};
+        final String[] incs = {"INCL", "INCML", "INCMH", "INCH"};
+        boolean set = false;
+        for (int part = 0; part < 4; part++) {
+            long bits = (value >>> (16 * part)) & 0xFFFF;
+            if (bits == 0 && (set || part < 3))
+                continue;
+            line("", set ? incs[part] : sets[part], "$" + reg + "," + bits);
+            set = true;
+        }
+    }
+
+    /**
+     * Writes a line of assembly code holding an operation.
+     */
+    private void line(AsmOPER oper, HashMap<Temp, Integer> regs) throws IOException {
+        line.setLength(0);
+        line.append('\t').append(oper.toString(regs)).append('\n');
+        int space = line.indexOf(" ");
+        if (space >= 0)
+            line.setCharAt(space, '\t');
+        writer.append(line);
+    }
+
+    /**
+     * Writes a line of assembly code.
+     */
+    private void line(String label, String oper, String operands) throws IOException {
+        line.setLength(0);
+        line.append(label).append('\t').append(oper).append('\t').append(operands).append('\n');
+        writer.append(line);
+    }
+
+}
@@ -0,0 +1,48 @@
+package compiler.phases.emit;
+
+import common.report.Report;
+import compiler.phases.Phase;
+import compiler.phases.asmgen.AsmGen;
+import compiler.phases.lincode.LinCode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Emission of assembly code.
+ * <p>
+ * The program is written to the file given by {@code --dst-file-name}
+ * (see {@link AsmEmitter}), fragments in the order of linear code.
+ *
+ * @author haytham
+ */
+public class Emit extends Phase {
+
+    /**
+     * The size of the buffer assembly code is written through.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public Emit() {
+        super("emit");
+    }
+
+    /**
+     * Writes the assembly code of the program.
+     */
+    public void emit() {
+        String dstFileName = compiler.Main.cmdLineArgValue("--dst-file-name");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(dstFileName)), StandardCharsets.US_ASCII), BUFFER_SIZE)) {
+            new AsmEmitter(writer).emit(LinCode.fragments(), AsmGen.instrs);
+        } catch (IOException e) {
+            throw new Report.Error("Cannot write assembly code to '" + dstFileName + "': " + e.getMessage());
+        }
+    }
+
+}
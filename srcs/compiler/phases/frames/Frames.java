@@ -8,8 +8,6 @@ import compiler.phases.abstr.abstree.AbsFunDef;
 import compiler.phases.abstr.abstree.AbsVarDecl;
 import compiler.phases.seman.SemLogger;
 
-import java.util.LinkedList;
-
 /**
  * Computing frames and accesses.
  *
@@ -21,8 +19,6 @@ public class Frames extends Phase {
 
     public static final AbsAttribute<AbsVarDecl, Access> accesses = new AbsAttribute<AbsVarDecl, Access>();
 
-    public static final LinkedList<Temp> allTemps = new LinkedList<>();
-
     /**
      * Constructs a new phase for computing frames and accesses.
      */
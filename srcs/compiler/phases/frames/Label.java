@@ -1,5 +1,7 @@
 package compiler.phases.frames;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A label.
  *
@@ -13,16 +15,15 @@ public class Label {
     public final String name;
 
     /**
-     * Counter of anonymous labels.
+     * Counter of anonymous labels (shared by all threads).
      */
-    private static long count = 0;
+    private static final AtomicLong count = new AtomicLong(0);
 
     /**
      * Creates a new anonymous label.
      */
     public Label() {
-        this.name = "L" + count;
-        count++;
+        this.name = "L" + count.getAndIncrement();
     }
 
     /**
@@ -1,5 +1,7 @@
 package compiler.phases.frames;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A temporary variable.
  *
@@ -13,17 +15,15 @@ public class Temp {
     public final long temp;
 
     /**
-     * Counter of temporary variables.
+     * Counter of temporary variables (shared by all threads).
      */
-    private static long count = 0;
+    private static final AtomicLong count = new AtomicLong(0);
 
     /**
      * Creates a new temporary variable.
      */
     public Temp() {
-        this.temp = count;
-        count++;
-        Frames.allTemps.add(this);
+        this.temp = count.getAndIncrement();
     }
 
     public String toString() {
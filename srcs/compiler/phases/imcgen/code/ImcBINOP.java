@@ -5,7 +5,7 @@ import compiler.phases.imcgen.ImcVisitor;
 public class ImcBINOP extends ImcExpr {
 
     public enum Oper {
-        IOR, XOR, AND, EQU, NEQ, LTH, GTH, LEQ, GEQ, ADD, SUB, MUL, DIV, MOD,
+        IOR, XOR, AND, EQU, NEQ, LTH, GTH, LEQ, GEQ, ADD, SUB, MUL, DIV, MOD, SHL, SHR, SHRU,
     }
 
     public final Oper oper;
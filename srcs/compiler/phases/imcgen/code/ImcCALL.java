@@ -11,9 +11,20 @@ public class ImcCALL extends ImcExpr {
 
     private final Vector<ImcExpr> args;
 
+    /**
+     * Whether the call is a tail call that can reuse the frame of the caller
+     * (see {@link compiler.phases.imcopt.ImcTailCallEliminator}).
+     */
+    public final boolean tail;
+
     public ImcCALL(Label label, Vector<ImcExpr> args) {
+        this(label, args, false);
+    }
+
+    public ImcCALL(Label label, Vector<ImcExpr> args, boolean tail) {
         this.label = label;
         this.args = new Vector<ImcExpr>(args);
+        this.tail = tail;
     }
 
     public Vector<ImcExpr> args() {
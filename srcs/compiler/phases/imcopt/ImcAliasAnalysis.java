@@ -0,0 +1,469 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.Fragment;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A flow-insensitive alias analysis of memory accesses in linear code.
+ * <p>
+ * An address is known if it is a constant offset from a name or from a frame,
+ * i.e., from the frame pointer or a chain of static links; all other addresses
+ * are computed. Two known addresses denote the same word only if they are
+ * equal, as all values are of the same size. A computed address might denote
+ * any word whose address escapes: the address of a name escapes if the name
+ * is used other than as the address of a load or a store; the address of a
+ * frame offset escapes if a frame address is used that way, in which case the
+ * whole aggregate starting there is considered to escape. Frame offsets
+ * escape per code fragment: an address within a frame can only be taken by
+ * the code fragment itself or by a nested one following static links, so
+ * each access through a chain of static links is attributed to the code
+ * fragment it leads to. The lexical parent of a code fragment is the one
+ * whose frame, possibly reached through static links, is passed as its static
+ * link by its calls; accesses that cannot be attributed this way, e.g., those
+ * of code fragments never called, are taken to escape in every frame.
+ *
+ * @author haytham
+ */
+public class ImcAliasAnalysis {
+
+    /**
+     * The names whose addresses escape.
+     */
+    private final HashSet<String> escapedNames = new HashSet<String>();
+
+    /**
+     * The frame offsets escaping from the frames of individual code
+     * fragments.
+     */
+    private final HashMap<CodeFragment, Escapes> frameEscapes = new HashMap<CodeFragment, Escapes>();
+
+    /**
+     * The frame offsets escaping from frames that could not be determined.
+     */
+    private final Escapes unknownEscapes = new Escapes();
+
+    /**
+     * The frame offsets escaping from any frame.
+     */
+    private final Escapes anyEscapes = new Escapes();
+
+    /**
+     * The lexical parents of code fragments.
+     */
+    private final HashMap<CodeFragment, CodeFragment> parents = new HashMap<CodeFragment, CodeFragment>();
+
+    /**
+     * The number of parameters of code fragments (static links excluded) as
+     * found at their calls.
+     */
+    private final HashMap<String, Integer> numOfParams = new HashMap<String, Integer>();
+
+    /**
+     * The code fragment being scanned.
+     */
+    private CodeFragment fragment;
+
+    /**
+     * The frame offsets escaping while scanning, by code fragments and by the
+     * number of static links followed from their frame pointers.
+     */
+    private final HashMap<CodeFragment, Vector<Escapes>> found = new HashMap<CodeFragment, Vector<Escapes>>();
+
+    /**
+     * The calls passing a frame as a static link: the caller, the number of
+     * static links followed from its frame pointer and the callee.
+     */
+    private final Vector<Object[]> links = new Vector<Object[]>();
+
+    /**
+     * The use of an expression.
+     */
+    private enum Use {
+        ADDRESS, ARGUMENT, VALUE
+    }
+
+    /**
+     * Analyses all code fragments of the program.
+     *
+     * @param fragments The fragments.
+     */
+    public ImcAliasAnalysis(List<Fragment> fragments) {
+        HashMap<String, CodeFragment> codeFragments = new HashMap<String, CodeFragment>();
+        for (Fragment fragment : fragments) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            this.fragment = (CodeFragment) fragment;
+            codeFragments.put(this.fragment.frame.label.name, this.fragment);
+            for (ImcStmt stmt : this.fragment.stmts())
+                scan(stmt, this.fragment.FP);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Object[] link : links) {
+                CodeFragment callee = codeFragments.get((String) link[2]);
+                if (callee == null || parents.containsKey(callee))
+                    continue;
+                CodeFragment parent = ancestor((CodeFragment) link[0], (Integer) link[1]);
+                if (parent != null && parent != callee) {
+                    parents.put(callee, parent);
+                    changed = true;
+                }
+            }
+        }
+
+        for (CodeFragment fragment : found.keySet()) {
+            Vector<Escapes> escapes = found.get(fragment);
+            for (int links = 0; links < escapes.size(); links++) {
+                if (escapes.get(links) == null)
+                    continue;
+                CodeFragment frame = ancestor(fragment, links);
+                if (frame == null)
+                    unknownEscapes.add(escapes.get(links));
+                else
+                    frameEscapes.computeIfAbsent(frame, f -> new Escapes()).add(escapes.get(links));
+                anyEscapes.add(escapes.get(links));
+            }
+        }
+    }
+
+    /**
+     * Returns the code fragment a number of static links lead to from the
+     * frame of a code fragment or {@code null} if it is not known.
+     */
+    private CodeFragment ancestor(CodeFragment fragment, int links) {
+        while (fragment != null && links-- > 0)
+            fragment = parents.get(fragment);
+        return fragment;
+    }
+
+    /**
+     * Returns the number of static links followed by a frame pointer or a
+     * chain of static links.
+     */
+    private static int links(ImcExpr frame) {
+        int links = 0;
+        while (frame instanceof ImcMEM) {
+            frame = ((ImcMEM) frame).addr;
+            links++;
+        }
+        return links;
+    }
+
+    /**
+     * Returns the escapes found while scanning the current code fragment
+     * within the frame a chain of static links leads to.
+     */
+    private Escapes found(ImcExpr frame) {
+        Vector<Escapes> escapes = found.computeIfAbsent(fragment, f -> new Vector<Escapes>());
+        int links = links(frame);
+        while (escapes.size() <= links)
+            escapes.add(null);
+        if (escapes.get(links) == null)
+            escapes.set(links, new Escapes());
+        return escapes.get(links);
+    }
+
+    private void scan(ImcStmt stmt, Temp FP) {
+        if (stmt instanceof ImcMOVE) {
+            ImcMOVE move = (ImcMOVE) stmt;
+            if (move.dst instanceof ImcMEM)
+                scan(((ImcMEM) move.dst).addr, Use.ADDRESS, FP);
+            scan(move.src, Use.VALUE, FP);
+        }
+        if (stmt instanceof ImcESTMT)
+            scan(((ImcESTMT) stmt).expr, Use.VALUE, FP);
+        if (stmt instanceof ImcCJUMP)
+            scan(((ImcCJUMP) stmt).cond, Use.VALUE, FP);
+        if (stmt instanceof ImcSTMTS)
+            for (ImcStmt subStmt : ((ImcSTMTS) stmt).stmts())
+                scan(subStmt, FP);
+    }
+
+    private void scan(ImcExpr expr, Use use, Temp FP) {
+        Location location = location(expr, FP);
+        if (location != null) {
+            if (location.name != null) {
+                if (use != Use.ADDRESS)
+                    escapedNames.add(location.name);
+            } else {
+                if (use == Use.VALUE && location.offset == 0 && location.frame == expr)
+                    found(location.frame).frame = true;
+                else if (use != Use.ADDRESS && location.frame != expr)
+                    found(location.frame).escape(location.offset);
+                if (location.frame instanceof ImcMEM)
+                    scan(((ImcMEM) location.frame).addr, Use.ADDRESS, FP);
+            }
+            return;
+        }
+        if (expr instanceof ImcMEM)
+            scan(((ImcMEM) expr).addr, Use.ADDRESS, FP);
+        if (expr instanceof ImcBINOP) {
+            scan(((ImcBINOP) expr).fstExpr, Use.VALUE, FP);
+            scan(((ImcBINOP) expr).sndExpr, Use.VALUE, FP);
+        }
+        if (expr instanceof ImcUNOP)
+            scan(((ImcUNOP) expr).subExpr, Use.VALUE, FP);
+        if (expr instanceof ImcCALL) {
+            ImcCALL call = (ImcCALL) expr;
+            numOfParams.put(call.label.name, call.args().size() - 1);
+            if (frameChain(call.args().firstElement(), FP))
+                links.add(new Object[]{fragment, links(call.args().firstElement()), call.label.name});
+            for (ImcExpr arg : call.args())
+                scan(arg, Use.ARGUMENT, FP);
+        }
+        if (expr instanceof ImcSEXPR) {
+            scan(((ImcSEXPR) expr).stmt, FP);
+            scan(((ImcSEXPR) expr).expr, Use.VALUE, FP);
+        }
+    }
+
+    /**
+     * Checks whether a store to an address might change the value loaded from
+     * another one.
+     *
+     * @param fstAddr  The first address.
+     * @param sndAddr  The second address.
+     * @param fragment The code fragment the addresses appear in.
+     * @return {@code true} if the addresses might denote the same word,
+     * {@code false} otherwise.
+     */
+    public boolean mayAlias(ImcExpr fstAddr, ImcExpr sndAddr, CodeFragment fragment) {
+        Location fstLocation = location(fstAddr, fragment.FP);
+        Location sndLocation = location(sndAddr, fragment.FP);
+        if (fstLocation == null && sndLocation == null)
+            return true;
+        if (fstLocation == null)
+            return escapes(sndLocation, fragment);
+        if (sndLocation == null)
+            return escapes(fstLocation, fragment);
+        if (fstLocation.offset != sndLocation.offset)
+            return false;
+        if (fstLocation.name != null || sndLocation.name != null)
+            return fstLocation.name != null && fstLocation.name.equals(sndLocation.name);
+        return ImcEquality.equal(fstLocation.frame, sndLocation.frame);
+    }
+
+    /**
+     * Checks whether an address is a constant offset from a name or a frame,
+     * i.e., whether it is always valid.
+     *
+     * @param addr The address.
+     * @param FP   The frame pointer of the code fragment the address appears
+     *             in.
+     * @return {@code true} if the address is a constant offset from a name or a
+     * frame, {@code false} otherwise.
+     */
+    public boolean variable(ImcExpr addr, Temp FP) {
+        return location(addr, FP) != null;
+    }
+
+    /**
+     * Checks whether the address of a scalar variable might be taken, i.e.,
+     * whether the very address of the variable is used other than as the
+     * address of a load or a store. Unlike {@link #mayAlias}, addresses
+     * computed from the address of another variable, e.g., of an array, are
+     * not considered to reach the variable.
+     *
+     * @param var      The address of the variable.
+     * @param fragment The code fragment the address appears in.
+     * @return {@code true} if the address might be taken, {@code false}
+     * otherwise.
+     */
+    public boolean addressTaken(ImcExpr var, CodeFragment fragment) {
+        Location location = location(var, fragment.FP);
+        if (location == null)
+            return true;
+        if (location.name != null)
+            return escapedNames.contains(location.name);
+        CodeFragment frame = ancestor(fragment, links(location.frame));
+        if (frame == null)
+            return anyEscapes.taken(location.offset);
+        return unknownEscapes.taken(location.offset)
+                || frameEscapes.getOrDefault(frame, NONE).taken(location.offset);
+    }
+
+    /**
+     * Checks whether the address of any word within the frame of a code
+     * fragment might escape.
+     *
+     * @param fragment The code fragment.
+     * @return {@code true} if an address within the frame might escape,
+     * {@code false} otherwise.
+     */
+    public boolean escapes(CodeFragment fragment) {
+        return unknownEscapes.any() || frameEscapes.getOrDefault(fragment, NONE).any();
+    }
+
+    /**
+     * Returns the number of parameters of a function as found at its calls.
+     *
+     * @param label The entry label of the function.
+     * @return The number of parameters (static link excluded) or {@code -1}
+     * if the function is never called.
+     */
+    public int numOfParams(Label label) {
+        return numOfParams.getOrDefault(label.name, -1);
+    }
+
+    private boolean escapes(Location location, CodeFragment fragment) {
+        if (location.name != null)
+            return escapedNames.contains(location.name);
+        CodeFragment frame = ancestor(fragment, links(location.frame));
+        if (frame == null)
+            return anyEscapes.escapes(location.offset);
+        return unknownEscapes.escapes(location.offset)
+                || frameEscapes.getOrDefault(frame, NONE).escapes(location.offset);
+    }
+
+    /**
+     * The frame offsets escaping from a frame.
+     */
+    private static class Escapes {
+
+        /**
+         * The lowest negative frame offset that escapes; all negative offsets
+         * above it escape too.
+         */
+        long lowestLocal = 0;
+
+        /**
+         * The lowest nonnegative frame offset that escapes; all offsets above
+         * it escape too.
+         */
+        long lowestArg = Long.MAX_VALUE;
+
+        /**
+         * Whether the frame pointer is used in a way the analysis cannot
+         * follow.
+         */
+        boolean frame = false;
+
+        /**
+         * The frame offsets whose addresses are taken themselves.
+         */
+        final HashSet<Long> taken = new HashSet<Long>();
+
+        void escape(long offset) {
+            if (offset < 0)
+                lowestLocal = Math.min(lowestLocal, offset);
+            else
+                lowestArg = Math.min(lowestArg, offset);
+            taken.add(offset);
+        }
+
+        void add(Escapes escapes) {
+            lowestLocal = Math.min(lowestLocal, escapes.lowestLocal);
+            lowestArg = Math.min(lowestArg, escapes.lowestArg);
+            frame |= escapes.frame;
+            taken.addAll(escapes.taken);
+        }
+
+        boolean taken(long offset) {
+            return frame || taken.contains(offset);
+        }
+
+        boolean escapes(long offset) {
+            if (frame)
+                return true;
+            if (offset < 0)
+                return offset >= lowestLocal && lowestLocal < 0;
+            return offset >= lowestArg;
+        }
+
+        boolean any() {
+            return frame || lowestLocal < 0 || lowestArg < Long.MAX_VALUE;
+        }
+
+    }
+
+    /**
+     * No frame offsets escaping.
+     */
+    private static final Escapes NONE = new Escapes();
+
+    /**
+     * A known address: a constant offset from a name or a frame.
+     */
+    private static class Location {
+
+        /** The name or {@code null} if the address is within a frame. */
+        final String name;
+
+        /** The frame pointer or chain of static links. */
+        final ImcExpr frame;
+
+        /** The offset. */
+        final long offset;
+
+        Location(String name, ImcExpr frame, long offset) {
+            this.name = name;
+            this.frame = frame;
+            this.offset = offset;
+        }
+
+    }
+
+    /**
+     * Returns the location denoted by an address.
+     *
+     * @param addr The address.
+     * @param FP   The frame pointer of the code fragment.
+     * @return The location or {@code null} if the address is computed.
+     */
+    private static Location location(ImcExpr addr, Temp FP) {
+        if (addr instanceof ImcNAME)
+            return new Location(((ImcNAME) addr).label.name, null, 0);
+        if (frameChain(addr, FP))
+            return new Location(null, addr, 0);
+        if (!(addr instanceof ImcBINOP))
+            return null;
+        ImcBINOP binOp = (ImcBINOP) addr;
+        ImcExpr base = null;
+        long offset = 0;
+        if (binOp.oper == ImcBINOP.Oper.ADD && binOp.sndExpr instanceof ImcCONST) {
+            base = binOp.fstExpr;
+            offset = ((ImcCONST) binOp.sndExpr).value;
+        }
+        if (binOp.oper == ImcBINOP.Oper.ADD && binOp.fstExpr instanceof ImcCONST) {
+            base = binOp.sndExpr;
+            offset = ((ImcCONST) binOp.fstExpr).value;
+        }
+        if (binOp.oper == ImcBINOP.Oper.SUB && binOp.sndExpr instanceof ImcCONST) {
+            base = binOp.fstExpr;
+            offset = -((ImcCONST) binOp.sndExpr).value;
+        }
+        if (base instanceof ImcNAME)
+            return new Location(((ImcNAME) base).label.name, null, offset);
+        if (base != null && frameChain(base, FP))
+            return new Location(null, base, offset);
+        return null;
+    }
+
+    /**
+     * Checks whether an expression is the frame pointer of a code fragment or
+     * a chain of static links starting at it.
+     *
+     * @param expr The expression.
+     * @param FP   The frame pointer of the code fragment.
+     * @return {@code true} if the expression is a frame pointer, {@code false}
+     * otherwise.
+     */
+    static boolean frameChain(ImcExpr expr, Temp FP) {
+        if (expr instanceof ImcTEMP)
+            return ((ImcTEMP) expr).temp == FP;
+        if (expr instanceof ImcMEM)
+            return frameChain(((ImcMEM) expr).addr, FP);
+        return false;
+    }
+
+}
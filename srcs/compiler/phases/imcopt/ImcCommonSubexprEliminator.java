@@ -0,0 +1,381 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+import compiler.phases.lincode.ControlFlowGraph;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+/**
+ * Elimination of common subexpressions within basic blocks by local value
+ * numbering.
+ * <p>
+ * Loads and address computations are numbered in the order they are evaluated.
+ * The first occurrence of an expression that is computed again is moved into
+ * a temporary variable just before its statement (or, if it is the source of a
+ * move to a temporary variable, that temporary variable is used) and all later
+ * occurrences are replaced by the temporary variable. A definition of a
+ * temporary variable kills the expressions using it, a store kills the loads
+ * that might alias it, and a function call kills all loads; loads are not
+ * numbered within statements containing function calls at all. A load from an
+ * address that is a constant offset from a temporary variable is numbered as a
+ * whole, as the offset is free in a load or a store.
+ * <p>
+ * The pass must run last, as it hides frame pointers and static links behind
+ * temporary variables.
+ *
+ * @author haytham
+ */
+public class ImcCommonSubexprEliminator {
+
+    /**
+     * The alias analysis.
+     */
+    private final ImcAliasAnalysis aliases;
+
+    /**
+     * The control-flow graph.
+     */
+    private final ControlFlowGraph graph;
+
+    /**
+     * The number of occurrences replaced.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new common subexpression eliminator.
+     *
+     * @param aliases The alias analysis.
+     * @param graph   The control-flow graph of the code fragment.
+     */
+    public ImcCommonSubexprEliminator(ImcAliasAnalysis aliases, ControlFlowGraph graph) {
+        this.aliases = aliases;
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the number of occurrences replaced.
+     *
+     * @return The number of occurrences replaced.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Eliminates common subexpressions in all basic blocks.
+     */
+    public void eliminate() {
+        for (BasicBlock block : graph.blocks())
+            new Numberer().eliminate(block.stmts());
+    }
+
+    /**
+     * An expression available in a temporary variable.
+     */
+    private static class Value {
+
+        /** The first occurrence of the expression. */
+        final ImcExpr expr;
+
+        /** The index of the statement of the first occurrence. */
+        final int index;
+
+        /** The number of expressions numbered before this one. */
+        final int number;
+
+        /** The temporary variables the expression uses. */
+        final HashSet<Temp> uses;
+
+        /** The addresses the expression loads from. */
+        final Vector<ImcExpr> loads;
+
+        /** The temporary variable holding the value of the expression. */
+        Temp temp = null;
+
+        /** Whether {@link #temp} is defined by the statement of the first occurrence. */
+        boolean held = false;
+
+        Value(ImcExpr expr, int index, int number, HashSet<Temp> uses, Vector<ImcExpr> loads) {
+            this.expr = expr;
+            this.index = index;
+            this.number = number;
+            this.uses = uses;
+            this.loads = loads;
+        }
+
+    }
+
+    /**
+     * Numbers expressions of a single basic block.
+     */
+    private class Numberer extends ImcRewriter {
+
+        /**
+         * The expressions available.
+         */
+        private final LinkedHashMap<String, Value> values = new LinkedHashMap<String, Value>();
+
+        /**
+         * The expressions that must be moved into temporary variables.
+         */
+        private final Vector<Value> moved = new Vector<Value>();
+
+        /**
+         * The number of expressions numbered so far.
+         */
+        private int numOfValues = 0;
+
+        /**
+         * The index of the statement being numbered.
+         */
+        private int index;
+
+        /**
+         * Whether the statement being numbered contains a function call.
+         */
+        private boolean calls;
+
+        /**
+         * The value found for the source of the statement being numbered.
+         */
+        private Value srcValue;
+
+        /**
+         * Eliminates common subexpressions within statements of a basic block.
+         *
+         * @param stmts The statements.
+         */
+        private void eliminate(Vector<ImcStmt> stmts) {
+            for (index = 0; index < stmts.size(); index++) {
+                ImcStmt stmt = stmts.get(index);
+                calls = !ImcSimplifier.pure(stmt);
+                srcValue = null;
+                stmts.set(index, number(stmt));
+                kill(stmt);
+            }
+            if (moved.isEmpty())
+                return;
+
+            // Moves of first occurrences into temporary variables; inner
+            // expressions are numbered before the ones containing them.
+            Collections.sort(moved, new Comparator<Value>() {
+                public int compare(Value fstValue, Value sndValue) {
+                    return fstValue.number - sndValue.number;
+                }
+            });
+            IdentityHashMap<ImcExpr, Temp> firsts = new IdentityHashMap<ImcExpr, Temp>();
+            for (Value value : moved)
+                if (!value.held)
+                    firsts.put(value.expr, value.temp);
+            IdentityReplacer replacer = new IdentityReplacer(firsts);
+            Vector<ImcStmt> newStmts = new Vector<ImcStmt>();
+            int next = 0;
+            for (int i = 0; i < stmts.size(); i++) {
+                for (; next < moved.size() && moved.get(next).index == i; next++) {
+                    Value value = moved.get(next);
+                    if (!value.held)
+                        newStmts.add(new ImcMOVE(new ImcTEMP(value.temp), (ImcExpr) value.expr.accept(replacer, null)));
+                }
+                newStmts.add(replacer.rewrite(stmts.get(i)));
+            }
+            stmts.clear();
+            stmts.addAll(newStmts);
+        }
+
+        private ImcStmt number(ImcStmt stmt) {
+            if (stmt instanceof ImcMOVE) {
+                ImcMOVE move = (ImcMOVE) stmt;
+                ImcExpr dst = move.dst;
+                if (dst instanceof ImcMEM) {
+                    ImcExpr addr = address(((ImcMEM) dst).addr);
+                    dst = addr == ((ImcMEM) dst).addr ? dst : new ImcMEM(addr);
+                }
+                ImcExpr src = rewrite(move.src);
+                if (move.dst instanceof ImcTEMP && srcValue != null && srcValue.expr == src) {
+                    Temp temp = ((ImcTEMP) move.dst).temp;
+                    if (temp != graph.fragment.FP && temp != graph.fragment.RV) {
+                        srcValue.temp = temp;
+                        srcValue.held = true;
+                    }
+                }
+                return (dst == move.dst && src == move.src) ? move : new ImcMOVE(dst, src);
+            }
+            return rewrite(stmt);
+        }
+
+        /**
+         * Numbers an address of a load or a store; a constant offset is left
+         * in place.
+         */
+        private ImcExpr address(ImcExpr addr) {
+            if (addr instanceof ImcBINOP && ((ImcBINOP) addr).oper == ImcBINOP.Oper.ADD
+                    && ((ImcBINOP) addr).sndExpr instanceof ImcCONST) {
+                ImcBINOP binOp = (ImcBINOP) addr;
+                ImcExpr fstExpr = rewrite(binOp.fstExpr);
+                return fstExpr == binOp.fstExpr ? binOp : new ImcBINOP(binOp.oper, fstExpr, binOp.sndExpr);
+            }
+            return rewrite(addr);
+        }
+
+        @Override
+        public ImcExpr rewrite(ImcExpr expr) {
+            String key = candidate(expr) ? key(expr) : null;
+            Value value = key == null ? null : values.get(key);
+            if (value != null) {
+                if (value.temp == null) {
+                    value.temp = new Temp();
+                    moved.add(value);
+                }
+                ImcCommonSubexprEliminator.this.numOfRewrites++;
+                return new ImcTEMP(value.temp);
+            }
+
+            ImcExpr newExpr;
+            if (expr instanceof ImcMEM) {
+                ImcExpr addr = address(((ImcMEM) expr).addr);
+                newExpr = addr == ((ImcMEM) expr).addr ? expr : new ImcMEM(addr);
+            } else
+                newExpr = super.rewrite(expr);
+            if (key != null) {
+                Value newValue = new Value(newExpr, index, numOfValues++, TempUses.of(expr), loads(expr));
+                values.put(key, newValue);
+                srcValue = newValue;
+            }
+            return newExpr;
+        }
+
+        /**
+         * Checks whether an expression is worth numbering: a load or an
+         * operation on values that are not just constants and temporary
+         * variables. Loads are not numbered within statements with function
+         * calls.
+         */
+        private boolean candidate(ImcExpr expr) {
+            if (!ImcSimplifier.pure(expr))
+                return false;
+            if (calls && !loads(expr).isEmpty())
+                return false;
+            if (expr instanceof ImcMEM)
+                return true;
+            if (expr instanceof ImcBINOP)
+                return !leaf(((ImcBINOP) expr).fstExpr) || !leaf(((ImcBINOP) expr).sndExpr);
+            if (expr instanceof ImcUNOP)
+                return !leaf(((ImcUNOP) expr).subExpr);
+            return false;
+        }
+
+        /**
+         * Removes the expressions whose values a statement might change.
+         */
+        private void kill(ImcStmt stmt) {
+            Temp def = null;
+            ImcExpr store = null;
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+                def = ((ImcTEMP) ((ImcMOVE) stmt).dst).temp;
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcMEM)
+                store = ((ImcMEM) ((ImcMOVE) stmt).dst).addr;
+            for (Iterator<Value> values = this.values.values().iterator(); values.hasNext(); ) {
+                Value value = values.next();
+                boolean killed = false;
+                if (def != null)
+                    killed = value.uses.contains(def) || (value.temp == def && value.index < index);
+                if (calls)
+                    killed |= !value.loads.isEmpty();
+                if (store != null)
+                    for (ImcExpr load : value.loads)
+                        killed |= aliases.mayAlias(load, store, graph.fragment);
+                if (killed)
+                    values.remove();
+            }
+        }
+
+    }
+
+    /**
+     * Replaces given occurrences of expressions by temporary variables.
+     */
+    private static class IdentityReplacer extends ImcRewriter {
+
+        private final IdentityHashMap<ImcExpr, Temp> temps;
+
+        private IdentityReplacer(IdentityHashMap<ImcExpr, Temp> temps) {
+            this.temps = temps;
+        }
+
+        @Override
+        public ImcExpr rewrite(ImcExpr expr) {
+            Temp temp = temps.get(expr);
+            return temp == null ? super.rewrite(expr) : new ImcTEMP(temp);
+        }
+
+    }
+
+    /**
+     * Checks whether an expression is a constant, a name or a temporary
+     * variable.
+     */
+    private static boolean leaf(ImcExpr expr) {
+        return expr instanceof ImcCONST || expr instanceof ImcNAME || expr instanceof ImcTEMP;
+    }
+
+    /**
+     * Returns the addresses an expression loads from.
+     */
+    private static Vector<ImcExpr> loads(ImcExpr expr) {
+        Vector<ImcExpr> loads = new Vector<ImcExpr>();
+        loads(expr, loads);
+        return loads;
+    }
+
+    private static void loads(ImcExpr expr, Vector<ImcExpr> loads) {
+        if (expr instanceof ImcMEM) {
+            loads.add(((ImcMEM) expr).addr);
+            loads(((ImcMEM) expr).addr, loads);
+        }
+        if (expr instanceof ImcBINOP) {
+            loads(((ImcBINOP) expr).fstExpr, loads);
+            loads(((ImcBINOP) expr).sndExpr, loads);
+        }
+        if (expr instanceof ImcUNOP)
+            loads(((ImcUNOP) expr).subExpr, loads);
+    }
+
+    /**
+     * Returns the key of an expression that is the same for all expressions
+     * with the same value.
+     */
+    private static String key(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return Long.toString(((ImcCONST) expr).value);
+        if (expr instanceof ImcTEMP)
+            return ((ImcTEMP) expr).temp.toString();
+        if (expr instanceof ImcNAME)
+            return ((ImcNAME) expr).label.name;
+        if (expr instanceof ImcMEM)
+            return "M[" + key(((ImcMEM) expr).addr) + "]";
+        if (expr instanceof ImcBINOP) {
+            ImcBINOP binOp = (ImcBINOP) expr;
+            String fstKey = key(binOp.fstExpr);
+            String sndKey = key(binOp.sndExpr);
+            if (ImcSimplifier.commutative(binOp.oper) && fstKey.compareTo(sndKey) > 0) {
+                String key = fstKey;
+                fstKey = sndKey;
+                sndKey = key;
+            }
+            return "(" + binOp.oper + " " + fstKey + " " + sndKey + ")";
+        }
+        if (expr instanceof ImcUNOP)
+            return "(" + ((ImcUNOP) expr).oper + " " + key(((ImcUNOP) expr).subExpr) + ")";
+        return "?";
+    }
+
+}
@@ -0,0 +1,85 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.imcgen.ImcVisitor;
+import compiler.phases.imcgen.code.*;
+
+/**
+ * Counts nodes of intermediate code trees.
+ *
+ * @author haytham
+ */
+public class ImcCounter implements ImcVisitor<Integer, Object> {
+
+    /**
+     * Returns the number of nodes of an intermediate code tree.
+     *
+     * @param instr The intermediate code tree.
+     * @return The number of nodes.
+     */
+    public static int size(ImcInstr instr) {
+        return instr.accept(new ImcCounter(), null);
+    }
+
+    public Integer visit(ImcBINOP binOp, Object visArg) {
+        return 1 + binOp.fstExpr.accept(this, null) + binOp.sndExpr.accept(this, null);
+    }
+
+    public Integer visit(ImcCALL call, Object visArg) {
+        int size = 1;
+        for (ImcExpr arg : call.args())
+            size += arg.accept(this, null);
+        return size;
+    }
+
+    public Integer visit(ImcCJUMP cjump, Object visArg) {
+        return 1 + cjump.cond.accept(this, null);
+    }
+
+    public Integer visit(ImcCONST constant, Object visArg) {
+        return 1;
+    }
+
+    public Integer visit(ImcESTMT eStmt, Object visArg) {
+        return 1 + eStmt.expr.accept(this, null);
+    }
+
+    public Integer visit(ImcJUMP jump, Object visArg) {
+        return 1;
+    }
+
+    public Integer visit(ImcLABEL label, Object visArg) {
+        return 1;
+    }
+
+    public Integer visit(ImcMEM mem, Object visArg) {
+        return 1 + mem.addr.accept(this, null);
+    }
+
+    public Integer visit(ImcMOVE move, Object visArg) {
+        return 1 + move.dst.accept(this, null) + move.src.accept(this, null);
+    }
+
+    public Integer visit(ImcNAME name, Object visArg) {
+        return 1;
+    }
+
+    public Integer visit(ImcSEXPR sExpr, Object visArg) {
+        return 1 + sExpr.stmt.accept(this, null) + sExpr.expr.accept(this, null);
+    }
+
+    public Integer visit(ImcSTMTS stmts, Object visArg) {
+        int size = 1;
+        for (ImcStmt stmt : stmts.stmts())
+            size += stmt.accept(this, null);
+        return size;
+    }
+
+    public Integer visit(ImcTEMP temp, Object visArg) {
+        return 1;
+    }
+
+    public Integer visit(ImcUNOP unOp, Object visArg) {
+        return 1 + unOp.subExpr.accept(this, null);
+    }
+
+}
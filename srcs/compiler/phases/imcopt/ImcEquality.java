@@ -0,0 +1,48 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.imcgen.code.*;
+
+/**
+ * Structural equality of intermediate code expressions.
+ * <p>
+ * Temporary variables are equal if they are the same temporary variable,
+ * labels are equal if they have the same name.
+ *
+ * @author haytham
+ */
+public class ImcEquality {
+
+    /**
+     * Checks whether two expressions are structurally equal.
+     *
+     * @param fstExpr The first expression.
+     * @param sndExpr The second expression.
+     * @return {@code true} if the expressions are structurally equal,
+     * {@code false} otherwise.
+     */
+    public static boolean equal(ImcExpr fstExpr, ImcExpr sndExpr) {
+        if (fstExpr == sndExpr)
+            return true;
+        if (fstExpr instanceof ImcCONST && sndExpr instanceof ImcCONST)
+            return ((ImcCONST) fstExpr).value == ((ImcCONST) sndExpr).value;
+        if (fstExpr instanceof ImcTEMP && sndExpr instanceof ImcTEMP)
+            return ((ImcTEMP) fstExpr).temp == ((ImcTEMP) sndExpr).temp;
+        if (fstExpr instanceof ImcNAME && sndExpr instanceof ImcNAME)
+            return ((ImcNAME) fstExpr).label.name.equals(((ImcNAME) sndExpr).label.name);
+        if (fstExpr instanceof ImcMEM && sndExpr instanceof ImcMEM)
+            return equal(((ImcMEM) fstExpr).addr, ((ImcMEM) sndExpr).addr);
+        if (fstExpr instanceof ImcBINOP && sndExpr instanceof ImcBINOP) {
+            ImcBINOP fstBinOp = (ImcBINOP) fstExpr;
+            ImcBINOP sndBinOp = (ImcBINOP) sndExpr;
+            return fstBinOp.oper == sndBinOp.oper && equal(fstBinOp.fstExpr, sndBinOp.fstExpr)
+                    && equal(fstBinOp.sndExpr, sndBinOp.sndExpr);
+        }
+        if (fstExpr instanceof ImcUNOP && sndExpr instanceof ImcUNOP) {
+            ImcUNOP fstUnOp = (ImcUNOP) fstExpr;
+            ImcUNOP sndUnOp = (ImcUNOP) sndExpr;
+            return fstUnOp.oper == sndUnOp.oper && equal(fstUnOp.subExpr, sndUnOp.subExpr);
+        }
+        return false;
+    }
+
+}
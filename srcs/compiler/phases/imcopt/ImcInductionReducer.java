@@ -0,0 +1,330 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+import compiler.phases.lincode.ControlFlowGraph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * Strength reduction of induction variables in loops of linear intermediate
+ * code.
+ * <p>
+ * Loops are found in the control-flow graph of a code fragment: a loop consists
+ * of a header, i.e., a basic block other than the entry block, and all basic
+ * blocks from which a jump back to the header can be reached without passing
+ * the header; such loop can only be entered through its header. A basic
+ * induction variable of a loop is a scalar variable {@code i} in memory
+ * that is stored to exactly once within the loop, by {@code i <- i + c} for a
+ * constant {@code c}. If a loop contains no function calls and the address of
+ * such variable is never taken according to {@link ImcAliasAnalysis}, each
+ * multiplication {@code (i + c') * s} within the loop is replaced by
+ * {@code k + c' * s}, where {@code k} is a new temporary variable that is set
+ * to {@code i * s} in a new basic block preceding the header and incremented
+ * by {@code c * s} right after {@code i} is.
+ *
+ * @author haytham
+ */
+public class ImcInductionReducer {
+
+    /**
+     * The alias analysis of the program.
+     */
+    private final ImcAliasAnalysis aliases;
+
+    /**
+     * The control-flow graph of the code fragment being optimized.
+     */
+    private final ControlFlowGraph graph;
+
+    /**
+     * The number of multiplications replaced so far.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new strength reducer of induction variables.
+     *
+     * @param aliases The alias analysis of the program.
+     * @param graph   The control-flow graph of the code fragment to be
+     *                optimized.
+     */
+    public ImcInductionReducer(ImcAliasAnalysis aliases, ControlFlowGraph graph) {
+        this.aliases = aliases;
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the number of multiplications replaced so far.
+     *
+     * @return The number of multiplications replaced so far.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Reduces induction variables of all loops of the code fragment, inner
+     * loops first. The statements of the code fragment are not changed, only
+     * its control-flow graph is.
+     */
+    public void reduce() {
+        for (BasicBlock header : graph.loopHeaders()) {
+            HashSet<BasicBlock> body = graph.loop(header);
+            if (body != null)
+                reduce(header, body);
+        }
+    }
+
+    /**
+     * Reduces induction variables of a loop.
+     *
+     * @param header The header of the loop.
+     * @param body   The basic blocks of the loop.
+     */
+    private void reduce(BasicBlock header, HashSet<BasicBlock> body) {
+        Vector<ImcExpr> vars = new Vector<ImcExpr>();
+        for (BasicBlock block : body) {
+            for (ImcStmt stmt : block.stmts()) {
+                if (!ImcSimplifier.pure(stmt))
+                    return;
+                if (!(stmt instanceof ImcMOVE) || !(((ImcMOVE) stmt).dst instanceof ImcMEM))
+                    continue;
+                ImcExpr addr = ((ImcMEM) ((ImcMOVE) stmt).dst).addr;
+                if (frameChain(addr))
+                    return;
+                if (variable(addr) && !contains(vars, addr))
+                    vars.add(addr);
+            }
+        }
+
+        Vector<ImcStmt> inits = new Vector<ImcStmt>();
+        for (ImcExpr var : vars)
+            reduce(body, var, inits);
+        if (inits.isEmpty())
+            return;
+
+        graph.insertPreheader(header, body, inits);
+    }
+
+    /**
+     * Reduces a single induction variable of a loop.
+     *
+     * @param body  The basic blocks of the loop.
+     * @param var   The address of the candidate induction variable.
+     * @param inits The statements to be executed before the loop is entered.
+     */
+    private void reduce(HashSet<BasicBlock> body, ImcExpr var, Vector<ImcStmt> inits) {
+        // Find the only store to the variable and check it is an increment.
+        BasicBlock updateBlock = null;
+        int update = -1;
+        for (BasicBlock block : body) {
+            for (int i = 0; i < block.stmts().size(); i++) {
+                if (stores(block.stmts().get(i), var)) {
+                    if (updateBlock != null)
+                        return;
+                    updateBlock = block;
+                    update = i;
+                }
+            }
+        }
+        if (updateBlock == null)
+            return;
+        ImcExpr src = ((ImcMOVE) updateBlock.stmts().get(update)).src;
+        if (!(src instanceof ImcBINOP))
+            return;
+        ImcBINOP incr = (ImcBINOP) src;
+        if (!(incr.oper == ImcBINOP.Oper.ADD || incr.oper == ImcBINOP.Oper.SUB) || !(incr.sndExpr instanceof ImcCONST))
+            return;
+        if (!value(incr.fstExpr, var, updateBlock.stmts(), update))
+            return;
+        long step = ((ImcCONST) incr.sndExpr).value;
+        if (incr.oper == ImcBINOP.Oper.SUB)
+            step = -step;
+        if (aliases.addressTaken(var, graph.fragment))
+            return;
+
+        // Replace multiplications.
+        Replacer replacer = new Replacer(var);
+        for (BasicBlock block : body) {
+            replacer.stmts = block.stmts();
+            for (int i = 0; i < block.stmts().size(); i++) {
+                replacer.index = i;
+                block.stmts().set(i, replacer.rewrite(block.stmts().get(i)));
+            }
+        }
+        if (replacer.temps.isEmpty())
+            return;
+        numOfRewrites += replacer.numOfRewrites();
+
+        // Maintain the new temporary variables.
+        for (HashMap.Entry<Long, Temp> entry : replacer.temps.entrySet()) {
+            long scale = entry.getKey();
+            ImcTEMP temp = new ImcTEMP(entry.getValue());
+            updateBlock.stmts().insertElementAt(new ImcMOVE(temp,
+                    new ImcBINOP(ImcBINOP.Oper.ADD, temp, new ImcCONST(step * scale))), update + 1);
+            inits.add(new ImcMOVE(temp, new ImcBINOP(ImcBINOP.Oper.MUL, new ImcMEM(var), new ImcCONST(scale))));
+        }
+    }
+
+    /**
+     * Replaces multiplications of an induction variable by a constant with new
+     * temporary variables.
+     */
+    private class Replacer extends ImcRewriter {
+
+        /**
+         * The address of the induction variable.
+         */
+        private final ImcExpr var;
+
+        /**
+         * The new temporary variables by the constants they are scaled by.
+         */
+        private final HashMap<Long, Temp> temps = new HashMap<Long, Temp>();
+
+        /**
+         * The statements of the basic block being rewritten.
+         */
+        private Vector<ImcStmt> stmts;
+
+        /**
+         * The index of the statement being rewritten.
+         */
+        private int index;
+
+        private Replacer(ImcExpr var) {
+            this.var = var;
+        }
+
+        @Override
+        public ImcInstr visit(ImcBINOP binOp, Object visArg) {
+            if (binOp.oper == ImcBINOP.Oper.MUL && binOp.sndExpr instanceof ImcCONST) {
+                long scale = ((ImcCONST) binOp.sndExpr).value;
+                ImcExpr expr = binOp.fstExpr;
+                long offset = 0;
+                if (expr instanceof ImcBINOP && ((ImcBINOP) expr).sndExpr instanceof ImcCONST) {
+                    ImcBINOP sum = (ImcBINOP) expr;
+                    if (sum.oper == ImcBINOP.Oper.ADD || sum.oper == ImcBINOP.Oper.SUB) {
+                        offset = ((ImcCONST) sum.sndExpr).value;
+                        if (sum.oper == ImcBINOP.Oper.SUB)
+                            offset = -offset;
+                        expr = sum.fstExpr;
+                    }
+                }
+                if (value(expr, var, stmts, index)) {
+                    numOfRewrites++;
+                    Temp temp = temps.get(scale);
+                    if (temp == null) {
+                        temp = new Temp();
+                        temps.put(scale, temp);
+                    }
+                    if (offset == 0)
+                        return new ImcTEMP(temp);
+                    return new ImcBINOP(ImcBINOP.Oper.ADD, new ImcTEMP(temp), new ImcCONST(offset * scale));
+                }
+            }
+            return super.visit(binOp, visArg);
+        }
+
+    }
+
+    /**
+     * Checks whether an expression of a statement yields the value the
+     * variable has when the statement is executed, i.e., whether it is either
+     * a load of the variable or a temporary variable loaded from the variable
+     * earlier in the same basic block without storing to the variable in
+     * between.
+     *
+     * @param expr  The expression.
+     * @param var   The address of the variable.
+     * @param stmts The statements of the basic block.
+     * @param index The index of the statement within the basic block.
+     * @return {@code true} if the expression yields the value of the variable,
+     * {@code false} otherwise.
+     */
+    private static boolean value(ImcExpr expr, ImcExpr var, Vector<ImcStmt> stmts, int index) {
+        if (expr instanceof ImcMEM)
+            return ImcEquality.equal(((ImcMEM) expr).addr, var);
+        if (!(expr instanceof ImcTEMP))
+            return false;
+        Temp temp = ((ImcTEMP) expr).temp;
+        for (int i = index - 1; i >= 0; i--) {
+            ImcStmt stmt = stmts.get(i);
+            if (stores(stmt, var))
+                return false;
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP
+                    && ((ImcTEMP) ((ImcMOVE) stmt).dst).temp == temp) {
+                ImcExpr src = ((ImcMOVE) stmt).src;
+                return src instanceof ImcMEM && ImcEquality.equal(((ImcMEM) src).addr, var);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an address is the address of a scalar variable, i.e.,
+     * either a name or a constant offset from a frame.
+     *
+     * @param addr The address.
+     * @return {@code true} if the address is the address of a variable,
+     * {@code false} otherwise.
+     */
+    private boolean variable(ImcExpr addr) {
+        if (addr instanceof ImcNAME)
+            return true;
+        if (!(addr instanceof ImcBINOP))
+            return false;
+        ImcBINOP binOp = (ImcBINOP) addr;
+        return binOp.oper == ImcBINOP.Oper.ADD && frameChain(binOp.fstExpr) && binOp.sndExpr instanceof ImcCONST;
+    }
+
+    /**
+     * Checks whether an expression is the frame pointer of the code fragment
+     * being optimized or a frame pointer of an enclosing function, i.e., a
+     * chain of static links.
+     *
+     * @param expr The expression.
+     * @return {@code true} if the expression is a frame pointer, {@code false}
+     * otherwise.
+     */
+    private boolean frameChain(ImcExpr expr) {
+        return frameChain(expr, graph.fragment.FP);
+    }
+
+    private static boolean frameChain(ImcExpr expr, Temp FP) {
+        if (expr instanceof ImcTEMP)
+            return ((ImcTEMP) expr).temp == FP;
+        if (expr instanceof ImcMEM)
+            return frameChain(((ImcMEM) expr).addr, FP);
+        return false;
+    }
+
+    /**
+     * Checks whether a statement stores to a variable.
+     *
+     * @param stmt The statement.
+     * @param var  The address of the variable.
+     * @return {@code true} if the statement stores to the variable,
+     * {@code false} otherwise.
+     */
+    private static boolean stores(ImcStmt stmt, ImcExpr var) {
+        if (!(stmt instanceof ImcMOVE) || !(((ImcMOVE) stmt).dst instanceof ImcMEM))
+            return false;
+        return ImcEquality.equal(((ImcMEM) ((ImcMOVE) stmt).dst).addr, var);
+    }
+
+    /**
+     * Checks whether a list of addresses contains an address.
+     */
+    private static boolean contains(Vector<ImcExpr> addrs, ImcExpr addr) {
+        for (ImcExpr other : addrs)
+            if (ImcEquality.equal(other, addr))
+                return true;
+        return false;
+    }
+
+}
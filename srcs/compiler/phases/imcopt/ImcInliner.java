@@ -0,0 +1,323 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.CallGraph;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.Fragment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Inlining of small leaf functions in linear intermediate code.
+ * <p>
+ * A call is inlined if it is the source of a move to a temporary variable or
+ * an expression statement of its own and the function called is a leaf, i.e.,
+ * calls no functions, that is small enough: either its code is no larger than
+ * the size limit or it is called from a single call site and its code is no
+ * larger than four times the size limit. As a leaf cannot be recursive and a
+ * function whose calls have all been inlined becomes a leaf, calls are inlined
+ * in rounds until no more can be.
+ * <p>
+ * The frame of the function called must only be accessed by loads and stores
+ * at constant offsets from its frame pointer. Each local variable and each
+ * parameter is then replaced by a new temporary variable, the latter set to
+ * the value of its argument before the inlined code. The static link is
+ * replaced by the static link argument, which must be a frame pointer or a
+ * chain of static links of the caller and is thus not evaluated at all. All
+ * temporary variables and labels of the inlined code are renamed, the result
+ * is taken from the renamed return value.
+ *
+ * @author haytham
+ */
+public class ImcInliner {
+
+    /**
+     * The fragments of the program.
+     */
+    private final List<Fragment> fragments;
+
+    /**
+     * The size limit of functions inlined.
+     */
+    private final int maxSize;
+
+    /**
+     * The number of calls inlined so far.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new inliner.
+     *
+     * @param fragments The fragments of the program.
+     * @param maxSize   The size limit of functions inlined.
+     */
+    public ImcInliner(List<Fragment> fragments, int maxSize) {
+        this.fragments = fragments;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the number of calls inlined so far.
+     *
+     * @return The number of calls inlined so far.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Inlines calls in all code fragments.
+     */
+    public void inline() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            CallGraph callGraph = new CallGraph(fragments);
+            for (Fragment fragment : fragments) {
+                if (!(fragment instanceof CodeFragment))
+                    continue;
+                CodeFragment caller = (CodeFragment) fragment;
+                if (callGraph.leaf(caller))
+                    continue;
+                Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+                for (ImcStmt stmt : caller.stmts()) {
+                    ImcCALL call = call(stmt);
+                    CodeFragment callee = call == null ? null : callGraph.fragment(call.label);
+                    if (callee != null && inlinable(callee, callGraph)) {
+                        Vector<ImcStmt> body = expand(caller, callee, stmt, call);
+                        if (body != null) {
+                            stmts.addAll(body);
+                            numOfRewrites++;
+                            changed = true;
+                            continue;
+                        }
+                    }
+                    stmts.add(stmt);
+                }
+                caller.stmts().clear();
+                caller.stmts().addAll(stmts);
+            }
+        }
+    }
+
+    /**
+     * Returns the call made by a statement if it can be inlined.
+     *
+     * @param stmt The statement.
+     * @return The call or {@code null} if the statement is not a call that
+     * can be inlined.
+     */
+    private static ImcCALL call(ImcStmt stmt) {
+        if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP
+                && ((ImcMOVE) stmt).src instanceof ImcCALL)
+            return (ImcCALL) ((ImcMOVE) stmt).src;
+        if (stmt instanceof ImcESTMT && ((ImcESTMT) stmt).expr instanceof ImcCALL)
+            return (ImcCALL) ((ImcESTMT) stmt).expr;
+        return null;
+    }
+
+    /**
+     * Checks whether a function is a small leaf.
+     */
+    private boolean inlinable(CodeFragment callee, CallGraph callGraph) {
+        if (!callGraph.leaf(callee))
+            return false;
+        int size = 0;
+        for (ImcStmt stmt : callee.stmts())
+            size += ImcCounter.size(stmt);
+        return size <= maxSize || (callGraph.numOfCallSites(callee.frame.label) == 1 && size <= 4 * maxSize);
+    }
+
+    /**
+     * Returns the inlined code of a call.
+     *
+     * @param caller The code fragment the call appears in.
+     * @param callee The code fragment of the function called.
+     * @param stmt   The statement making the call.
+     * @param call   The call.
+     * @return The statements replacing the statement making the call or
+     * {@code null} if the frame of the function called is accessed in a way
+     * that prevents inlining.
+     */
+    private static Vector<ImcStmt> expand(CodeFragment caller, CodeFragment callee, ImcStmt stmt, ImcCALL call) {
+        Vector<ImcExpr> args = call.args();
+        Renamer renamer = new Renamer(callee, args);
+        Vector<ImcStmt> body = new Vector<ImcStmt>();
+        for (ImcStmt calleeStmt : callee.stmts())
+            body.add(renamer.rename(calleeStmt));
+        if (renamer.failed)
+            return null;
+        if (renamer.staticLink ? !ImcAliasAnalysis.frameChain(args.firstElement(), caller.FP)
+                : !ImcSimplifier.pure(args.firstElement()))
+            return null;
+
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        for (int arg = 1; arg < args.size(); arg++)
+            stmts.add(new ImcMOVE(new ImcTEMP(renamer.params[arg]), args.get(arg)));
+        stmts.addAll(body);
+        if (stmt instanceof ImcMOVE)
+            stmts.add(new ImcMOVE(((ImcMOVE) stmt).dst, new ImcTEMP(renamer.temp(callee.RV))));
+        return stmts;
+    }
+
+    /**
+     * Renames temporary variables and labels of the code of a function being
+     * inlined and replaces accesses to its frame.
+     */
+    private static class Renamer extends ImcRewriter {
+
+        /**
+         * The code fragment of the function being inlined.
+         */
+        private final CodeFragment callee;
+
+        /**
+         * The arguments of the call.
+         */
+        private final Vector<ImcExpr> args;
+
+        /**
+         * The temporary variables replacing the parameters.
+         */
+        private final Temp[] params;
+
+        /**
+         * The temporary variables replacing the local variables by their
+         * offsets.
+         */
+        private final HashMap<Long, Temp> locals = new HashMap<Long, Temp>();
+
+        /**
+         * The new temporary variables.
+         */
+        private final HashMap<Temp, Temp> temps = new HashMap<Temp, Temp>();
+
+        /**
+         * The new labels by names of the old ones.
+         */
+        private final HashMap<String, Label> labels = new HashMap<String, Label>();
+
+        /**
+         * Whether the static link is loaded.
+         */
+        private boolean staticLink = false;
+
+        /**
+         * Whether the frame is accessed in a way that prevents inlining.
+         */
+        private boolean failed = false;
+
+        Renamer(CodeFragment callee, Vector<ImcExpr> args) {
+            this.callee = callee;
+            this.args = args;
+            this.params = new Temp[args.size()];
+            for (int arg = 1; arg < args.size(); arg++)
+                params[arg] = new Temp();
+        }
+
+        ImcStmt rename(ImcStmt stmt) {
+            return rewrite(stmt);
+        }
+
+        Temp temp(Temp temp) {
+            Temp newTemp = temps.get(temp);
+            if (newTemp == null) {
+                newTemp = new Temp();
+                temps.put(temp, newTemp);
+            }
+            return newTemp;
+        }
+
+        private Label label(Label label) {
+            Label newLabel = labels.get(label.name);
+            if (newLabel == null) {
+                newLabel = new Label();
+                labels.put(label.name, newLabel);
+            }
+            return newLabel;
+        }
+
+        /**
+         * Returns the offset of a frame access or {@code null} if the address
+         * is not a constant offset from the frame pointer.
+         */
+        private Long offset(ImcExpr addr) {
+            if (addr instanceof ImcTEMP && ((ImcTEMP) addr).temp == callee.FP)
+                return 0L;
+            if (addr instanceof ImcBINOP && ((ImcBINOP) addr).oper == ImcBINOP.Oper.ADD
+                    && ((ImcBINOP) addr).fstExpr instanceof ImcTEMP
+                    && ((ImcTEMP) ((ImcBINOP) addr).fstExpr).temp == callee.FP
+                    && ((ImcBINOP) addr).sndExpr instanceof ImcCONST)
+                return ((ImcCONST) ((ImcBINOP) addr).sndExpr).value;
+            return null;
+        }
+
+        @Override
+        public ImcInstr visit(ImcMEM mem, Object visArg) {
+            Long offset = offset(mem.addr);
+            if (offset == null)
+                return super.visit(mem, visArg);
+            if (offset == 0) {
+                staticLink = true;
+                return args.firstElement();
+            }
+            if (offset < 0) {
+                Temp local = locals.get(offset);
+                if (local == null) {
+                    local = new Temp();
+                    locals.put(offset, local);
+                }
+                return new ImcTEMP(local);
+            }
+            if (offset % 8 == 0 && offset / 8 < params.length)
+                return new ImcTEMP(params[(int) (offset / 8)]);
+            failed = true;
+            return mem;
+        }
+
+        @Override
+        public ImcInstr visit(ImcMOVE move, Object visArg) {
+            if (move.dst instanceof ImcMEM) {
+                Long offset = offset(((ImcMEM) move.dst).addr);
+                if (offset != null && offset == 0)
+                    failed = true;
+            }
+            return super.visit(move, visArg);
+        }
+
+        @Override
+        public ImcInstr visit(ImcTEMP temp, Object visArg) {
+            if (temp.temp == callee.FP)
+                failed = true;
+            return new ImcTEMP(temp(temp.temp));
+        }
+
+        @Override
+        public ImcInstr visit(ImcCALL call, Object visArg) {
+            failed = true;
+            return call;
+        }
+
+        @Override
+        public ImcInstr visit(ImcLABEL label, Object visArg) {
+            return new ImcLABEL(label(label.label));
+        }
+
+        @Override
+        public ImcInstr visit(ImcJUMP jump, Object visArg) {
+            return new ImcJUMP(label(jump.label));
+        }
+
+        @Override
+        public ImcInstr visit(ImcCJUMP cjump, Object visArg) {
+            return new ImcCJUMP(rewrite(cjump.cond), label(cjump.posLabel), label(cjump.negLabel));
+        }
+
+    }
+
+}
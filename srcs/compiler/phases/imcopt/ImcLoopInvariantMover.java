@@ -0,0 +1,251 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+import compiler.phases.lincode.ControlFlowGraph;
+
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * Loop-invariant code motion in linear intermediate code.
+ * <p>
+ * Loops are processed inner loops first. An expression is invariant in a loop
+ * if it uses no temporary variable defined within the loop and, if it loads
+ * from memory, the loop contains no function calls and no store that might
+ * alias the load. Maximal invariant loads and operations are moved into
+ * temporary variables set in a new basic block preceding the header of the
+ * loop. As the new basic block is executed even if the loop body is not, an
+ * expression that might fail, i.e., a load from a computed address or a
+ * division by anything but a nonzero constant, is moved only from the header,
+ * which is executed whenever the loop is entered. Frame pointers and chains of
+ * static links are never moved on their own so that addresses of variables
+ * remain recognizable.
+ *
+ * @author haytham
+ */
+public class ImcLoopInvariantMover {
+
+    /**
+     * The alias analysis.
+     */
+    private final ImcAliasAnalysis aliases;
+
+    /**
+     * The control-flow graph of the code fragment being optimized.
+     */
+    private final ControlFlowGraph graph;
+
+    /**
+     * The number of expressions moved so far.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new loop-invariant code mover.
+     *
+     * @param aliases The alias analysis.
+     * @param graph   The control-flow graph of the code fragment to be
+     *                optimized.
+     */
+    public ImcLoopInvariantMover(ImcAliasAnalysis aliases, ControlFlowGraph graph) {
+        this.aliases = aliases;
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the number of expressions moved out of loops so far.
+     *
+     * @return The number of expressions moved so far.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Moves invariant expressions out of all loops of the code fragment. The
+     * statements of the code fragment are not changed, only its control-flow
+     * graph is.
+     */
+    public void move() {
+        for (BasicBlock header : graph.loopHeaders()) {
+            HashSet<BasicBlock> body = graph.loop(header);
+            if (body != null)
+                move(header, body);
+        }
+    }
+
+    /**
+     * Moves invariant expressions out of a loop.
+     *
+     * @param header The header of the loop.
+     * @param body   The basic blocks of the loop.
+     */
+    private void move(BasicBlock header, HashSet<BasicBlock> body) {
+        Mover mover = new Mover();
+        for (BasicBlock block : body) {
+            for (ImcStmt stmt : block.stmts()) {
+                if (!ImcSimplifier.pure(stmt))
+                    mover.calls = true;
+                if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+                    mover.defs.add(((ImcTEMP) ((ImcMOVE) stmt).dst).temp);
+                if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcMEM)
+                    mover.stores.add(((ImcMEM) ((ImcMOVE) stmt).dst).addr);
+            }
+        }
+
+        for (BasicBlock block : body) {
+            mover.header = block == header;
+            Vector<ImcStmt> stmts = block.stmts();
+            for (int i = 0; i < stmts.size(); i++)
+                stmts.set(i, mover.move(stmts.get(i)));
+        }
+        if (mover.inits.isEmpty())
+            return;
+        numOfRewrites += mover.inits.size();
+        graph.insertPreheader(header, body, mover.inits);
+    }
+
+    /**
+     * Replaces maximal invariant expressions with temporary variables.
+     */
+    private class Mover extends ImcRewriter {
+
+        /**
+         * The temporary variables defined within the loop.
+         */
+        private final HashSet<Temp> defs = new HashSet<Temp>();
+
+        /**
+         * The addresses stored to within the loop.
+         */
+        private final Vector<ImcExpr> stores = new Vector<ImcExpr>();
+
+        /**
+         * Whether the loop contains function calls.
+         */
+        private boolean calls = false;
+
+        /**
+         * Whether the statements being rewritten are in the header of the loop.
+         */
+        private boolean header;
+
+        /**
+         * The moves of invariant expressions into temporary variables.
+         */
+        private final Vector<ImcStmt> inits = new Vector<ImcStmt>();
+
+        /**
+         * Rewrites a statement; the destination of a move is never replaced,
+         * only its address is.
+         *
+         * @param stmt The statement.
+         * @return The rewritten statement.
+         */
+        private ImcStmt move(ImcStmt stmt) {
+            if (stmt instanceof ImcMOVE) {
+                ImcMOVE move = (ImcMOVE) stmt;
+                ImcExpr dst = move.dst;
+                if (dst instanceof ImcMEM) {
+                    ImcExpr addr = address(((ImcMEM) dst).addr);
+                    dst = addr == ((ImcMEM) dst).addr ? dst : new ImcMEM(addr);
+                }
+                ImcExpr src = rewrite(move.src);
+                return (dst == move.dst && src == move.src) ? move : new ImcMOVE(dst, src);
+            }
+            return rewrite(stmt);
+        }
+
+        /**
+         * Rewrites an address of a load or a store; a constant offset is left
+         * in place, as it is free in a load or a store.
+         */
+        private ImcExpr address(ImcExpr addr) {
+            if (addr instanceof ImcBINOP && ((ImcBINOP) addr).oper == ImcBINOP.Oper.ADD
+                    && ((ImcBINOP) addr).sndExpr instanceof ImcCONST) {
+                ImcBINOP binOp = (ImcBINOP) addr;
+                ImcExpr fstExpr = rewrite(binOp.fstExpr);
+                return fstExpr == binOp.fstExpr ? binOp : new ImcBINOP(binOp.oper, fstExpr, binOp.sndExpr);
+            }
+            return rewrite(addr);
+        }
+
+        @Override
+        public ImcExpr rewrite(ImcExpr expr) {
+            if (movable(expr)) {
+                for (ImcStmt init : inits) {
+                    if (ImcEquality.equal(((ImcMOVE) init).src, expr))
+                        return ((ImcMOVE) init).dst;
+                }
+                ImcTEMP temp = new ImcTEMP(new Temp());
+                inits.add(new ImcMOVE(temp, expr));
+                return temp;
+            }
+            if (expr instanceof ImcMEM) {
+                ImcExpr addr = address(((ImcMEM) expr).addr);
+                return addr == ((ImcMEM) expr).addr ? expr : new ImcMEM(addr);
+            }
+            return super.rewrite(expr);
+        }
+
+        /**
+         * Checks whether an expression is worth moving and can be moved.
+         */
+        private boolean movable(ImcExpr expr) {
+            if (!(expr instanceof ImcMEM || expr instanceof ImcBINOP || expr instanceof ImcUNOP))
+                return false;
+            if (ImcAliasAnalysis.frameChain(expr, graph.fragment.FP))
+                return false;
+            return invariant(expr) && (header || safe(expr));
+        }
+
+        /**
+         * Checks whether the value of an expression is the same throughout the
+         * loop.
+         */
+        private boolean invariant(ImcExpr expr) {
+            if (expr instanceof ImcCONST || expr instanceof ImcNAME)
+                return true;
+            if (expr instanceof ImcTEMP)
+                return !defs.contains(((ImcTEMP) expr).temp);
+            if (expr instanceof ImcBINOP)
+                return invariant(((ImcBINOP) expr).fstExpr) && invariant(((ImcBINOP) expr).sndExpr);
+            if (expr instanceof ImcUNOP)
+                return invariant(((ImcUNOP) expr).subExpr);
+            if (expr instanceof ImcMEM) {
+                ImcExpr addr = ((ImcMEM) expr).addr;
+                if (calls || !invariant(addr))
+                    return false;
+                for (ImcExpr store : stores)
+                    if (aliases.mayAlias(addr, store, graph.fragment))
+                        return false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Checks whether an expression can be evaluated even if the loop body
+         * is not executed.
+         */
+        private boolean safe(ImcExpr expr) {
+            if (expr instanceof ImcBINOP) {
+                ImcBINOP binOp = (ImcBINOP) expr;
+                if ((binOp.oper == ImcBINOP.Oper.DIV || binOp.oper == ImcBINOP.Oper.MOD)
+                        && !(binOp.sndExpr instanceof ImcCONST && ((ImcCONST) binOp.sndExpr).value != 0))
+                    return false;
+                return safe(binOp.fstExpr) && safe(binOp.sndExpr);
+            }
+            if (expr instanceof ImcUNOP)
+                return safe(((ImcUNOP) expr).subExpr);
+            if (expr instanceof ImcMEM)
+                return aliases.variable(((ImcMEM) expr).addr, graph.fragment.FP)
+                        && safe(((ImcMEM) expr).addr);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,332 @@
+package compiler.phases.imcopt;
+
+import common.report.Report;
+import compiler.phases.Phase;
+import compiler.phases.imcgen.code.ImcStmt;
+import compiler.phases.frames.Label;
+import compiler.phases.lincode.CallGraph;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.ControlFlowGraph;
+import compiler.phases.lincode.DataFragment;
+import compiler.phases.lincode.Fragment;
+import compiler.phases.lincode.LinCode;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Optimization of linear intermediate code.
+ * <p>
+ * The code fragments produced by {@link LinCode} are rewritten in place. The
+ * passes run depend on {@code --opt-level}: level 0 runs none; level 1 (the
+ * default) turns self-recursive tail calls into loops, inlines small leaf
+ * functions, removes fragments unreachable from the main code fragment,
+ * simplifies code, reduces strength, moves loop-invariant code out of loops,
+ * eliminates common subexpressions within basic blocks and marks other tail
+ * calls for the back end to turn into jumps; level 2 additionally converts
+ * code fragments into SSA form for constant propagation, value numbering and
+ * dead code elimination. The size limit of functions inlined is set by
+ * {@code --inline-size}. If {@code --opt-stats=on} is given, the rewrites,
+ * sizes of code and times of all passes are printed out once the phase is
+ * done.
+ *
+ * @author haytham
+ */
+public class ImcOpt extends Phase {
+
+    /**
+     * The statistics of a pass.
+     */
+    private static class PassStats {
+
+        /** The number of rewrites made. */
+        int numOfRewrites = 0;
+
+        /** The number of nodes of intermediate code before the pass. */
+        int numOfNodesBefore = 0;
+
+        /** The number of nodes of intermediate code after the pass. */
+        int numOfNodesAfter = 0;
+
+        /** The time spent in the pass in nanoseconds. */
+        long time = 0;
+
+    }
+
+    /**
+     * The statistics of passes in the order they are run.
+     */
+    private static final LinkedHashMap<String, PassStats> passStats = new LinkedHashMap<String, PassStats>();
+
+    /**
+     * The number of nodes of intermediate code at the beginning of the current
+     * pass.
+     */
+    private static int numOfNodes;
+
+    /**
+     * The time at the beginning of the current pass.
+     */
+    private static long startTime;
+
+    /**
+     * Constructs a new phase for optimizing linear intermediate code.
+     */
+    public ImcOpt() {
+        super("imcopt");
+    }
+
+    /**
+     * Returns the optimization level.
+     *
+     * @return The optimization level.
+     */
+    public static int optLevel() {
+        String optLevel = compiler.Main.cmdLineArgValue("--opt-level");
+        return optLevel == null ? 1 : Integer.parseInt(optLevel);
+    }
+
+    /**
+     * Returns the size limit of functions inlined.
+     *
+     * @return The size limit of functions inlined.
+     */
+    public static int inlineSize() {
+        String inlineSize = compiler.Main.cmdLineArgValue("--inline-size");
+        return inlineSize == null ? 40 : Integer.parseInt(inlineSize);
+    }
+
+    /**
+     * Optimizes all code fragments.
+     */
+    public void optimize() {
+        int optLevel = optLevel();
+        if (optLevel == 0)
+            return;
+        ImcAliasAnalysis aliases = new ImcAliasAnalysis(LinCode.fragments());
+        for (Fragment fragment : LinCode.fragments()) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            Vector<ImcStmt> stmts = ((CodeFragment) fragment).stmts();
+            begin(size(stmts));
+            ImcTailCallEliminator tailCallEliminator = new ImcTailCallEliminator(aliases, (CodeFragment) fragment);
+            tailCallEliminator.eliminate();
+            end("tailcall", tailCallEliminator.numOfRewrites(), size(stmts));
+        }
+
+        begin(size(LinCode.fragments()));
+        ImcInliner inliner = new ImcInliner(LinCode.fragments(), inlineSize());
+        inliner.inline();
+        end("inline", inliner.numOfRewrites(), size(LinCode.fragments()));
+
+        begin(size(LinCode.fragments()));
+        end("deadfun", removeUnreachable(), size(LinCode.fragments()));
+
+        // Inlining replaces frame accesses with temporary variables.
+        aliases = new ImcAliasAnalysis(LinCode.fragments());
+        for (Fragment fragment : LinCode.fragments()) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            Vector<ImcStmt> stmts = ((CodeFragment) fragment).stmts();
+
+            begin(size(stmts));
+            end("simplify", simplify(stmts), size(stmts));
+
+            if (optLevel >= 2) {
+                begin(size(stmts));
+                SsaForm ssa = new SsaForm(new ControlFlowGraph((CodeFragment) fragment));
+                end("ssa", 0, ssa.size());
+                begin(ssa.size());
+                end("sccp", new SsaConstantPropagator(ssa).run(), ssa.size());
+                begin(ssa.size());
+                end("gvn", new SsaValueNumbering(ssa).run(), ssa.size());
+                begin(ssa.size());
+                end("dce", new SsaDeadCodeEliminator(ssa).run(), ssa.size());
+                begin(ssa.size());
+                ssa.destruct();
+                ssa.graph.threadJumps();
+                ssa.graph.removeUnreachable();
+                ssa.graph.schedule();
+                ssa.graph.linearize();
+                end("unssa", 0, size(stmts));
+            }
+
+            begin(size(stmts));
+            ControlFlowGraph graph = new ControlFlowGraph((CodeFragment) fragment);
+            ImcInductionReducer inductionReducer = new ImcInductionReducer(aliases, graph);
+            inductionReducer.reduce();
+            if (inductionReducer.numOfRewrites() > 0) {
+                graph.schedule();
+                graph.linearize();
+            }
+            end("induction", inductionReducer.numOfRewrites(), size(stmts));
+
+            begin(size(stmts));
+            end("strength", reduceStrength(stmts), size(stmts));
+
+            begin(size(stmts));
+            graph = new ControlFlowGraph((CodeFragment) fragment);
+            ImcLoopInvariantMover loopInvariantMover = new ImcLoopInvariantMover(aliases, graph);
+            loopInvariantMover.move();
+            if (loopInvariantMover.numOfRewrites() > 0) {
+                graph.schedule();
+                graph.linearize();
+            }
+            end("licm", loopInvariantMover.numOfRewrites(), size(stmts));
+        }
+
+        // Common subexpressions hide frame pointers from analyses of other
+        // code fragments, so they are eliminated once all other passes are done.
+        for (Fragment fragment : LinCode.fragments()) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            Vector<ImcStmt> stmts = ((CodeFragment) fragment).stmts();
+            begin(size(stmts));
+            ControlFlowGraph graph = new ControlFlowGraph((CodeFragment) fragment);
+            ImcCommonSubexprEliminator cse = new ImcCommonSubexprEliminator(aliases, graph);
+            cse.eliminate();
+            graph.linearize();
+            end("cse", cse.numOfRewrites(), size(stmts));
+        }
+
+        // Tail calls are marked last, as no other pass may follow them.
+        for (Fragment fragment : LinCode.fragments()) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            Vector<ImcStmt> stmts = ((CodeFragment) fragment).stmts();
+            begin(size(stmts));
+            ImcTailCallEliminator tailCallEliminator = new ImcTailCallEliminator(aliases, (CodeFragment) fragment);
+            tailCallEliminator.mark(LinCode.fragments());
+            end("tailjump", tailCallEliminator.numOfRewrites(), size(stmts));
+        }
+    }
+
+    /**
+     * Removes code and data fragments unreachable from the main code fragment
+     * in the call graph.
+     *
+     * @return The number of fragments removed.
+     */
+    private static int removeUnreachable() {
+        CallGraph callGraph = new CallGraph(LinCode.fragments());
+        CodeFragment main = callGraph.fragment(new Label(""));
+        if (main == null)
+            return 0;
+        HashSet<String> reachable = callGraph.reachable(main);
+        int numOfRemovals = 0;
+        for (Fragment fragment : LinCode.fragments()) {
+            Label label = fragment instanceof CodeFragment ? ((CodeFragment) fragment).frame.label
+                    : ((DataFragment) fragment).label;
+            if (!reachable.contains(label.name)) {
+                LinCode.remove(fragment);
+                numOfRemovals++;
+            }
+        }
+        return numOfRemovals;
+    }
+
+    /**
+     * Starts measuring a pass.
+     *
+     * @param size The number of nodes of intermediate code before the pass.
+     */
+    private static void begin(int size) {
+        numOfNodes = size;
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring a pass and adds the measurements to its statistics.
+     *
+     * @param pass          The name of the pass.
+     * @param numOfRewrites The number of rewrites made by the pass.
+     * @param size          The number of nodes of intermediate code after the
+     *                      pass.
+     */
+    private static void end(String pass, int numOfRewrites, int size) {
+        long time = System.nanoTime() - startTime;
+        PassStats stats = passStats.get(pass);
+        if (stats == null) {
+            stats = new PassStats();
+            passStats.put(pass, stats);
+        }
+        stats.numOfRewrites += numOfRewrites;
+        stats.numOfNodesBefore += numOfNodes;
+        stats.numOfNodesAfter += size;
+        stats.time += time;
+    }
+
+    /**
+     * Simplifies statements in place.
+     *
+     * @param stmts The statements.
+     * @return The number of rewrites.
+     */
+    private static int simplify(Vector<ImcStmt> stmts) {
+        ImcSimplifier simplifier = new ImcSimplifier();
+        for (int i = 0; i < stmts.size(); i++)
+            stmts.set(i, simplifier.simplify(stmts.get(i)));
+        return simplifier.numOfRewrites();
+    }
+
+    /**
+     * Replaces multiplications, divisions and remainders by powers of two with
+     * shifts in place.
+     *
+     * @param stmts The statements.
+     * @return The number of rewrites.
+     */
+    private static int reduceStrength(Vector<ImcStmt> stmts) {
+        ImcStrengthReducer strengthReducer = new ImcStrengthReducer();
+        for (int i = 0; i < stmts.size(); i++)
+            stmts.set(i, strengthReducer.rewrite(stmts.get(i)));
+        return strengthReducer.numOfRewrites();
+    }
+
+    /**
+     * Returns the number of nodes of statements.
+     *
+     * @param stmts The statements.
+     * @return The number of nodes.
+     */
+    private static int size(Vector<ImcStmt> stmts) {
+        int size = 0;
+        for (ImcStmt stmt : stmts)
+            size += ImcCounter.size(stmt);
+        return size;
+    }
+
+    /**
+     * Returns the number of nodes of all code fragments.
+     *
+     * @param fragments The fragments.
+     * @return The number of nodes.
+     */
+    private static int size(List<Fragment> fragments) {
+        int size = 0;
+        for (Fragment fragment : fragments) {
+            if (fragment instanceof CodeFragment)
+                size += size(((CodeFragment) fragment).stmts());
+        }
+        return size;
+    }
+
+    @Override
+    public void close() {
+        String optStats = compiler.Main.cmdLineArgValue("--opt-stats");
+        if (optStats != null && optStats.equals("on")) {
+            for (Map.Entry<String, PassStats> entry : passStats.entrySet()) {
+                PassStats stats = entry.getValue();
+                Report.info(String.format("Pass %s: %d rewrites, %d -> %d nodes, %.2f ms.", entry.getKey(),
+                        stats.numOfRewrites, stats.numOfNodesBefore, stats.numOfNodesAfter, stats.time / 1e6));
+            }
+        }
+        for (Fragment fragment : LinCode.fragments())
+            fragment.log(logger);
+        super.close();
+    }
+
+}
@@ -0,0 +1,134 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.imcgen.ImcVisitor;
+import compiler.phases.imcgen.code.*;
+
+import java.util.Vector;
+
+/**
+ * A base for rewriting intermediate code trees.
+ * <p>
+ * Trees are rewritten bottom-up and new trees are returned; the original trees
+ * are left intact as parts of them may be shared. A node is rebuilt only if
+ * any of its subtrees has changed. Subclasses override the visitors of nodes
+ * they want to rewrite.
+ *
+ * @author haytham
+ */
+public abstract class ImcRewriter implements ImcVisitor<ImcInstr, Object> {
+
+    /**
+     * The number of rewrites made so far.
+     */
+    protected int numOfRewrites = 0;
+
+    /**
+     * Returns the number of rewrites made so far.
+     *
+     * @return The number of rewrites made so far.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Rewrites a statement.
+     *
+     * @param stmt The statement.
+     * @return The rewritten statement.
+     */
+    public ImcStmt rewrite(ImcStmt stmt) {
+        return (ImcStmt) stmt.accept(this, null);
+    }
+
+    /**
+     * Rewrites an expression.
+     *
+     * @param expr The expression.
+     * @return The rewritten expression.
+     */
+    public ImcExpr rewrite(ImcExpr expr) {
+        return (ImcExpr) expr.accept(this, null);
+    }
+
+    public ImcInstr visit(ImcBINOP binOp, Object visArg) {
+        ImcExpr fstExpr = rewrite(binOp.fstExpr);
+        ImcExpr sndExpr = rewrite(binOp.sndExpr);
+        return (fstExpr == binOp.fstExpr && sndExpr == binOp.sndExpr) ? binOp : new ImcBINOP(binOp.oper, fstExpr, sndExpr);
+    }
+
+    public ImcInstr visit(ImcCALL call, Object visArg) {
+        Vector<ImcExpr> args = new Vector<ImcExpr>();
+        boolean changed = false;
+        for (ImcExpr arg : call.args()) {
+            ImcExpr newArg = rewrite(arg);
+            changed = changed || (newArg != arg);
+            args.add(newArg);
+        }
+        return changed ? new ImcCALL(call.label, args, call.tail) : call;
+    }
+
+    public ImcInstr visit(ImcCJUMP cjump, Object visArg) {
+        ImcExpr cond = rewrite(cjump.cond);
+        return cond == cjump.cond ? cjump : new ImcCJUMP(cond, cjump.posLabel, cjump.negLabel);
+    }
+
+    public ImcInstr visit(ImcCONST constant, Object visArg) {
+        return constant;
+    }
+
+    public ImcInstr visit(ImcESTMT eStmt, Object visArg) {
+        ImcExpr expr = rewrite(eStmt.expr);
+        return expr == eStmt.expr ? eStmt : new ImcESTMT(expr);
+    }
+
+    public ImcInstr visit(ImcJUMP jump, Object visArg) {
+        return jump;
+    }
+
+    public ImcInstr visit(ImcLABEL label, Object visArg) {
+        return label;
+    }
+
+    public ImcInstr visit(ImcMEM mem, Object visArg) {
+        ImcExpr addr = rewrite(mem.addr);
+        return addr == mem.addr ? mem : new ImcMEM(addr);
+    }
+
+    public ImcInstr visit(ImcMOVE move, Object visArg) {
+        ImcExpr dst = rewrite(move.dst);
+        ImcExpr src = rewrite(move.src);
+        return (dst == move.dst && src == move.src) ? move : new ImcMOVE(dst, src);
+    }
+
+    public ImcInstr visit(ImcNAME name, Object visArg) {
+        return name;
+    }
+
+    public ImcInstr visit(ImcSEXPR sExpr, Object visArg) {
+        ImcStmt stmt = rewrite(sExpr.stmt);
+        ImcExpr expr = rewrite(sExpr.expr);
+        return (stmt == sExpr.stmt && expr == sExpr.expr) ? sExpr : new ImcSEXPR(stmt, expr);
+    }
+
+    public ImcInstr visit(ImcSTMTS stmts, Object visArg) {
+        Vector<ImcStmt> newStmts = new Vector<ImcStmt>();
+        boolean changed = false;
+        for (ImcStmt stmt : stmts.stmts()) {
+            ImcStmt newStmt = rewrite(stmt);
+            changed = changed || (newStmt != stmt);
+            newStmts.add(newStmt);
+        }
+        return changed ? new ImcSTMTS(newStmts) : stmts;
+    }
+
+    public ImcInstr visit(ImcTEMP temp, Object visArg) {
+        return temp;
+    }
+
+    public ImcInstr visit(ImcUNOP unOp, Object visArg) {
+        ImcExpr subExpr = rewrite(unOp.subExpr);
+        return subExpr == unOp.subExpr ? unOp : new ImcUNOP(unOp.oper, subExpr);
+    }
+
+}
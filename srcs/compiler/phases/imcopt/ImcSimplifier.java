@@ -0,0 +1,262 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.imcgen.code.*;
+
+/**
+ * Simplifies intermediate code trees by constant folding and algebraic
+ * simplification.
+ * <p>
+ * Only rewrites whose result does not depend on how the target machine handles
+ * corner cases are made, e.g., division is folded only if both operands are
+ * nonnegative.
+ *
+ * @author haytham
+ */
+public class ImcSimplifier extends ImcRewriter {
+
+    /**
+     * Simplifies a statement.
+     *
+     * @param stmt The statement.
+     * @return The simplified statement.
+     */
+    public ImcStmt simplify(ImcStmt stmt) {
+        return rewrite(stmt);
+    }
+
+    /**
+     * Simplifies an expression.
+     *
+     * @param expr The expression.
+     * @return The simplified expression.
+     */
+    public ImcExpr simplify(ImcExpr expr) {
+        return rewrite(expr);
+    }
+
+    public ImcInstr visit(ImcBINOP binOp, Object visArg) {
+        ImcExpr fstExpr = simplify(binOp.fstExpr);
+        ImcExpr sndExpr = simplify(binOp.sndExpr);
+
+        // Constant folding.
+        if (fstExpr instanceof ImcCONST && sndExpr instanceof ImcCONST) {
+            ImcCONST folded = fold(binOp.oper, ((ImcCONST) fstExpr).value, ((ImcCONST) sndExpr).value);
+            if (folded != null) {
+                numOfRewrites++;
+                return folded;
+            }
+        }
+
+        // Constants of commutative operators to the right.
+        if (fstExpr instanceof ImcCONST && !(sndExpr instanceof ImcCONST) && commutative(binOp.oper)) {
+            ImcExpr expr = fstExpr;
+            fstExpr = sndExpr;
+            sndExpr = expr;
+        }
+
+        if (sndExpr instanceof ImcCONST) {
+            long value = ((ImcCONST) sndExpr).value;
+            switch (binOp.oper) {
+                case ADD:
+                    if (value == 0) {
+                        numOfRewrites++;
+                        return fstExpr;
+                    }
+                    // (x + c1) + c2 = x + (c1 + c2)
+                    if (fstExpr instanceof ImcBINOP && ((ImcBINOP) fstExpr).oper == ImcBINOP.Oper.ADD
+                            && ((ImcBINOP) fstExpr).sndExpr instanceof ImcCONST) {
+                        numOfRewrites++;
+                        long sum = ((ImcCONST) ((ImcBINOP) fstExpr).sndExpr).value + value;
+                        return simplify(new ImcBINOP(ImcBINOP.Oper.ADD, ((ImcBINOP) fstExpr).fstExpr, new ImcCONST(sum)));
+                    }
+                    break;
+                case SUB:
+                    if (value == 0) {
+                        numOfRewrites++;
+                        return fstExpr;
+                    }
+                    break;
+                case MUL:
+                    if (value == 1) {
+                        numOfRewrites++;
+                        return fstExpr;
+                    }
+                    if (value == 0 && pure(fstExpr)) {
+                        numOfRewrites++;
+                        return new ImcCONST(0);
+                    }
+                    // (x * c1) * c2 = x * (c1 * c2)
+                    if (fstExpr instanceof ImcBINOP && ((ImcBINOP) fstExpr).oper == ImcBINOP.Oper.MUL
+                            && ((ImcBINOP) fstExpr).sndExpr instanceof ImcCONST) {
+                        numOfRewrites++;
+                        long product = ((ImcCONST) ((ImcBINOP) fstExpr).sndExpr).value * value;
+                        return simplify(new ImcBINOP(ImcBINOP.Oper.MUL, ((ImcBINOP) fstExpr).fstExpr, new ImcCONST(product)));
+                    }
+                    break;
+                case DIV:
+                    if (value == 1) {
+                        numOfRewrites++;
+                        return fstExpr;
+                    }
+                    break;
+                case MOD:
+                    if (value == 1 && pure(fstExpr)) {
+                        numOfRewrites++;
+                        return new ImcCONST(0);
+                    }
+                    break;
+                case SHL:
+                case SHR:
+                case SHRU:
+                    if (value == 0) {
+                        numOfRewrites++;
+                        return fstExpr;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (fstExpr == binOp.fstExpr && sndExpr == binOp.sndExpr)
+            return binOp;
+        return new ImcBINOP(binOp.oper, fstExpr, sndExpr);
+    }
+
+    public ImcInstr visit(ImcUNOP unOp, Object visArg) {
+        ImcExpr subExpr = simplify(unOp.subExpr);
+
+        if (subExpr instanceof ImcCONST) {
+            long value = ((ImcCONST) subExpr).value;
+            switch (unOp.oper) {
+                case NEG:
+                    numOfRewrites++;
+                    return new ImcCONST(-value);
+                case NOT:
+                    if (value == 0 || value == 1) {
+                        numOfRewrites++;
+                        return new ImcCONST(1 - value);
+                    }
+                    break;
+            }
+        }
+
+        // --x = x and !!x = x (booleans are always 0 or 1)
+        if (subExpr instanceof ImcUNOP && ((ImcUNOP) subExpr).oper == unOp.oper) {
+            numOfRewrites++;
+            return ((ImcUNOP) subExpr).subExpr;
+        }
+
+        return subExpr == unOp.subExpr ? unOp : new ImcUNOP(unOp.oper, subExpr);
+    }
+
+    /**
+     * Computes the value of a binary operator applied to two constants.
+     *
+     * @param oper    The operator.
+     * @param fstValue The first operand.
+     * @param sndValue The second operand.
+     * @return The resulting constant or {@code null} if it cannot be computed
+     * safely.
+     */
+    static ImcCONST fold(ImcBINOP.Oper oper, long fstValue, long sndValue) {
+        boolean bools = (fstValue == 0 || fstValue == 1) && (sndValue == 0 || sndValue == 1);
+        switch (oper) {
+            case IOR:
+                return bools ? new ImcCONST(fstValue | sndValue) : null;
+            case XOR:
+                return bools ? new ImcCONST(fstValue ^ sndValue) : null;
+            case AND:
+                return bools ? new ImcCONST(fstValue & sndValue) : null;
+            case EQU:
+                return new ImcCONST(fstValue == sndValue ? 1 : 0);
+            case NEQ:
+                return new ImcCONST(fstValue != sndValue ? 1 : 0);
+            case LTH:
+                return new ImcCONST(fstValue < sndValue ? 1 : 0);
+            case GTH:
+                return new ImcCONST(fstValue > sndValue ? 1 : 0);
+            case LEQ:
+                return new ImcCONST(fstValue <= sndValue ? 1 : 0);
+            case GEQ:
+                return new ImcCONST(fstValue >= sndValue ? 1 : 0);
+            case ADD:
+                return new ImcCONST(fstValue + sndValue);
+            case SUB:
+                return new ImcCONST(fstValue - sndValue);
+            case MUL:
+                return new ImcCONST(fstValue * sndValue);
+            case DIV:
+                return (fstValue >= 0 && sndValue > 0) ? new ImcCONST(fstValue / sndValue) : null;
+            case MOD:
+                return (fstValue >= 0 && sndValue > 0) ? new ImcCONST(fstValue % sndValue) : null;
+            case SHL:
+                return (sndValue >= 0 && sndValue < 64) ? new ImcCONST(fstValue << sndValue) : null;
+            case SHR:
+                return (sndValue >= 0 && sndValue < 64) ? new ImcCONST(fstValue >> sndValue) : null;
+            case SHRU:
+                return (sndValue >= 0 && sndValue < 64) ? new ImcCONST(fstValue >>> sndValue) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a binary operator is commutative.
+     *
+     * @param oper The operator.
+     * @return {@code true} if the operator is commutative, {@code false} otherwise.
+     */
+    static boolean commutative(ImcBINOP.Oper oper) {
+        switch (oper) {
+            case IOR:
+            case XOR:
+            case AND:
+            case EQU:
+            case NEQ:
+            case ADD:
+            case MUL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether an expression can be dropped without changing the
+     * behaviour of a program, i.e., whether it contains no function calls.
+     *
+     * @param expr The expression.
+     * @return {@code true} if the expression can be dropped, {@code false} otherwise.
+     */
+    static boolean pure(ImcExpr expr) {
+        if (expr instanceof ImcCONST || expr instanceof ImcTEMP || expr instanceof ImcNAME)
+            return true;
+        if (expr instanceof ImcMEM)
+            return pure(((ImcMEM) expr).addr);
+        if (expr instanceof ImcBINOP)
+            return pure(((ImcBINOP) expr).fstExpr) && pure(((ImcBINOP) expr).sndExpr);
+        if (expr instanceof ImcUNOP)
+            return pure(((ImcUNOP) expr).subExpr);
+        return false;
+    }
+
+    /**
+     * Checks whether a statement of linear code contains no function calls.
+     *
+     * @param stmt The statement.
+     * @return {@code true} if the statement contains no function calls,
+     * {@code false} otherwise.
+     */
+    static boolean pure(ImcStmt stmt) {
+        if (stmt instanceof ImcLABEL || stmt instanceof ImcJUMP)
+            return true;
+        if (stmt instanceof ImcMOVE)
+            return pure(((ImcMOVE) stmt).dst) && pure(((ImcMOVE) stmt).src);
+        if (stmt instanceof ImcCJUMP)
+            return pure(((ImcCJUMP) stmt).cond);
+        if (stmt instanceof ImcESTMT)
+            return pure(((ImcESTMT) stmt).expr);
+        return false;
+    }
+
+}
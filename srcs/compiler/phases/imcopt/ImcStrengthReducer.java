@@ -0,0 +1,87 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.imcgen.code.*;
+
+/**
+ * Replaces multiplications, divisions and remainders by powers of two with
+ * shifts.
+ * <p>
+ * Division and remainder are those of the target machine: MMIX {@code DIV}
+ * rounds the quotient down, so the quotient is an arithmetic shift right
+ * {@code x >> k} for any sign of the dividend and the remainder, never
+ * negative, is {@code x - (x >> k << k)}. The remainder is not computed with a
+ * mask as {@code AND} of intermediate code is a logical operator. As the
+ * dividend is used twice there, a remainder is rewritten only if its dividend
+ * is cheap and contains no function calls.
+ *
+ * @author haytham
+ */
+public class ImcStrengthReducer extends ImcRewriter {
+
+    /**
+     * The maximal size of a dividend that is evaluated more than once.
+     */
+    private static final int MAX_DIVIDEND_SIZE = 4;
+
+    public ImcInstr visit(ImcBINOP binOp, Object visArg) {
+        ImcExpr fstExpr = rewrite(binOp.fstExpr);
+        ImcExpr sndExpr = rewrite(binOp.sndExpr);
+
+        // Constants of multiplications are normally on the right already.
+        if (binOp.oper == ImcBINOP.Oper.MUL && fstExpr instanceof ImcCONST && !(sndExpr instanceof ImcCONST)) {
+            ImcExpr expr = fstExpr;
+            fstExpr = sndExpr;
+            sndExpr = expr;
+        }
+
+        int log = sndExpr instanceof ImcCONST ? log2(((ImcCONST) sndExpr).value) : -1;
+        if (log > 0) {
+            switch (binOp.oper) {
+                case MUL:
+                    numOfRewrites++;
+                    return new ImcBINOP(ImcBINOP.Oper.SHL, fstExpr, new ImcCONST(log));
+                case DIV:
+                    numOfRewrites++;
+                    return new ImcBINOP(ImcBINOP.Oper.SHR, fstExpr, new ImcCONST(log));
+                case MOD:
+                    if (!cheap(fstExpr))
+                        break;
+                    numOfRewrites++;
+                    ImcExpr quotient = new ImcBINOP(ImcBINOP.Oper.SHR, fstExpr, new ImcCONST(log));
+                    return new ImcBINOP(ImcBINOP.Oper.SUB, fstExpr,
+                            new ImcBINOP(ImcBINOP.Oper.SHL, quotient, new ImcCONST(log)));
+                default:
+                    break;
+            }
+        }
+
+        if (fstExpr == binOp.fstExpr && sndExpr == binOp.sndExpr)
+            return binOp;
+        return new ImcBINOP(binOp.oper, fstExpr, sndExpr);
+    }
+
+    /**
+     * Checks whether an expression can be evaluated more than once instead of
+     * once without changing the behaviour or slowing down a program noticeably.
+     *
+     * @param expr The expression.
+     * @return {@code true} if the expression is cheap, {@code false} otherwise.
+     */
+    private static boolean cheap(ImcExpr expr) {
+        return ImcSimplifier.pure(expr) && ImcCounter.size(expr) <= MAX_DIVIDEND_SIZE;
+    }
+
+    /**
+     * Returns the binary logarithm of a power of two.
+     *
+     * @param value The value.
+     * @return The binary logarithm of the value or {@code -1} if the value is
+     * not a positive power of two.
+     */
+    static int log2(long value) {
+        if (value <= 0 || (value & (value - 1)) != 0)
+            return -1;
+        return Long.numberOfTrailingZeros(value);
+    }
+
+}
@@ -0,0 +1,284 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.Fragment;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Elimination of tail calls in linear intermediate code.
+ * <p>
+ * A call of a code fragment to itself is a tail call if the statements that
+ * may follow it up to the epilogue only copy its result between temporary
+ * variables and the frame and finally into the return value. If the result of
+ * the call is ignored, the call is a tail call only if the code fragment always
+ * returns the same constant, as void functions do. A tail call is replaced by
+ * stores of its arguments into the parameters of the current frame and a jump
+ * to the beginning of the code fragment, so the frame is reused. This is only
+ * done if the static link passed is the one of the current frame and no
+ * address within the frame escapes, as a pointer into the frame reused could
+ * otherwise observe the change.
+ * <p>
+ * A tail call of another function is marked instead, once all other
+ * optimizations are done, and left to the back end to turn into a jump that
+ * reuses the frame of the caller: the arguments are stored over those of the
+ * caller, the frame of the caller is popped and the callee is jumped to,
+ * so it returns to the caller's caller. This is only done if the callee is
+ * passed the caller's own static link, takes no more parameters than the
+ * caller, which leaves room for its arguments, and no address within the
+ * caller's frame escapes. If the result of the call is ignored, the callee
+ * must always return the same constant as the caller.
+ *
+ * @author haytham
+ */
+public class ImcTailCallEliminator {
+
+    /**
+     * The alias analysis.
+     */
+    private final ImcAliasAnalysis aliases;
+
+    /**
+     * The code fragment.
+     */
+    private final CodeFragment fragment;
+
+    /**
+     * The positions of labels by their names.
+     */
+    private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+    /**
+     * The number of tail calls eliminated or marked so far.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new tail call eliminator.
+     *
+     * @param aliases  The alias analysis.
+     * @param fragment The code fragment.
+     */
+    public ImcTailCallEliminator(ImcAliasAnalysis aliases, CodeFragment fragment) {
+        this.aliases = aliases;
+        this.fragment = fragment;
+    }
+
+    /**
+     * Returns the number of tail calls eliminated or marked so far.
+     *
+     * @return The number of tail calls eliminated or marked so far.
+     */
+    public int numOfRewrites() {
+        return numOfRewrites;
+    }
+
+    /**
+     * Eliminates self-recursive tail calls of the code fragment.
+     */
+    public void eliminate() {
+        if (aliases.escapes(fragment))
+            return;
+        Vector<ImcStmt> stmts = fragment.stmts();
+        for (int i = 0; i < stmts.size(); i++) {
+            if (stmts.get(i) instanceof ImcLABEL)
+                labels.put(((ImcLABEL) stmts.get(i)).label.name, i);
+        }
+
+        Vector<ImcStmt> newStmts = new Vector<ImcStmt>();
+        Label loop = new Label();
+        for (int i = 0; i < stmts.size(); i++) {
+            ImcStmt stmt = stmts.get(i);
+            ImcCALL call = selfCall(stmt);
+            if (call != null && tail(stmts, i, stmt instanceof ImcMOVE ? ((ImcTEMP) ((ImcMOVE) stmt).dst).temp : null)) {
+                Vector<ImcTEMP> args = new Vector<ImcTEMP>();
+                for (int arg = 1; arg < call.args().size(); arg++) {
+                    ImcTEMP temp = new ImcTEMP(new Temp());
+                    newStmts.add(new ImcMOVE(temp, call.args().get(arg)));
+                    args.add(temp);
+                }
+                for (int arg = 1; arg < call.args().size(); arg++) {
+                    ImcExpr addr = new ImcBINOP(ImcBINOP.Oper.ADD, new ImcTEMP(fragment.FP), new ImcCONST(8 * arg));
+                    newStmts.add(new ImcMOVE(new ImcMEM(addr), args.get(arg - 1)));
+                }
+                newStmts.add(new ImcJUMP(loop));
+                numOfRewrites++;
+                continue;
+            }
+            newStmts.add(stmt);
+        }
+        if (numOfRewrites == 0)
+            return;
+        newStmts.insertElementAt(new ImcLABEL(loop), 1);
+        stmts.clear();
+        stmts.addAll(newStmts);
+    }
+
+    /**
+     * Returns the call made by a statement if it is a call of the code
+     * fragment to itself with its own static link.
+     *
+     * @param stmt The statement.
+     * @return The call or {@code null} if the statement is not such a call.
+     */
+    private ImcCALL selfCall(ImcStmt stmt) {
+        ImcExpr expr = null;
+        if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+            expr = ((ImcMOVE) stmt).src;
+        if (stmt instanceof ImcESTMT)
+            expr = ((ImcESTMT) stmt).expr;
+        if (!(expr instanceof ImcCALL) || !((ImcCALL) expr).label.name.equals(fragment.frame.label.name))
+            return null;
+        ImcCALL call = (ImcCALL) expr;
+        if (!ImcEquality.equal(call.args().firstElement(), new ImcMEM(new ImcTEMP(fragment.FP))))
+            return null;
+        return call;
+    }
+
+    /**
+     * Marks tail calls of other functions of the code fragment.
+     *
+     * @param fragments All fragments of the program.
+     */
+    public void mark(List<Fragment> fragments) {
+        if (aliases.escapes(fragment))
+            return;
+        HashMap<String, CodeFragment> callees = new HashMap<String, CodeFragment>();
+        for (Fragment callee : fragments) {
+            if (callee instanceof CodeFragment)
+                callees.put(((CodeFragment) callee).frame.label.name, (CodeFragment) callee);
+        }
+        Vector<ImcStmt> stmts = fragment.stmts();
+        labels.clear();
+        for (int i = 0; i < stmts.size(); i++) {
+            if (stmts.get(i) instanceof ImcLABEL)
+                labels.put(((ImcLABEL) stmts.get(i)).label.name, i);
+        }
+        int numOfParams = aliases.numOfParams(fragment.frame.label);
+
+        for (int i = 0; i < stmts.size(); i++) {
+            ImcStmt stmt = stmts.get(i);
+            ImcExpr expr = null;
+            if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+                expr = ((ImcMOVE) stmt).src;
+            if (stmt instanceof ImcESTMT)
+                expr = ((ImcESTMT) stmt).expr;
+            if (!(expr instanceof ImcCALL))
+                continue;
+            ImcCALL call = (ImcCALL) expr;
+            if (call.args().size() - 1 > numOfParams
+                    || !ImcEquality.equal(call.args().firstElement(), new ImcMEM(new ImcTEMP(fragment.FP))))
+                continue;
+            Temp result = stmt instanceof ImcMOVE ? ((ImcTEMP) ((ImcMOVE) stmt).dst).temp : null;
+            if (result == null) {
+                Long value = constantResult(stmts, fragment.RV);
+                CodeFragment callee = callees.get(call.label.name);
+                if (value == null || callee == null || !value.equals(constantResult(callee.stmts(), callee.RV)))
+                    continue;
+            }
+            if (!tail(stmts, i, result))
+                continue;
+            ImcCALL tailCall = new ImcCALL(call.label, call.args(), true);
+            stmts.set(i, result == null ? new ImcESTMT(tailCall) : new ImcMOVE(new ImcTEMP(result), tailCall));
+            numOfRewrites++;
+        }
+    }
+
+    /**
+     * Checks whether a call is in tail position.
+     *
+     * @param stmts  The statements of the code fragment.
+     * @param index  The position of the call.
+     * @param result The temporary variable the result of the call is moved
+     *               into or {@code null} if the result is ignored.
+     * @return {@code true} if the call is in tail position, {@code false}
+     * otherwise.
+     */
+    private boolean tail(Vector<ImcStmt> stmts, int index, Temp result) {
+        if (result == null && constantResult(stmts, fragment.RV) == null)
+            return false;
+        // Temporary variables and frame offsets holding the result.
+        HashSet<Temp> temps = new HashSet<Temp>();
+        HashSet<Long> offsets = new HashSet<Long>();
+        if (result != null)
+            temps.add(result);
+        HashSet<Integer> visited = new HashSet<Integer>();
+        int pc = index + 1;
+        while (pc < stmts.size() && visited.add(pc)) {
+            ImcStmt stmt = stmts.get(pc);
+            if (stmt instanceof ImcLABEL) {
+                if (((ImcLABEL) stmt).label.name.equals(fragment.endLabel.name))
+                    return result == null || temps.contains(fragment.RV);
+                pc++;
+                continue;
+            }
+            if (stmt instanceof ImcJUMP) {
+                Integer target = labels.get(((ImcJUMP) stmt).label.name);
+                if (target == null)
+                    return false;
+                pc = target;
+                continue;
+            }
+            if (!(stmt instanceof ImcMOVE) || !ImcSimplifier.pure(((ImcMOVE) stmt).src))
+                return false;
+            ImcMOVE move = (ImcMOVE) stmt;
+            boolean holds = (move.src instanceof ImcTEMP && temps.contains(((ImcTEMP) move.src).temp))
+                    || (move.src instanceof ImcMEM && offsets.contains(offset(((ImcMEM) move.src).addr)));
+            if (move.dst instanceof ImcTEMP && ((ImcTEMP) move.dst).temp != fragment.FP) {
+                if (holds)
+                    temps.add(((ImcTEMP) move.dst).temp);
+                else
+                    temps.remove(((ImcTEMP) move.dst).temp);
+            } else if (move.dst instanceof ImcMEM && offset(((ImcMEM) move.dst).addr) != null
+                    && offset(((ImcMEM) move.dst).addr) != 0) {
+                if (holds)
+                    offsets.add(offset(((ImcMEM) move.dst).addr));
+                else
+                    offsets.remove(offset(((ImcMEM) move.dst).addr));
+            } else
+                return false;
+            pc++;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the constant a code fragment always returns or {@code null} if
+     * there is no such constant.
+     */
+    private static Long constantResult(Vector<ImcStmt> stmts, Temp RV) {
+        Long value = null;
+        for (ImcStmt stmt : stmts) {
+            if (!(stmt instanceof ImcMOVE) || !(((ImcMOVE) stmt).dst instanceof ImcTEMP)
+                    || ((ImcTEMP) ((ImcMOVE) stmt).dst).temp != RV)
+                continue;
+            ImcExpr src = ((ImcMOVE) stmt).src;
+            if (!(src instanceof ImcCONST) || (value != null && value != ((ImcCONST) src).value))
+                return null;
+            value = ((ImcCONST) src).value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the offset of an address within the frame or {@code null} if
+     * the address is not a constant offset from the frame pointer.
+     */
+    private Long offset(ImcExpr addr) {
+        if (addr instanceof ImcTEMP && ((ImcTEMP) addr).temp == fragment.FP)
+            return 0L;
+        if (addr instanceof ImcBINOP && ((ImcBINOP) addr).oper == ImcBINOP.Oper.ADD
+                && ((ImcBINOP) addr).fstExpr instanceof ImcTEMP
+                && ((ImcTEMP) ((ImcBINOP) addr).fstExpr).temp == fragment.FP
+                && ((ImcBINOP) addr).sndExpr instanceof ImcCONST)
+            return ((ImcCONST) ((ImcBINOP) addr).sndExpr).value;
+        return null;
+    }
+
+}
@@ -0,0 +1,66 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.ImcCONST;
+import compiler.phases.imcgen.code.ImcExpr;
+import compiler.phases.imcgen.code.ImcTEMP;
+import compiler.phases.lincode.BasicBlock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A phi function at the beginning of a basic block in SSA form.
+ * <p>
+ * The phi function defines its temporary variable by the argument that
+ * belongs to the predecessor the basic block has been entered from. An
+ * argument is either a temporary variable or a constant.
+ *
+ * @author haytham
+ */
+public class Phi {
+
+    /**
+     * The temporary variable defined.
+     */
+    public Temp dst;
+
+    /**
+     * The arguments by predecessors.
+     */
+    private final LinkedHashMap<BasicBlock, ImcExpr> args = new LinkedHashMap<BasicBlock, ImcExpr>();
+
+    /**
+     * Constructs a new phi function.
+     *
+     * @param dst The temporary variable defined.
+     */
+    public Phi(Temp dst) {
+        this.dst = dst;
+    }
+
+    /**
+     * Returns the arguments by predecessors.
+     *
+     * @return The arguments by predecessors.
+     */
+    public LinkedHashMap<BasicBlock, ImcExpr> args() {
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(dst + " <- PHI(");
+        boolean first = true;
+        for (Map.Entry<BasicBlock, ImcExpr> arg : args.entrySet()) {
+            str.append(first ? "" : ",").append(arg.getKey().label.name).append(":");
+            if (arg.getValue() instanceof ImcTEMP)
+                str.append(((ImcTEMP) arg.getValue()).temp);
+            else
+                str.append(((ImcCONST) arg.getValue()).value);
+            first = false;
+        }
+        return str.append(")").toString();
+    }
+
+}
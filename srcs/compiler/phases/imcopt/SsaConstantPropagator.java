@@ -0,0 +1,268 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Sparse conditional constant propagation on SSA form.
+ * <p>
+ * Each temporary variable is assigned a value of the lattice <i>undefined</i>
+ * (not yet known), a constant, or <i>overdefined</i> (not a constant);
+ * simultaneously, basic blocks are found executable only if control can reach
+ * them given the values found so far. Values are propagated along uses of
+ * temporary variables at the granularity of basic blocks. Finally, uses of
+ * constant temporary variables are replaced by constants, conditional jumps on
+ * constants are replaced by jumps, and basic blocks never found executable
+ * are removed.
+ *
+ * @author haytham
+ */
+public class SsaConstantPropagator {
+
+    /**
+     * The value of overdefined temporary variables (undefined ones have no
+     * value).
+     */
+    private static final Object OVERDEFINED = new Object();
+
+    /**
+     * The code fragment in SSA form.
+     */
+    private final SsaForm ssa;
+
+    /**
+     * The values of temporary variables: constants or {@link #OVERDEFINED}.
+     */
+    private final HashMap<Temp, Object> values = new HashMap<Temp, Object>();
+
+    /**
+     * The temporary variables defined within the code fragment.
+     */
+    private final HashSet<Temp> defined = new HashSet<Temp>();
+
+    /**
+     * The basic blocks using each temporary variable.
+     */
+    private final HashMap<Temp, LinkedHashSet<BasicBlock>> users = new HashMap<Temp, LinkedHashSet<BasicBlock>>();
+
+    /**
+     * The predecessors of basic blocks along executable edges.
+     */
+    private final HashMap<BasicBlock, HashSet<BasicBlock>> executable = new HashMap<BasicBlock, HashSet<BasicBlock>>();
+
+    /**
+     * The basic blocks to be evaluated.
+     */
+    private final LinkedHashSet<BasicBlock> worklist = new LinkedHashSet<BasicBlock>();
+
+    /**
+     * The number of uses replaced and jumps simplified.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new constant propagator.
+     *
+     * @param ssa The code fragment in SSA form.
+     */
+    public SsaConstantPropagator(SsaForm ssa) {
+        this.ssa = ssa;
+    }
+
+    /**
+     * Propagates constants and removes unreachable code.
+     *
+     * @return The number of uses replaced and jumps simplified.
+     */
+    public int run() {
+        for (BasicBlock block : ssa.graph.blocks()) {
+            for (Phi phi : ssa.phis(block)) {
+                defined.add(phi.dst);
+                for (ImcExpr arg : phi.args().values())
+                    for (Temp temp : TempUses.of(arg))
+                        use(temp, block);
+            }
+            for (ImcStmt stmt : block.stmts()) {
+                Temp temp = ssa.def(stmt);
+                if (temp != null)
+                    defined.add(temp);
+                for (Temp use : TempUses.of(stmt))
+                    use(use, block);
+            }
+        }
+
+        BasicBlock entry = ssa.graph.entry();
+        executable.put(entry, new HashSet<BasicBlock>());
+        worklist.add(entry);
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.iterator().next();
+            worklist.remove(block);
+            evaluate(block);
+        }
+
+        rewrite();
+        return numOfRewrites;
+    }
+
+    private void use(Temp temp, BasicBlock block) {
+        if (!users.containsKey(temp))
+            users.put(temp, new LinkedHashSet<BasicBlock>());
+        users.get(temp).add(block);
+    }
+
+    /**
+     * Evaluates phi functions and statements of an executable basic block.
+     *
+     * @param block The basic block.
+     */
+    private void evaluate(BasicBlock block) {
+        HashSet<BasicBlock> preds = executable.get(block);
+        for (Phi phi : ssa.phis(block)) {
+            Object value = null;
+            for (Map.Entry<BasicBlock, ImcExpr> arg : phi.args().entrySet())
+                if (preds.contains(arg.getKey()))
+                    value = meet(value, evaluate(arg.getValue()));
+            lower(phi.dst, value);
+        }
+        for (ImcStmt stmt : block.stmts()) {
+            Temp temp = ssa.def(stmt);
+            if (temp != null)
+                lower(temp, evaluate(((ImcMOVE) stmt).src));
+            if (stmt instanceof ImcJUMP)
+                reach(block, ((ImcJUMP) stmt).label);
+            if (stmt instanceof ImcCJUMP) {
+                ImcCJUMP cjump = (ImcCJUMP) stmt;
+                Object cond = evaluate(cjump.cond);
+                if (cond == OVERDEFINED || (cond instanceof Long && (Long) cond != 0))
+                    reach(block, cjump.posLabel);
+                if (cond == OVERDEFINED || (cond instanceof Long && (Long) cond == 0))
+                    reach(block, cjump.negLabel);
+            }
+        }
+    }
+
+    /**
+     * Marks the edge from a basic block to a label executable.
+     */
+    private void reach(BasicBlock block, Label label) {
+        BasicBlock succ = ssa.graph.block(label);
+        if (!executable.containsKey(succ)) {
+            executable.put(succ, new HashSet<BasicBlock>());
+            worklist.add(succ);
+        }
+        if (executable.get(succ).add(block) && !ssa.phis(succ).isEmpty())
+            worklist.add(succ);
+    }
+
+    /**
+     * Lowers the value of a temporary variable to the meet of its current value
+     * and a new one and schedules its users if it has changed.
+     */
+    private void lower(Temp temp, Object value) {
+        Object oldValue = values.get(temp);
+        Object newValue = meet(oldValue, value);
+        if (newValue == null || newValue.equals(oldValue))
+            return;
+        values.put(temp, newValue);
+        if (users.containsKey(temp))
+            for (BasicBlock user : users.get(temp))
+                if (executable.containsKey(user))
+                    worklist.add(user);
+    }
+
+    /**
+     * Returns the meet of two values of the lattice.
+     */
+    private static Object meet(Object fstValue, Object sndValue) {
+        if (fstValue == null)
+            return sndValue;
+        if (sndValue == null)
+            return fstValue;
+        return fstValue.equals(sndValue) ? fstValue : OVERDEFINED;
+    }
+
+    /**
+     * Evaluates an expression over the lattice.
+     *
+     * @param expr The expression.
+     * @return The value of the expression: {@code null} if undefined, a
+     * constant, or {@link #OVERDEFINED}.
+     */
+    private Object evaluate(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return ((ImcCONST) expr).value;
+        if (expr instanceof ImcTEMP) {
+            Temp temp = ((ImcTEMP) expr).temp;
+            return defined.contains(temp) ? values.get(temp) : OVERDEFINED;
+        }
+        if (expr instanceof ImcBINOP) {
+            ImcBINOP binOp = (ImcBINOP) expr;
+            Object fstValue = evaluate(binOp.fstExpr);
+            Object sndValue = evaluate(binOp.sndExpr);
+            if (fstValue == OVERDEFINED || sndValue == OVERDEFINED)
+                return OVERDEFINED;
+            if (fstValue == null || sndValue == null)
+                return null;
+            ImcCONST folded = ImcSimplifier.fold(binOp.oper, (Long) fstValue, (Long) sndValue);
+            return folded == null ? OVERDEFINED : (Object) folded.value;
+        }
+        if (expr instanceof ImcUNOP) {
+            ImcUNOP unOp = (ImcUNOP) expr;
+            Object value = evaluate(unOp.subExpr);
+            if (!(value instanceof Long))
+                return value;
+            long subValue = (Long) value;
+            switch (unOp.oper) {
+                case NEG:
+                    return -subValue;
+                case NOT:
+                    return (subValue == 0 || subValue == 1) ? (Object) (1 - subValue) : OVERDEFINED;
+            }
+        }
+        return OVERDEFINED;
+    }
+
+    /**
+     * Replaces uses of constant temporary variables by constants, simplifies
+     * conditional jumps and removes basic blocks that are not executable.
+     * Basic blocks that are not executable are left intact.
+     */
+    private void rewrite() {
+        HashMap<Temp, ImcExpr> constants = new HashMap<Temp, ImcExpr>();
+        for (Map.Entry<Temp, Object> entry : values.entrySet())
+            if (entry.getValue() instanceof Long)
+                constants.put(entry.getKey(), new ImcCONST((Long) entry.getValue()));
+        TempSubstitution substitution = new TempSubstitution(constants);
+        ImcSimplifier simplifier = new ImcSimplifier();
+
+        for (BasicBlock block : ssa.graph.blocks()) {
+            if (!executable.containsKey(block))
+                continue;
+            for (Phi phi : ssa.phis(block)) {
+                for (Map.Entry<BasicBlock, ImcExpr> arg : phi.args().entrySet())
+                    arg.setValue(substitution.rewrite(arg.getValue()));
+            }
+            Vector<ImcStmt> stmts = block.stmts();
+            for (int i = 0; i < stmts.size(); i++) {
+                ImcStmt stmt = stmts.get(i);
+                ImcStmt newStmt = substitution.substitute(stmt);
+                if (newStmt != stmt)
+                    newStmt = simplifier.simplify(newStmt);
+                stmts.set(i, newStmt);
+            }
+        }
+        numOfRewrites += substitution.numOfRewrites();
+
+        // Basic blocks that are not executable become unreachable.
+        numOfRewrites += ssa.foldBranches();
+    }
+
+}
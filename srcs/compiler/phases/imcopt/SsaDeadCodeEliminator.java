@@ -0,0 +1,111 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Dead code elimination on SSA form.
+ * <p>
+ * Statements with side effects, i.e., labels, jumps, stores to memory,
+ * function calls and definitions of pinned temporary variables, are live;
+ * a definition of a temporary variable or a phi function is live only if a
+ * live statement or phi function uses its temporary variable. All other
+ * definitions and phi functions are removed, as are expression statements
+ * without side effects.
+ *
+ * @author haytham
+ */
+public class SsaDeadCodeEliminator {
+
+    /**
+     * The code fragment in SSA form.
+     */
+    private final SsaForm ssa;
+
+    /**
+     * Constructs a new dead code eliminator.
+     *
+     * @param ssa The code fragment in SSA form.
+     */
+    public SsaDeadCodeEliminator(SsaForm ssa) {
+        this.ssa = ssa;
+    }
+
+    /**
+     * Removes dead statements and phi functions.
+     *
+     * @return The number of statements and phi functions removed.
+     */
+    public int run() {
+        // Definitions of temporary variables.
+        HashMap<Temp, Object> defs = new HashMap<Temp, Object>();
+        HashSet<Object> live = new HashSet<Object>();
+        Vector<Object> worklist = new Vector<Object>();
+        for (BasicBlock block : ssa.graph.blocks()) {
+            for (Phi phi : ssa.phis(block))
+                defs.put(phi.dst, phi);
+            for (ImcStmt stmt : block.stmts()) {
+                if (removable(stmt)) {
+                    Temp temp = ssa.def(stmt);
+                    if (temp != null)
+                        defs.put(temp, stmt);
+                } else if (live.add(stmt))
+                    worklist.add(stmt);
+            }
+        }
+
+        // Definitions used by live statements and phi functions.
+        while (!worklist.isEmpty()) {
+            Object instr = worklist.remove(worklist.size() - 1);
+            HashSet<Temp> uses = new HashSet<Temp>();
+            if (instr instanceof Phi) {
+                for (ImcExpr arg : ((Phi) instr).args().values())
+                    uses.addAll(TempUses.of(arg));
+            } else
+                uses.addAll(TempUses.of((ImcStmt) instr));
+            for (Temp use : uses) {
+                Object def = defs.get(use);
+                if (def != null && live.add(def))
+                    worklist.add(def);
+            }
+        }
+
+        int numOfRemovals = 0;
+        for (BasicBlock block : ssa.graph.blocks()) {
+            for (Iterator<Phi> phis = ssa.phis(block).iterator(); phis.hasNext(); ) {
+                if (!live.contains(phis.next())) {
+                    phis.remove();
+                    numOfRemovals++;
+                }
+            }
+            for (Iterator<ImcStmt> stmts = block.stmts().iterator(); stmts.hasNext(); ) {
+                if (!live.contains(stmts.next())) {
+                    stmts.remove();
+                    numOfRemovals++;
+                }
+            }
+        }
+        return numOfRemovals;
+    }
+
+    /**
+     * Checks whether a statement can be removed if nothing uses its result.
+     *
+     * @param stmt The statement.
+     * @return {@code true} if the statement has no side effects apart from
+     * defining a temporary variable that is not pinned, {@code false}
+     * otherwise.
+     */
+    private boolean removable(ImcStmt stmt) {
+        if (stmt instanceof ImcESTMT)
+            return ImcSimplifier.pure(((ImcESTMT) stmt).expr);
+        return ssa.def(stmt) != null && ImcSimplifier.pure(((ImcMOVE) stmt).src);
+    }
+
+}
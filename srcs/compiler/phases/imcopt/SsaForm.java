@@ -0,0 +1,348 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+import compiler.phases.lincode.ControlFlowGraph;
+import compiler.phases.lincode.DominatorTree;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * A code fragment in static single assignment form.
+ * <p>
+ * Phi functions are placed at the iterated dominance frontiers of basic blocks
+ * defining temporary variables that are defined more than once or used where
+ * their only definitions do not dominate the uses; all definitions of such
+ * temporary variables are then renamed along the dominator tree. Other
+ * temporary variables are left as they are. The frame pointer, the stack
+ * pointer and the return value of the code fragment are pinned: they are never
+ * renamed and are not considered to be in SSA form, as their values are used
+ * outside the code fragment.
+ * <p>
+ * Phi functions are kept aside from the statements of basic blocks, so the
+ * statements remain valid intermediate code. The code fragment is changed only
+ * through its control-flow graph, which must be linearized after
+ * {@link #destruct()} is called.
+ *
+ * @author haytham
+ */
+public class SsaForm {
+
+    /**
+     * The control-flow graph.
+     */
+    public final ControlFlowGraph graph;
+
+    /**
+     * The dominator tree of the control-flow graph.
+     */
+    private DominatorTree dominators;
+
+    /**
+     * The phi functions of basic blocks.
+     */
+    private final HashMap<BasicBlock, Vector<Phi>> phis = new HashMap<BasicBlock, Vector<Phi>>();
+
+    /**
+     * The temporary variables that are never renamed.
+     */
+    private final HashSet<Temp> pinned = new HashSet<Temp>();
+
+    /**
+     * The original temporary variables of phi functions (during renaming only).
+     */
+    private final HashMap<Phi, Temp> phiVars = new HashMap<Phi, Temp>();
+
+    /**
+     * Converts a code fragment into SSA form.
+     *
+     * @param graph The control-flow graph of the code fragment.
+     */
+    public SsaForm(ControlFlowGraph graph) {
+        this.graph = graph;
+        pinned.add(graph.fragment.FP);
+        pinned.add(graph.fragment.RV);
+        pinned.add(ImcGen.SP);
+
+        graph.removeUnreachable();
+        dominators = new DominatorTree(graph);
+        for (BasicBlock block : graph.blocks())
+            phis.put(block, new Vector<Phi>());
+
+        // Basic blocks defining temporary variables.
+        LinkedHashMap<Temp, LinkedHashSet<BasicBlock>> defBlocks = new LinkedHashMap<Temp, LinkedHashSet<BasicBlock>>();
+        HashMap<Temp, Integer> numOfDefs = new HashMap<Temp, Integer>();
+        for (BasicBlock block : graph.blocks()) {
+            for (ImcStmt stmt : block.stmts()) {
+                Temp temp = def(stmt);
+                if (temp == null)
+                    continue;
+                if (!defBlocks.containsKey(temp))
+                    defBlocks.put(temp, new LinkedHashSet<BasicBlock>());
+                defBlocks.get(temp).add(block);
+                numOfDefs.put(temp, numOfDefs.getOrDefault(temp, 0) + 1);
+            }
+        }
+
+        // Temporary variables defined once but used where the definition
+        // does not dominate the use must be renamed as well.
+        HashSet<Temp> renamed = new HashSet<Temp>();
+        for (Temp temp : numOfDefs.keySet())
+            if (numOfDefs.get(temp) > 1)
+                renamed.add(temp);
+        for (BasicBlock block : graph.blocks()) {
+            HashSet<Temp> blockDefs = new HashSet<Temp>();
+            for (ImcStmt stmt : block.stmts()) {
+                for (Temp use : TempUses.of(stmt)) {
+                    if (!defBlocks.containsKey(use) || renamed.contains(use) || blockDefs.contains(use))
+                        continue;
+                    BasicBlock defBlock = defBlocks.get(use).iterator().next();
+                    if (defBlock == block || !dominators.dominates(defBlock, block))
+                        renamed.add(use);
+                }
+                Temp temp = def(stmt);
+                if (temp != null)
+                    blockDefs.add(temp);
+            }
+        }
+
+        // Phi functions.
+        for (Map.Entry<Temp, LinkedHashSet<BasicBlock>> entry : defBlocks.entrySet()) {
+            Temp temp = entry.getKey();
+            if (!renamed.contains(temp))
+                continue;
+            HashSet<BasicBlock> placed = new HashSet<BasicBlock>();
+            Vector<BasicBlock> worklist = new Vector<BasicBlock>(entry.getValue());
+            while (!worklist.isEmpty()) {
+                BasicBlock block = worklist.remove(worklist.size() - 1);
+                for (BasicBlock frontier : dominators.frontier(block)) {
+                    if (!placed.add(frontier))
+                        continue;
+                    Phi phi = new Phi(temp);
+                    phis.get(frontier).add(phi);
+                    phiVars.put(phi, temp);
+                    if (!entry.getValue().contains(frontier))
+                        worklist.add(frontier);
+                }
+            }
+        }
+
+        // Renaming.
+        if (!renamed.isEmpty())
+            rename(graph.entry(), renamed, new HashMap<Temp, ImcExpr>());
+        phiVars.clear();
+    }
+
+    /**
+     * Renames definitions and uses of temporary variables within a basic block
+     * and the basic blocks it dominates.
+     *
+     * @param block   The basic block.
+     * @param renamed The temporary variables to be renamed.
+     * @param current The current names of temporary variables being renamed.
+     */
+    private void rename(BasicBlock block, HashSet<Temp> renamed, HashMap<Temp, ImcExpr> current) {
+        HashMap<Temp, ImcExpr> saved = new HashMap<Temp, ImcExpr>();
+
+        for (Phi phi : phis.get(block)) {
+            Temp temp = new Temp();
+            define(phi.dst, temp, current, saved);
+            phi.dst = temp;
+        }
+        TempSubstitution substitution = new TempSubstitution(current);
+        Vector<ImcStmt> stmts = block.stmts();
+        for (int i = 0; i < stmts.size(); i++) {
+            ImcStmt stmt = substitution.substitute(stmts.get(i));
+            Temp temp = def(stmt);
+            if (temp != null && renamed.contains(temp)) {
+                Temp newTemp = new Temp();
+                define(temp, newTemp, current, saved);
+                stmt = new ImcMOVE(new ImcTEMP(newTemp), ((ImcMOVE) stmt).src);
+            }
+            stmts.set(i, stmt);
+        }
+        for (BasicBlock succ : block.succs()) {
+            for (Phi phi : phis.get(succ)) {
+                Temp var = phiVars.get(phi);
+                if (var == null)
+                    continue;
+                ImcExpr arg = current.get(var);
+                if (arg != null)
+                    phi.args().put(block, arg);
+            }
+        }
+
+        for (BasicBlock child : dominators.children(block))
+            rename(child, renamed, current);
+
+        for (Map.Entry<Temp, ImcExpr> entry : saved.entrySet()) {
+            if (entry.getValue() == null)
+                current.remove(entry.getKey());
+            else
+                current.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Records a new name of a temporary variable.
+     */
+    private static void define(Temp var, Temp temp, HashMap<Temp, ImcExpr> current, HashMap<Temp, ImcExpr> saved) {
+        if (!saved.containsKey(var))
+            saved.put(var, current.get(var));
+        current.put(var, new ImcTEMP(temp));
+    }
+
+    /**
+     * Returns the dominator tree of the control-flow graph.
+     *
+     * @return The dominator tree.
+     */
+    public DominatorTree dominators() {
+        return dominators;
+    }
+
+    /**
+     * Returns the phi functions of a basic block.
+     *
+     * @param block The basic block.
+     * @return The phi functions of the basic block.
+     */
+    public Vector<Phi> phis(BasicBlock block) {
+        Vector<Phi> blockPhis = phis.get(block);
+        if (blockPhis == null) {
+            blockPhis = new Vector<Phi>();
+            phis.put(block, blockPhis);
+        }
+        return blockPhis;
+    }
+
+    /**
+     * Checks whether a temporary variable is pinned, i.e., never renamed.
+     *
+     * @param temp The temporary variable.
+     * @return {@code true} if the temporary variable is pinned, {@code false}
+     * otherwise.
+     */
+    public boolean pinned(Temp temp) {
+        return pinned.contains(temp);
+    }
+
+    /**
+     * Returns the temporary variable defined by a statement.
+     *
+     * @param stmt The statement.
+     * @return The temporary variable defined or {@code null} if the statement
+     * defines no temporary variable or defines a pinned one.
+     */
+    public Temp def(ImcStmt stmt) {
+        if (!(stmt instanceof ImcMOVE) || !(((ImcMOVE) stmt).dst instanceof ImcTEMP))
+            return null;
+        Temp temp = ((ImcTEMP) ((ImcMOVE) stmt).dst).temp;
+        return pinned.contains(temp) ? null : temp;
+    }
+
+    /**
+     * Replaces conditional jumps on constants by jumps and removes basic blocks
+     * that become unreachable.
+     *
+     * @return The number of conditional jumps replaced.
+     */
+    public int foldBranches() {
+        int numOfJumps = 0;
+        for (BasicBlock block : graph.blocks()) {
+            if (!(block.last() instanceof ImcCJUMP) || !(((ImcCJUMP) block.last()).cond instanceof ImcCONST))
+                continue;
+            ImcCJUMP cjump = (ImcCJUMP) block.last();
+            Label label = ((ImcCONST) cjump.cond).value != 0 ? cjump.posLabel : cjump.negLabel;
+            block.stmts().set(block.stmts().size() - 1, new ImcJUMP(label));
+            numOfJumps++;
+        }
+        if (numOfJumps > 0)
+            update();
+        return numOfJumps;
+    }
+
+    /**
+     * Brings the control-flow graph and the phi functions back in sync after
+     * basic blocks or edges have been removed: the dominator tree is
+     * recomputed, unreachable basic blocks are removed and arguments of phi
+     * functions that belong to removed edges are dropped.
+     */
+    public void update() {
+        graph.connect();
+        graph.removeUnreachable();
+        dominators = new DominatorTree(graph);
+        phis.keySet().retainAll(new HashSet<BasicBlock>(graph.blocks()));
+        for (Map.Entry<BasicBlock, Vector<Phi>> entry : phis.entrySet())
+            for (Phi phi : entry.getValue())
+                phi.args().keySet().retainAll(entry.getKey().preds());
+    }
+
+    /**
+     * Returns the number of nodes of intermediate code including phi
+     * functions.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        int size = 0;
+        for (BasicBlock block : graph.blocks()) {
+            for (ImcStmt stmt : block.stmts())
+                size += ImcCounter.size(stmt);
+            for (Phi phi : phis(block))
+                size += 1 + phi.args().size();
+        }
+        return size;
+    }
+
+    /**
+     * Converts the code fragment out of SSA form: each phi function is
+     * replaced by moves at the ends of predecessors into a new temporary
+     * variable and a move from it at the beginning of the basic block. Edges
+     * from predecessors with more than one successor are split first.
+     */
+    public void destruct() {
+        for (BasicBlock block : new Vector<BasicBlock>(graph.blocks())) {
+            Vector<Phi> blockPhis = phis(block);
+            if (blockPhis.isEmpty())
+                continue;
+            Vector<Temp> temps = new Vector<Temp>();
+            for (int i = 0; i < blockPhis.size(); i++)
+                temps.add(new Temp());
+
+            for (BasicBlock pred : new Vector<BasicBlock>(block.preds())) {
+                BasicBlock copyBlock = pred;
+                if (pred.succs().size() > 1) {
+                    Label label = new Label();
+                    Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+                    stmts.add(new ImcLABEL(label));
+                    stmts.add(new ImcJUMP(block.label));
+                    copyBlock = new BasicBlock(label, stmts);
+                    graph.retarget(pred, block.label, label);
+                    graph.insertBefore(copyBlock, block);
+                }
+                Vector<ImcStmt> stmts = copyBlock.stmts();
+                for (int i = 0; i < blockPhis.size(); i++) {
+                    ImcExpr arg = blockPhis.get(i).args().get(pred);
+                    if (arg != null)
+                        stmts.insertElementAt(new ImcMOVE(new ImcTEMP(temps.get(i)), arg), stmts.size() - 1);
+                }
+            }
+            for (int i = 0; i < blockPhis.size(); i++)
+                block.stmts().insertElementAt(new ImcMOVE(new ImcTEMP(blockPhis.get(i).dst), new ImcTEMP(temps.get(i))),
+                        1 + i);
+            blockPhis.clear();
+            graph.connect();
+        }
+        phis.clear();
+    }
+
+}
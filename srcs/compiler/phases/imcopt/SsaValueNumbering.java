@@ -0,0 +1,192 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+import compiler.phases.lincode.BasicBlock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Global value numbering on SSA form.
+ * <p>
+ * The dominator tree is walked in preorder with a scoped table mapping
+ * expressions to the temporary variables holding their values. A temporary
+ * variable defined by an expression that is already held by a temporary
+ * variable defined in a dominating position, by a copy of another temporary
+ * variable or by a constant, or by a phi function whose arguments are all the
+ * same, is replaced by that temporary variable or constant in all its uses.
+ * Only expressions without loads and function calls are numbered, as their
+ * values depend on temporary variables only. The definitions that become dead
+ * are left to dead code elimination.
+ *
+ * @author haytham
+ */
+public class SsaValueNumbering {
+
+    /**
+     * The code fragment in SSA form.
+     */
+    private final SsaForm ssa;
+
+    /**
+     * The temporary variables or constants replacing temporary variables.
+     */
+    private final HashMap<Temp, ImcExpr> substitutes = new HashMap<Temp, ImcExpr>();
+
+    /**
+     * The temporary variables holding values of expressions.
+     */
+    private final HashMap<String, Temp> table = new HashMap<String, Temp>();
+
+    /**
+     * The substitution of temporary variables.
+     */
+    private final TempSubstitution substitution = new TempSubstitution(substitutes);
+
+    /**
+     * The number of temporary variables replaced.
+     */
+    private int numOfRewrites = 0;
+
+    /**
+     * Constructs a new value numbering.
+     *
+     * @param ssa The code fragment in SSA form.
+     */
+    public SsaValueNumbering(SsaForm ssa) {
+        this.ssa = ssa;
+    }
+
+    /**
+     * Numbers values and replaces redundant temporary variables.
+     *
+     * @return The number of temporary variables replaced.
+     */
+    public int run() {
+        number(ssa.graph.entry());
+
+        // Uses in phi functions and uses not dominated by definitions.
+        for (BasicBlock block : ssa.graph.blocks()) {
+            for (Phi phi : ssa.phis(block))
+                for (Map.Entry<BasicBlock, ImcExpr> arg : phi.args().entrySet())
+                    arg.setValue(substitution.rewrite(arg.getValue()));
+            Vector<ImcStmt> stmts = block.stmts();
+            for (int i = 0; i < stmts.size(); i++)
+                stmts.set(i, substitution.substitute(stmts.get(i)));
+        }
+        numOfRewrites += ssa.foldBranches();
+        return numOfRewrites;
+    }
+
+    /**
+     * Numbers values of a basic block and of the basic blocks it dominates.
+     *
+     * @param block The basic block.
+     */
+    private void number(BasicBlock block) {
+        Vector<String> keys = new Vector<String>();
+
+        for (Phi phi : ssa.phis(block)) {
+            ImcExpr same = null;
+            boolean distinct = false;
+            StringBuilder key = new StringBuilder("PHI " + block.label.name);
+            for (Map.Entry<BasicBlock, ImcExpr> arg : phi.args().entrySet()) {
+                ImcExpr value = substitution.rewrite(arg.getValue());
+                arg.setValue(value);
+                key.append(' ').append(arg.getKey().label.name).append(':').append(key(value));
+                if (value instanceof ImcTEMP && ((ImcTEMP) value).temp == phi.dst)
+                    continue;
+                if (same == null)
+                    same = value;
+                else if (!ImcEquality.equal(same, value))
+                    distinct = true;
+            }
+            if (same != null && !distinct) {
+                replace(phi.dst, same);
+                continue;
+            }
+            define(phi.dst, key.toString(), keys);
+        }
+
+        Vector<ImcStmt> stmts = block.stmts();
+        for (int i = 0; i < stmts.size(); i++) {
+            ImcStmt stmt = substitution.substitute(stmts.get(i));
+            stmts.set(i, stmt);
+            Temp temp = ssa.def(stmt);
+            if (temp == null)
+                continue;
+            ImcExpr src = ((ImcMOVE) stmt).src;
+            if (src instanceof ImcCONST || (src instanceof ImcTEMP && !ssa.pinned(((ImcTEMP) src).temp))) {
+                replace(temp, src);
+                continue;
+            }
+            String key = key(src);
+            if (key == null)
+                continue;
+            Temp holder = table.get(key);
+            if (holder != null) {
+                replace(temp, new ImcTEMP(holder));
+                stmts.set(i, new ImcMOVE(((ImcMOVE) stmt).dst, new ImcTEMP(holder)));
+                continue;
+            }
+            define(temp, key, keys);
+        }
+
+        for (BasicBlock child : ssa.dominators().children(block))
+            number(child);
+
+        for (String key : keys)
+            table.remove(key);
+    }
+
+    private void replace(Temp temp, ImcExpr expr) {
+        substitutes.put(temp, expr);
+        numOfRewrites++;
+    }
+
+    private void define(Temp temp, String key, Vector<String> keys) {
+        if (table.containsKey(key))
+            return;
+        table.put(key, temp);
+        keys.add(key);
+    }
+
+    /**
+     * Returns the key of an expression that is the same for all expressions
+     * with the same value.
+     *
+     * @param expr The expression.
+     * @return The key of the expression or {@code null} if the expression
+     * contains a load or a function call.
+     */
+    private static String key(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return Long.toString(((ImcCONST) expr).value);
+        if (expr instanceof ImcTEMP)
+            return ((ImcTEMP) expr).temp.toString();
+        if (expr instanceof ImcNAME)
+            return ((ImcNAME) expr).label.name;
+        if (expr instanceof ImcBINOP) {
+            ImcBINOP binOp = (ImcBINOP) expr;
+            String fstKey = key(binOp.fstExpr);
+            String sndKey = key(binOp.sndExpr);
+            if (fstKey == null || sndKey == null)
+                return null;
+            if (ImcSimplifier.commutative(binOp.oper) && fstKey.compareTo(sndKey) > 0) {
+                String key = fstKey;
+                fstKey = sndKey;
+                sndKey = key;
+            }
+            return "(" + binOp.oper + " " + fstKey + " " + sndKey + ")";
+        }
+        if (expr instanceof ImcUNOP) {
+            ImcUNOP unOp = (ImcUNOP) expr;
+            String subKey = key(unOp.subExpr);
+            return subKey == null ? null : "(" + unOp.oper + " " + subKey + ")";
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,56 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+
+import java.util.Map;
+
+/**
+ * Substitutes uses of temporary variables with expressions.
+ * <p>
+ * A temporary variable defined by a move is not a use and is never
+ * substituted.
+ *
+ * @author haytham
+ */
+public class TempSubstitution extends ImcRewriter {
+
+    /**
+     * The expressions substituting temporary variables.
+     */
+    private final Map<Temp, ImcExpr> substitutes;
+
+    /**
+     * Constructs a new substitution.
+     *
+     * @param substitutes The expressions substituting temporary variables.
+     */
+    public TempSubstitution(Map<Temp, ImcExpr> substitutes) {
+        this.substitutes = substitutes;
+    }
+
+    /**
+     * Substitutes uses of temporary variables within a statement.
+     *
+     * @param stmt The statement.
+     * @return The statement with uses substituted.
+     */
+    public ImcStmt substitute(ImcStmt stmt) {
+        if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP) {
+            ImcMOVE move = (ImcMOVE) stmt;
+            ImcExpr src = rewrite(move.src);
+            return src == move.src ? move : new ImcMOVE(move.dst, src);
+        }
+        return rewrite(stmt);
+    }
+
+    @Override
+    public ImcInstr visit(ImcTEMP temp, Object visArg) {
+        ImcExpr substitute = substitutes.get(temp.temp);
+        if (substitute == null)
+            return temp;
+        numOfRewrites++;
+        return substitute;
+    }
+
+}
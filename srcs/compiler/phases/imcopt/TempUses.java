@@ -0,0 +1,55 @@
+package compiler.phases.imcopt;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.code.*;
+
+import java.util.LinkedHashSet;
+
+/**
+ * Collects temporary variables used by intermediate code trees.
+ * <p>
+ * A temporary variable defined by a move is not a use.
+ *
+ * @author haytham
+ */
+public class TempUses extends ImcRewriter {
+
+    /**
+     * The temporary variables used.
+     */
+    private final LinkedHashSet<Temp> uses = new LinkedHashSet<Temp>();
+
+    /**
+     * Returns the temporary variables used by a statement.
+     *
+     * @param stmt The statement.
+     * @return The temporary variables used.
+     */
+    public static LinkedHashSet<Temp> of(ImcStmt stmt) {
+        TempUses tempUses = new TempUses();
+        if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+            tempUses.rewrite(((ImcMOVE) stmt).src);
+        else
+            tempUses.rewrite(stmt);
+        return tempUses.uses;
+    }
+
+    /**
+     * Returns the temporary variables used by an expression.
+     *
+     * @param expr The expression.
+     * @return The temporary variables used.
+     */
+    public static LinkedHashSet<Temp> of(ImcExpr expr) {
+        TempUses tempUses = new TempUses();
+        tempUses.rewrite(expr);
+        return tempUses.uses;
+    }
+
+    @Override
+    public ImcInstr visit(ImcTEMP temp, Object visArg) {
+        uses.add(temp.temp);
+        return temp;
+    }
+
+}
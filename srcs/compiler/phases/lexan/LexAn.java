@@ -1,5 +1,6 @@
 package compiler.phases.lexan;
 
+import common.report.Diagnostics;
 import common.report.Location;
 import common.report.Report;
 import compiler.phases.Phase;
@@ -158,7 +159,8 @@ public class LexAn extends Phase {
                     if (c >= 32 && c <= 126) {
                         quotedChar = true;
                     } else {
-                        throw new Report.Error(new Location(endLine, endColumn), "Character " + c + " with code " + i + " cannot be enclosed in quotes");
+                        Diagnostics.error(new Location(endLine, endColumn), "Character " + c + " with code " + i + " cannot be enclosed in quotes");
+                        quotedChar = true;
                     }
                 }
 
@@ -430,10 +432,9 @@ public class LexAn extends Phase {
                         quote = false;
                         // wrong - only one character can be enclosed in quotes
                         if (lexeme.length() > 3) {
-                            throw new Report.Error(new Location(endLine, endColumn), "Only one character can be enclosed in quotes at a time");
-                        } else {
-                            break;
+                            Diagnostics.error(new Location(endLine, endColumn), "Only one character can be enclosed in quotes at a time");
                         }
+                        break;
                     } else {
                         endColumn--;
                         lexeme = lexeme.substring(0, lexeme.length() - 1);
@@ -474,7 +475,7 @@ public class LexAn extends Phase {
                         int j;
                         while ((j = srcFile.read()) != '\n') {
                             if (j > 127) {
-                                throw new Report.Error(new Location(endLine, endColumn), "Character " + (char) j + " with code " + j + " cannot be in a source file");
+                                Diagnostics.error(new Location(endLine, endColumn), "Character " + (char) j + " with code " + j + " cannot be in a source file");
                             }
                             endColumn++;
                         }
@@ -492,9 +493,18 @@ public class LexAn extends Phase {
                 }
 
 
-                // character not allowed
+                // character not allowed: report it and skip it as if it were whitespace
                 else {
-                    throw new Report.Error(new Location(endLine, endColumn), "Character " + c + " with code " + (int) c + " cannot be in a source file.");
+                    if (term == null) {
+                        Diagnostics.error(new Location(endLine, endColumn), "Character " + c + " with code " + (int) c + " cannot be in a source file.");
+                        begColumn = endColumn + 1;
+                        lexeme = "";
+                    } else {
+                        endColumn--;
+                        lexeme = lexeme.substring(0, lexeme.length() - 1);
+                        srcFile.reset();
+                        break;
+                    }
                 }
 
                 endColumn++;
@@ -508,7 +518,7 @@ public class LexAn extends Phase {
         }
 
         if (quotedChar && quote) {
-            throw new Report.Error(new Location(endLine, endColumn), "Unterminated character constant");
+            Diagnostics.error(new Location(endLine, endColumn), "Unterminated character constant");
         }
 
         //set line and column for next call of lexify
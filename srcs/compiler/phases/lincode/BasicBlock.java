@@ -0,0 +1,91 @@
+package compiler.phases.lincode;
+
+import compiler.phases.frames.Label;
+import compiler.phases.imcgen.code.ImcStmt;
+
+import java.util.Vector;
+
+/**
+ * A basic block of linear intermediate code.
+ * <p>
+ * A basic block starts with the label it is named by and, unless it is the
+ * exit block of a code fragment, ends with a jump or a conditional jump; no
+ * other statement of a basic block is a label or a jump.
+ *
+ * @author haytham
+ */
+public class BasicBlock {
+
+    /**
+     * The label of this basic block.
+     */
+    public final Label label;
+
+    /**
+     * The statements of this basic block.
+     */
+    private final Vector<ImcStmt> stmts;
+
+    /**
+     * The successors of this basic block.
+     */
+    private final Vector<BasicBlock> succs = new Vector<BasicBlock>();
+
+    /**
+     * The predecessors of this basic block.
+     */
+    private final Vector<BasicBlock> preds = new Vector<BasicBlock>();
+
+    /**
+     * Constructs a new basic block.
+     *
+     * @param label The label of the basic block.
+     * @param stmts The statements of the basic block.
+     */
+    public BasicBlock(Label label, Vector<ImcStmt> stmts) {
+        this.label = label;
+        this.stmts = stmts;
+    }
+
+    /**
+     * Returns the statements of this basic block.
+     *
+     * @return The statements of this basic block.
+     */
+    public Vector<ImcStmt> stmts() {
+        return stmts;
+    }
+
+    /**
+     * Returns the last statement of this basic block.
+     *
+     * @return The last statement of this basic block.
+     */
+    public ImcStmt last() {
+        return stmts.lastElement();
+    }
+
+    /**
+     * Returns the successors of this basic block.
+     *
+     * @return The successors of this basic block.
+     */
+    public Vector<BasicBlock> succs() {
+        return succs;
+    }
+
+    /**
+     * Returns the predecessors of this basic block.
+     *
+     * @return The predecessors of this basic block.
+     */
+    public Vector<BasicBlock> preds() {
+        return preds;
+    }
+
+    @Override
+    public String toString() {
+        return label.name;
+    }
+
+}
@@ -0,0 +1,246 @@
+package compiler.phases.lincode;
+
+import compiler.phases.frames.Label;
+import compiler.phases.imcgen.code.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.Vector;
+
+/**
+ * The call graph of linear code.
+ * <p>
+ * Functions are identified by names of their labels. For each code fragment,
+ * the functions it calls are recorded together with the number of call sites,
+ * including functions without a code fragment, such as those of the standard
+ * library, as well as the names of data fragments it refers to. Code
+ * fragments are grouped into strongly connected components, i.e., sets of
+ * mutually recursive functions. The call graph is a snapshot: it does not
+ * change if the code fragments do.
+ *
+ * @author haytham
+ */
+public class CallGraph {
+
+    /**
+     * The code fragments by names of their labels.
+     */
+    private final LinkedHashMap<String, CodeFragment> fragments = new LinkedHashMap<String, CodeFragment>();
+
+    /**
+     * The functions called by each code fragment and the numbers of their call
+     * sites in it.
+     */
+    private final HashMap<CodeFragment, LinkedHashMap<String, Integer>> callees = new HashMap<CodeFragment, LinkedHashMap<String, Integer>>();
+
+    /**
+     * The names of data fragments referred to by each code fragment.
+     */
+    private final HashMap<CodeFragment, HashSet<String>> names = new HashMap<CodeFragment, HashSet<String>>();
+
+    /**
+     * The numbers of call sites of functions in the whole program.
+     */
+    private final HashMap<String, Integer> numOfCallSites = new HashMap<String, Integer>();
+
+    /**
+     * The strongly connected components of code fragments, callees before
+     * callers.
+     */
+    private final Vector<Vector<CodeFragment>> components = new Vector<Vector<CodeFragment>>();
+
+    /**
+     * The strongly connected component of each code fragment.
+     */
+    private final HashMap<CodeFragment, Vector<CodeFragment>> component = new HashMap<CodeFragment, Vector<CodeFragment>>();
+
+    /**
+     * Constructs the call graph of a program.
+     *
+     * @param fragments The fragments of the program.
+     */
+    public CallGraph(List<Fragment> fragments) {
+        for (Fragment fragment : fragments) {
+            if (fragment instanceof CodeFragment)
+                this.fragments.put(((CodeFragment) fragment).frame.label.name, (CodeFragment) fragment);
+        }
+        for (CodeFragment fragment : this.fragments.values()) {
+            LinkedHashMap<String, Integer> calls = new LinkedHashMap<String, Integer>();
+            HashSet<String> names = new HashSet<String>();
+            for (ImcStmt stmt : fragment.stmts())
+                scan(stmt, calls, names);
+            callees.put(fragment, calls);
+            this.names.put(fragment, names);
+            for (String callee : calls.keySet()) {
+                Integer num = numOfCallSites.get(callee);
+                numOfCallSites.put(callee, (num == null ? 0 : num) + calls.get(callee));
+            }
+        }
+
+        HashMap<CodeFragment, Integer> indices = new HashMap<CodeFragment, Integer>();
+        HashMap<CodeFragment, Integer> lowLinks = new HashMap<CodeFragment, Integer>();
+        Stack<CodeFragment> stack = new Stack<CodeFragment>();
+        for (CodeFragment fragment : this.fragments.values()) {
+            if (!indices.containsKey(fragment))
+                connect(fragment, indices, lowLinks, stack);
+        }
+    }
+
+    /**
+     * Finds strongly connected components by Tarjan's algorithm.
+     */
+    private void connect(CodeFragment fragment, HashMap<CodeFragment, Integer> indices,
+                         HashMap<CodeFragment, Integer> lowLinks, Stack<CodeFragment> stack) {
+        indices.put(fragment, indices.size());
+        lowLinks.put(fragment, indices.get(fragment));
+        stack.push(fragment);
+        for (String name : callees.get(fragment).keySet()) {
+            CodeFragment callee = fragments.get(name);
+            if (callee == null)
+                continue;
+            if (!indices.containsKey(callee)) {
+                connect(callee, indices, lowLinks, stack);
+                lowLinks.put(fragment, Math.min(lowLinks.get(fragment), lowLinks.get(callee)));
+            } else if (stack.contains(callee))
+                lowLinks.put(fragment, Math.min(lowLinks.get(fragment), indices.get(callee)));
+        }
+        if (lowLinks.get(fragment).equals(indices.get(fragment))) {
+            Vector<CodeFragment> members = new Vector<CodeFragment>();
+            CodeFragment member;
+            do {
+                member = stack.pop();
+                members.add(member);
+                component.put(member, members);
+            } while (member != fragment);
+            components.add(members);
+        }
+    }
+
+    private void scan(ImcInstr instr, LinkedHashMap<String, Integer> calls, HashSet<String> names) {
+        if (instr instanceof ImcCALL) {
+            String callee = ((ImcCALL) instr).label.name;
+            Integer num = calls.get(callee);
+            calls.put(callee, (num == null ? 0 : num) + 1);
+            for (ImcExpr arg : ((ImcCALL) instr).args())
+                scan(arg, calls, names);
+        }
+        if (instr instanceof ImcMOVE) {
+            scan(((ImcMOVE) instr).dst, calls, names);
+            scan(((ImcMOVE) instr).src, calls, names);
+        }
+        if (instr instanceof ImcESTMT)
+            scan(((ImcESTMT) instr).expr, calls, names);
+        if (instr instanceof ImcCJUMP)
+            scan(((ImcCJUMP) instr).cond, calls, names);
+        if (instr instanceof ImcSTMTS)
+            for (ImcStmt stmt : ((ImcSTMTS) instr).stmts())
+                scan(stmt, calls, names);
+        if (instr instanceof ImcMEM)
+            scan(((ImcMEM) instr).addr, calls, names);
+        if (instr instanceof ImcBINOP) {
+            scan(((ImcBINOP) instr).fstExpr, calls, names);
+            scan(((ImcBINOP) instr).sndExpr, calls, names);
+        }
+        if (instr instanceof ImcUNOP)
+            scan(((ImcUNOP) instr).subExpr, calls, names);
+        if (instr instanceof ImcSEXPR) {
+            scan(((ImcSEXPR) instr).stmt, calls, names);
+            scan(((ImcSEXPR) instr).expr, calls, names);
+        }
+        if (instr instanceof ImcNAME)
+            names.add(((ImcNAME) instr).label.name);
+    }
+
+    /**
+     * Returns the code fragment of a function.
+     *
+     * @param label The label of the function.
+     * @return The code fragment or {@code null} if the function has none.
+     */
+    public CodeFragment fragment(Label label) {
+        return fragments.get(label.name);
+    }
+
+    /**
+     * Returns the names of labels of functions called by a code fragment.
+     *
+     * @param fragment The code fragment.
+     * @return The names of labels of the functions called.
+     */
+    public Set<String> callees(CodeFragment fragment) {
+        return callees.get(fragment).keySet();
+    }
+
+    /**
+     * Returns the number of call sites of a function in the whole program.
+     *
+     * @param label The label of the function.
+     * @return The number of call sites.
+     */
+    public int numOfCallSites(Label label) {
+        Integer num = numOfCallSites.get(label.name);
+        return num == null ? 0 : num;
+    }
+
+    /**
+     * Checks whether a code fragment calls no functions.
+     *
+     * @param fragment The code fragment.
+     * @return {@code true} if the code fragment calls no functions,
+     * {@code false} otherwise.
+     */
+    public boolean leaf(CodeFragment fragment) {
+        return callees.get(fragment).isEmpty();
+    }
+
+    /**
+     * Checks whether a code fragment might call itself, directly or through
+     * other functions.
+     *
+     * @param fragment The code fragment.
+     * @return {@code true} if the code fragment is recursive, {@code false}
+     * otherwise.
+     */
+    public boolean recursive(CodeFragment fragment) {
+        return component.get(fragment).size() > 1 || callees.get(fragment).containsKey(fragment.frame.label.name);
+    }
+
+    /**
+     * Returns the strongly connected components of code fragments, i.e., the
+     * sets of mutually recursive functions, ordered so that a component comes
+     * after all components it calls.
+     *
+     * @return The strongly connected components.
+     */
+    public Vector<Vector<CodeFragment>> components() {
+        return components;
+    }
+
+    /**
+     * Returns the names of labels of all fragments reachable from a code
+     * fragment, including the code fragment itself.
+     *
+     * @param root The code fragment.
+     * @return The names of labels of reachable code and data fragments.
+     */
+    public HashSet<String> reachable(CodeFragment root) {
+        HashSet<String> reachable = new HashSet<String>();
+        Stack<CodeFragment> worklist = new Stack<CodeFragment>();
+        reachable.add(root.frame.label.name);
+        worklist.push(root);
+        while (!worklist.isEmpty()) {
+            CodeFragment fragment = worklist.pop();
+            reachable.addAll(names.get(fragment));
+            for (String name : callees.get(fragment).keySet()) {
+                if (reachable.add(name) && fragments.containsKey(name))
+                    worklist.push(fragments.get(name));
+            }
+        }
+        return reachable;
+    }
+
+}
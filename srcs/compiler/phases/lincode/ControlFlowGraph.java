@@ -0,0 +1,434 @@
+package compiler.phases.lincode;
+
+import common.report.Report;
+import compiler.phases.frames.Label;
+import compiler.phases.imcgen.code.*;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * The control-flow graph of basic blocks of a code fragment.
+ * <p>
+ * The first basic block is the entry block named by the prologue label of the
+ * code fragment and the last one is the exit block that consists of the
+ * epilogue label only. A statement falling through to a label is made explicit
+ * by a jump, so basic blocks can be put in any order; statements that follow a
+ * jump without a label are put into a new basic block, which is unreachable.
+ * <p>
+ * The statements of a code fragment are not changed until
+ * {@link #linearize()} is called.
+ *
+ * @author haytham
+ */
+public class ControlFlowGraph {
+
+    /**
+     * The code fragment.
+     */
+    public final CodeFragment fragment;
+
+    /**
+     * The basic blocks in the order of the code fragment.
+     */
+    private final Vector<BasicBlock> blocks = new Vector<BasicBlock>();
+
+    /**
+     * The basic blocks by names of their labels.
+     */
+    private final HashMap<String, BasicBlock> blocksByName = new HashMap<String, BasicBlock>();
+
+    /**
+     * Constructs the control-flow graph of a code fragment.
+     *
+     * @param fragment The code fragment.
+     */
+    public ControlFlowGraph(CodeFragment fragment) {
+        this.fragment = fragment;
+
+        Vector<ImcStmt> stmts = null;
+        for (ImcStmt stmt : fragment.stmts()) {
+            if (stmt instanceof ImcLABEL) {
+                Label label = ((ImcLABEL) stmt).label;
+                if (stmts != null)
+                    stmts.add(new ImcJUMP(label));
+                stmts = new Vector<ImcStmt>();
+                stmts.add(stmt);
+                add(new BasicBlock(label, stmts));
+                if (label.name.equals(fragment.endLabel.name))
+                    stmts = null;
+                continue;
+            }
+            if (stmts == null) {
+                // Unreachable code without a label.
+                Label label = new Label();
+                stmts = new Vector<ImcStmt>();
+                stmts.add(new ImcLABEL(label));
+                add(new BasicBlock(label, stmts));
+            }
+            stmts.add(stmt);
+            if (stmt instanceof ImcJUMP || stmt instanceof ImcCJUMP)
+                stmts = null;
+        }
+        if (blocks.isEmpty() || !blocks.firstElement().label.name.equals(fragment.begLabel.name)
+                || exit() == null || exit().stmts().size() != 1)
+            throw new Report.InternalError();
+
+        connect();
+    }
+
+    /**
+     * Adds a basic block to the graph.
+     *
+     * @param block The basic block.
+     */
+    private void add(BasicBlock block) {
+        blocks.add(block);
+        blocksByName.put(block.label.name, block);
+    }
+
+    /**
+     * Returns all basic blocks in their current order.
+     *
+     * @return All basic blocks.
+     */
+    public Vector<BasicBlock> blocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the entry block.
+     *
+     * @return The entry block.
+     */
+    public BasicBlock entry() {
+        return blocks.firstElement();
+    }
+
+    /**
+     * Returns the exit block.
+     *
+     * @return The exit block.
+     */
+    public BasicBlock exit() {
+        return blocksByName.get(fragment.endLabel.name);
+    }
+
+    /**
+     * Returns the basic block named by a label.
+     *
+     * @param label The label.
+     * @return The basic block or {@code null} if there is none.
+     */
+    public BasicBlock block(Label label) {
+        return blocksByName.get(label.name);
+    }
+
+    /**
+     * Returns the labels a basic block jumps to.
+     *
+     * @param block The basic block.
+     * @return The labels the basic block jumps to.
+     */
+    private static Vector<Label> targets(BasicBlock block) {
+        Vector<Label> targets = new Vector<Label>();
+        ImcStmt last = block.last();
+        if (last instanceof ImcJUMP)
+            targets.add(((ImcJUMP) last).label);
+        if (last instanceof ImcCJUMP) {
+            targets.add(((ImcCJUMP) last).posLabel);
+            targets.add(((ImcCJUMP) last).negLabel);
+        }
+        return targets;
+    }
+
+    /**
+     * Adds a new basic block just before another one. The new basic block is
+     * not connected until {@link #connect()} is called.
+     *
+     * @param block The new basic block.
+     * @param next  The basic block the new basic block is put before.
+     */
+    public void insertBefore(BasicBlock block, BasicBlock next) {
+        blocks.insertElementAt(block, blocks.indexOf(next));
+        blocksByName.put(block.label.name, block);
+    }
+
+    /**
+     * Redirects the jump ending a basic block from one label to another. The
+     * basic block is not reconnected until {@link #connect()} is called.
+     *
+     * @param block    The basic block.
+     * @param oldLabel The label jumped to.
+     * @param newLabel The label to jump to instead.
+     */
+    public void retarget(BasicBlock block, Label oldLabel, Label newLabel) {
+        ImcStmt last = block.last();
+        if (last instanceof ImcJUMP && ((ImcJUMP) last).label.name.equals(oldLabel.name))
+            last = new ImcJUMP(newLabel);
+        if (last instanceof ImcCJUMP) {
+            ImcCJUMP cjump = (ImcCJUMP) last;
+            Label posLabel = cjump.posLabel.name.equals(oldLabel.name) ? newLabel : cjump.posLabel;
+            Label negLabel = cjump.negLabel.name.equals(oldLabel.name) ? newLabel : cjump.negLabel;
+            last = new ImcCJUMP(cjump.cond, posLabel, negLabel);
+        }
+        block.stmts().set(block.stmts().size() - 1, last);
+    }
+
+    /**
+     * Recomputes successors and predecessors of all basic blocks.
+     */
+    public void connect() {
+        for (BasicBlock block : blocks) {
+            block.succs().clear();
+            block.preds().clear();
+        }
+        for (BasicBlock block : blocks) {
+            for (Label target : targets(block)) {
+                BasicBlock succ = block(target);
+                if (succ == null)
+                    throw new Report.InternalError();
+                if (!block.succs().contains(succ)) {
+                    block.succs().add(succ);
+                    succ.preds().add(block);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redirects jumps to basic blocks consisting of a single jump to the
+     * final targets of such chains of jumps. A conditional jump whose both
+     * targets are the same is replaced by a jump.
+     *
+     * @return The number of jumps redirected.
+     */
+    public int threadJumps() {
+        int numOfJumps = 0;
+        for (BasicBlock block : blocks) {
+            ImcStmt last = block.last();
+            ImcStmt newLast = last;
+            if (last instanceof ImcJUMP) {
+                Label label = thread(((ImcJUMP) last).label);
+                if (label != ((ImcJUMP) last).label)
+                    newLast = new ImcJUMP(label);
+            }
+            if (last instanceof ImcCJUMP) {
+                ImcCJUMP cjump = (ImcCJUMP) last;
+                Label posLabel = thread(cjump.posLabel);
+                Label negLabel = thread(cjump.negLabel);
+                if (posLabel.name.equals(negLabel.name))
+                    newLast = new ImcJUMP(posLabel);
+                else if (posLabel != cjump.posLabel || negLabel != cjump.negLabel)
+                    newLast = new ImcCJUMP(cjump.cond, posLabel, negLabel);
+            }
+            if (newLast != last) {
+                block.stmts().set(block.stmts().size() - 1, newLast);
+                numOfJumps++;
+            }
+        }
+        connect();
+        return numOfJumps;
+    }
+
+    /**
+     * Returns the final target of a chain of jumps.
+     *
+     * @param label The label jumped to.
+     * @return The label of the first basic block in the chain that does more
+     * than jump.
+     */
+    private Label thread(Label label) {
+        HashSet<String> visited = new HashSet<String>();
+        while (visited.add(label.name)) {
+            BasicBlock block = block(label);
+            if (block.stmts().size() != 2 || !(block.last() instanceof ImcJUMP))
+                break;
+            label = ((ImcJUMP) block.last()).label;
+        }
+        return label;
+    }
+
+    /**
+     * Removes basic blocks that cannot be reached from the entry block. The
+     * exit block is never removed.
+     *
+     * @return The number of basic blocks removed.
+     */
+    public int removeUnreachable() {
+        HashSet<BasicBlock> reached = new HashSet<BasicBlock>();
+        Vector<BasicBlock> worklist = new Vector<BasicBlock>();
+        reached.add(entry());
+        worklist.add(entry());
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.remove(worklist.size() - 1);
+            for (BasicBlock succ : block.succs())
+                if (reached.add(succ))
+                    worklist.add(succ);
+        }
+        reached.add(exit());
+
+        int numOfBlocks = blocks.size();
+        blocks.retainAll(reached);
+        blocksByName.values().retainAll(reached);
+        connect();
+        return numOfBlocks - blocks.size();
+    }
+
+    /**
+     * Returns the natural loop a basic block is the header of: the basic block
+     * itself and all basic blocks from which a jump back to it can be reached
+     * without passing it. Such loop can only be entered through its header.
+     *
+     * @param header The basic block.
+     * @return The basic blocks of the loop or {@code null} if the basic block
+     * is not a header of a loop.
+     */
+    public LinkedHashSet<BasicBlock> loop(BasicBlock header) {
+        if (header == entry())
+            return null;
+        LinkedHashSet<BasicBlock> body = null;
+        for (BasicBlock latch : header.preds()) {
+            // Blocks reaching the latch without passing the header.
+            LinkedHashSet<BasicBlock> blocks = new LinkedHashSet<BasicBlock>();
+            Vector<BasicBlock> worklist = new Vector<BasicBlock>();
+            blocks.add(header);
+            if (blocks.add(latch))
+                worklist.add(latch);
+            boolean entered = false;
+            while (!worklist.isEmpty() && !entered) {
+                BasicBlock block = worklist.remove(worklist.size() - 1);
+                if (block == entry())
+                    entered = true;
+                for (BasicBlock pred : block.preds())
+                    if (blocks.add(pred))
+                        worklist.add(pred);
+            }
+            if (entered)
+                continue;
+            if (body == null)
+                body = blocks;
+            else
+                body.addAll(blocks);
+        }
+        return body;
+    }
+
+    /**
+     * Returns the headers of all loops, inner loops first, i.e., ordered by
+     * the sizes of their loops.
+     *
+     * @return The headers of all loops.
+     */
+    public Vector<BasicBlock> loopHeaders() {
+        final HashMap<BasicBlock, Integer> sizes = new HashMap<BasicBlock, Integer>();
+        for (BasicBlock block : blocks) {
+            HashSet<BasicBlock> body = loop(block);
+            if (body != null)
+                sizes.put(block, body.size());
+        }
+        Vector<BasicBlock> headers = new Vector<BasicBlock>(sizes.keySet());
+        headers.sort(Comparator.comparingInt(sizes::get).thenComparingInt(blocks::indexOf));
+        return headers;
+    }
+
+    /**
+     * Puts statements into a new basic block that is entered instead of the
+     * header of a loop from outside the loop. The graph is reconnected.
+     *
+     * @param header The header of the loop.
+     * @param body   The basic blocks of the loop.
+     * @param stmts  The statements to be executed before the loop is entered.
+     * @return The new basic block.
+     */
+    public BasicBlock insertPreheader(BasicBlock header, Set<BasicBlock> body, Vector<ImcStmt> stmts) {
+        Label label = new Label();
+        Vector<ImcStmt> preheaderStmts = new Vector<ImcStmt>();
+        preheaderStmts.add(new ImcLABEL(label));
+        preheaderStmts.addAll(stmts);
+        preheaderStmts.add(new ImcJUMP(header.label));
+        for (BasicBlock pred : new Vector<BasicBlock>(header.preds()))
+            if (!body.contains(pred))
+                retarget(pred, header.label, label);
+        BasicBlock preheader = new BasicBlock(label, preheaderStmts);
+        insertBefore(preheader, header);
+        connect();
+        return preheader;
+    }
+
+    /**
+     * Orders basic blocks into traces so that as many jumps as possible are
+     * followed by their targets and each conditional jump is followed by its
+     * negative target. Traces are started in the original order of basic
+     * blocks, so the entry block remains the first one; the exit block is put
+     * last.
+     */
+    public void schedule() {
+        HashSet<BasicBlock> marked = new HashSet<BasicBlock>();
+        Vector<BasicBlock> order = new Vector<BasicBlock>();
+        marked.add(exit());
+        for (BasicBlock head : blocks) {
+            BasicBlock block = head;
+            while (block != null && marked.add(block)) {
+                order.add(block);
+                ImcStmt last = block.last();
+                BasicBlock next = null;
+                if (last instanceof ImcJUMP)
+                    next = block(((ImcJUMP) last).label);
+                if (last instanceof ImcCJUMP) {
+                    next = block(((ImcCJUMP) last).negLabel);
+                    if (marked.contains(next))
+                        next = block(((ImcCJUMP) last).posLabel);
+                }
+                block = next;
+            }
+        }
+        order.add(exit());
+        blocks.clear();
+        blocks.addAll(order);
+    }
+
+    /**
+     * Replaces the statements of the code fragment with the statements of
+     * basic blocks in their current order. Jumps to the next basic block are
+     * dropped and conditional jumps not followed by their negative targets are
+     * given new negative targets that jump to the original ones.
+     *
+     * @return The number of jumps dropped.
+     */
+    public int linearize() {
+        int numOfJumps = 0;
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        for (int b = 0; b < blocks.size(); b++) {
+            BasicBlock block = blocks.get(b);
+            String nextName = b + 1 < blocks.size() ? blocks.get(b + 1).label.name : null;
+            ImcStmt last = block.last();
+            if (!(last instanceof ImcJUMP || last instanceof ImcCJUMP)) {
+                stmts.addAll(block.stmts());
+                continue;
+            }
+            stmts.addAll(block.stmts().subList(0, block.stmts().size() - 1));
+            if (last instanceof ImcJUMP && ((ImcJUMP) last).label.name.equals(nextName)) {
+                numOfJumps++;
+                continue;
+            }
+            if (last instanceof ImcCJUMP && !((ImcCJUMP) last).negLabel.name.equals(nextName)) {
+                ImcCJUMP cjump = (ImcCJUMP) last;
+                Label negLabel = new Label();
+                stmts.add(new ImcCJUMP(cjump.cond, cjump.posLabel, negLabel));
+                stmts.add(new ImcLABEL(negLabel));
+                stmts.add(new ImcJUMP(cjump.negLabel));
+                continue;
+            }
+            stmts.add(last);
+        }
+        fragment.stmts().clear();
+        fragment.stmts().addAll(stmts);
+        return numOfJumps;
+    }
+
+}
@@ -0,0 +1,217 @@
+package compiler.phases.lincode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Vector;
+
+/**
+ * The dominator tree and dominance frontiers of a control-flow graph.
+ * <p>
+ * Immediate dominators are computed by the iterative algorithm of Cooper,
+ * Harvey and Kennedy over the reverse postorder of basic blocks reachable from
+ * the entry block; unreachable basic blocks are not part of the tree.
+ *
+ * @author haytham
+ */
+public class DominatorTree {
+
+    /**
+     * The basic blocks reachable from the entry block in reverse postorder.
+     */
+    private final Vector<BasicBlock> order = new Vector<BasicBlock>();
+
+    /**
+     * The indices of basic blocks in reverse postorder.
+     */
+    private final HashMap<BasicBlock, Integer> numbers = new HashMap<BasicBlock, Integer>();
+
+    /**
+     * The immediate dominators of basic blocks (the entry block is its own).
+     */
+    private final HashMap<BasicBlock, BasicBlock> idoms = new HashMap<BasicBlock, BasicBlock>();
+
+    /**
+     * The basic blocks immediately dominated by each basic block.
+     */
+    private final HashMap<BasicBlock, Vector<BasicBlock>> children = new HashMap<BasicBlock, Vector<BasicBlock>>();
+
+    /**
+     * The dominance frontiers of basic blocks.
+     */
+    private final HashMap<BasicBlock, LinkedHashSet<BasicBlock>> frontiers = new HashMap<BasicBlock, LinkedHashSet<BasicBlock>>();
+
+    /**
+     * Computes the dominator tree of a control-flow graph.
+     *
+     * @param graph The control-flow graph.
+     */
+    public DominatorTree(ControlFlowGraph graph) {
+        postorder(graph.entry());
+        Collections.reverse(order);
+        for (int i = 0; i < order.size(); i++) {
+            numbers.put(order.get(i), i);
+            children.put(order.get(i), new Vector<BasicBlock>());
+            frontiers.put(order.get(i), new LinkedHashSet<BasicBlock>());
+        }
+
+        // Immediate dominators.
+        BasicBlock entry = graph.entry();
+        idoms.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : order) {
+                if (block == entry)
+                    continue;
+                BasicBlock idom = null;
+                for (BasicBlock pred : block.preds()) {
+                    if (!idoms.containsKey(pred))
+                        continue;
+                    idom = idom == null ? pred : intersect(pred, idom);
+                }
+                if (idoms.get(block) != idom) {
+                    idoms.put(block, idom);
+                    changed = true;
+                }
+            }
+        }
+        for (BasicBlock block : order)
+            if (block != entry)
+                children.get(idoms.get(block)).add(block);
+
+        // Dominance frontiers.
+        for (BasicBlock block : order) {
+            if (block.preds().size() < 2)
+                continue;
+            for (BasicBlock pred : block.preds()) {
+                if (!numbers.containsKey(pred))
+                    continue;
+                BasicBlock runner = pred;
+                while (runner != idoms.get(block)) {
+                    frontiers.get(runner).add(block);
+                    runner = idoms.get(runner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists basic blocks reachable from a basic block in postorder.
+     *
+     * @param entry The basic block.
+     */
+    private void postorder(BasicBlock entry) {
+        HashSet<BasicBlock> visited = new HashSet<BasicBlock>();
+        Vector<BasicBlock> blocks = new Vector<BasicBlock>();
+        Vector<Integer> nexts = new Vector<Integer>();
+        visited.add(entry);
+        blocks.add(entry);
+        nexts.add(0);
+        while (!blocks.isEmpty()) {
+            int top = blocks.size() - 1;
+            BasicBlock block = blocks.get(top);
+            int next = nexts.get(top);
+            if (next < block.succs().size()) {
+                nexts.set(top, next + 1);
+                BasicBlock succ = block.succs().get(next);
+                if (visited.add(succ)) {
+                    blocks.add(succ);
+                    nexts.add(0);
+                }
+                continue;
+            }
+            blocks.remove(top);
+            nexts.remove(top);
+            order.add(block);
+        }
+    }
+
+    /**
+     * Returns the nearest common dominator of two basic blocks.
+     *
+     * @param fstBlock The first basic block.
+     * @param sndBlock The second basic block.
+     * @return The nearest common dominator.
+     */
+    private BasicBlock intersect(BasicBlock fstBlock, BasicBlock sndBlock) {
+        while (fstBlock != sndBlock) {
+            while (numbers.get(fstBlock) > numbers.get(sndBlock))
+                fstBlock = idoms.get(fstBlock);
+            while (numbers.get(sndBlock) > numbers.get(fstBlock))
+                sndBlock = idoms.get(sndBlock);
+        }
+        return fstBlock;
+    }
+
+    /**
+     * Returns the basic blocks reachable from the entry block in reverse
+     * postorder.
+     *
+     * @return The basic blocks in reverse postorder.
+     */
+    public Vector<BasicBlock> reversePostorder() {
+        return order;
+    }
+
+    /**
+     * Checks whether a basic block is reachable from the entry block.
+     *
+     * @param block The basic block.
+     * @return {@code true} if the basic block is reachable, {@code false}
+     * otherwise.
+     */
+    public boolean reachable(BasicBlock block) {
+        return numbers.containsKey(block);
+    }
+
+    /**
+     * Returns the immediate dominator of a basic block.
+     *
+     * @param block The basic block.
+     * @return The immediate dominator or {@code null} for the entry block.
+     */
+    public BasicBlock idom(BasicBlock block) {
+        BasicBlock idom = idoms.get(block);
+        return idom == block ? null : idom;
+    }
+
+    /**
+     * Returns the basic blocks immediately dominated by a basic block.
+     *
+     * @param block The basic block.
+     * @return The basic blocks immediately dominated by the basic block.
+     */
+    public Vector<BasicBlock> children(BasicBlock block) {
+        return children.get(block);
+    }
+
+    /**
+     * Checks whether a basic block dominates another one.
+     *
+     * @param dom   The dominating basic block.
+     * @param block The dominated basic block.
+     * @return {@code true} if {@code dom} dominates {@code block},
+     * {@code false} otherwise.
+     */
+    public boolean dominates(BasicBlock dom, BasicBlock block) {
+        while (block != null) {
+            if (block == dom)
+                return true;
+            block = idom(block);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the dominance frontier of a basic block.
+     *
+     * @param block The basic block.
+     * @return The dominance frontier of the basic block.
+     */
+    public LinkedHashSet<BasicBlock> frontier(BasicBlock block) {
+        return frontiers.get(block);
+    }
+
+}
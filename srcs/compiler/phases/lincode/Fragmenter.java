@@ -208,6 +208,59 @@ public class Fragmenter extends AbsFullVisitor<Object, Object> {
     }
 
 
+    /**
+     * Translates a condition of a conditional or a loop into conditional
+     * jumps. A conjunction or a disjunction whose second operand has no side
+     * effects is translated into a cascade of conditional jumps, so that the
+     * second operand is not evaluated if the first one decides the result; a
+     * negation is translated by swapping the labels.
+     *
+     * @param cond     The condition.
+     * @param posLabel The label jumped to if the condition is true.
+     * @param negLabel The label jumped to if the condition is false.
+     * @param visArg   The visitor argument.
+     */
+    private void translateCond(AbsExpr cond, Label posLabel, Label negLabel, Object visArg) {
+        if (cond instanceof AbsBinExpr && pure(ImcGen.exprImCode.get(((AbsBinExpr) cond).sndExpr))) {
+            AbsBinExpr binExpr = (AbsBinExpr) cond;
+            if (binExpr.oper == AbsBinExpr.Oper.AND || binExpr.oper == AbsBinExpr.Oper.IOR) {
+                Label label = new Label();
+                if (binExpr.oper == AbsBinExpr.Oper.AND)
+                    translateCond(binExpr.fstExpr, label, negLabel, visArg);
+                else
+                    translateCond(binExpr.fstExpr, posLabel, label, visArg);
+                stack.peek().add(new ImcLABEL(label));
+                translateCond(binExpr.sndExpr, posLabel, negLabel, visArg);
+                return;
+            }
+        }
+        if (cond instanceof AbsUnExpr && ((AbsUnExpr) cond).oper == AbsUnExpr.Oper.NOT) {
+            translateCond(((AbsUnExpr) cond).subExpr, negLabel, posLabel, visArg);
+            return;
+        }
+
+        ImcExpr expr = (ImcExpr) cond.accept(this, visArg);
+        ImcTEMP t = new ImcTEMP(new Temp());
+        stack.peek().add(new ImcMOVE(t, expr));
+        stack.peek().add(new ImcCJUMP(t, posLabel, negLabel));
+    }
+
+    /**
+     * Checks whether intermediate code of an expression has no side effects,
+     * i.e., calls no functions and contains no statements.
+     */
+    private static boolean pure(ImcExpr expr) {
+        if (expr instanceof ImcCALL || expr instanceof ImcSEXPR)
+            return false;
+        if (expr instanceof ImcMEM)
+            return pure(((ImcMEM) expr).addr);
+        if (expr instanceof ImcBINOP)
+            return pure(((ImcBINOP) expr).fstExpr) && pure(((ImcBINOP) expr).sndExpr);
+        if (expr instanceof ImcUNOP)
+            return pure(((ImcUNOP) expr).subExpr);
+        return true;
+    }
+
     /**
      * statements
      */
@@ -240,18 +293,12 @@ public class Fragmenter extends AbsFullVisitor<Object, Object> {
     }
 
     public Object visit(AbsIfStmt node, Object visArg) {
-        ImcExpr cond = (ImcExpr) node.cond.accept(this, visArg);
-
-        ImcTEMP t = new ImcTEMP(new Temp());
-        stack.peek().add(new ImcMOVE(t, cond));
-        cond = t;
-
         Vector<ImcStmt> stmts = ((ImcSTMTS) ImcGen.stmtImCode.get(node)).stmts();
         Label l1 = ((ImcLABEL) stmts.get(1)).label;
         Label l2 = ((ImcLABEL) stmts.get(4)).label;
         Label l3 = new Label();
 
-        stack.peek().add(new ImcCJUMP(cond, l1, l2));
+        translateCond(node.cond, l1, l2, visArg);
         stack.peek().add(stmts.get(4));
         stack.peek().add(new ImcJUMP(l3));
         stack.peek().add(stmts.get(1));
@@ -274,16 +321,11 @@ public class Fragmenter extends AbsFullVisitor<Object, Object> {
         Vector<ImcStmt> stmts = ((ImcSTMTS) ImcGen.stmtImCode.get(node)).stmts();
         stack.peek().add(stmts.get(0));
 
-        ImcExpr cond = (ImcExpr) node.cond.accept(this, visArg);
         Label l1 = ((ImcLABEL) stmts.get(2)).label;
         Label l2 = ((ImcLABEL) stmts.get(5)).label;
         Label l3 = new Label();
 
-        ImcTEMP t = new ImcTEMP(new Temp());
-        stack.peek().add(new ImcMOVE(t, cond));
-        cond = t;
-
-        stack.peek().add(new ImcCJUMP(cond, l1, l2));
+        translateCond(node.cond, l1, l2, visArg);
         stack.peek().add(stmts.get(5));
         stack.peek().add(new ImcJUMP(l3));
         stack.peek().add(stmts.get(2));
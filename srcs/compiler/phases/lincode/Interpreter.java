@@ -7,6 +7,7 @@ import compiler.phases.imcgen.ImcVisitor;
 import compiler.phases.imcgen.code.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Stack;
 
 public class Interpreter {
@@ -30,13 +31,24 @@ public class Interpreter {
 
     private long HP;
 
+    // Fragments being interpreted
+    private final List<Fragment> fragments;
+
+    public Interpreter() {
+        this(LinCode.fragments());
+    }
+
+    public Interpreter(List<Fragment> fragments) {
+        this.fragments = fragments;
+    }
+
     public void execute() {
 
         HP = 8;
         SP = 0x10000000;
 
         // Variables placed into the memory.
-        for (Fragment fragment : LinCode.fragments())
+        for (Fragment fragment : fragments)
             if (fragment instanceof DataFragment) {
                 DataFragment frag = (DataFragment) fragment;
                 addr.put(frag.label, HP);
@@ -104,7 +116,7 @@ public class Interpreter {
     }
 
     private CodeFragment fndCodeFragment(Label label) {
-        for (Fragment fragment : LinCode.fragments())
+        for (Fragment fragment : fragments)
             if (fragment instanceof CodeFragment) {
                 CodeFragment codeFrag = (CodeFragment) fragment;
                 if (codeFrag.frame.label.name.equals(label.name))
@@ -216,10 +228,17 @@ public class Interpreter {
                     return fstExpr - sndExpr;
                 case MUL:
                     return fstExpr * sndExpr;
+                // As MMIX DIV, the quotient is rounded down.
                 case DIV:
-                    return fstExpr / sndExpr;
+                    return Math.floorDiv(fstExpr, sndExpr);
                 case MOD:
-                    return fstExpr % sndExpr;
+                    return Math.floorMod(fstExpr, sndExpr);
+                case SHL:
+                    return fstExpr << sndExpr;
+                case SHR:
+                    return fstExpr >> sndExpr;
+                case SHRU:
+                    return fstExpr >>> sndExpr;
             }
             throw new Report.InternalError();
         }
@@ -18,6 +18,23 @@ public class LinCode extends Phase {
         super("lincode");
     }
 
+    /**
+     * Rebuilds all code fragments from their control-flow graphs: jumps to
+     * jumps are threaded, unreachable basic blocks are removed and the
+     * remaining ones are ordered into traces.
+     */
+    public void schedule() {
+        for (Fragment fragment : fragments) {
+            if (!(fragment instanceof CodeFragment))
+                continue;
+            ControlFlowGraph graph = new ControlFlowGraph((CodeFragment) fragment);
+            graph.threadJumps();
+            graph.removeUnreachable();
+            graph.schedule();
+            graph.linearize();
+        }
+    }
+
     @Override
     public void close() {
         for (Fragment fragment : fragments())
@@ -34,6 +51,15 @@ public class LinCode extends Phase {
         fragments.add(fragment);
     }
 
+    /**
+     * Removes a fragment from the list of fragments.
+     *
+     * @param fragment The fragment.
+     */
+    public static void remove(Fragment fragment) {
+        fragments.remove(fragment);
+    }
+
     /**
      * Returns the list of all fragments.
      *
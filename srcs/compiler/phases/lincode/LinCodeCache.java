@@ -0,0 +1,232 @@
+package compiler.phases.lincode;
+
+import common.report.Report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An on-disk cache of linear intermediate code.
+ * <p>
+ * The cache lives in the directory given by {@code --cache-dir} and is used
+ * only if that switch is present. Each entry holds the fragments produced for
+ * one source file in the form written by {@link LinCodeWriter} and is named by
+ * the SHA-256 hash of the source file and of the compiler version, so a
+ * changed source file or a rebuilt compiler never hits a stale entry. On a
+ * hit, {@code Main} skips all phases up to and including {@code lincode}.
+ * <p>
+ * The total size of entries is kept below {@code --cache-size} bytes by
+ * evicting the least recently used ones (the modification time of an entry is
+ * updated whenever it is hit). Numbers of hits and misses are kept in the
+ * cache directory as well.
+ *
+ * @author haytham
+ */
+public class LinCodeCache {
+
+    /**
+     * The default limit on the total size of entries (in bytes).
+     */
+    public static final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+    /**
+     * The suffix of entries.
+     */
+    private static final String SUFFIX = ".lin";
+
+    /**
+     * The name of the file holding numbers of hits and misses.
+     */
+    private static final String STATS = "stats";
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return The cache directory or {@code null} if caching has not been
+     * requested.
+     */
+    public static File dir() {
+        String dirName = compiler.Main.cmdLineArgValue("--cache-dir");
+        return dirName == null ? null : new File(dirName);
+    }
+
+    /**
+     * Returns the limit on the total size of entries.
+     *
+     * @return The limit on the total size of entries (in bytes).
+     */
+    public static long maxSize() {
+        String size = compiler.Main.cmdLineArgValue("--cache-size");
+        return size == null ? DEFAULT_CACHE_SIZE : Long.parseLong(size);
+    }
+
+    /**
+     * Checks whether the cache can be used for the current compilation, i.e.,
+     * whether caching has been requested and neither the target phase nor the
+     * logged phase precede {@code lincode}.
+     *
+     * @return {@code true} if the cache can be used, {@code false} otherwise.
+     */
+    public static boolean enabled() {
+        if (dir() == null)
+            return false;
+        String frontEnd = "lexan|synan|abstr|seman|frames|imcgen";
+        String targetPhase = compiler.Main.cmdLineArgValue("--target-phase");
+        String loggedPhase = compiler.Main.cmdLineArgValue("--logged-phase");
+        return !targetPhase.matches(frontEnd) && (loggedPhase == null || !loggedPhase.matches(frontEnd + "|all"));
+    }
+
+    /**
+     * Looks up the linear intermediate code of the source file.
+     *
+     * @return The fragments of the source file or {@code null} if they are not
+     * in the cache.
+     */
+    public static LinkedList<Fragment> lookup() {
+        if (!enabled())
+            return null;
+        LinkedList<Fragment> fragments = null;
+        try {
+            File entry = entry();
+            if (entry.isFile()) {
+                fragments = new LinCodeReader().read(entry);
+                entry.setLastModified(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            Report.warning("Cannot read cached linear code: " + e.getMessage());
+            fragments = null;
+        }
+        stats(fragments != null);
+        return fragments;
+    }
+
+    /**
+     * Stores the linear intermediate code of the source file and evicts least
+     * recently used entries if the cache has grown too large.
+     *
+     * @param fragments The fragments of the source file.
+     */
+    public static void store(List<Fragment> fragments) {
+        if (!enabled())
+            return;
+        try {
+            File entry = entry();
+            File tmpFile = File.createTempFile("lincode", ".tmp", dir());
+            try {
+                new LinCodeWriter().write(fragments, tmpFile);
+                Files.move(tmpFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmpFile.delete();
+            }
+            evict(entry);
+        } catch (IOException e) {
+            Report.warning("Cannot cache linear code: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the entry of the source file.
+     *
+     * @return The entry of the source file.
+     * @throws IOException If the source file cannot be read.
+     */
+    private static File entry() throws IOException {
+        File dir = dir();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create cache directory '" + dir + "'.");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(new File(compiler.Main.cmdLineArgValue("--src-file-name")).toPath()));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest())
+                name.append(String.format("%02x", b));
+            return new File(dir, name + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns the version of the compiler, i.e., the version of the binary form
+     * of linear code together with the time the compiler was built.
+     *
+     * @return The version of the compiler.
+     */
+    private static String version() throws IOException {
+        URL mainClass = compiler.Main.class.getResource("Main.class");
+        long buildTime = mainClass == null ? 0 : mainClass.openConnection().getLastModified();
+        return LinCodeWriter.VERSION + ":" + buildTime;
+    }
+
+    /**
+     * Evicts least recently used entries until the total size of entries drops
+     * below the limit.
+     *
+     * @param keep The entry that must not be evicted.
+     */
+    private static void evict(File keep) {
+        File[] entries = dir().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null)
+            return;
+        long totalSize = 0;
+        for (File entry : entries)
+            totalSize += entry.length();
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (totalSize <= maxSize())
+                break;
+            if (entry.equals(keep))
+                continue;
+            long size = entry.length();
+            if (entry.delete())
+                totalSize -= size;
+        }
+    }
+
+    /**
+     * Counts a hit or a miss and reports the numbers of hits and misses so far.
+     *
+     * @param hit {@code true} for a hit, {@code false} for a miss.
+     */
+    private static void stats(boolean hit) {
+        File dir = dir();
+        if (!dir.isDirectory())
+            return;
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, STATS), "rw");
+             FileChannel channel = file.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                long hits = file.length() >= 16 ? file.readLong() : 0;
+                long misses = file.length() >= 16 ? file.readLong() : 0;
+                if (hit)
+                    hits++;
+                else
+                    misses++;
+                file.seek(0);
+                file.writeLong(hits);
+                file.writeLong(misses);
+                Report.info("Linear code cache " + (hit ? "hit" : "miss") + " (" + hits + " hits, " + misses + " misses so far).");
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            Report.warning("Cannot update cache statistics: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package compiler.phases.lincode;
+
+import compiler.phases.frames.Frame;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
+import compiler.phases.imcgen.code.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * Reads fragments of linear intermediate code written by
+ * {@link LinCodeWriter}.
+ * <p>
+ * The binary form is read in place: a file is memory-mapped and the
+ * intermediate code is built directly from the mapped bytes, and strings of
+ * the string table are decoded only once the label they name is needed.
+ * <p>
+ * Labels and temporary variables are created anew: each label or temporary
+ * variable is represented by a single object no matter how many times it is
+ * referred to, anonymous labels and temporary variables are renumbered so that
+ * they do not clash with those of the current compilation, and the frame and
+ * stack pointers are mapped to {@link ImcGen#FP} and {@link ImcGen#SP}.
+ *
+ * @author haytham
+ */
+public class LinCodeReader {
+
+    /**
+     * The binary form being read.
+     */
+    private ByteBuffer in;
+
+    /**
+     * Positions of strings of the string table within the binary form.
+     */
+    private int[] stringOffsets;
+
+    /**
+     * Lengths of strings of the string table.
+     */
+    private int[] stringLengths;
+
+    /**
+     * Labels read so far (by their indices in the string table).
+     */
+    private Label[] labels;
+
+    /**
+     * Temporary variables read so far (by their numbers in the binary form).
+     */
+    private final HashMap<Long, Temp> temps = new HashMap<Long, Temp>();
+
+    /**
+     * Reads fragments from a file.
+     *
+     * @param file The file.
+     * @return The fragments.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public LinkedList<Fragment> read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads fragments.
+     *
+     * @param in The binary form of fragments.
+     * @return The fragments.
+     * @throws IOException If the binary form is malformed.
+     */
+    public LinkedList<Fragment> read(ByteBuffer in) throws IOException {
+        this.in = in;
+        temps.clear();
+        try {
+            if (in.getInt() != LinCodeWriter.MAGIC || in.getInt() != LinCodeWriter.VERSION)
+                throw new IOException("Not linear intermediate code of this version.");
+
+            int numOfStrings = readCount();
+            stringOffsets = new int[numOfStrings];
+            stringLengths = new int[numOfStrings];
+            labels = new Label[numOfStrings];
+            for (int i = 0; i < numOfStrings; i++) {
+                stringLengths[i] = readCount();
+                stringOffsets[i] = in.position();
+                in.position(stringOffsets[i] + stringLengths[i]);
+            }
+
+            int numOfFragments = readCount();
+            LinkedList<Fragment> fragments = new LinkedList<Fragment>();
+            for (int i = 0; i < numOfFragments; i++) {
+                switch (in.get()) {
+                    case LinCodeWriter.DATA: {
+                        Label label = readLabel();
+                        fragments.add(new DataFragment(label, readVarLong()));
+                        break;
+                    }
+                    case LinCodeWriter.CODE: {
+                        Frame frame = readFrame();
+                        Temp FP = readTemp();
+                        Temp RV = readTemp();
+                        Label begLabel = readLabel();
+                        Label endLabel = readLabel();
+                        int numOfStmts = readCount();
+                        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+                        for (int j = 0; j < numOfStmts; j++)
+                            stmts.add(readStmt());
+                        fragments.add(new CodeFragment(frame, stmts, FP, RV, begLabel, endLabel));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Illegal fragment.");
+                }
+            }
+            if (in.hasRemaining())
+                throw new IOException("Trailing garbage after linear intermediate code.");
+            return fragments;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Malformed linear intermediate code.", e);
+        } finally {
+            this.in = null;
+            this.stringOffsets = null;
+            this.stringLengths = null;
+            this.labels = null;
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    private long readZigZag() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readCount() throws IOException {
+        long value = readVarLong();
+        if (value < 0 || value > in.remaining())
+            throw new IOException("Malformed count.");
+        return (int) value;
+    }
+
+    private Frame readFrame() throws IOException {
+        Label label = readLabel();
+        int depth = (int) readVarLong();
+        long size = readVarLong();
+        long locsSize = readVarLong();
+        long argsSize = readVarLong();
+        long tempsSize = readVarLong();
+        Frame frame = new Frame(label, depth, locsSize, argsSize);
+        frame.incTempsSize(tempsSize);
+        frame.size = size;
+        return frame;
+    }
+
+    private Label readLabel() throws IOException {
+        long index = readVarLong();
+        if (index < 0 || index >= labels.length)
+            throw new IOException("Illegal label.");
+        Label label = labels[(int) index];
+        if (label == null) {
+            ByteBuffer bytes = in.duplicate();
+            bytes.position(stringOffsets[(int) index]);
+            bytes.limit(stringOffsets[(int) index] + stringLengths[(int) index]);
+            String name = StandardCharsets.UTF_8.decode(bytes).toString();
+            label = name.matches("L[0-9]+") ? new Label() : new Label(name, true);
+            labels[(int) index] = label;
+        }
+        return label;
+    }
+
+    private Temp readTemp() throws IOException {
+        long name = readVarLong();
+        if (name == LinCodeWriter.FP)
+            return ImcGen.FP;
+        if (name == LinCodeWriter.SP)
+            return ImcGen.SP;
+        Temp temp = temps.get(name);
+        if (temp == null) {
+            temp = new Temp();
+            temps.put(name, temp);
+        }
+        return temp;
+    }
+
+    private ImcStmt readStmt() throws IOException {
+        return (ImcStmt) readCode();
+    }
+
+    private ImcExpr readExpr() throws IOException {
+        return (ImcExpr) readCode();
+    }
+
+    private ImcInstr readCode() throws IOException {
+        switch (in.get()) {
+            case LinCodeWriter.BINOP: {
+                ImcBINOP.Oper oper = ImcBINOP.Oper.values()[in.get()];
+                ImcExpr fstExpr = readExpr();
+                ImcExpr sndExpr = readExpr();
+                return new ImcBINOP(oper, fstExpr, sndExpr);
+            }
+            case LinCodeWriter.CALL: {
+                Label label = readLabel();
+                int numOfArgs = readCount();
+                Vector<ImcExpr> args = new Vector<ImcExpr>();
+                for (int i = 0; i < numOfArgs; i++)
+                    args.add(readExpr());
+                return new ImcCALL(label, args);
+            }
+            case LinCodeWriter.CJUMP: {
+                Label posLabel = readLabel();
+                Label negLabel = readLabel();
+                return new ImcCJUMP(readExpr(), posLabel, negLabel);
+            }
+            case LinCodeWriter.CONST:
+                return new ImcCONST(readZigZag());
+            case LinCodeWriter.ESTMT:
+                return new ImcESTMT(readExpr());
+            case LinCodeWriter.JUMP:
+                return new ImcJUMP(readLabel());
+            case LinCodeWriter.LABEL:
+                return new ImcLABEL(readLabel());
+            case LinCodeWriter.MEM:
+                return new ImcMEM(readExpr());
+            case LinCodeWriter.MOVE: {
+                ImcExpr dst = readExpr();
+                ImcExpr src = readExpr();
+                return new ImcMOVE(dst, src);
+            }
+            case LinCodeWriter.NAME:
+                return new ImcNAME(readLabel());
+            case LinCodeWriter.SEXPR: {
+                ImcStmt stmt = readStmt();
+                ImcExpr expr = readExpr();
+                return new ImcSEXPR(stmt, expr);
+            }
+            case LinCodeWriter.STMTS: {
+                int numOfStmts = readCount();
+                Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+                for (int i = 0; i < numOfStmts; i++)
+                    stmts.add(readStmt());
+                return new ImcSTMTS(stmts);
+            }
+            case LinCodeWriter.TEMP:
+                return new ImcTEMP(readTemp());
+            case LinCodeWriter.UNOP: {
+                ImcUNOP.Oper oper = ImcUNOP.Oper.values()[in.get()];
+                return new ImcUNOP(oper, readExpr());
+            }
+            default:
+                throw new IOException("Illegal intermediate code.");
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+package compiler.phases.lincode;
+
+import compiler.phases.frames.Frame;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
+import compiler.phases.imcgen.ImcVisitor;
+import compiler.phases.imcgen.code.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Writes fragments of linear intermediate code in a binary form that can be
+ * read back by {@link LinCodeReader}.
+ * <p>
+ * The binary form consists of
+ * <ul>
+ * <li>{@link #MAGIC} and {@link #VERSION} (four bytes each, big endian),</li>
+ * <li>the string table: the number of strings followed by the strings, each
+ * given by its length and its UTF-8 bytes,</li>
+ * <li>the number of fragments followed by the fragments.</li>
+ * </ul>
+ * All other numbers are varints (seven bits per byte, least significant group
+ * first, the highest bit set on all bytes but the last); signed values are
+ * zigzag encoded first. Labels are written as indices into the string table,
+ * temporary variables as their numbers ({@code 0} and {@code 1} standing for
+ * {@link ImcGen#FP} and {@link ImcGen#SP}). Intermediate code trees are
+ * written in preorder, each node starting with its tag.
+ *
+ * @author haytham
+ */
+public class LinCodeWriter implements ImcVisitor<Object, Object> {
+
+    /**
+     * The magic number the binary form starts with.
+     */
+    public static final int MAGIC = 0x5052564C;
+
+    /**
+     * The version of the binary form (bump whenever the form changes).
+     */
+    public static final int VERSION = 2;
+
+    // Tags of fragments.
+    static final byte DATA = 1;
+    static final byte CODE = 2;
+
+    // Tags of intermediate code trees.
+    static final byte BINOP = 1;
+    static final byte CALL = 2;
+    static final byte CJUMP = 3;
+    static final byte CONST = 4;
+    static final byte ESTMT = 5;
+    static final byte JUMP = 6;
+    static final byte LABEL = 7;
+    static final byte MEM = 8;
+    static final byte MOVE = 9;
+    static final byte NAME = 10;
+    static final byte SEXPR = 11;
+    static final byte STMTS = 12;
+    static final byte TEMP = 13;
+    static final byte UNOP = 14;
+
+    // Numbers of the frame and the stack pointer.
+    static final int FP = 0;
+    static final int SP = 1;
+
+    /**
+     * The fragments written so far.
+     */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * The string table.
+     */
+    private final Vector<String> strings = new Vector<String>();
+
+    /**
+     * Indices of strings in the string table.
+     */
+    private final HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+
+    /**
+     * Writes the specified fragments.
+     *
+     * @param fragments The fragments.
+     * @return The binary form of the fragments.
+     */
+    public byte[] write(List<Fragment> fragments) {
+        out.reset();
+        strings.clear();
+        stringIndices.clear();
+
+        writeVarLong(fragments.size());
+        for (Fragment fragment : fragments) {
+            if (fragment instanceof DataFragment) {
+                DataFragment dataFragment = (DataFragment) fragment;
+                writeByte(DATA);
+                writeLabel(dataFragment.label);
+                writeVarLong(dataFragment.size);
+            } else {
+                CodeFragment codeFragment = (CodeFragment) fragment;
+                writeByte(CODE);
+                writeFrame(codeFragment.frame);
+                writeTemp(codeFragment.FP);
+                writeTemp(codeFragment.RV);
+                writeLabel(codeFragment.begLabel);
+                writeLabel(codeFragment.endLabel);
+                writeVarLong(codeFragment.stmts().size());
+                for (ImcStmt stmt : codeFragment.stmts())
+                    stmt.accept(this, null);
+            }
+        }
+        byte[] body = out.toByteArray();
+
+        out.reset();
+        for (int shift = 24; shift >= 0; shift -= 8)
+            out.write(MAGIC >>> shift);
+        for (int shift = 24; shift >= 0; shift -= 8)
+            out.write(VERSION >>> shift);
+        writeVarLong(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the specified fragments to a file.
+     *
+     * @param fragments The fragments.
+     * @param file      The file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(List<Fragment> fragments, File file) throws IOException {
+        Files.write(file.toPath(), write(fragments));
+    }
+
+    private void writeByte(int value) {
+        out.write(value);
+    }
+
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeFrame(Frame frame) {
+        writeLabel(frame.label);
+        writeVarLong(frame.depth);
+        writeVarLong(frame.size);
+        writeVarLong(frame.locsSize);
+        writeVarLong(frame.argsSize);
+        writeVarLong(frame.tempsSize);
+    }
+
+    private void writeLabel(Label label) {
+        Integer index = stringIndices.get(label.name);
+        if (index == null) {
+            index = strings.size();
+            strings.add(label.name);
+            stringIndices.put(label.name, index);
+        }
+        writeVarLong(index);
+    }
+
+    private void writeTemp(Temp temp) {
+        if (temp == ImcGen.FP)
+            writeVarLong(FP);
+        else if (temp == ImcGen.SP)
+            writeVarLong(SP);
+        else
+            writeVarLong(temp.temp + 2);
+    }
+
+    public Object visit(ImcBINOP binOp, Object visArg) {
+        writeByte(BINOP);
+        writeByte(binOp.oper.ordinal());
+        binOp.fstExpr.accept(this, null);
+        binOp.sndExpr.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcCALL call, Object visArg) {
+        writeByte(CALL);
+        writeLabel(call.label);
+        writeVarLong(call.args().size());
+        for (ImcExpr arg : call.args())
+            arg.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcCJUMP cjump, Object visArg) {
+        writeByte(CJUMP);
+        writeLabel(cjump.posLabel);
+        writeLabel(cjump.negLabel);
+        cjump.cond.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcCONST constant, Object visArg) {
+        writeByte(CONST);
+        writeZigZag(constant.value);
+        return null;
+    }
+
+    public Object visit(ImcESTMT eStmt, Object visArg) {
+        writeByte(ESTMT);
+        eStmt.expr.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcJUMP jump, Object visArg) {
+        writeByte(JUMP);
+        writeLabel(jump.label);
+        return null;
+    }
+
+    public Object visit(ImcLABEL label, Object visArg) {
+        writeByte(LABEL);
+        writeLabel(label.label);
+        return null;
+    }
+
+    public Object visit(ImcMEM mem, Object visArg) {
+        writeByte(MEM);
+        mem.addr.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcMOVE move, Object visArg) {
+        writeByte(MOVE);
+        move.dst.accept(this, null);
+        move.src.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcNAME name, Object visArg) {
+        writeByte(NAME);
+        writeLabel(name.label);
+        return null;
+    }
+
+    public Object visit(ImcSEXPR sExpr, Object visArg) {
+        writeByte(SEXPR);
+        sExpr.stmt.accept(this, null);
+        sExpr.expr.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcSTMTS stmts, Object visArg) {
+        writeByte(STMTS);
+        writeVarLong(stmts.stmts().size());
+        for (ImcStmt stmt : stmts.stmts())
+            stmt.accept(this, null);
+        return null;
+    }
+
+    public Object visit(ImcTEMP temp, Object visArg) {
+        writeByte(TEMP);
+        writeTemp(temp.temp);
+        return null;
+    }
+
+    public Object visit(ImcUNOP unOp, Object visArg) {
+        writeByte(UNOP);
+        writeByte(unOp.oper.ordinal());
+        unOp.subExpr.accept(this, null);
+        return null;
+    }
+
+}
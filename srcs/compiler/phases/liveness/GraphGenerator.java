@@ -1,13 +1,11 @@
 package compiler.phases.liveness;
 
 import compiler.phases.asmgen.AsmInstr;
-import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.asmgen.AsmMOVE;
 import compiler.phases.frames.Frame;
-import compiler.phases.frames.Label;
 import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
 
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
@@ -15,140 +13,92 @@ import java.util.LinkedList;
  *
  * @author haytham
  */
-class GraphGenerator {
+public class GraphGenerator {
 
     private InterferenceGraph graph;
 
+    private LivenessAnalysis liveness;
+
     private LinkedList<AsmInstr> instrList;
 
+    private int FP, SP;
+
     private Frame frame;
 
     public GraphGenerator(LinkedList<AsmInstr> instrList, Frame frame) {
-        this.graph = new InterferenceGraph();
         this.instrList = instrList;
         this.frame = frame;
     }
 
     public InterferenceGraph createGraph() {
+        liveness = new LivenessAnalysis(instrList);
 
-        LinkedList<HashSet<Temp>> ins = new LinkedList<>();
-        LinkedList<HashSet<Temp>> outs = new LinkedList<>();
-        LinkedList<HashSet<Temp>> oldIns;
-        LinkedList<HashSet<Temp>> oldOuts;
-
-        do {
-            oldOuts = outs;
-            oldIns = ins;
-            ins = new LinkedList<>();
-            outs = new LinkedList<>();
-
-            for (int idx = instrList.size() - 1; idx >= 0; idx--) {
-                AsmInstr instr = instrList.get(idx);
-                HashSet<Temp> in = new HashSet<>();
-                HashSet<Temp> out = new HashSet<>();
-
-                in.addAll(instr.uses());
-                if (oldOuts.size() > 0) {
-                    int outIdx = instrList.size() - idx - 1;
-                    HashSet<Temp> toAdd = new HashSet<>();
-                    toAdd.addAll(oldOuts.get(outIdx));
-                    toAdd.removeAll(instr.defs());
-                    in.addAll(toAdd);
+        Temp[] temps = new Temp[liveness.numOfTemps()];
+        for (int t = 0; t < temps.length; t++) {
+            temps[t] = liveness.temp(t);
+        }
+        graph = new InterferenceGraph(temps);
+        FP = liveness.index(ImcGen.FP);
+        SP = liveness.index(ImcGen.SP);
+
+        // Temps live at the entry are all defined there
+        if (liveness.numOfInstrs() > 0) {
+            long[] in = liveness.in(0);
+            for (int t1 = LivenessAnalysis.next(in, 0); t1 >= 0; t1 = LivenessAnalysis.next(in, t1 + 1)) {
+                for (int t2 = LivenessAnalysis.next(in, t1 + 1); t2 >= 0; t2 = LivenessAnalysis.next(in, t2 + 1)) {
+                    addEdge(t1, t2);
                 }
+            }
+        }
 
-                if (instr.toString().contains("JMP") || instr.toString().contains("BNZ")) {
-                    for (Label l : instr.jumps()) {
-
-                        int reverseSuccIdx = instrAfterLabel(l);
-                        if (reverseSuccIdx < 0) {
-                            continue;
-                        } // inst after the first label
-
-                        int succIdx = instrList.size() - 1 - reverseSuccIdx;
-                        if (succIdx < ins.size()) {
-                            out.addAll(ins.get(succIdx));
-                        } // reverse
-
+        // Each temp defined interferes with the temps live after the definition
+        for (int i = 0; i < liveness.numOfInstrs(); i++) {
+            int[] defs = liveness.defs(i);
+            int[] uses = liveness.uses(i);
+            long[] out = liveness.out(i);
+            int moveSrc = -1;
+            if (liveness.instr(i) instanceof AsmMOVE) {
+                moveSrc = uses[0];
+                if (allocatable(defs[0]) && allocatable(moveSrc)) {
+                    graph.addMove(defs[0], moveSrc);
+                }
+            }
+            for (int d = 0; d < defs.length; d++) {
+                for (int t = LivenessAnalysis.next(out, 0); t >= 0; t = LivenessAnalysis.next(out, t + 1)) {
+                    if (t != moveSrc) {
+                        addEdge(defs[d], t);
                     }
-                } else {
-                    if (ins.size() > 0) {
-                        out.addAll(ins.get(ins.size() - 1));
-                    }// add to the out isnt
                 }
-
-                ins.add(in);
-                outs.add(out);
+                for (int d2 = d + 1; d2 < defs.length; d2++) {
+                    addEdge(defs[d], defs[d2]);
+                }
             }
         }
-        while (compare(ins, oldIns) || compare(outs, oldOuts)); // result for interference between vars
-
-        printInsOuts(ins, outs);
-
-        addInterferences(ins);
-        addInterferences(outs);
-        graph.addAllTemps();
 
         return graph;
     }
 
-    private boolean compare(LinkedList<HashSet<Temp>> list1, LinkedList<HashSet<Temp>> list2) {
-
-        if (list1.size() != list2.size()) {
-            return true;
-        }
-
-        Iterator<HashSet<Temp>> it1 = list1.iterator();
-        Iterator<HashSet<Temp>> it2 = list2.iterator();
-
-        while (it1.hasNext()) {
-            HashSet<Temp> s1 = it1.next();
-            HashSet<Temp> s2 = it2.next();
-
-            if (!s1.equals(s2)) {
-                return true;
-            }
-        }
-
-
-        return false;
+    public InterferenceGraph graph() {
+        return graph;
     }
 
-    private void addInterferences(LinkedList<HashSet<Temp>> conns) {
-        for (HashSet<Temp> s : conns) {
-            for (Temp t1 : s) {
-                for (Temp t2 : s) {
-                    if (!t1.equals(t2)) {
-                        graph.addTemps(t1, t2);
-                    }
-                }
-            }
-        }
+    // The frame and stack pointers are not allocated
+    private boolean allocatable(int temp) {
+        return temp != FP && temp != SP;
     }
 
-    private int instrAfterLabel(Label label) {
-        for (int i = 0; i < instrList.size(); i++) {
-            AsmInstr instr = instrList.get(i);
-            if (instr instanceof AsmLABEL) {
-                if (((AsmLABEL) instr).label().equals(label)) {
-
-                    while (instrList.get(i) instanceof AsmLABEL) {
-                        i++;
-                    }
-                    return i;
-                }
-            }
+    private void addEdge(int t1, int t2) {
+        if (allocatable(t1) && allocatable(t2)) {
+            graph.addEdge(t1, t2);
         }
-
-        return -1;
     }
 
-
-    private void printInsOuts(LinkedList<HashSet<Temp>> ins, LinkedList<HashSet<Temp>> outs) {
+    public void printInsOuts() {
         System.out.println();
         System.out.println(frame.label);
-        for (int i = 0; i < instrList.size(); i++) {
-            System.out.printf("%-15s", instrList.get(i));
-            System.out.println(" " + ins.get(ins.size() - i - 1) + " " + outs.get(outs.size() - i - 1));
+        for (int i = 0; i < liveness.numOfInstrs(); i++) {
+            System.out.printf("%-15s", liveness.instr(i));
+            System.out.println(" " + liveness.temps(liveness.in(i)) + " " + liveness.temps(liveness.out(i)));
         }
         System.out.println();
     }
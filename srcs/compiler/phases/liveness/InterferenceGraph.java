@@ -1,86 +1,155 @@
 package compiler.phases.liveness;
 
-import compiler.phases.frames.Frames;
 import compiler.phases.frames.Temp;
-import compiler.phases.imcgen.ImcGen;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
  *      Interference graph variables.
+ * <p>
+ * Nodes are numbered densely. Edges are kept twice: in a triangular bit matrix
+ * for constant-time membership tests and in adjacency lists for iterating over
+ * the neighbors of a node. Moves between temporary variables are recorded
+ * separately, as pairs of nodes that need not interfere but might be
+ * coalesced.
  *
  * @author haytham
  */
 public class InterferenceGraph {
 
-    private LinkedList<Node> nodes;
+    private final Node[] nodes;
 
+    // Triangular bit matrix of edges
+    private final long[] matrix;
 
-    public InterferenceGraph() {
-        this.nodes = new LinkedList<>();
+    // Adjacency lists and degrees
+    private final int[][] adjList;
+    private final int[] degree;
+
+    // Moves as pairs of nodes
+    private int[] moveDsts = new int[16];
+    private int[] moveSrcs = new int[16];
+    private int numMoves = 0;
+
+    // Moves each node takes part in
+    private final int[][] moveList;
+    private final int[] numNodeMoves;
+
+    public InterferenceGraph(Temp[] temps) {
+        int n = temps.length;
+        this.nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(temps[i], i);
+        }
+        this.matrix = new long[(int) (((long) n * (n - 1) / 2 + 63) / 64)];
+        this.adjList = new int[n][];
+        this.degree = new int[n];
+        this.moveList = new int[n][];
+        this.numNodeMoves = new int[n];
     }
 
+    // Position of an edge in the bit matrix
+    private static long bit(int u, int v) {
+        int hi = Math.max(u, v);
+        int lo = Math.min(u, v);
+        return (long) hi * (hi - 1) / 2 + lo;
+    }
 
-    // Temp vars for the interference graph
-    public void addTemps(Temp t1, Temp t2) {
-        if (t1.equals(ImcGen.FP) || t2.equals(ImcGen.FP) || t1.equals(ImcGen.SP) || t2.equals(ImcGen.SP)) {
+    // Add an edge between two distinct nodes
+    public void addEdge(int u, int v) {
+        if (u == v || interfere(u, v)) {
             return;
         }
+        long bit = bit(u, v);
+        matrix[(int) (bit >>> 6)] |= 1L << bit;
+        adjList[u] = append(adjList[u], degree[u]++, v);
+        adjList[v] = append(adjList[v], degree[v]++, u);
+    }
 
-        Node node1 = addNode(t1);
-        Node node2 = addNode(t2);
-        node1.addNeighbor(node2);
-        node2.addNeighbor(node1);
+    // Check whether two nodes interfere
+    public boolean interfere(int u, int v) {
+        if (u == v) {
+            return false;
+        }
+        long bit = bit(u, v);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
     }
 
-    // Adding node to interference graph
-    public Node addNode(Temp temp) {
-        for (Node node : nodes) {
-            if (node.temp.temp == temp.temp) {
-                return node;
-            }
+    // Record a move from one node to another
+    public void addMove(int dst, int src) {
+        if (dst == src) {
+            return;
         }
+        if (numMoves == moveDsts.length) {
+            moveDsts = Arrays.copyOf(moveDsts, 2 * numMoves);
+            moveSrcs = Arrays.copyOf(moveSrcs, 2 * numMoves);
+        }
+        moveDsts[numMoves] = dst;
+        moveSrcs[numMoves] = src;
+        moveList[dst] = append(moveList[dst], numNodeMoves[dst]++, numMoves);
+        moveList[src] = append(moveList[src], numNodeMoves[src]++, numMoves);
+        numMoves++;
+    }
 
-        Node newNode = new Node(temp);
-        nodes.add(newNode);
-        return newNode;
+    private static int[] append(int[] list, int size, int value) {
+        if (list == null) {
+            list = new int[4];
+        } else if (size == list.length) {
+            list = Arrays.copyOf(list, 2 * size);
+        }
+        list[size] = value;
+        return list;
     }
 
-    // Add the nodes
-    public void addNode(Node node) {
-        nodes.add(node);
+    public int numNodes() {
+        return nodes.length;
     }
 
+    public Node node(int index) {
+        return nodes[index];
+    }
 
-    // Add temps without interference to a graph
-    public void addAllTemps() {
-        for (Temp temp : Frames.allTemps) {
-            addNode(temp);
-        }
+    public int deg(int node) {
+        return degree[node];
     }
 
-    // Remove node from the interference graph
-    public void remove(Node node) {
-        for (Node neighbor : node.neighbors()) {
-            neighbor.neighbors().remove(node);
-        }
-        nodes.remove(node);
+    // The k-th neighbor of a node, 0 <= k < deg(node)
+    public int neighbor(int node, int k) {
+        return adjList[node][k];
+    }
+
+    public int numMoves() {
+        return numMoves;
+    }
+
+    public int moveDst(int move) {
+        return moveDsts[move];
+    }
+
+    public int moveSrc(int move) {
+        return moveSrcs[move];
+    }
+
+    // The number of moves a node takes part in
+    public int numMoves(int node) {
+        return numNodeMoves[node];
+    }
+
+    // The k-th move a node takes part in, 0 <= k < numMoves(node)
+    public int move(int node, int k) {
+        return moveList[node][k];
     }
 
     // Provide the upper node with the lowest degree
     public Node lowDegNode(int k) {
         for (Node node : nodes) {
-            if (node.deg() < k) {
+            if (degree[node.index] < k) {
                 return node;
             }
         }
         return null;
     }
 
-    public int numNodes() {
-        return nodes.size();
-    }
-
     // Display the matrix
     public void printAsMatrix() {
         System.out.print("    ");
@@ -93,7 +162,7 @@ public class InterferenceGraph {
         for (Node node : nodes) {
             System.out.printf("%5s", node.temp);
             for (Node node2 : nodes) {
-                if (node.isNeighbor(node2)) {
+                if (interfere(node.index, node2.index)) {
                     System.out.print("    x");
                 } else {
                     System.out.print("     ");
@@ -104,5 +173,3 @@ public class InterferenceGraph {
     }
 
 }
-
-
@@ -2,9 +2,10 @@ package compiler.phases.liveness;
 
 import compiler.phases.Phase;
 import compiler.phases.asmgen.AsmGen;
+import compiler.phases.asmgen.BackEnd;
 import compiler.phases.lincode.CodeFragment;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 /**
  *      Liveness check by listing interference graphs.
@@ -13,7 +14,7 @@ import java.util.HashMap;
  */
 public class Liveness extends Phase {
 
-    public static final HashMap<CodeFragment, InterferenceGraph> graphs = new HashMap<>();
+    public static final LinkedHashMap<CodeFragment, InterferenceGraph> graphs = new LinkedHashMap<>();
 
     public Liveness() {
         super("liveness");
@@ -22,9 +23,18 @@ public class Liveness extends Phase {
     // Generate graph for interference
     public void generate() {
 
-        for (CodeFragment fragment : AsmGen.instrs.keySet()) {
+        LinkedHashMap<CodeFragment, GraphGenerator> generators = BackEnd.map(AsmGen.instrs::containsKey, fragment -> {
             GraphGenerator generator = new GraphGenerator(AsmGen.instrs.get(fragment), fragment.frame);
-            graphs.put(fragment, generator.createGraph());
+            generator.createGraph();
+            return generator;
+        });
+        String loggedPhase = compiler.Main.cmdLineArgValue("--logged-phase");
+        for (CodeFragment fragment : generators.keySet()) {
+            GraphGenerator generator = generators.get(fragment);
+            graphs.put(fragment, generator.graph());
+            if ((loggedPhase != null) && loggedPhase.matches("liveness" + "|all")) {
+                generator.printInsOuts();
+            }
         }
 
     }
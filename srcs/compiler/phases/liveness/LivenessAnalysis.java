@@ -0,0 +1,422 @@
+package compiler.phases.liveness;
+
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.frames.Temp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Liveness analysis of the assembly instructions of a code fragment.
+ * <p>
+ * Temporary variables are numbered densely in the order they appear in and
+ * sets of them are represented as bit vectors. Instructions are grouped into
+ * basic blocks: an instruction that can jump to a label within the code
+ * fragment ends a basic block and continues at the labels it can jump to only,
+ * while any other instruction, including a call, falls through. Live-in sets
+ * of basic blocks are computed by a worklist algorithm that starts with the
+ * basic blocks in postorder, i.e., the reverse of the reverse postorder, so
+ * that successors are mostly processed before their predecessors. Live-in and
+ * live-out sets of instructions are derived from those of basic blocks.
+ *
+ * @author haytham
+ */
+public class LivenessAnalysis {
+
+    /**
+     * The instructions.
+     */
+    private final AsmInstr[] instrs;
+
+    /**
+     * The temporary variables used or defined by each instruction as their
+     * indices.
+     */
+    private final int[][] uses, defs;
+
+    /**
+     * The temporary variables by their indices.
+     */
+    private final Vector<Temp> temps = new Vector<Temp>();
+
+    /**
+     * The indices of temporary variables.
+     */
+    private final HashMap<Temp, Integer> indices = new HashMap<Temp, Integer>();
+
+    /**
+     * The number of words of a bit vector.
+     */
+    private final int numOfWords;
+
+    /**
+     * The indices of the first instructions of basic blocks; the last element
+     * is the number of instructions.
+     */
+    private final int[] blockStarts;
+
+    /**
+     * The successors of each basic block.
+     */
+    private final int[][] blockSuccs;
+
+    /**
+     * The live-in and live-out sets of each instruction.
+     */
+    private final long[][] ins, outs;
+
+    /**
+     * Analyses the instructions of a code fragment.
+     *
+     * @param instrList The instructions.
+     */
+    public LivenessAnalysis(List<AsmInstr> instrList) {
+        instrs = instrList.toArray(new AsmInstr[0]);
+        int numOfInstrs = instrs.length;
+
+        // Temporary variables.
+        uses = new int[numOfInstrs][];
+        defs = new int[numOfInstrs][];
+        for (int i = 0; i < numOfInstrs; i++) {
+            uses[i] = new int[instrs[i].numUses()];
+            for (int u = 0; u < uses[i].length; u++)
+                uses[i][u] = number(instrs[i].use(u));
+            defs[i] = new int[instrs[i].numDefs()];
+            for (int d = 0; d < defs[i].length; d++)
+                defs[i][d] = number(instrs[i].def(d));
+        }
+        numOfWords = (temps.size() + 63) / 64;
+
+        // Jumps within the code fragment.
+        HashMap<String, Integer> labels = new HashMap<String, Integer>();
+        for (int i = 0; i < numOfInstrs; i++) {
+            if (instrs[i] instanceof AsmLABEL)
+                labels.put(((AsmLABEL) instrs[i]).label().name, i);
+        }
+        int[][] targets = new int[numOfInstrs][];
+        for (int i = 0; i < numOfInstrs; i++) {
+            Vector<Integer> jumps = new Vector<Integer>();
+            for (int j = 0; j < instrs[i].numJumps(); j++) {
+                Integer target = labels.get(instrs[i].jump(j).name);
+                if (target != null)
+                    jumps.add(target);
+            }
+            targets[i] = jumps.isEmpty() ? null : toArray(jumps);
+        }
+
+        // Basic blocks.
+        boolean[] leaders = new boolean[numOfInstrs + 1];
+        leaders[0] = true;
+        for (int i = 0; i < numOfInstrs; i++) {
+            if (instrs[i] instanceof AsmLABEL)
+                leaders[i] = true;
+            if (targets[i] != null)
+                leaders[i + 1] = true;
+        }
+        Vector<Integer> starts = new Vector<Integer>();
+        int[] blockOf = new int[numOfInstrs];
+        for (int i = 0; i < numOfInstrs; i++) {
+            if (leaders[i])
+                starts.add(i);
+            blockOf[i] = starts.size() - 1;
+        }
+        starts.add(numOfInstrs);
+        blockStarts = toArray(starts);
+        int numOfBlocks = blockStarts.length - 1;
+        blockSuccs = new int[numOfBlocks][];
+        for (int b = 0; b < numOfBlocks; b++) {
+            int last = blockStarts[b + 1] - 1;
+            if (targets[last] != null) {
+                blockSuccs[b] = new int[targets[last].length];
+                for (int s = 0; s < targets[last].length; s++)
+                    blockSuccs[b][s] = blockOf[targets[last][s]];
+            } else
+                blockSuccs[b] = b + 1 < numOfBlocks ? new int[]{b + 1} : new int[0];
+        }
+
+        // Live-in sets of basic blocks.
+        long[][] blockGens = new long[numOfBlocks][numOfWords];
+        long[][] blockKills = new long[numOfBlocks][numOfWords];
+        for (int b = 0; b < numOfBlocks; b++) {
+            for (int i = blockStarts[b + 1] - 1; i >= blockStarts[b]; i--) {
+                for (int d : defs[i]) {
+                    clear(blockGens[b], d);
+                    set(blockKills[b], d);
+                }
+                for (int u : uses[i])
+                    set(blockGens[b], u);
+            }
+        }
+        int[][] blockPreds = predecessors(numOfBlocks);
+        long[][] blockIns = new long[numOfBlocks][numOfWords];
+        long[][] blockOuts = new long[numOfBlocks][numOfWords];
+        int[] worklist = postorder(numOfBlocks);
+        boolean[] queued = new boolean[numOfBlocks];
+        int head = 0;
+        int size = worklist.length;
+        int[] queue = new int[numOfBlocks];
+        System.arraycopy(worklist, 0, queue, 0, size);
+        for (int b : worklist)
+            queued[b] = true;
+        while (size > 0) {
+            int b = queue[head];
+            head = (head + 1) % numOfBlocks;
+            size--;
+            queued[b] = false;
+            long[] out = blockOuts[b];
+            for (int s : blockSuccs[b])
+                union(out, blockIns[s]);
+            boolean changed = false;
+            long[] in = blockIns[b];
+            for (int w = 0; w < numOfWords; w++) {
+                long word = blockGens[b][w] | (out[w] & ~blockKills[b][w]);
+                if (word != in[w]) {
+                    in[w] = word;
+                    changed = true;
+                }
+            }
+            if (!changed)
+                continue;
+            for (int p : blockPreds[b]) {
+                if (!queued[p]) {
+                    queued[p] = true;
+                    queue[(head + size) % numOfBlocks] = p;
+                    size++;
+                }
+            }
+        }
+
+        // Live-in and live-out sets of instructions.
+        ins = new long[numOfInstrs][];
+        outs = new long[numOfInstrs][];
+        for (int b = 0; b < numOfBlocks; b++) {
+            long[] live = blockOuts[b].clone();
+            for (int i = blockStarts[b + 1] - 1; i >= blockStarts[b]; i--) {
+                outs[i] = live.clone();
+                for (int d : defs[i])
+                    clear(live, d);
+                for (int u : uses[i])
+                    set(live, u);
+                ins[i] = live.clone();
+            }
+        }
+    }
+
+    private int number(Temp temp) {
+        Integer index = indices.get(temp);
+        if (index == null) {
+            index = temps.size();
+            indices.put(temp, index);
+            temps.add(temp);
+        }
+        return index;
+    }
+
+    private int[][] predecessors(int numOfBlocks) {
+        int[] numOfPreds = new int[numOfBlocks];
+        for (int b = 0; b < numOfBlocks; b++)
+            for (int s : blockSuccs[b])
+                numOfPreds[s]++;
+        int[][] preds = new int[numOfBlocks][];
+        for (int b = 0; b < numOfBlocks; b++)
+            preds[b] = new int[numOfPreds[b]];
+        for (int b = 0; b < numOfBlocks; b++)
+            for (int s : blockSuccs[b])
+                preds[s][--numOfPreds[s]] = b;
+        return preds;
+    }
+
+    /**
+     * Returns all basic blocks, those reachable from the first one in
+     * postorder followed by the unreachable ones.
+     */
+    private int[] postorder(int numOfBlocks) {
+        int[] order = new int[numOfBlocks];
+        int numOfOrdered = 0;
+        boolean[] visited = new boolean[numOfBlocks];
+        int[] stack = new int[numOfBlocks];
+        int[] next = new int[numOfBlocks];
+        int depth = 0;
+        if (numOfBlocks > 0) {
+            visited[0] = true;
+            stack[depth++] = 0;
+        }
+        while (depth > 0) {
+            int b = stack[depth - 1];
+            if (next[b] < blockSuccs[b].length) {
+                int s = blockSuccs[b][next[b]++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    stack[depth++] = s;
+                }
+            } else {
+                order[numOfOrdered++] = b;
+                depth--;
+            }
+        }
+        for (int b = 0; b < numOfBlocks; b++) {
+            if (!visited[b])
+                order[numOfOrdered++] = b;
+        }
+        return order;
+    }
+
+    private static int[] toArray(Vector<Integer> vector) {
+        int[] array = new int[vector.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = vector.get(i);
+        return array;
+    }
+
+    /**
+     * Returns the number of instructions.
+     *
+     * @return The number of instructions.
+     */
+    public int numOfInstrs() {
+        return instrs.length;
+    }
+
+    /**
+     * Returns an instruction.
+     *
+     * @param instr The index of the instruction.
+     * @return The instruction.
+     */
+    public AsmInstr instr(int instr) {
+        return instrs[instr];
+    }
+
+    /**
+     * Returns the indices of temporary variables used by an instruction.
+     *
+     * @param instr The index of the instruction.
+     * @return The indices of temporary variables used.
+     */
+    public int[] uses(int instr) {
+        return uses[instr];
+    }
+
+    /**
+     * Returns the indices of temporary variables defined by an instruction.
+     *
+     * @param instr The index of the instruction.
+     * @return The indices of temporary variables defined.
+     */
+    public int[] defs(int instr) {
+        return defs[instr];
+    }
+
+    /**
+     * Returns the number of temporary variables used or defined.
+     *
+     * @return The number of temporary variables.
+     */
+    public int numOfTemps() {
+        return temps.size();
+    }
+
+    /**
+     * Returns a temporary variable.
+     *
+     * @param index The index of the temporary variable.
+     * @return The temporary variable.
+     */
+    public Temp temp(int index) {
+        return temps.get(index);
+    }
+
+    /**
+     * Returns the index of a temporary variable.
+     *
+     * @param temp The temporary variable.
+     * @return The index or {@code -1} if the temporary variable is neither
+     * used nor defined.
+     */
+    public int index(Temp temp) {
+        Integer index = indices.get(temp);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the live-in set of an instruction as a bit vector.
+     *
+     * @param instr The index of the instruction.
+     * @return The live-in set, which must not be changed.
+     */
+    public long[] in(int instr) {
+        return ins[instr];
+    }
+
+    /**
+     * Returns the live-out set of an instruction as a bit vector.
+     *
+     * @param instr The index of the instruction.
+     * @return The live-out set, which must not be changed.
+     */
+    public long[] out(int instr) {
+        return outs[instr];
+    }
+
+    /**
+     * Returns the temporary variables of a bit vector.
+     *
+     * @param set The bit vector.
+     * @return The temporary variables.
+     */
+    public HashSet<Temp> temps(long[] set) {
+        HashSet<Temp> temps = new HashSet<Temp>();
+        for (int index = next(set, 0); index >= 0; index = next(set, index + 1))
+            temps.add(this.temps.get(index));
+        return temps;
+    }
+
+    /**
+     * Checks whether a bit vector contains an index.
+     *
+     * @param set   The bit vector.
+     * @param index The index.
+     * @return {@code true} if the index is in the set, {@code false} otherwise.
+     */
+    public static boolean contains(long[] set, int index) {
+        return (set[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the first index in a bit vector not smaller than the one given.
+     *
+     * @param set   The bit vector.
+     * @param index The index to start with.
+     * @return The next index or {@code -1} if there is none.
+     */
+    public static int next(long[] set, int index) {
+        int w = index >>> 6;
+        if (w >= set.length)
+            return -1;
+        long word = set[w] & (-1L << index);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == set.length)
+                return -1;
+            word = set[w];
+        }
+    }
+
+    private static void set(long[] set, int index) {
+        set[index >>> 6] |= 1L << index;
+    }
+
+    private static void clear(long[] set, int index) {
+        set[index >>> 6] &= ~(1L << index);
+    }
+
+    private static void union(long[] set, long[] other) {
+        for (int w = 0; w < set.length; w++)
+            set[w] |= other[w];
+    }
+
+}
@@ -2,8 +2,6 @@ package compiler.phases.liveness;
 
 import compiler.phases.frames.Temp;
 
-import java.util.HashSet;
-
 /**
  *      Provide the nodes in the interference graphs.
  *
@@ -12,38 +10,22 @@ import java.util.HashSet;
 public class Node {
 
     // Temp vars
-    public Temp temp;
+    public final Temp temp;
 
-    // Adjacent nodes
-    private HashSet<Node> neighbors;
+    // Index in the interference graph
+    public final int index;
 
     // TO-DO
     public boolean spill;
     public int color;
 
-    public Node(Temp temp) {
+    public Node(Temp temp, int index) {
         this.temp = temp;
-        this.neighbors = new HashSet<>();
+        this.index = index;
         this.spill = false;
         this.color = -1;
     }
 
-    public void addNeighbor(Node node) {
-        neighbors.add(node);
-    }
-
-    public HashSet<Node> neighbors() {
-        return neighbors;
-    }
-
-    public int deg() {
-        return neighbors.size();
-    }
-
-    public boolean isNeighbor(Node node) {
-        return neighbors.contains(node);
-    }
-
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Node && ((Node) obj).temp == this.temp;
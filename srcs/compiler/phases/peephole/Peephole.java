@@ -0,0 +1,79 @@
+package compiler.phases.peephole;
+
+import common.report.Report;
+import compiler.phases.Phase;
+import compiler.phases.asmgen.AsmGen;
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.BackEnd;
+import compiler.phases.imcopt.ImcOpt;
+import compiler.phases.lincode.CodeFragment;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Peephole optimization of assembly code.
+ * <p>
+ * The instructions of each code fragment are rewritten in place by the rules
+ * of {@link PeepholeRules}, unless {@code --opt-level=0} is given. If
+ * {@code --peephole-verify=on} is given, every rewrite is checked by
+ * simulating the instructions rewritten and their replacement (see
+ * {@link PeepholeVerifier}). If {@code --opt-stats=on} is given, the number
+ * of rewrites by each rule is printed out once the phase is done.
+ *
+ * @author haytham
+ */
+public class Peephole extends Phase {
+
+    /**
+     * The number of rewrites by each rule.
+     */
+    private static int[] numOfRewrites = new int[PeepholeRules.rules.size()];
+
+    /**
+     * The number of instructions before and after the phase.
+     */
+    private static int numOfInstrsBefore = 0, numOfInstrsAfter = 0;
+
+    public Peephole() {
+        super("peephole");
+    }
+
+    /**
+     * Optimizes all code fragments.
+     */
+    public void optimize() {
+        if (ImcOpt.optLevel() == 0)
+            return;
+        String verify = compiler.Main.cmdLineArgValue("--peephole-verify");
+        numOfInstrsBefore = AsmGen.allInstrs().size();
+        LinkedHashMap<CodeFragment, int[]> stats = BackEnd.map(AsmGen.instrs::containsKey, fragment ->
+                new PeepholeOptimizer(AsmGen.instrs.get(fragment), fragment.RV, "on".equals(verify)).optimize());
+        numOfRewrites = new int[PeepholeRules.rules.size()];
+        for (int[] fragmentStats : stats.values())
+            for (int r = 0; r < numOfRewrites.length; r++)
+                numOfRewrites[r] += fragmentStats[r];
+        numOfInstrsAfter = AsmGen.allInstrs().size();
+    }
+
+    @Override
+    public void close() {
+        String optStats = compiler.Main.cmdLineArgValue("--opt-stats");
+        if (optStats != null && optStats.equals("on")) {
+            for (int r = 0; r < numOfRewrites.length; r++)
+                Report.info(String.format("Rule %s: %d rewrites.", PeepholeRules.rules.get(r).name, numOfRewrites[r]));
+            Report.info(String.format("Peephole: %d -> %d instructions.", numOfInstrsBefore, numOfInstrsAfter));
+        }
+        String loggedPhase = compiler.Main.cmdLineArgValue("--logged-phase");
+        if ((loggedPhase != null) && loggedPhase.matches("peephole" + "|all")) {
+            for (CodeFragment frag : AsmGen.instrs.keySet()) {
+                System.out.println("% " + frag.frame.label.name);
+                for (AsmInstr instr : AsmGen.instrs.get(frag)) {
+                    System.out.println(instr);
+                }
+                System.out.println();
+            }
+        }
+        super.close();
+    }
+
+}
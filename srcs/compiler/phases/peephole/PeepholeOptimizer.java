@@ -0,0 +1,124 @@
+package compiler.phases.peephole;
+
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Peephole optimization of a single code fragment.
+ * <p>
+ * A window slides over the instructions and all rules are tried at each
+ * position. Once a rule rewrites a window, the window moves back far enough
+ * for all windows overlapping the rewritten instructions to be tried again.
+ *
+ * @author haytham
+ */
+class PeepholeOptimizer {
+
+    /**
+     * The instructions of the code fragment.
+     */
+    private final LinkedList<AsmInstr> instrs;
+
+    /**
+     * The temporary variable holding the return value.
+     */
+    private final Temp RV;
+
+    /**
+     * The verifier of rewrites or {@code null} if rewrites are not verified.
+     */
+    private final PeepholeVerifier verifier;
+
+    /**
+     * The number of uses and definitions of each temporary variable.
+     */
+    private final HashMap<Temp, int[]> counts = new HashMap<Temp, int[]>();
+
+    /**
+     * @param instrs The instructions of the code fragment.
+     * @param RV     The temporary variable holding the return value.
+     * @param verify Whether rewrites are verified.
+     */
+    PeepholeOptimizer(LinkedList<AsmInstr> instrs, Temp RV, boolean verify) {
+        this.instrs = instrs;
+        this.RV = RV;
+        this.verifier = verify ? new PeepholeVerifier() : null;
+    }
+
+    /**
+     * Optimizes the instructions in place.
+     *
+     * @return The number of rewrites by each rule.
+     */
+    int[] optimize() {
+        Vector<AsmInstr> code = new Vector<AsmInstr>(instrs);
+        for (AsmInstr instr : code)
+            count(instr, 1);
+        int[] numOfRewrites = new int[PeepholeRules.rules.size()];
+
+        int i = 0;
+        while (i < code.size()) {
+            boolean rewritten = false;
+            for (int r = 0; r < PeepholeRules.rules.size(); r++) {
+                PeepholeRule rule = PeepholeRules.rules.get(r);
+                if (i + rule.size > code.size())
+                    continue;
+                Vector<AsmInstr> replacement = rule.rewriter.rewrite(code, i, this);
+                if (replacement == null)
+                    continue;
+                List<AsmInstr> window = code.subList(i, i + rule.size);
+                if (verifier != null)
+                    verifier.verify(rule, window, replacement, labelsAfter(code, i + rule.size));
+                for (AsmInstr instr : window)
+                    count(instr, -1);
+                for (AsmInstr instr : replacement)
+                    count(instr, 1);
+                window.clear();
+                window.addAll(replacement);
+                numOfRewrites[r]++;
+                rewritten = true;
+                break;
+            }
+            i = rewritten ? Math.max(0, i - PeepholeRules.maxSize + 1) : i + 1;
+        }
+
+        instrs.clear();
+        instrs.addAll(code);
+        return numOfRewrites;
+    }
+
+    private void count(AsmInstr instr, int delta) {
+        for (int u = 0; u < instr.numUses(); u++)
+            counts.computeIfAbsent(instr.use(u), temp -> new int[2])[0] += delta;
+        for (int d = 0; d < instr.numDefs(); d++)
+            counts.computeIfAbsent(instr.def(d), temp -> new int[2])[1] += delta;
+    }
+
+    /**
+     * Returns the labels an instruction falls through to.
+     */
+    private static Vector<Label> labelsAfter(Vector<AsmInstr> code, int i) {
+        Vector<Label> labels = new Vector<Label>();
+        for (int j = i; j < code.size() && code.get(j) instanceof AsmLABEL; j++)
+            labels.add(((AsmLABEL) code.get(j)).label());
+        return labels;
+    }
+
+    /**
+     * Checks whether a temporary variable is defined and used exactly once
+     * and is not the return value, i.e., whether its definition can be
+     * dropped once its use is rewritten.
+     */
+    boolean singleUse(Temp temp) {
+        int[] count = counts.get(temp);
+        return count != null && count[0] == 1 && count[1] == 1 && temp != RV;
+    }
+
+}
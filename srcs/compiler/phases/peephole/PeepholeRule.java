@@ -0,0 +1,47 @@
+package compiler.phases.peephole;
+
+import compiler.phases.asmgen.AsmInstr;
+
+import java.util.Vector;
+
+/**
+ * A peephole rule, i.e., a rewrite of a window of consecutive instructions.
+ *
+ * @author haytham
+ */
+class PeepholeRule {
+
+    /**
+     * Rewrites a window of instructions.
+     */
+    interface Rewriter {
+
+        /**
+         * @param code      The instructions of the code fragment.
+         * @param i         The position of the window; instructions following
+         *                  the window may be inspected but not rewritten.
+         * @param optimizer The optimizer, which knows how many times each
+         *                  temporary variable is used and defined.
+         * @return The instructions replacing the window or {@code null} if
+         * the rule does not apply.
+         */
+        Vector<AsmInstr> rewrite(Vector<AsmInstr> code, int i, PeepholeOptimizer optimizer);
+
+    }
+
+    final String name;
+
+    /**
+     * The number of instructions in the window.
+     */
+    final int size;
+
+    final Rewriter rewriter;
+
+    PeepholeRule(String name, int size, Rewriter rewriter) {
+        this.name = name;
+        this.size = size;
+        this.rewriter = rewriter;
+    }
+
+}
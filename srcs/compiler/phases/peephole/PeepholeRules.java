@@ -0,0 +1,191 @@
+package compiler.phases.peephole;
+
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.asmgen.AsmMOVE;
+import compiler.phases.asmgen.AsmOPER;
+import compiler.phases.asmgen.AsmOPER.Oper;
+import compiler.phases.asmgen.AsmOperand;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+
+import java.util.EnumSet;
+import java.util.Vector;
+
+/**
+ * The peephole rules, in the order they are tried.
+ *
+ * @author haytham
+ */
+class PeepholeRules {
+
+    static final Vector<PeepholeRule> rules = new Vector<PeepholeRule>();
+
+    /**
+     * The largest window of all rules.
+     */
+    static int maxSize = 0;
+
+    /**
+     * Operations whose last operand may be an immediate value.
+     */
+    private static final EnumSet<Oper> IMM_OPERS = EnumSet.of(Oper.ADD, Oper.SUB, Oper.MUL, Oper.DIV, Oper.NEG,
+            Oper.AND, Oper.OR, Oper.XOR, Oper.SL, Oper.SR, Oper.SRU, Oper.CMP, Oper.ZSZ, Oper.ZSNZ, Oper.ZSN,
+            Oper.ZSP, Oper.ZSNP, Oper.ZSNN, Oper.LDO, Oper.STO, Oper.STCO);
+
+    /**
+     * Operations setting a register to 1 if a condition holds and the
+     * branches on the same condition.
+     */
+    private static final Oper[] ZS_OPERS = {Oper.ZSZ, Oper.ZSNZ, Oper.ZSN, Oper.ZSP, Oper.ZSNP, Oper.ZSNN};
+    private static final Oper[] BRANCH_OPERS = {Oper.BZ, Oper.BNZ, Oper.BN, Oper.BP, Oper.BNP, Oper.BNN};
+    private static final Oper[] NEGATED_BRANCH_OPERS = {Oper.BNZ, Oper.BZ, Oper.BNN, Oper.BNP, Oper.BP, Oper.BN};
+
+    private static void rule(String name, int size, PeepholeRule.Rewriter rewriter) {
+        rules.add(new PeepholeRule(name, size, rewriter));
+        maxSize = Math.max(maxSize, size);
+    }
+
+    private static AsmOPER oper(Vector<AsmInstr> code, int i, Oper oper) {
+        AsmInstr instr = code.get(i);
+        return instr instanceof AsmOPER && ((AsmOPER) instr).oper() == oper ? (AsmOPER) instr : null;
+    }
+
+    private static int index(Oper[] opers, Oper oper) {
+        for (int i = 0; i < opers.length; i++)
+            if (opers[i] == oper)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Checks whether two operands of memory accesses are equal.
+     */
+    private static boolean sameOperand(AsmOPER fst, int fstOperand, AsmOPER snd, int sndOperand) {
+        AsmOperand fstOp = fst.operand(fstOperand);
+        AsmOperand sndOp = snd.operand(sndOperand);
+        if (fstOp.kind == AsmOperand.Kind.IMM && sndOp.kind == AsmOperand.Kind.IMM)
+            return fstOp.value == sndOp.value;
+        if (fstOp.kind == AsmOperand.Kind.USE && sndOp.kind == AsmOperand.Kind.USE)
+            return fst.use((int) fstOp.value) == snd.use((int) sndOp.value);
+        return false;
+    }
+
+    /**
+     * Replaces the last operand of an operation, a temporary variable, with
+     * an immediate value.
+     */
+    private static AsmOPER immediate(AsmOPER instr, long value) {
+        int last = instr.numOperands() - 1;
+        int use = (int) instr.operand(last).value;
+        AsmOperand[] operands = new AsmOperand[instr.numOperands()];
+        for (int o = 0; o < operands.length; o++) {
+            AsmOperand operand = instr.operand(o);
+            if (o == last)
+                operand = AsmOperand.imm(value);
+            else if (operand.kind == AsmOperand.Kind.USE && operand.value > use)
+                operand = AsmOperand.use((int) operand.value - 1);
+            operands[o] = operand;
+        }
+        Temp[] uses = new Temp[instr.numUses() - 1];
+        for (int u = 0, v = 0; u < instr.numUses(); u++)
+            if (u != use)
+                uses[v++] = instr.use(u);
+        Temp[] defs = new Temp[instr.numDefs()];
+        for (int d = 0; d < defs.length; d++)
+            defs[d] = instr.def(d);
+        Label[] jumps = new Label[instr.numJumps()];
+        for (int j = 0; j < jumps.length; j++)
+            jumps[j] = instr.jump(j);
+        return new AsmOPER(instr.oper(), operands, uses, defs, jumps);
+    }
+
+    private static Vector<AsmInstr> instrs(AsmInstr... instrs) {
+        Vector<AsmInstr> vector = new Vector<AsmInstr>();
+        for (AsmInstr instr : instrs)
+            vector.add(instr);
+        return vector;
+    }
+
+    static {
+        // SET x,x
+        rule("self-move", 1, (code, i, opt) -> {
+            AsmInstr instr = code.get(i);
+            return instr instanceof AsmMOVE && instr.use(0) == instr.def(0) ? instrs() : null;
+        });
+
+        // JMP L followed by L
+        rule("jump-next", 1, (code, i, opt) -> {
+            AsmOPER jump = oper(code, i, Oper.JMP);
+            if (jump == null)
+                return null;
+            for (int j = i + 1; j < code.size() && code.get(j) instanceof AsmLABEL; j++)
+                if (((AsmLABEL) code.get(j)).label() == jump.jump(0))
+                    return instrs();
+            return null;
+        });
+
+        // JMP L or a tail call followed by anything but a label
+        rule("unreachable", 2, (code, i, opt) -> {
+            AsmOPER jump = oper(code, i, Oper.JMP);
+            if (jump == null)
+                jump = oper(code, i, Oper.TAILJ);
+            return jump == null || code.get(i + 1) instanceof AsmLABEL ? null : instrs(jump);
+        });
+
+        // ZSx t,a,1 followed by BNZ t,L or BZ t,L
+        rule("zs-branch", 2, (code, i, opt) -> {
+            if (!(code.get(i) instanceof AsmOPER) || !(code.get(i + 1) instanceof AsmOPER))
+                return null;
+            AsmOPER zs = (AsmOPER) code.get(i);
+            AsmOPER branch = (AsmOPER) code.get(i + 1);
+            int cond = index(ZS_OPERS, zs.oper());
+            boolean negated = branch.oper() == Oper.BZ;
+            if (cond < 0 || (branch.oper() != Oper.BNZ && !negated))
+                return null;
+            if (zs.operand(1).kind != AsmOperand.Kind.USE || zs.operand(2).kind != AsmOperand.Kind.IMM
+                    || zs.operand(2).value != 1)
+                return null;
+            Temp temp = zs.def(0);
+            if (branch.use(0) != temp || !opt.singleUse(temp))
+                return null;
+            Oper oper = negated ? NEGATED_BRANCH_OPERS[cond] : BRANCH_OPERS[cond];
+            return instrs(AsmOPER.build(oper, null, new Label[]{branch.jump(0), branch.jump(1)},
+                    zs.use((int) zs.operand(1).value), branch.jump(0)));
+        });
+
+        // SETL t,c followed by an operation using t as its last operand
+        rule("small-constant", 2, (code, i, opt) -> {
+            AsmOPER setl = oper(code, i, Oper.SETL);
+            if (setl == null || !(code.get(i + 1) instanceof AsmOPER))
+                return null;
+            AsmOPER instr = (AsmOPER) code.get(i + 1);
+            Temp temp = setl.def(0);
+            long value = setl.operand(1).value;
+            if (!opt.singleUse(temp))
+                return null;
+            if (instr instanceof AsmMOVE)
+                return instr.use(0) == temp ? instrs(AsmOPER.build(Oper.SETL, instr.def(0), null, value)) : null;
+            if (value > 255 || !IMM_OPERS.contains(instr.oper()) || instr.numOperands() == 0)
+                return null;
+            AsmOperand last = instr.operand(instr.numOperands() - 1);
+            if (last.kind != AsmOperand.Kind.USE || instr.use((int) last.value) != temp)
+                return null;
+            return instrs(immediate(instr, value));
+        });
+
+        // STO x,a,b followed by LDO y,a,b
+        rule("store-reload", 2, (code, i, opt) -> {
+            AsmOPER store = oper(code, i, Oper.STO);
+            if (store == null)
+                store = oper(code, i, Oper.STCO);
+            AsmOPER load = oper(code, i + 1, Oper.LDO);
+            if (store == null || load == null || !sameOperand(store, 1, load, 1) || !sameOperand(store, 2, load, 2))
+                return null;
+            if (store.oper() == Oper.STO)
+                return instrs(store, new AsmMOVE(load.def(0), store.use(0)));
+            return instrs(store, AsmOPER.build(Oper.SETL, load.def(0), null, store.operand(0).value));
+        });
+    }
+
+}
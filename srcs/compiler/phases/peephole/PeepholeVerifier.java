@@ -0,0 +1,269 @@
+package compiler.phases.peephole;
+
+import common.report.Report;
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.asmgen.AsmOPER;
+import compiler.phases.asmgen.AsmOperand;
+import compiler.phases.frames.Label;
+import compiler.phases.frames.Temp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Verification of peephole rewrites by simulation.
+ * <p>
+ * The instructions of a window and their replacement are both executed
+ * several times, each time starting from the same random values of
+ * temporary variables, registers and memory. Afterwards, the temporary
+ * variables defined by the replacement, the memory and the label control
+ * continues at must agree. Temporary variables defined by the window only
+ * are assumed to be dead, as rules drop definitions only if they see no
+ * further uses.
+ *
+ * @author haytham
+ */
+class PeepholeVerifier {
+
+    private static final int NUM_OF_TRIALS = 16;
+
+    /**
+     * Verifies a rewrite.
+     *
+     * @param rule        The rule.
+     * @param window      The instructions rewritten.
+     * @param replacement The replacement.
+     * @param labelsAfter The labels following the window.
+     */
+    void verify(PeepholeRule rule, List<AsmInstr> window, List<AsmInstr> replacement, List<Label> labelsAfter) {
+        for (int trial = 0; trial < NUM_OF_TRIALS; trial++) {
+            Machine before = new Machine(trial);
+            Machine after = new Machine(trial);
+            Label beforeTarget = before.execute(window);
+            Label afterTarget = after.execute(replacement);
+            if (before.unknown || after.unknown)
+                return;
+
+            boolean equal = beforeTarget == afterTarget
+                    || (beforeTarget == null && labelsAfter.contains(afterTarget))
+                    || (afterTarget == null && labelsAfter.contains(beforeTarget));
+            for (Temp temp : after.defined)
+                equal = equal && before.temp(temp) == after.temp(temp);
+            equal = equal && before.written.equals(after.written);
+            if (!equal)
+                throw new Report.Error("Peephole rule '" + rule.name + "' rewrites " + window + " into "
+                        + replacement + " unsoundly.");
+        }
+    }
+
+    /**
+     * A simulator of straight-line code.
+     */
+    private static class Machine {
+
+        private final int trial;
+
+        private final HashMap<Temp, Long> temps = new HashMap<Temp, Long>();
+
+        private final HashMap<Long, Long> regs = new HashMap<Long, Long>();
+
+        private final HashMap<Long, Long> mem = new HashMap<Long, Long>();
+
+        /**
+         * The memory written.
+         */
+        private final HashMap<Long, Long> written = new HashMap<Long, Long>();
+
+        private final HashSet<Temp> defined = new HashSet<Temp>();
+
+        private long rR;
+
+        /**
+         * Whether an instruction that cannot be simulated has been met.
+         */
+        private boolean unknown = false;
+
+        Machine(int trial) {
+            this.trial = trial;
+            this.rR = random(-1);
+        }
+
+        /**
+         * Returns a random value determined by the trial and a key. Half of
+         * the trials use small values, so that comparisons come out every
+         * way.
+         */
+        private long random(long key) {
+            Random random = new Random(key * 31 + trial);
+            return trial % 2 == 0 ? random.nextInt(7) - 3 : random.nextLong();
+        }
+
+        long temp(Temp temp) {
+            return temps.computeIfAbsent(temp, t -> random(t.temp));
+        }
+
+        private long load(long addr) {
+            return mem.computeIfAbsent(addr, a -> random(a ^ 0x5DEECE66DL));
+        }
+
+        private long value(AsmOPER instr, int operand) {
+            AsmOperand op = instr.operand(operand);
+            switch (op.kind) {
+                case USE:
+                    return temp(instr.use((int) op.value));
+                case DEF:
+                    return temp(instr.def((int) op.value));
+                case REG:
+                    return regs.computeIfAbsent(op.value, r -> random(r + 0x100000L));
+                case SPECIAL:
+                    return rR;
+                case LABEL:
+                    return op.label().name.hashCode();
+                default:
+                    return op.value;
+            }
+        }
+
+        private void set(AsmOPER instr, long value) {
+            temps.put(instr.def(0), value);
+            defined.add(instr.def(0));
+        }
+
+        /**
+         * Executes instructions.
+         *
+         * @return The label jumped to or {@code null} if control falls
+         * through.
+         */
+        Label execute(List<AsmInstr> instrs) {
+            for (AsmInstr instr : instrs) {
+                if (instr instanceof AsmLABEL)
+                    continue;
+                AsmOPER oper = (AsmOPER) instr;
+                long y = oper.numOperands() > 1 ? value(oper, 1) : 0;
+                long z = oper.numOperands() > 2 ? value(oper, 2) : 0;
+                switch (oper.oper()) {
+                    case SET:
+                    case SETL:
+                    case LDA:
+                    case GET:
+                        set(oper, y);
+                        break;
+                    case INCML:
+                        set(oper, value(oper, 0) + (y << 16));
+                        break;
+                    case INCMH:
+                        set(oper, value(oper, 0) + (y << 32));
+                        break;
+                    case INCH:
+                        set(oper, value(oper, 0) + (y << 48));
+                        break;
+                    case LDO:
+                        set(oper, load(y + z));
+                        break;
+                    case STO:
+                    case STCO:
+                        mem.put(y + z, value(oper, 0));
+                        written.put(y + z, value(oper, 0));
+                        break;
+                    case ADD:
+                        set(oper, y + z);
+                        break;
+                    case SUB:
+                    case NEG:
+                        set(oper, y - z);
+                        break;
+                    case MUL:
+                        set(oper, y * z);
+                        break;
+                    case DIV:
+                        set(oper, z == 0 ? 0 : y / z);
+                        rR = z == 0 ? y : y % z;
+                        break;
+                    case AND:
+                        set(oper, y & z);
+                        break;
+                    case OR:
+                        set(oper, y | z);
+                        break;
+                    case XOR:
+                        set(oper, y ^ z);
+                        break;
+                    case SL:
+                        set(oper, y << z);
+                        break;
+                    case SR:
+                        set(oper, y >> z);
+                        break;
+                    case SRU:
+                        set(oper, y >>> z);
+                        break;
+                    case CMP:
+                        set(oper, Long.compare(y, z));
+                        break;
+                    case ZSZ:
+                        set(oper, y == 0 ? z : 0);
+                        break;
+                    case ZSNZ:
+                        set(oper, y != 0 ? z : 0);
+                        break;
+                    case ZSN:
+                        set(oper, y < 0 ? z : 0);
+                        break;
+                    case ZSP:
+                        set(oper, y > 0 ? z : 0);
+                        break;
+                    case ZSNP:
+                        set(oper, y <= 0 ? z : 0);
+                        break;
+                    case ZSNN:
+                        set(oper, y >= 0 ? z : 0);
+                        break;
+                    case JMP:
+                        return oper.jump(0);
+                    case BZ:
+                    case BNZ:
+                    case BN:
+                    case BP:
+                    case BNP:
+                    case BNN: {
+                        long x = value(oper, 0);
+                        boolean taken;
+                        switch (oper.oper()) {
+                            case BZ:
+                                taken = x == 0;
+                                break;
+                            case BNZ:
+                                taken = x != 0;
+                                break;
+                            case BN:
+                                taken = x < 0;
+                                break;
+                            case BP:
+                                taken = x > 0;
+                                break;
+                            case BNP:
+                                taken = x <= 0;
+                                break;
+                            default:
+                                taken = x >= 0;
+                                break;
+                        }
+                        if (taken)
+                            return oper.jump(0);
+                        break;
+                    }
+                    default:
+                        unknown = true;
+                        return null;
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
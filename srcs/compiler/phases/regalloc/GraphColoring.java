@@ -0,0 +1,459 @@
+package compiler.phases.regalloc;
+
+import compiler.phases.liveness.InterferenceGraph;
+
+import java.util.Arrays;
+
+/**
+ * Coloring of an interference graph by iterated register coalescing.
+ * <p>
+ * Nodes of low degree that are not move related are simplified, i.e., pushed
+ * on the select stack, moves are coalesced as long as the Briggs or, for
+ * precolored nodes, the George test guarantees that coloring is not made
+ * harder, and moves of nodes that can be neither simplified nor coalesced are
+ * frozen. If nothing else applies, a node is selected as a potential spill by
+ * its spill cost relative to its degree. Popping nodes from the select stack,
+ * each is given the lowest color not used by its neighbors or becomes an
+ * actual spill if there is none.
+ *
+ * @author haytham
+ */
+class GraphColoring {
+
+    // Node lists
+    private static final int PRECOLORED = 0;
+    private static final int INITIAL = 1;
+    private static final int SIMPLIFY = 2;
+    private static final int FREEZE = 3;
+    private static final int SPILL = 4;
+    private static final int SPILLED = 5;
+    private static final int COALESCED = 6;
+    private static final int COLORED = 7;
+    private static final int SELECT = 8;
+
+    // Move lists
+    private static final int COALESCED_MOVES = 0;
+    private static final int CONSTRAINED = 1;
+    private static final int FROZEN = 2;
+    private static final int WORKLIST = 3;
+    private static final int ACTIVE = 4;
+
+    private final InterferenceGraph graph;
+
+    // Number of colors
+    private final int K;
+
+    private final double[] spillCosts;
+
+    private final Lists nodes;
+    private final Lists moves;
+
+    private final int[] degree;
+    private final int[] alias;
+    private final int[] color;
+
+    // Moves each node takes part in, merged when nodes are coalesced
+    private final int[][] moveList;
+    private final int[] numMoves;
+
+    private final int[] selectStack;
+    private int selectSize = 0;
+
+    // Marks for sets of nodes or colors
+    private final int[] marks;
+    private int mark = 0;
+
+    /**
+     * @param graph      The interference graph, extended as nodes are coalesced.
+     * @param K          The number of colors.
+     * @param precolors  The color of each precolored node, -1 for other nodes.
+     * @param spillCosts The spill cost of each node.
+     */
+    GraphColoring(InterferenceGraph graph, int K, int[] precolors, double[] spillCosts) {
+        this.graph = graph;
+        this.K = K;
+        this.spillCosts = spillCosts;
+        int n = graph.numNodes();
+        this.nodes = new Lists(SELECT + 1, n);
+        this.moves = new Lists(ACTIVE + 1, graph.numMoves());
+        this.degree = new int[n];
+        this.alias = new int[n];
+        this.color = new int[n];
+        this.moveList = new int[n][];
+        this.numMoves = new int[n];
+        this.selectStack = new int[n];
+        this.marks = new int[Math.max(n, K)];
+
+        for (int node = n - 1; node >= 0; node--) {
+            alias[node] = node;
+            color[node] = precolors[node];
+            moveList[node] = new int[graph.numMoves(node)];
+            for (int k = 0; k < graph.numMoves(node); k++) {
+                moveList[node][numMoves[node]++] = graph.move(node, k);
+            }
+            if (precolors[node] >= 0) {
+                degree[node] = Integer.MAX_VALUE / 2;
+                nodes.add(PRECOLORED, node);
+            } else {
+                degree[node] = graph.deg(node);
+                nodes.add(INITIAL, node);
+            }
+        }
+        for (int move = graph.numMoves() - 1; move >= 0; move--) {
+            moves.add(WORKLIST, move);
+        }
+    }
+
+    /**
+     * Colors the graph.
+     *
+     * @return {@code true} if all nodes are colored, {@code false} if some
+     * must be spilled.
+     */
+    boolean color() {
+        makeWorklist();
+        while (true) {
+            if (!nodes.isEmpty(SIMPLIFY)) {
+                simplify();
+            } else if (!moves.isEmpty(WORKLIST)) {
+                coalesce();
+            } else if (!nodes.isEmpty(FREEZE)) {
+                freeze();
+            } else if (!nodes.isEmpty(SPILL)) {
+                selectSpill();
+            } else {
+                break;
+            }
+        }
+        assignColors();
+        return nodes.isEmpty(SPILLED);
+    }
+
+    /**
+     * Returns the color of a node or -1 if it is spilled.
+     */
+    int color(int node) {
+        return color[node];
+    }
+
+    /**
+     * Returns the nodes that must be spilled.
+     */
+    int[] spilled() {
+        int[] spilled = new int[nodes.size(SPILLED)];
+        int i = 0;
+        for (int node = nodes.first(SPILLED); node >= 0; node = nodes.next(node)) {
+            spilled[i++] = node;
+        }
+        return spilled;
+    }
+
+    private void makeWorklist() {
+        for (int node = 0; node < graph.numNodes(); node++) {
+            if (nodes.list(node) != INITIAL) {
+                continue;
+            }
+            if (degree[node] >= K) {
+                nodes.move(node, SPILL);
+            } else if (moveRelated(node)) {
+                nodes.move(node, FREEZE);
+            } else {
+                nodes.move(node, SIMPLIFY);
+            }
+        }
+    }
+
+    private boolean adjacent(int node) {
+        int list = nodes.list(node);
+        return list != SELECT && list != COALESCED;
+    }
+
+    private boolean active(int move) {
+        int list = moves.list(move);
+        return list == ACTIVE || list == WORKLIST;
+    }
+
+    private boolean moveRelated(int node) {
+        for (int k = 0; k < numMoves[node]; k++) {
+            if (active(moveList[node][k])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void simplify() {
+        int node = nodes.first(SIMPLIFY);
+        nodes.move(node, SELECT);
+        selectStack[selectSize++] = node;
+        for (int k = 0; k < graph.deg(node); k++) {
+            int neighbor = graph.neighbor(node, k);
+            if (adjacent(neighbor)) {
+                decrementDegree(neighbor);
+            }
+        }
+    }
+
+    private void decrementDegree(int node) {
+        if (nodes.list(node) == PRECOLORED) {
+            return;
+        }
+        int d = degree[node]--;
+        if (d == K) {
+            enableMoves(node);
+            for (int k = 0; k < graph.deg(node); k++) {
+                int neighbor = graph.neighbor(node, k);
+                if (adjacent(neighbor)) {
+                    enableMoves(neighbor);
+                }
+            }
+            if (nodes.list(node) == SPILL) {
+                nodes.move(node, moveRelated(node) ? FREEZE : SIMPLIFY);
+            }
+        }
+    }
+
+    private void enableMoves(int node) {
+        for (int k = 0; k < numMoves[node]; k++) {
+            int move = moveList[node][k];
+            if (moves.list(move) == ACTIVE) {
+                moves.move(move, WORKLIST);
+            }
+        }
+    }
+
+    private void coalesce() {
+        int move = moves.first(WORKLIST);
+        int x = alias(graph.moveDst(move));
+        int y = alias(graph.moveSrc(move));
+        int u = x;
+        int v = y;
+        if (nodes.list(y) == PRECOLORED) {
+            u = y;
+            v = x;
+        }
+        if (u == v) {
+            moves.move(move, COALESCED_MOVES);
+            addWorkList(u);
+        } else if (nodes.list(v) == PRECOLORED || graph.interfere(u, v)) {
+            moves.move(move, CONSTRAINED);
+            addWorkList(u);
+            addWorkList(v);
+        } else if (nodes.list(u) == PRECOLORED ? george(u, v) : briggs(u, v)) {
+            moves.move(move, COALESCED_MOVES);
+            combine(u, v);
+            addWorkList(u);
+        } else {
+            moves.move(move, ACTIVE);
+        }
+    }
+
+    private void addWorkList(int node) {
+        if (nodes.list(node) == FREEZE && degree[node] < K && !moveRelated(node)) {
+            nodes.move(node, SIMPLIFY);
+        }
+    }
+
+    // Every neighbor of v is of low degree, precolored or a neighbor of u
+    private boolean george(int u, int v) {
+        for (int k = 0; k < graph.deg(v); k++) {
+            int t = graph.neighbor(v, k);
+            if (adjacent(t) && degree[t] >= K && nodes.list(t) != PRECOLORED && !graph.interfere(t, u)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Fewer than K neighbors of u and v together are of significant degree
+    private boolean briggs(int u, int v) {
+        mark++;
+        int significant = 0;
+        for (int node : new int[]{u, v}) {
+            for (int k = 0; k < graph.deg(node); k++) {
+                int t = graph.neighbor(node, k);
+                if (adjacent(t) && marks[t] != mark) {
+                    marks[t] = mark;
+                    if (degree[t] >= K) {
+                        significant++;
+                    }
+                }
+            }
+        }
+        return significant < K;
+    }
+
+    private int alias(int node) {
+        while (nodes.list(node) == COALESCED) {
+            node = alias[node];
+        }
+        return node;
+    }
+
+    private void combine(int u, int v) {
+        nodes.move(v, COALESCED);
+        alias[v] = u;
+        if (numMoves[u] + numMoves[v] > moveList[u].length) {
+            moveList[u] = Arrays.copyOf(moveList[u], numMoves[u] + numMoves[v]);
+        }
+        System.arraycopy(moveList[v], 0, moveList[u], numMoves[u], numMoves[v]);
+        numMoves[u] += numMoves[v];
+        enableMoves(v);
+        for (int k = 0; k < graph.deg(v); k++) {
+            int t = graph.neighbor(v, k);
+            if (adjacent(t)) {
+                addEdge(t, u);
+                decrementDegree(t);
+            }
+        }
+        if (degree[u] >= K && nodes.list(u) == FREEZE) {
+            nodes.move(u, SPILL);
+        }
+    }
+
+    private void addEdge(int u, int v) {
+        if (u == v || graph.interfere(u, v)) {
+            return;
+        }
+        graph.addEdge(u, v);
+        if (nodes.list(u) != PRECOLORED) {
+            degree[u]++;
+        }
+        if (nodes.list(v) != PRECOLORED) {
+            degree[v]++;
+        }
+    }
+
+    private void freeze() {
+        int node = nodes.first(FREEZE);
+        nodes.move(node, SIMPLIFY);
+        freezeMoves(node);
+    }
+
+    private void freezeMoves(int u) {
+        for (int k = 0; k < numMoves[u]; k++) {
+            int move = moveList[u][k];
+            if (!active(move)) {
+                continue;
+            }
+            int x = graph.moveDst(move);
+            int y = graph.moveSrc(move);
+            int v = alias(y) == alias(u) ? alias(x) : alias(y);
+            moves.move(move, FROZEN);
+            if (nodes.list(v) == FREEZE && !moveRelated(v)) {
+                nodes.move(v, SIMPLIFY);
+            }
+        }
+    }
+
+    private void selectSpill() {
+        int spill = -1;
+        for (int node = nodes.first(SPILL); node >= 0; node = nodes.next(node)) {
+            if (spill < 0 || spillCosts[node] / degree[node] < spillCosts[spill] / degree[spill]) {
+                spill = node;
+            }
+        }
+        nodes.move(spill, SIMPLIFY);
+        freezeMoves(spill);
+    }
+
+    private void assignColors() {
+        while (selectSize > 0) {
+            int node = selectStack[--selectSize];
+            mark++;
+            for (int k = 0; k < graph.deg(node); k++) {
+                int neighbor = alias(graph.neighbor(node, k));
+                int list = nodes.list(neighbor);
+                if ((list == COLORED || list == PRECOLORED) && color[neighbor] < K) {
+                    marks[color[neighbor]] = mark;
+                }
+            }
+            int c = 0;
+            while (c < K && marks[c] == mark) {
+                c++;
+            }
+            if (c == K) {
+                nodes.move(node, SPILLED);
+                color[node] = -1;
+            } else {
+                nodes.move(node, COLORED);
+                color[node] = c;
+            }
+        }
+        for (int node = 0; node < graph.numNodes(); node++) {
+            if (nodes.list(node) == COALESCED) {
+                color[node] = color[alias(node)];
+            }
+        }
+    }
+
+    /**
+     * Disjoint doubly linked lists of elements numbered densely, as each node
+     * or move is on exactly one list at a time.
+     */
+    private static class Lists {
+
+        private final int[] list;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] heads;
+        private final int[] sizes;
+
+        Lists(int numLists, int numElems) {
+            this.list = new int[numElems];
+            this.prev = new int[numElems];
+            this.next = new int[numElems];
+            this.heads = new int[numLists];
+            this.sizes = new int[numLists];
+            Arrays.fill(list, -1);
+            Arrays.fill(heads, -1);
+        }
+
+        void add(int l, int elem) {
+            list[elem] = l;
+            prev[elem] = -1;
+            next[elem] = heads[l];
+            if (heads[l] >= 0) {
+                prev[heads[l]] = elem;
+            }
+            heads[l] = elem;
+            sizes[l]++;
+        }
+
+        void move(int elem, int l) {
+            int old = list[elem];
+            if (prev[elem] >= 0) {
+                next[prev[elem]] = next[elem];
+            } else {
+                heads[old] = next[elem];
+            }
+            if (next[elem] >= 0) {
+                prev[next[elem]] = prev[elem];
+            }
+            sizes[old]--;
+            add(l, elem);
+        }
+
+        int list(int elem) {
+            return list[elem];
+        }
+
+        int first(int l) {
+            return heads[l];
+        }
+
+        int next(int elem) {
+            return next[elem];
+        }
+
+        int size(int l) {
+            return sizes[l];
+        }
+
+        boolean isEmpty(int l) {
+            return heads[l] < 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+package compiler.phases.regalloc;
+
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
+import compiler.phases.liveness.LivenessAnalysis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+ * Register allocation by linear scan.
+ * <p>
+ * The live interval of a temporary variable spans all instructions it is
+ * live at, used or defined by, from the first to the last one in the order
+ * of instructions, holes included. Intervals are visited in the order of
+ * their starts: intervals that have ended release their registers and the
+ * interval visited takes the lowest free register. If there is none, the
+ * interval among the active ones and the one visited that ends last is
+ * spilled, unless it holds a temporary variable introduced by spilling.
+ *
+ * @author haytham
+ */
+class LinearScan {
+
+    private final LivenessAnalysis liveness;
+
+    // Number of registers
+    private final int K;
+
+    private final HashSet<Temp> spillTemps;
+
+    // Live intervals
+    private final int[] starts;
+    private final int[] ends;
+
+    // Registers of temps, -1 if spilled
+    private final int[] regs;
+
+    private final Vector<Temp> spilled = new Vector<Temp>();
+
+    /**
+     * @param liveness   The liveness analysis of the code fragment.
+     * @param K          The number of registers.
+     * @param spillTemps The temporary variables introduced by spilling.
+     */
+    LinearScan(LivenessAnalysis liveness, int K, HashSet<Temp> spillTemps) {
+        this.liveness = liveness;
+        this.K = K;
+        this.spillTemps = spillTemps;
+        int n = liveness.numOfTemps();
+        this.starts = new int[n];
+        this.ends = new int[n];
+        this.regs = new int[n];
+        Arrays.fill(starts, Integer.MAX_VALUE);
+        Arrays.fill(ends, -1);
+        for (int i = 0; i < liveness.numOfInstrs(); i++) {
+            long[] in = liveness.in(i);
+            for (int t = LivenessAnalysis.next(in, 0); t >= 0; t = LivenessAnalysis.next(in, t + 1)) {
+                extend(t, i);
+            }
+            for (int t : liveness.defs(i)) {
+                extend(t, i);
+            }
+        }
+    }
+
+    private void extend(int temp, int instr) {
+        starts[temp] = Math.min(starts[temp], instr);
+        ends[temp] = Math.max(ends[temp], instr);
+    }
+
+    /**
+     * Allocates registers.
+     *
+     * @return {@code true} if all temporary variables got registers,
+     * {@code false} if some must be spilled.
+     */
+    boolean allocate() {
+        int FP = liveness.index(ImcGen.FP);
+        int SP = liveness.index(ImcGen.SP);
+        Vector<Integer> intervals = new Vector<Integer>();
+        for (int t = 0; t < liveness.numOfTemps(); t++) {
+            if (t == FP || t == SP || ends[t] < 0) {
+                regs[t] = t == FP ? RegAlloc.FP_REG : t == SP ? RegAlloc.SP_REG : 0;
+                continue;
+            }
+            intervals.add(t);
+        }
+        intervals.sort(Comparator.comparingInt((Integer t) -> starts[t]).thenComparingInt(t -> t));
+
+        TreeSet<Integer> active = new TreeSet<Integer>(Comparator.comparingInt((Integer t) -> ends[t]).thenComparingInt(t -> t));
+        boolean[] used = new boolean[K];
+        for (int t : intervals) {
+            // Expire intervals that ended before this one starts.
+            while (!active.isEmpty() && ends[active.first()] < starts[t]) {
+                used[regs[active.pollFirst()]] = false;
+            }
+            if (active.size() < K) {
+                int reg = 0;
+                while (used[reg]) {
+                    reg++;
+                }
+                used[reg] = true;
+                regs[t] = reg;
+                active.add(t);
+                continue;
+            }
+            // Spill the interval ending last.
+            Integer spill = null;
+            for (Integer a : active.descendingSet()) {
+                if (!spillTemps.contains(liveness.temp(a))) {
+                    spill = a;
+                    break;
+                }
+            }
+            if (spill != null && (ends[spill] > ends[t] || spillTemps.contains(liveness.temp(t)))) {
+                regs[t] = regs[spill];
+                regs[spill] = -1;
+                spilled.add(liveness.temp(spill));
+                active.remove(spill);
+                active.add(t);
+            } else {
+                regs[t] = -1;
+                spilled.add(liveness.temp(t));
+            }
+        }
+        return spilled.isEmpty();
+    }
+
+    /**
+     * Returns the mapping of temporary variables to registers.
+     */
+    HashMap<Temp, Integer> regs() {
+        HashMap<Temp, Integer> regs = new HashMap<Temp, Integer>();
+        for (int t = 0; t < liveness.numOfTemps(); t++) {
+            regs.put(liveness.temp(t), this.regs[t]);
+        }
+        return regs;
+    }
+
+    /**
+     * Returns the temporary variables that must be spilled.
+     */
+    Vector<Temp> spilled() {
+        return spilled;
+    }
+
+}
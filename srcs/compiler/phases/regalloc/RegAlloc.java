@@ -0,0 +1,352 @@
+package compiler.phases.regalloc;
+
+import common.report.Report;
+import compiler.phases.Phase;
+import compiler.phases.asmgen.AsmGen;
+import compiler.phases.asmgen.BackEnd;
+import compiler.phases.asmgen.AsmInstr;
+import compiler.phases.asmgen.AsmLABEL;
+import compiler.phases.asmgen.AsmMOVE;
+import compiler.phases.asmgen.AsmOPER;
+import compiler.phases.asmgen.AsmOperand;
+import compiler.phases.frames.Frame;
+import compiler.phases.frames.Temp;
+import compiler.phases.imcgen.ImcGen;
+import compiler.phases.lincode.CodeFragment;
+import compiler.phases.lincode.Fragment;
+import compiler.phases.lincode.LinCode;
+import compiler.phases.liveness.GraphGenerator;
+import compiler.phases.liveness.InterferenceGraph;
+import compiler.phases.liveness.LivenessAnalysis;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Vector;
+
+/**
+ * Register allocation.
+ * <p>
+ * Temporary variables of each code fragment are mapped to the general
+ * registers {@code $0} to {@code $K-1} by coloring its interference graph,
+ * while the frame pointer and the stack pointer are kept in {@code $253} and
+ * {@code $254}. Temporary variables that cannot be colored are spilled into
+ * new slots of the block of temporaries of the frame: each use is preceded by
+ * a load and each definition is followed by a store, both through new
+ * short-lived temporary variables, and liveness analysis and coloring are
+ * repeated until no more temporary variables must be spilled. A spilled
+ * temporary variable holding a constant or an address of a label gets no slot
+ * but is rematerialized: its definition is dropped and the value is loaded
+ * anew before each use. Registers are
+ * allocated by linear scan instead if so selected, which is faster but
+ * coalesces no moves. Either way, moves between temporary variables that end up
+ * in the same register are removed.
+ *
+ * @author haytham
+ */
+public class RegAlloc extends Phase {
+
+    /**
+     * The register of the frame pointer.
+     */
+    public static final int FP_REG = 253;
+
+    /**
+     * The register of the stack pointer.
+     */
+    public static final int SP_REG = 254;
+
+    /**
+     * The spill cost of a use of a rematerializable temporary variable,
+     * relative to a load from or a store to its slot.
+     */
+    private static final double REMAT_COST = 0.5;
+
+    /**
+     * The mapping of temporary variables to registers (divided by fragments).
+     */
+    public static final LinkedHashMap<CodeFragment, HashMap<Temp, Integer>> tempToReg = new LinkedHashMap<>();
+
+    public RegAlloc() {
+        super("regalloc");
+    }
+
+    // Clear the register mappings
+    public static void reset() {
+        tempToReg.clear();
+    }
+
+    /**
+     * Returns the number of registers available for temporary variables
+     * (selected by {@code --num-regs}, 200 by default, i.e., all registers
+     * below the one calls are made with).
+     *
+     * @return The number of registers.
+     */
+    public static int numOfRegs() {
+        String numOfRegs = compiler.Main.cmdLineArgValue("--num-regs");
+        int K = numOfRegs == null ? 200 : Integer.parseInt(numOfRegs);
+        if (K < 4 || K > 200)
+            throw new Report.Error("The number of registers must be between 4 and 200.");
+        return K;
+    }
+
+    /**
+     * Checks whether registers are allocated by linear scan (selected by
+     * {@code --regalloc=linear}) instead of graph coloring.
+     *
+     * @return {@code true} if registers are allocated by linear scan,
+     * {@code false} otherwise.
+     */
+    public static boolean linearScan() {
+        String regAlloc = compiler.Main.cmdLineArgValue("--regalloc");
+        return regAlloc != null && regAlloc.equals("linear");
+    }
+
+    /**
+     * Allocates registers of all code fragments.
+     */
+    public void allocate() {
+        int K = numOfRegs();
+        boolean linearScan = linearScan();
+        tempToReg.putAll(BackEnd.map(AsmGen.instrs::containsKey, fragment -> allocate(fragment, K, linearScan)));
+    }
+
+    private static HashMap<Temp, Integer> allocate(CodeFragment fragment, int K, boolean linearScan) {
+        LinkedList<AsmInstr> instrs = AsmGen.instrs.get(fragment);
+        HashSet<Temp> spillTemps = new HashSet<Temp>();
+        HashMap<Temp, Integer> regs = new HashMap<Temp, Integer>();
+        while (true) {
+            Vector<Temp> spilled;
+            if (linearScan) {
+                LinearScan scan = new LinearScan(new LivenessAnalysis(instrs), K, spillTemps);
+                if (scan.allocate()) {
+                    regs = scan.regs();
+                    break;
+                }
+                spilled = scan.spilled();
+            } else {
+                spilled = color(fragment, instrs, K, spillTemps, regs);
+                if (spilled == null)
+                    break;
+            }
+
+            HashMap<Temp, AsmOPER> remats = rematerializable(instrs);
+            HashMap<Temp, Long> slots = new HashMap<Temp, Long>();
+            for (Temp temp : spilled) {
+                if (!remats.containsKey(temp))
+                    slots.put(temp, newSlot(fragment.frame));
+            }
+            remats.keySet().retainAll(spilled);
+            spill(instrs, slots, remats, spillTemps);
+        }
+        removeMoves(instrs, regs);
+        return regs;
+    }
+
+    /**
+     * Colors the interference graph of a code fragment.
+     *
+     * @return The temporary variables that must be spilled or {@code null}
+     * if all temporary variables got registers, which are then put into
+     * {@code regs}.
+     */
+    private static Vector<Temp> color(CodeFragment fragment, LinkedList<AsmInstr> instrs, int K,
+                                      HashSet<Temp> spillTemps, HashMap<Temp, Integer> regs) {
+        InterferenceGraph graph = new GraphGenerator(instrs, fragment.frame).createGraph();
+        int n = graph.numNodes();
+
+        HashMap<Temp, Integer> indices = new HashMap<Temp, Integer>();
+        int[] precolors = new int[n];
+        double[] spillCosts = new double[n];
+        for (int node = 0; node < n; node++) {
+            Temp temp = graph.node(node).temp;
+            indices.put(temp, node);
+            precolors[node] = temp == ImcGen.FP ? FP_REG : temp == ImcGen.SP ? SP_REG : -1;
+            if (spillTemps.contains(temp))
+                spillCosts[node] = Double.POSITIVE_INFINITY;
+        }
+        HashMap<Temp, AsmOPER> remats = rematerializable(instrs);
+        for (AsmInstr instr : instrs) {
+            for (int u = 0; u < instr.numUses(); u++)
+                spillCosts[indices.get(instr.use(u))] += remats.containsKey(instr.use(u)) ? REMAT_COST : 1;
+            for (int d = 0; d < instr.numDefs(); d++)
+                spillCosts[indices.get(instr.def(d))] += remats.containsKey(instr.def(d)) ? 0 : 1;
+        }
+
+        GraphColoring coloring = new GraphColoring(graph, K, precolors, spillCosts);
+        if (coloring.color()) {
+            for (int node = 0; node < n; node++) {
+                graph.node(node).color = coloring.color(node);
+                regs.put(graph.node(node).temp, coloring.color(node));
+            }
+            return null;
+        }
+
+        Vector<Temp> spilled = new Vector<Temp>();
+        for (int node : coloring.spilled()) {
+            graph.node(node).spill = true;
+            spilled.add(graph.node(node).temp);
+        }
+        return spilled;
+    }
+
+    /**
+     * Removes moves between temporary variables that got the same register.
+     */
+    private static void removeMoves(LinkedList<AsmInstr> instrs, HashMap<Temp, Integer> regs) {
+        Iterator<AsmInstr> it = instrs.iterator();
+        while (it.hasNext()) {
+            AsmInstr instr = it.next();
+            if (instr instanceof AsmMOVE && regs.get(instr.use(0)).equals(regs.get(instr.def(0))))
+                it.remove();
+        }
+    }
+
+    /**
+     * Returns the offset below the frame pointer of a new slot in the block of
+     * temporaries, which lies below the local variables, the old frame
+     * pointer and the return address.
+     */
+    private static long newSlot(Frame frame) {
+        long offset = frame.locsSize + 16 + frame.tempsSize + 8;
+        frame.incTempsSize(8);
+        return offset;
+    }
+
+    /**
+     * Returns the temporary variables that can be recomputed wherever they
+     * are used, i.e., those defined only once, by an instruction loading a
+     * constant or an address of a label, together with these instructions.
+     */
+    private static HashMap<Temp, AsmOPER> rematerializable(LinkedList<AsmInstr> instrs) {
+        HashMap<Temp, AsmOPER> remats = new HashMap<Temp, AsmOPER>();
+        HashSet<Temp> defined = new HashSet<Temp>();
+        for (AsmInstr instr : instrs) {
+            for (int d = 0; d < instr.numDefs(); d++) {
+                Temp temp = instr.def(d);
+                if (!defined.add(temp)) {
+                    remats.remove(temp);
+                    continue;
+                }
+                if (instr.numDefs() != 1 || instr.numUses() != 0 || temp == ImcGen.FP || temp == ImcGen.SP)
+                    continue;
+                switch (((AsmOPER) instr).oper()) {
+                    case SETL:
+                    case NEG:
+                    case LDA:
+                        remats.put(temp, (AsmOPER) instr);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return remats;
+    }
+
+    /**
+     * Rewrites instructions so that spilled temporary variables live in their
+     * slots or, if rematerialized, are recomputed before each use instead.
+     */
+    private static void spill(LinkedList<AsmInstr> instrs, HashMap<Temp, Long> slots, HashMap<Temp, AsmOPER> remats,
+                              HashSet<Temp> spillTemps) {
+        LinkedList<AsmInstr> newInstrs = new LinkedList<AsmInstr>();
+        for (AsmInstr instr : instrs) {
+            if (instr instanceof AsmLABEL) {
+                newInstrs.add(instr);
+                continue;
+            }
+            if (instr.numDefs() == 1 && remats.get(instr.def(0)) == instr)
+                continue;
+            Temp[] uses = new Temp[instr.numUses()];
+            Temp[] defs = new Temp[instr.numDefs()];
+            HashMap<Temp, Temp> temps = new HashMap<Temp, Temp>();
+            for (int i = 0; i < uses.length; i++) {
+                uses[i] = instr.use(i);
+                if (!slots.containsKey(uses[i]) && !remats.containsKey(uses[i]))
+                    continue;
+                Temp temp = temps.get(uses[i]);
+                if (temp == null) {
+                    temp = new Temp();
+                    spillTemps.add(temp);
+                    temps.put(uses[i], temp);
+                    if (remats.containsKey(uses[i])) {
+                        newInstrs.add(remats.get(uses[i]).rename(new Temp[0], new Temp[]{temp}));
+                    } else {
+                        Temp addr = offset(newInstrs, slots.get(uses[i]), spillTemps);
+                        newInstrs.add(AsmOPER.build(AsmOPER.Oper.LDO, temp, null, ImcGen.FP, addr));
+                    }
+                }
+                uses[i] = temp;
+            }
+            Vector<Temp> stores = new Vector<Temp>();
+            for (int i = 0; i < defs.length; i++) {
+                defs[i] = instr.def(i);
+                if (!slots.containsKey(defs[i]))
+                    continue;
+                Temp temp = temps.get(defs[i]);
+                if (temp == null) {
+                    temp = new Temp();
+                    spillTemps.add(temp);
+                    temps.put(defs[i], temp);
+                }
+                stores.add(defs[i]);
+                defs[i] = temp;
+            }
+            if (temps.isEmpty()) {
+                newInstrs.add(instr);
+                continue;
+            }
+            newInstrs.add(((AsmOPER) instr).rename(uses, defs));
+            for (Temp def : stores) {
+                Temp addr = offset(newInstrs, slots.get(def), spillTemps);
+                newInstrs.add(AsmOPER.build(AsmOPER.Oper.STO, null, null, temps.get(def), ImcGen.FP, addr));
+            }
+        }
+        instrs.clear();
+        instrs.addAll(newInstrs);
+    }
+
+    /**
+     * Adds instructions computing the negated offset of a slot and returns the
+     * temporary variable holding it.
+     */
+    private static Temp offset(LinkedList<AsmInstr> instrs, long offset, HashSet<Temp> spillTemps) {
+        Temp addr = new Temp();
+        spillTemps.add(addr);
+        if (offset <= 255) {
+            instrs.add(AsmOPER.build(AsmOPER.Oper.NEG, addr, null, 0L, offset));
+        } else {
+            long value = -offset;
+            instrs.add(AsmOPER.build(AsmOPER.Oper.SETL, addr, null, value & 0xFFFF));
+            AsmOPER.Oper[] incs = {AsmOPER.Oper.INCML, AsmOPER.Oper.INCMH, AsmOPER.Oper.INCH};
+            for (int i = 0; i < incs.length; i++) {
+                AsmOperand[] operands = {AsmOperand.def(0), AsmOperand.imm((value >> (16 * (i + 1))) & 0xFFFF)};
+                instrs.add(new AsmOPER(incs[i], operands, new Temp[]{addr}, new Temp[]{addr}, null));
+            }
+        }
+        return addr;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        String loggedPhase = compiler.Main.cmdLineArgValue("--logged-phase");
+        if ((loggedPhase != null) && loggedPhase.matches("regalloc" + "|all")) {
+            for (Fragment fragment : LinCode.fragments()) {
+                if (!tempToReg.containsKey(fragment))
+                    continue;
+                CodeFragment frag = (CodeFragment) fragment;
+                System.out.println("% " + frag.frame.label.name + " temps: " + frag.frame.tempsSize);
+                for (AsmInstr instr : AsmGen.instrs.get(frag)) {
+                    System.out.println(instr.toString(tempToReg.get(frag)));
+                }
+                System.out.println();
+            }
+        }
+    }
+
+}
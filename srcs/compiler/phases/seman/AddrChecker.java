@@ -3,6 +3,8 @@ package compiler.phases.seman;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 
+import java.util.Vector;
+
 
 // L-Value Checker
 public class AddrChecker implements AbsVisitor<Boolean, Object> {
@@ -166,9 +168,15 @@ public class AddrChecker implements AbsVisitor<Boolean, Object> {
     }
 
     public Boolean visit(AbsDecls node, Object visArg) {
+        Vector<AbsFunDef> funDefs = new Vector<>();
         for (AbsDecl decl : node.decls()) {
-            decl.accept(this, null);
+            if (decl instanceof AbsFunDef) {
+                funDefs.add((AbsFunDef) decl);
+            } else {
+                decl.accept(this, null);
+            }
         }
+        FunDefChecker.check(funDefs, funDef -> funDef.accept(this, null));
         return false;
     }
 
@@ -0,0 +1,127 @@
+package compiler.phases.seman;
+
+import common.report.Diagnostics;
+import common.report.Report;
+import common.threads.Threads;
+import compiler.phases.abstr.abstree.AbsFunDef;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Checks bodies of function definitions.
+ * <p>
+ * Once names and types of all declarations within a block are resolved, bodies
+ * of function definitions can be checked independently of each other. If more
+ * than one thread has been requested by {@code --threads}, bodies are checked
+ * concurrently on the fork-join pool shared with the back end; otherwise they
+ * are checked one after another.
+ * <p>
+ * When checked concurrently, errors are deferred until all bodies have been
+ * checked. Then all of them are reported sorted by their locations and the
+ * first one is thrown, so the output does not depend on scheduling.
+ *
+ * @author haytham
+ */
+public class FunDefChecker {
+
+    /**
+     * Checks bodies of the specified function definitions.
+     *
+     * @param funDefs The function definitions.
+     * @param checker The check to be performed on each function definition.
+     */
+    public static void check(Collection<AbsFunDef> funDefs, Consumer<AbsFunDef> checker) {
+        if (funDefs.size() < 2 || Threads.threads() < 2) {
+            for (AbsFunDef funDef : funDefs)
+                checker.accept(funDef);
+            return;
+        }
+
+        Vector<Task> tasks = new Vector<Task>(funDefs.size());
+        for (AbsFunDef funDef : funDefs)
+            tasks.add(new Task(funDef, checker));
+        if (ForkJoinTask.inForkJoinPool())
+            ForkJoinTask.invokeAll(tasks);
+        else
+            Threads.pool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+
+        // Collect errors of all tasks, including those deferred by nested checks.
+        Vector<Report.Error> errors = new Vector<Report.Error>();
+        for (Task task : tasks) {
+            if (task.error == null)
+                continue;
+            errors.add(task.error);
+            for (Throwable suppressed : task.error.getSuppressed())
+                if (suppressed instanceof Report.Error)
+                    errors.add((Report.Error) suppressed);
+        }
+        if (errors.isEmpty())
+            return;
+        Collections.sort(errors, Diagnostics.byLocation());
+
+        Report.Error first = errors.firstElement();
+        if (Report.errorsDeferred()) {
+            Collection<Throwable> suppressed = Arrays.asList(first.getSuppressed());
+            for (Report.Error error : errors)
+                if (error != first && !suppressed.contains(error))
+                    first.addSuppressed(error);
+        } else {
+            for (Report.Error error : errors)
+                error.report();
+        }
+        throw first;
+    }
+
+    /**
+     * A check of a single function body.
+     */
+    @SuppressWarnings("serial")
+    private static class Task extends RecursiveAction {
+
+        /**
+         * The function definition.
+         */
+        private final AbsFunDef funDef;
+
+        /**
+         * The check to be performed.
+         */
+        private final Consumer<AbsFunDef> checker;
+
+        /**
+         * The error found while checking (or {@code null}).
+         */
+        private Report.Error error;
+
+        private Task(AbsFunDef funDef, Consumer<AbsFunDef> checker) {
+            this.funDef = funDef;
+            this.checker = checker;
+            this.error = null;
+        }
+
+        @Override
+        protected void compute() {
+            boolean defer = Report.deferErrors(true);
+            try {
+                checker.accept(funDef);
+            } catch (Report.Error error) {
+                this.error = error;
+            } finally {
+                Report.deferErrors(defer);
+            }
+        }
+
+    }
+
+}
@@ -1,6 +1,6 @@
 package compiler.phases.seman;
 
-import common.report.Report;
+import common.report.Diagnostics;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 
@@ -98,11 +98,12 @@ public class NameChecker implements AbsVisitor<Object, Object> {
         try {
             AbsDecl decl = symbTable.fnd(node.name);
             if (!(decl instanceof AbsVarDecl)) {
-                throw new Report.Error(node.location(), "Name " + node.name + " used as variable name but not declared as a variable");
+                Diagnostics.error(node.location(), "Name " + node.name + " used as variable name but not declared as a variable");
+            } else {
+                SemAn.declAt().put(node, decl);
             }
-            SemAn.declAt().put(node, decl);
         } catch (SymbTable.CannotFndNameException cfne) {
-            throw new Report.Error(node.location(), "Variable " + node.name + " was not declared");
+            Diagnostics.error(node.location(), "Variable " + node.name + " was not declared");
         }
         return null;
     }
@@ -111,11 +112,12 @@ public class NameChecker implements AbsVisitor<Object, Object> {
         try {
             AbsDecl decl = symbTable.fnd(node.name);
             if (!(decl instanceof AbsFunDef) && !(decl instanceof AbsFunDecl)) {
-                throw new Report.Error(node.location(), "Name " + node.name + " used as function name but not declared as a function");
+                Diagnostics.error(node.location(), "Name " + node.name + " used as function name but not declared as a function");
+            } else {
+                SemAn.declAt().put(node, decl);
             }
-            SemAn.declAt().put(node, decl);
         } catch (SymbTable.CannotFndNameException cfne) {
-            throw new Report.Error(node.location(), "Function " + node.name + " was not declared");
+            Diagnostics.error(node.location(), "Function " + node.name + " was not declared");
         }
 
         node.args.accept(this, null);
@@ -201,11 +203,12 @@ public class NameChecker implements AbsVisitor<Object, Object> {
         try {
             AbsDecl decl = symbTable.fnd(node.name);
             if (!(decl instanceof AbsTypeDecl)) {
-                throw new Report.Error(node.location(), "Name " + node.name + " used as type name but not declared as a type");
+                Diagnostics.error(node.location(), "Name " + node.name + " used as type name but not declared as a type");
+            } else {
+                SemAn.declAt().put(node, decl);
             }
-            SemAn.declAt().put(node, decl);
         } catch (SymbTable.CannotFndNameException cfne) {
-            throw new Report.Error(node.location(), "Type " + node.name + " was not declared");
+            Diagnostics.error(node.location(), "Type " + node.name + " was not declared");
         }
         return null;
     }
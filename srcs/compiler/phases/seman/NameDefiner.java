@@ -1,6 +1,6 @@
 package compiler.phases.seman;
 
-import common.report.Report;
+import common.report.Diagnostics;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 
@@ -31,7 +31,7 @@ public class NameDefiner implements AbsVisitor<Object, Object> {
             try {
                 symbTable.ins(decl.name, decl);
             } catch (SymbTable.CannotInsNameException cine) {
-                throw new Report.Error(decl.location(), "Name " + decl.name + " already declared");
+                Diagnostics.error(decl.location(), "Name " + decl.name + " already declared");
             }
         }
 
@@ -78,7 +78,7 @@ public class NameDefiner implements AbsVisitor<Object, Object> {
             try {
                 symbTable.ins(parDecl.name, parDecl);
             } catch (SymbTable.CannotInsNameException cine) {
-                throw new Report.Error(node.location(), "Name " + node.name + " already declared");
+                Diagnostics.error(parDecl.location(), "Name " + parDecl.name + " already declared");
             }
         }
 
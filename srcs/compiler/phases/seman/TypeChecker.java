@@ -1,6 +1,7 @@
 package compiler.phases.seman;
 
-import common.report.Report;
+import common.report.Diagnostics;
+import common.report.Locatable;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 import compiler.phases.seman.type.*;
@@ -11,6 +12,10 @@ import compiler.phases.seman.type.*;
  * Methods of this visitor return the semantic type of a phrase being tested if
  * the AST node represents an expression or {@code null} otherwise. In the first
  * case methods leave their results in {@link SemAn#isOfType()}.
+ * <p>
+ * Type errors are collected by {@link Diagnostics}: an ill-typed expression is
+ * given {@link SemErrorType} and checks involving such an expression are
+ * skipped, so that a single error is not reported over and over again.
  *
  * @author sliva
  */
@@ -26,15 +31,48 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         this.typeTester = new TypeTester();
     }
 
+    /**
+     * Records a type error.
+     *
+     * @param location Location the error is related to.
+     * @param message  The error message.
+     * @return The type describing the error.
+     */
+    private static SemType error(Locatable location, String message) {
+        Diagnostics.error(location, message);
+        return new SemErrorType();
+    }
+
+    /**
+     * Checks whether any of the specified types results from an earlier error.
+     *
+     * @param types The types.
+     * @return {@code true} if any of the types is erroneous, {@code false} otherwise.
+     */
+    private static boolean erroneous(SemType... types) {
+        for (SemType type : types) {
+            if (type == null || type.isAKindOf(SemErrorType.class))
+                return true;
+        }
+        return false;
+    }
 
 
     public SemType visit(AbsArgs node, Object visArg) {
         AbsFunDecl decl = (AbsFunDecl) visArg;
+        if (decl == null) {
+            for (AbsExpr arg : node.args())
+                arg.accept(this, null);
+            return null;
+        }
 
         int parCount = decl.parDecls.parDecls().size();
         int argCount = node.args().size();
         if (parCount != argCount) {
-            throw new Report.Error(node.location(), "Wrong number of arguments for function call, expected " + parCount + ", result " + argCount);
+            Diagnostics.error(node.location(), "Wrong number of arguments for function call, expected " + parCount + ", result " + argCount);
+            for (AbsExpr arg : node.args())
+                arg.accept(this, null);
+            return null;
         }
 
         // Check for arg-type and param-type for match
@@ -42,8 +80,10 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
             SemType argType = node.arg(i).accept(this, null);
             SemType parType = SemAn.descType().get(decl.parDecls.parDecl(i).type);
 
+            if (erroneous(argType, parType))
+                continue;
             if (!parType.matches(argType)) {
-                throw new Report.Error(node.arg(i).location(), "Wrong argument type: expected " + parType + ", result " + argType);
+                Diagnostics.error(node.arg(i).location(), "Wrong argument type: expected " + parType + ", result " + argType);
             }
         }
         return null;
@@ -51,13 +91,20 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
     public SemType visit(AbsArrExpr node, Object visArg) {
         SemType indexType = node.index.accept(this, null);
-        if (!indexType.isAKindOf(SemIntType.class)) {
-            throw new Report.Error(node.index.location(), "Int required for array index, result " + indexType);
+        if (!erroneous(indexType) && !indexType.isAKindOf(SemIntType.class)) {
+            Diagnostics.error(node.index.location(), "Int required for array index, result " + indexType);
         }
 
         SemType type = node.array.accept(this, null);
+        if (erroneous(type)) {
+            type = new SemErrorType();
+            SemAn.isOfType().put(node, type);
+            return type;
+        }
         if (!type.isAKindOf(SemArrType.class)) {
-            throw new Report.Error(node.location(), "Array type required for array expression, result " + type);
+            type = error(node.location(), "Array type required for array expression, result " + type);
+            SemAn.isOfType().put(node, type);
+            return type;
         }
 
         if (type instanceof SemNamedType) {
@@ -99,6 +146,12 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         SemType type2 = node.sndExpr.accept(this, null);
         SemType type = new SemVoidType();
 
+        if (erroneous(type1, type2)) {
+            type = new SemErrorType();
+            SemAn.isOfType().put(node, type);
+            return type;
+        }
+
         switch (node.oper) {
             case IOR:
             case XOR:
@@ -106,7 +159,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                 if (type1.isAKindOf(SemBoolType.class) && type2.isAKindOf(SemBoolType.class)) {
                     type = new SemBoolType();
                 } else {
-                    throw new Report.Error(node.location(), "Booleans required for operand " + node.oper + ", result " + type1 + " and " + type2);
+                    type = error(node.location(), "Booleans required for operand " + node.oper + ", result " + type1 + " and " + type2);
                 }
                 break;
 
@@ -121,7 +174,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
                     type = new SemBoolType();
                 } else {
-                    throw new Report.Error(node.location(), "Matching types required for operand " + node.oper + ", result " + type1 + " and " + type2);
+                    type = error(node.location(), "Matching types required for operand " + node.oper + ", result " + type1 + " and " + type2);
                 }
                 break;
 
@@ -134,7 +187,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                         && type2.isAKindOf(SemIntType.class)) {
                     type = new SemIntType();
                 } else {
-                    throw new Report.Error(node.location(), "Ints required for operand " + node.oper + ", result " + type1 + " and " + type2);
+                    type = error(node.location(), "Ints required for operand " + node.oper + ", result " + type1 + " and " + type2);
                 }
                 break;
         }
@@ -146,6 +199,10 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     public SemType visit(AbsCastExpr node, Object visArg) {
         SemType castType = node.type.accept(this, null);
         SemType exprType = node.expr.accept(this, null);
+        if (erroneous(castType, exprType)) {
+            SemAn.isOfType().put(node, castType);
+            return castType;
+        }
 
         boolean isVoid = castType.isAKindOf(SemVoidType.class);
         boolean isPtrToVoid = castType.isAKindOf(SemPtrType.class) && exprType.isAKindOf(SemPtrType.class) &&
@@ -154,7 +211,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                 exprType.isAKindOf(SemBoolType.class) || exprType.isAKindOf(SemCharType.class));
 
         if (!(isVoid || isPtrToVoid || isToInt)) {
-            throw new Report.Error(node.location(), "Wrong types for operand CAST, result " + exprType + " to " + castType);
+            Diagnostics.error(node.location(), "Wrong types for operand CAST, result " + exprType + " to " + castType);
         }
 
         SemAn.isOfType().put(node, castType);
@@ -163,11 +220,13 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
     public SemType visit(AbsDelExpr node, Object visArg) {
         SemType subType = node.expr.accept(this, null);
-        SemType type;
-        if (subType.isAKindOf(SemPtrType.class) && !((SemPtrType) subType).subType.isAKindOf(SemVoidType.class)) {
+        SemType type = new SemVoidType();
+        if (erroneous(subType)) {
+            type = new SemVoidType();
+        } else if (subType.isAKindOf(SemPtrType.class) && !((SemPtrType) subType).subType.isAKindOf(SemVoidType.class)) {
             type = new SemVoidType();
         } else {
-            throw new Report.Error(node.location(), "Non-void pointer type required for operand DEL, result " + subType);
+            Diagnostics.error(node.location(), "Non-void pointer type required for operand DEL, result " + subType);
         }
 
         SemAn.isOfType().put(node, type);
@@ -176,8 +235,11 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
     public SemType visit(AbsFunName node, Object visArg) {
         AbsDecl decl = SemAn.declAt().get(node);
-        node.args.accept(this, decl);
-        SemType type = SemAn.descType().get(decl.type);
+        node.args.accept(this, decl instanceof AbsFunDecl ? decl : null);
+        SemType type = decl instanceof AbsFunDecl ? SemAn.descType().get(decl.type) : null;
+        if (type == null) {
+            type = new SemErrorType();
+        }
         SemAn.isOfType().put(node, type);
         return type;
     }
@@ -185,10 +247,12 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     public SemType visit(AbsNewExpr node, Object visArg) {
         SemType subType = node.type.accept(this, null);
         SemType type;
-        if (!subType.isAKindOf(SemVoidType.class)) {
+        if (erroneous(subType)) {
+            type = new SemErrorType();
+        } else if (!subType.isAKindOf(SemVoidType.class)) {
             type = new SemPtrType(subType);
         } else {
-            throw new Report.Error(node.location(), "Non-void type required for operand NEW, result " + subType);
+            type = error(node.location(), "Non-void type required for operand NEW, result " + subType);
         }
 
         SemAn.isOfType().put(node, type);
@@ -198,8 +262,15 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     // Access the components of the system
     public SemType visit(AbsRecExpr node, Object visArg) {
         SemType type = node.record.accept(this, null);
+        if (erroneous(type)) {
+            type = new SemErrorType();
+            SemAn.isOfType().put(node, type);
+            return type;
+        }
         if (!type.isAKindOf(SemRecType.class)) {
-            throw new Report.Error(node.location(), "Record type required for record expression, result " + type);
+            type = error(node.location(), "Record type required for record expression, result " + type);
+            SemAn.isOfType().put(node, type);
+            return type;
         }
 
         if (type instanceof SemNamedType) {
@@ -210,7 +281,9 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         int idx = recType.compNames().indexOf(node.comp.name);
 
         if (idx == -1) {
-            throw new Report.Error(node.location(), "Component " + node.comp.name + " does not exist!");
+            type = error(node.location(), "Component " + node.comp.name + " does not exist!");
+            SemAn.isOfType().put(node, type);
+            return type;
         }
 
         type = recType.compTypes().get(idx);
@@ -224,12 +297,18 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         SemType exprType = node.subExpr.accept(this, null);
         SemType type = new SemVoidType();
 
+        if (erroneous(exprType)) {
+            type = new SemErrorType();
+            SemAn.isOfType().put(node, type);
+            return type;
+        }
+
         switch (node.oper) {
             case NOT:
                 if (exprType.isAKindOf(SemBoolType.class)) {
                     type = new SemBoolType();
                 } else {
-                    throw new Report.Error(node.location(), "Bool required for operand NOT, result  " + exprType);
+                    type = error(node.location(), "Bool required for operand NOT, result  " + exprType);
                 }
                 break;
 
@@ -238,7 +317,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                 if (exprType.isAKindOf(SemIntType.class)) {
                     type = new SemIntType();
                 } else {
-                    throw new Report.Error(node.location(), "Int required for unary operand ADD or SUB, result " + exprType);
+                    type = error(node.location(), "Int required for unary operand ADD or SUB, result " + exprType);
                 }
                 break;
 
@@ -246,7 +325,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                 if (!exprType.isAKindOf(SemVoidType.class) && SemAn.isLValue().get(node.subExpr)) {
                     type = new SemPtrType(exprType);
                 } else {
-                    throw new Report.Error(node.location(), "Non-void lvalue required for unary operand MEM, result " + exprType);
+                    type = error(node.location(), "Non-void lvalue required for unary operand MEM, result " + exprType);
                 }
                 break;
 
@@ -254,7 +333,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
                 if (exprType.isAKindOf(SemPtrType.class) && !((SemPtrType) exprType).subType.isAKindOf(SemVoidType.class)) {
                     type = ((SemPtrType) exprType).subType;
                 } else {
-                    throw new Report.Error(node.location(), "Non-void pointer value is required for unary operand VAL");
+                    type = error(node.location(), "Non-void pointer value is required for unary operand VAL");
                 }
 
                 break;
@@ -265,8 +344,11 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     }
 
     public SemType visit(AbsVarName node, Object visArg) {
-        AbsVarDecl decl = (AbsVarDecl) SemAn.declAt().get(node);
-        SemType type = SemAn.descType().get(decl.type);
+        AbsDecl decl = SemAn.declAt().get(node);
+        SemType type = decl instanceof AbsVarDecl ? SemAn.descType().get(decl.type) : null;
+        if (type == null) {
+            type = new SemErrorType();
+        }
         SemAn.isOfType().put(node, type);
         return type;
     }
@@ -275,10 +357,7 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     public SemType visit(AbsArrType node, Object visArg) {
         SemType type = node.accept(typeDefiner, this);
         node.accept(typeTester, this);
-        if (type == null) {
-            throw new Report.Error(node.location(), "Incorrect array type");
-        }
-        return type;
+        return type == null ? new SemErrorType() : type;
     }
 
     public SemType visit(AbsAtomType node, Object visArg) {
@@ -287,26 +366,17 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
     public SemType visit(AbsPtrType node, Object visArg) {
         SemType type = node.accept(typeDefiner, this);
-        if (type == null) {
-            throw new Report.Error(node.location(), "Incorrect pointer type");
-        }
-        return type;
+        return type == null ? new SemErrorType() : type;
     }
 
     public SemType visit(AbsRecType node, Object visArg) {
         SemType type = node.accept(typeDefiner, this);
-        if (type == null) {
-            throw new Report.Error(node.location(), "Incorrect record type");
-        }
-        return type;
+        return type == null ? new SemErrorType() : type;
     }
 
     public SemType visit(AbsTypeName node, Object visArg) {
         SemType type = node.accept(typeDefiner, this);
-        if (type == null) {
-            throw new Report.Error(node.location(), "Incorrect type name");
-        }
-        return type;
+        return type == null ? new SemErrorType() : type;
     }
 
 
@@ -314,10 +384,12 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         SemType type1 = node.dst.accept(this, null);
         SemType type2 = node.src.accept(this, null);
 
-        if (!type1.matches(type2)) {
-            throw new Report.Error(node.location(), "Required matching types in assign statement, result " + type1 + " and " + type2);
+        if (erroneous(type1, type2)) {
+            return new SemVoidType();
+        } else if (!type1.matches(type2)) {
+            Diagnostics.error(node.location(), "Required matching types in assign statement, result " + type1 + " and " + type2);
         } else if (!SemAn.isLValue().get(node.dst)) {
-            throw new Report.Error(node.dst.location(), "Assigned statement declaration must be an L-value");
+            Diagnostics.error(node.dst.location(), "Assigned statement declaration must be an L-value");
         }
 
         return new SemVoidType();
@@ -325,8 +397,8 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
     public SemType visit(AbsExprStmt node, Object visArg) {
         SemType type = node.expr.accept(this, null);
-        if (!type.isAKindOf(SemVoidType.class)) {
-            throw new Report.Error(node.location(), "Required type void for statement expression, got " + type);
+        if (!erroneous(type) && !type.isAKindOf(SemVoidType.class)) {
+            Diagnostics.error(node.location(), "Required type void for statement expression, got " + type);
         }
 
         return new SemVoidType();
@@ -337,12 +409,13 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         SemType thenType = node.thenBody.accept(this, null);
         SemType elseType = node.elseBody.accept(this, null);
 
-        if (!condType.isAKindOf(SemBoolType.class)) {
-            throw new Report.Error(node.cond.location(), "Boole type is required for conditions!");
-        } else if (!(thenType.isAKindOf(SemVoidType.class) && elseType.isAKindOf(SemVoidType.class))) {
-            throw new Report.Error(node.thenBody.location(), "Void type is required for statements!");
+        if (!erroneous(condType) && !condType.isAKindOf(SemBoolType.class)) {
+            Diagnostics.error(node.cond.location(), "Boole type is required for conditions!");
         }
-        return thenType;
+        if (!erroneous(thenType, elseType) && !(thenType.isAKindOf(SemVoidType.class) && elseType.isAKindOf(SemVoidType.class))) {
+            Diagnostics.error(node.thenBody.location(), "Void type is required for statements!");
+        }
+        return new SemVoidType();
     }
 
     public SemType visit(AbsStmtExpr node, Object visArg) {
@@ -351,8 +424,8 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
 
         SemType stmtType = node.stmts.accept(this, null);
 
-        if (!stmtType.isAKindOf(SemVoidType.class)) {
-            throw new Report.Error(node.stmts.location(), "Void type is required for statements!");
+        if (!erroneous(stmtType) && !stmtType.isAKindOf(SemVoidType.class)) {
+            Diagnostics.error(node.stmts.location(), "Void type is required for statements!");
         }
 
         SemType exprType = node.expr.accept(this, null);
@@ -363,8 +436,8 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
     public SemType visit(AbsStmts node, Object visArg) {
         for (AbsStmt stmt : node.stmts()) {
             SemType stmtType = stmt.accept(this, null);
-            if (!stmtType.isAKindOf(SemVoidType.class)) {
-                throw new Report.Error(stmt.location(), "Void type is required for statements!");
+            if (!erroneous(stmtType) && !stmtType.isAKindOf(SemVoidType.class)) {
+                Diagnostics.error(stmt.location(), "Void type is required for statements!");
             }
         }
         return new SemVoidType();
@@ -374,12 +447,13 @@ public class TypeChecker implements AbsVisitor<SemType, Object> {
         SemType condType = node.cond.accept(this, null);
         SemType bodyType = node.body.accept(this, null);
 
-        if (!condType.isAKindOf(SemBoolType.class)) {
-            throw new Report.Error(node.cond.location(), "Boole type is required for conditions!");
-        } else if (!bodyType.isAKindOf(SemVoidType.class)) {
-            throw new Report.Error(node.body.location(), "Boole type is required for conditions!");
+        if (!erroneous(condType) && !condType.isAKindOf(SemBoolType.class)) {
+            Diagnostics.error(node.cond.location(), "Boole type is required for conditions!");
         }
-        return bodyType;
+        if (!erroneous(bodyType) && !bodyType.isAKindOf(SemVoidType.class)) {
+            Diagnostics.error(node.body.location(), "Void type is required for statements!");
+        }
+        return new SemVoidType();
     }
 
 
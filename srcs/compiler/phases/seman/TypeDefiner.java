@@ -1,6 +1,6 @@
 package compiler.phases.seman;
 
-import common.report.Report;
+import common.report.Diagnostics;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 import compiler.phases.seman.type.*;
@@ -13,7 +13,8 @@ import java.util.Vector;
  * <p>
  * Methods of this visitor return the constructed semantic type if the AST node
  * represents a type or {@code null} otherwise. In either case methods leave
- * their results in {@link SemAn#descType()}.
+ * their results in {@link SemAn#descType()}. A type that cannot be constructed
+ * due to an error is represented by {@link SemErrorType}.
  *
  * @author sliva
  */
@@ -24,11 +25,15 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
         SemType elemType = node.elemType.accept(this, visArg);
 
         if (len == null) {
-            throw new Report.Error(node.len.location(), "Constant integer expression is required for array length!");
+            Diagnostics.error(node.len.location(), "Constant integer expression is required for array length!");
+            SemType errType = new SemErrorType();
+            SemAn.descType().put(node, errType);
+            return errType;
         }
 
-        if (elemType == null) {
-            return null;
+        if (elemType instanceof SemErrorType) {
+            SemAn.descType().put(node, elemType);
+            return elemType;
         } else {
             SemArrType arrType = new SemArrType(len, elemType);
             SemAn.descType().put(node, arrType);
@@ -57,7 +62,7 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
                 break;
 
             default:
-                atomType = null;
+                atomType = new SemErrorType();
         }
         SemAn.descType().put(node, atomType);
         return atomType;
@@ -66,8 +71,9 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
     public SemType visit(AbsPtrType node, Object visArg) {
         SemType subType = node.subType.accept(this, visArg);
 
-        if (subType == null) {
-            return null;
+        if (subType instanceof SemErrorType) {
+            SemAn.descType().put(node, subType);
+            return subType;
         } else {
             SemPtrType ptrType = new SemPtrType(subType);
             SemAn.descType().put(node, ptrType);
@@ -84,16 +90,13 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
 
         for (AbsCompDecl compDecl : node.compDecls.compDecls()) {
             SemType type = compDecl.accept(this, visArg);
-            if (type == null) {
-                return null;
-            }
             comps.add(type);
             names.add(compDecl.name);
 
             try {
                 symbTable.ins(compDecl.name, compDecl);
             } catch (SymbTable.CannotInsNameException cine) {
-                throw new Report.Error(compDecl.location(), "Component: " + compDecl.name + " already exists in record!");
+                Diagnostics.error(compDecl.location(), "Component: " + compDecl.name + " already exists in record!");
             }
         }
 
@@ -110,7 +113,13 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
         SemType type;
 
         if (semNamedType == null) {
-            throw new Report.Error(node.location(), "Named type not declared");
+            // An unresolved name has already been reported by the name checker.
+            if (typeDecl != null) {
+                Diagnostics.error(node.location(), "Named type not declared");
+            }
+            type = new SemErrorType();
+            SemAn.descType().put(node, type);
+            return type;
         }
 
         HashMap<String, AbsTypeName> hierarchy;
@@ -166,7 +175,8 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
 
             }
 
-            throw new Report.Error(node.location(), "Recursive hierarchy was found!");
+            Diagnostics.error(node.location(), "Recursive hierarchy was found!");
+            type = new SemErrorType();
         } else {
             hierarchy.put(node.name, node);
             type = typeDecl.type.accept(this, hierarchy);
@@ -197,11 +207,13 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
             }
         }
 
+        Vector<AbsFunDef> funDefs = new Vector<>();
         for (AbsDecl decl : node.decls()) {
             if (decl instanceof AbsFunDef) {
-                decl.accept(this, visArg);
+                funDefs.add((AbsFunDef) decl);
             }
         }
+        FunDefChecker.check(funDefs, funDef -> funDef.accept(this, visArg));
         return null;
     }
 
@@ -229,18 +241,24 @@ public class TypeDefiner implements AbsVisitor<SemType, Object> {
         SemType returnType = node.type.accept(this, null);
         SemType valueType = node.value.accept((TypeChecker) visArg, null);
 
+        if (returnType.isAKindOf(SemErrorType.class) || valueType.isAKindOf(SemErrorType.class)) {
+            return null;
+        }
         if (!returnType.matches(valueType)) {
-            throw new Report.Error(node.location(), "Required matching types for declared returned type, result " + returnType + " and " + valueType);
+            Diagnostics.error(node.location(), "Required matching types for declared returned type, result " + returnType + " and " + valueType);
         }
         return null;
     }
 
     public SemType visit(AbsParDecl node, Object visArg) {
         SemType parType = node.type.accept(this, null);
+        if (parType.isAKindOf(SemErrorType.class)) {
+            return parType;
+        }
         if (!(parType.isAKindOf(SemBoolType.class) || parType.isAKindOf(SemIntType.class)
                 || parType.isAKindOf(SemCharType.class) || parType.isAKindOf(SemPtrType.class)
                 || parType.isAKindOf(SemVoidType.class))) {
-            throw new Report.Error(node.location(), "Parameter type " + parType + " not allowed");
+            Diagnostics.error(node.location(), "Parameter type " + parType + " not allowed");
         }
 
         return parType;
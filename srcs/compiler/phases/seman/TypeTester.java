@@ -1,13 +1,16 @@
 package compiler.phases.seman;
 
-import common.report.Report;
+import common.report.Diagnostics;
 import compiler.phases.abstr.AbsVisitor;
 import compiler.phases.abstr.abstree.*;
 import compiler.phases.seman.type.SemArrType;
+import compiler.phases.seman.type.SemErrorType;
 import compiler.phases.seman.type.SemPtrType;
 import compiler.phases.seman.type.SemRecType;
 import compiler.phases.seman.type.SemType;
 
+import java.util.Vector;
+
 
 /**
  * Tests whether types constructed by {@link TypeDefiner} make sense.
@@ -22,8 +25,11 @@ public class TypeTester implements AbsVisitor<Object, Object> {
         node.elemType.accept(this, null);
         SemType arrType = SemAn.descType().get(node);
 
+        if (arrType instanceof SemErrorType) {
+            return null;
+        }
         if (arrType == null || !arrType.isAKindOf(SemArrType.class)) {
-            throw new Report.Error(node.location(), "Semantic array was not found");
+            Diagnostics.error(node.location(), "Semantic array was not found");
         }
         return null;
     }
@@ -32,7 +38,7 @@ public class TypeTester implements AbsVisitor<Object, Object> {
         SemType atomType = SemAn.descType().get(node);
 
         if (atomType == null) {
-            throw new Report.Error(node.location(), "Semantic atom was not found");
+            Diagnostics.error(node.location(), "Semantic atom was not found");
         }
         return null;
     }
@@ -41,8 +47,11 @@ public class TypeTester implements AbsVisitor<Object, Object> {
         node.subType.accept(this, null);
         SemType ptrType = SemAn.descType().get(node);
 
+        if (ptrType instanceof SemErrorType) {
+            return null;
+        }
         if (ptrType == null || !ptrType.isAKindOf(SemPtrType.class)) {
-            throw new Report.Error(node.location(), "Semantic pointer was not found");
+            Diagnostics.error(node.location(), "Semantic pointer was not found");
         }
         return null;
     }
@@ -51,8 +60,11 @@ public class TypeTester implements AbsVisitor<Object, Object> {
         node.compDecls.accept(this, null);
         SemType recType = SemAn.descType().get(node);
 
+        if (recType instanceof SemErrorType) {
+            return null;
+        }
         if (recType == null || !recType.isAKindOf(SemRecType.class)) {
-            throw new Report.Error(node.location(), "Semantic record was not found");
+            Diagnostics.error(node.location(), "Semantic record was not found");
         }
         return null;
     }
@@ -62,7 +74,7 @@ public class TypeTester implements AbsVisitor<Object, Object> {
         node.accept(new TypeDefiner(), null);
 
         if (namedType == null) {
-            throw new Report.Error(node.location(), "Semantic named was not found");
+            Diagnostics.error(node.location(), "Semantic named was not found");
         }
 
         return null;
@@ -70,9 +82,15 @@ public class TypeTester implements AbsVisitor<Object, Object> {
 
 
     public Object visit(AbsDecls node, Object visArg) {
+        Vector<AbsFunDef> funDefs = new Vector<>();
         for (AbsDecl decl : node.decls()) {
-            decl.accept(this, visArg);
+            if (decl instanceof AbsFunDef) {
+                funDefs.add((AbsFunDef) decl);
+            } else {
+                decl.accept(this, visArg);
+            }
         }
+        FunDefChecker.check(funDefs, funDef -> funDef.accept(this, visArg));
 
         return null;
     }